@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.index.kv;
+
+import java.io.IOException;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Plugin;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.dltk.internal.core.index.kv.ElementStore;
+import org.eclipse.dltk.internal.core.index.kv.OrderedStore;
+import org.osgi.framework.BundleContext;
+
+/**
+ * The activator class controls the plug-in life cycle
+ */
+public class KvIndex extends Plugin {
+
+	public static final String PLUGIN_ID = "org.eclipse.dltk.core.index.kv"; //$NON-NLS-1$
+
+	private static final String STORE_NAME = "model.kv"; //$NON-NLS-1$
+
+	private static KvIndex plugin;
+
+	private ElementStore store;
+
+	@Override
+	public void start(BundleContext context) throws Exception {
+		super.start(context);
+		plugin = this;
+	}
+
+	@Override
+	public void stop(BundleContext context) throws Exception {
+		synchronized (this) {
+			if (store != null) {
+				store.getStore().close();
+				store = null;
+			}
+		}
+		plugin = null;
+		super.stop(context);
+	}
+
+	/**
+	 * Returns the shared instance
+	 * 
+	 * @return the shared instance
+	 */
+	public static KvIndex getDefault() {
+		return plugin;
+	}
+
+	/**
+	 * Returns the store of the index, opening it on the first call
+	 * 
+	 * @return the store or <code>null</code> if it can't be opened
+	 */
+	public synchronized ElementStore getElementStore() {
+		if (store == null) {
+			try {
+				store = new ElementStore(new OrderedStore(getStateLocation()
+						.append(STORE_NAME).toFile()));
+			} catch (IOException e) {
+				error("Can't open the index store", e);
+			}
+		}
+		return store;
+	}
+
+	public static void error(String message) {
+		error(message, null);
+	}
+
+	public static void error(String message, Throwable t) {
+		plugin.getLog().log(
+				new Status(IStatus.ERROR, PLUGIN_ID, IStatus.OK, message, t));
+	}
+
+	public static void warn(String message) {
+		warn(message, null);
+	}
+
+	public static void warn(String message, Throwable t) {
+		plugin.getLog().log(
+				new Status(IStatus.WARNING, PLUGIN_ID, IStatus.OK, message, t));
+	}
+}
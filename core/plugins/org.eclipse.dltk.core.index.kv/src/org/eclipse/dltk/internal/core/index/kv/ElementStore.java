@@ -0,0 +1,649 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.kv;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.eclipse.dltk.core.index2.search.ISearchEngine.MatchRule;
+
+/**
+ * Containers, files and elements of the index kept in an
+ * {@link OrderedStore}. Element keys start with the kind, the nature id and
+ * the type of the element followed by its case-folded name, so exact and
+ * prefix searches are range scans:
+ *
+ * <pre>
+ * c:&lt;container path&gt;                   -&gt; container id
+ * C:&lt;container id&gt;                     -&gt; container path
+ * N:&lt;nature&gt;                           -&gt; nature id
+ * f:&lt;container id&gt;&lt;file path&gt;          -&gt; file id
+ * F:&lt;file id&gt;                          -&gt; container id, file path, timestamp
+ * x:&lt;file id&gt;                          -&gt; keys of the file elements
+ * d:&lt;nature id&gt; &lt;type&gt; &lt;name&gt; &lt;file id&gt;&lt;#&gt; -&gt; declaration
+ * r:&lt;nature id&gt; &lt;type&gt; &lt;name&gt; &lt;file id&gt;&lt;#&gt; -&gt; reference
+ * n:&lt;nature id&gt; &lt;type&gt; &lt;camel-case name&gt; &lt;file id&gt;&lt;#&gt; -&gt; declaration key
+ * </pre>
+ *
+ * Ids are written as 8 hex digits, so they sort as numbers, and the parts
+ * shown separated by a space are separated by a null character. The file
+ * entries are written after the elements of the file, so a file interrupted
+ * by a crash is indexed again.
+ */
+public class ElementStore {
+
+	private static final String CONTAINER = "c:"; //$NON-NLS-1$
+	private static final String CONTAINER_ID = "C:"; //$NON-NLS-1$
+	private static final String FILE = "f:"; //$NON-NLS-1$
+	private static final String FILE_ID = "F:"; //$NON-NLS-1$
+	private static final String DECLARATION = "d:"; //$NON-NLS-1$
+	private static final String REFERENCE = "r:"; //$NON-NLS-1$
+	private static final String CAMEL_CASE = "n:"; //$NON-NLS-1$
+	private static final String FILE_ELEMENTS = "x:"; //$NON-NLS-1$
+	private static final String NATURE = "N:"; //$NON-NLS-1$
+	private static final String CONTAINER_SEQUENCE = "#:container"; //$NON-NLS-1$
+	private static final String FILE_SEQUENCE = "#:file"; //$NON-NLS-1$
+	private static final String NATURE_SEQUENCE = "#:nature"; //$NON-NLS-1$
+	private static final String VERSION_KEY = "#:version"; //$NON-NLS-1$
+
+	/** Version of the key layout, the store is cleared if it differs */
+	private static final int VERSION = 2;
+
+	private static final char SEPARATOR = '\0';
+	private static final int ID_LENGTH = 8;
+	private static final char[] HEX_DIGITS = "0123456789abcdef" //$NON-NLS-1$
+			.toCharArray();
+	private static final Pattern SET_SEPARATOR = Pattern.compile(","); //$NON-NLS-1$
+
+	private final OrderedStore store;
+
+	/** nature -> nature id written in the element keys */
+	private final Map<String, String> natureIds = new ConcurrentHashMap<String, String>();
+
+	public ElementStore(OrderedStore store) throws IOException {
+		this.store = store;
+		final byte[] version = store.get(VERSION_KEY);
+		if (version == null || decodeInt(version) != VERSION) {
+			store.clear();
+			store.put(VERSION_KEY, encodeInt(VERSION));
+			store.flush();
+		}
+	}
+
+	public OrderedStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Returns the id of the container, adding it if needed
+	 */
+	public synchronized int insertContainer(String path) throws IOException {
+		int id = selectContainer(path);
+		if (id == -1) {
+			id = nextId(CONTAINER_SEQUENCE);
+			store.put(CONTAINER + path, encodeInt(id));
+			store.put(CONTAINER_ID + hex(id), encodeString(path));
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the id of the container or <code>-1</code> if there is none
+	 */
+	public int selectContainer(String path) {
+		final byte[] value = store.get(CONTAINER + path);
+		return value != null ? decodeInt(value) : -1;
+	}
+
+	public String selectContainerPath(int id) {
+		final byte[] value = store.get(CONTAINER_ID + hex(id));
+		return value != null ? decodeString(value) : null;
+	}
+
+	/**
+	 * Removes the container with all its files and their elements
+	 */
+	public synchronized void deleteContainer(String path) throws IOException {
+		final int id = selectContainer(path);
+		if (id != -1) {
+			for (StoredFile file : selectFiles(id)) {
+				deleteFile(file);
+			}
+			store.remove(CONTAINER + path);
+			store.remove(CONTAINER_ID + hex(id));
+		}
+	}
+
+	/**
+	 * Returns a new file to add the elements to, the file is stored by
+	 * {@link #insertFile(StoredFile)} once all its elements are added
+	 */
+	public synchronized StoredFile createFile(int containerId, String path,
+			long timestamp) throws IOException {
+		final int id = nextId(FILE_SEQUENCE);
+		final StoredFile file = new StoredFile(id, containerId, path,
+				timestamp);
+		file.elementKeys = new ArrayList<String>();
+		return file;
+	}
+
+	/**
+	 * Stores the file created by {@link #createFile(int, String, long)} after
+	 * its elements
+	 */
+	public synchronized void insertFile(StoredFile file) throws IOException {
+		final Output keys = new Output();
+		keys.writeInt(file.elementKeys.size());
+		for (String key : file.elementKeys) {
+			keys.writeString(key);
+		}
+		store.put(FILE_ELEMENTS + hex(file.getId()), keys.toByteArray());
+		file.elementKeys = null;
+
+		store.put(FILE + hex(file.getContainerId()) + file.getPath(),
+				encodeInt(file.getId()));
+		final Output out = new Output();
+		out.writeInt(file.getContainerId());
+		out.writeString(file.getPath());
+		out.writeLong(file.getTimestamp());
+		store.put(FILE_ID + hex(file.getId()), out.toByteArray());
+	}
+
+	public StoredFile selectFile(int containerId, String path) {
+		final byte[] value = store.get(FILE + hex(containerId) + path);
+		return value != null ? selectFileById(decodeInt(value)) : null;
+	}
+
+	public StoredFile selectFileById(int id) {
+		final byte[] value = store.get(FILE_ID + hex(id));
+		if (value == null) {
+			return null;
+		}
+		final Input in = new Input(value);
+		return new StoredFile(id, in.readInt(), in.readString(),
+				in.readLong());
+	}
+
+	public List<StoredFile> selectFiles(int containerId) {
+		final List<Integer> ids = new ArrayList<Integer>();
+		store.scanPrefix(FILE + hex(containerId), new OrderedStore.IVisitor() {
+			public boolean visit(String key, byte[] value) {
+				ids.add(decodeInt(value));
+				return true;
+			}
+		});
+		final List<StoredFile> files = new ArrayList<StoredFile>(ids.size());
+		for (int id : ids) {
+			final StoredFile file = selectFileById(id);
+			if (file != null) {
+				files.add(file);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Removes the file and its elements, the file may be one not inserted yet
+	 */
+	public synchronized void deleteFile(StoredFile file) throws IOException {
+		final String elementsKey = FILE_ELEMENTS + hex(file.getId());
+		final List<String> keys = new ArrayList<String>();
+		if (file.elementKeys != null) {
+			keys.addAll(file.elementKeys);
+			file.elementKeys = null;
+		}
+		final byte[] value = store.get(elementsKey);
+		if (value != null) {
+			final Input in = new Input(value);
+			for (int i = in.readInt(); i > 0; --i) {
+				keys.add(in.readString());
+			}
+		}
+		for (String key : keys) {
+			store.remove(key);
+		}
+		store.remove(elementsKey);
+		store.remove(FILE + hex(file.getContainerId()) + file.getPath());
+		store.remove(FILE_ID + hex(file.getId()));
+	}
+
+	/**
+	 * Adds an element to the file being indexed
+	 */
+	public void insertElement(StoredFile file, String natureId,
+			boolean isReference, int type, int flags, int offset, int length,
+			int nameOffset, int nameLength, String name, String metadata,
+			String doc, String qualifier, String parent) throws IOException {
+
+		final String suffix = hex(file.getId()) + hex(file.elementCount++);
+		final String nature = insertNatureId(natureId);
+		final String key = (isReference ? REFERENCE : DECLARATION) + nature
+				+ SEPARATOR + hex(type) + SEPARATOR
+				+ name.toLowerCase(Locale.ENGLISH) + SEPARATOR + suffix;
+
+		final Output out = new Output();
+		out.writeInt(flags);
+		out.writeInt(offset);
+		out.writeInt(length);
+		out.writeInt(nameOffset);
+		out.writeInt(nameLength);
+		out.writeString(name);
+		out.writeString(metadata);
+		out.writeString(doc);
+		out.writeString(qualifier);
+		out.writeString(parent);
+		store.put(key, out.toByteArray());
+
+		file.elementKeys.add(key);
+		final String camelCaseName = isReference ? null
+				: getCamelCaseName(name);
+		if (camelCaseName != null) {
+			final String camelCaseKey = CAMEL_CASE + nature + SEPARATOR
+					+ hex(type) + SEPARATOR + camelCaseName + SEPARATOR
+					+ suffix;
+			store.put(camelCaseKey, encodeString(key));
+			file.elementKeys.add(camelCaseKey);
+		}
+	}
+
+	/**
+	 * Returns the id of the nature written in the element keys, or
+	 * <code>null</code> if the nature has no elements
+	 */
+	private String selectNatureId(String natureId) {
+		String id = natureIds.get(natureId);
+		if (id == null) {
+			final byte[] value = store.get(NATURE + natureId);
+			if (value != null) {
+				id = hex(decodeInt(value));
+				natureIds.put(natureId, id);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the id of the nature written in the element keys, adding it if
+	 * needed
+	 */
+	private String insertNatureId(String natureId) throws IOException {
+		String id = selectNatureId(natureId);
+		if (id == null) {
+			synchronized (this) {
+				id = selectNatureId(natureId);
+				if (id == null) {
+					final int number = nextId(NATURE_SEQUENCE);
+					store.put(NATURE + natureId, encodeInt(number));
+					id = hex(number);
+					natureIds.put(natureId, id);
+				}
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the upper-case letters of the name, if it starts with one
+	 */
+	static String getCamelCaseName(String name) {
+		final StringBuilder camelCaseName = new StringBuilder();
+		for (int i = 0; i < name.length(); ++i) {
+			final char ch = name.charAt(i);
+			if (Character.isUpperCase(ch)) {
+				camelCaseName.append(ch);
+			} else if (i == 0) {
+				// not applicable for camel case search
+				break;
+			}
+		}
+		return camelCaseName.length() > 0 ? camelCaseName.toString() : null;
+	}
+
+	/**
+	 * Search elements in the store. Names are matched ignoring case, but for
+	 * {@link MatchRule#CAMEL_CASE}.
+	 *
+	 * @param filesId
+	 *            Files of the elements or <code>null</code>
+	 * @param containersId
+	 *            Containers of the elements or <code>null</code>, ignored if
+	 *            the files are specified
+	 * @param limit
+	 *            Records limit (<code>0</code> - disable limit)
+	 * @param result
+	 *            List receiving the elements
+	 * @return number of elements added to the result
+	 */
+	public int search(String natureId, int elementType, boolean isReference,
+			String pattern, MatchRule matchRule, int trueFlags,
+			int falseFlags, String qualifier, String parent,
+			Set<Integer> filesId, Set<Integer> containersId, int limit,
+			List<StoredElement> result) {
+
+		if (isReference && matchRule == MatchRule.CAMEL_CASE) {
+			matchRule = MatchRule.EXACT;
+		}
+		final String nature = selectNatureId(natureId);
+		if (nature == null) {
+			return 0;
+		}
+		final String base = (isReference ? REFERENCE : DECLARATION) + nature
+				+ SEPARATOR + hex(elementType) + SEPARATOR;
+		final ElementCollector collector = new ElementCollector(elementType,
+				isReference, trueFlags, falseFlags, qualifier, parent,
+				filesId, containersId, limit, result);
+
+		if (pattern == null || pattern.length() == 0) {
+			store.scanPrefix(base, collector);
+		} else if (matchRule == MatchRule.EXACT) {
+			store.scanPrefix(base + pattern.toLowerCase(Locale.ENGLISH)
+					+ SEPARATOR, collector);
+		} else if (matchRule == MatchRule.PREFIX) {
+			store.scanPrefix(base + pattern.toLowerCase(Locale.ENGLISH),
+					collector);
+		} else if (matchRule == MatchRule.SET) {
+			for (String name : SET_SEPARATOR.split(pattern)) {
+				store.scanPrefix(base + name.toLowerCase(Locale.ENGLISH)
+						+ SEPARATOR, collector);
+				if (collector.isFull()) {
+					break;
+				}
+			}
+		} else if (matchRule == MatchRule.PATTERN) {
+			int wildcard = 0;
+			while (wildcard < pattern.length()
+					&& pattern.charAt(wildcard) != '*'
+					&& pattern.charAt(wildcard) != '?') {
+				++wildcard;
+			}
+			collector.pattern = createPattern(pattern);
+			store.scanPrefix(base
+					+ pattern.substring(0, wildcard).toLowerCase(
+							Locale.ENGLISH), collector);
+		} else if (matchRule == MatchRule.CAMEL_CASE) {
+			store.scanPrefix(CAMEL_CASE + nature + SEPARATOR
+					+ hex(elementType) + SEPARATOR
+					+ pattern.toUpperCase(Locale.ENGLISH),
+					new OrderedStore.IVisitor() {
+						public boolean visit(String key, byte[] value) {
+							final String elementKey = decodeString(value);
+							final byte[] element = store.get(elementKey);
+							return element == null
+									|| collector.visit(elementKey, element);
+						}
+					});
+		}
+		return collector.count;
+	}
+
+	/**
+	 * Filters the visited elements, decoding the matching ones
+	 */
+	private class ElementCollector implements OrderedStore.IVisitor {
+
+		private final int elementType;
+		private final boolean isReference;
+		private final int trueFlags;
+		private final int falseFlags;
+		private final String qualifier;
+		private final String parent;
+		private final Set<Integer> filesId;
+		private final Set<Integer> containersId;
+		private final int limit;
+		private final List<StoredElement> result;
+		private final Map<Integer, Boolean> fileMatches = new HashMap<Integer, Boolean>();
+		Pattern pattern;
+		int count;
+
+		ElementCollector(int elementType, boolean isReference, int trueFlags,
+				int falseFlags, String qualifier, String parent,
+				Set<Integer> filesId, Set<Integer> containersId, int limit,
+				List<StoredElement> result) {
+			this.elementType = elementType;
+			this.isReference = isReference;
+			this.trueFlags = trueFlags;
+			this.falseFlags = falseFlags;
+			this.qualifier = qualifier != null && qualifier.length() != 0 ? qualifier
+					: null;
+			this.parent = parent != null && parent.length() != 0 ? parent
+					: null;
+			this.filesId = filesId;
+			this.containersId = containersId;
+			this.limit = limit;
+			this.result = result;
+		}
+
+		boolean isFull() {
+			return limit > 0 && count >= limit;
+		}
+
+		private boolean fileMatches(int fileId) {
+			if (filesId != null) {
+				return filesId.contains(fileId);
+			}
+			if (containersId == null) {
+				return true;
+			}
+			Boolean matches = fileMatches.get(fileId);
+			if (matches == null) {
+				final StoredFile file = selectFileById(fileId);
+				matches = file != null
+						&& containersId.contains(file.getContainerId());
+				fileMatches.put(fileId, matches);
+			}
+			return matches;
+		}
+
+		public boolean visit(String key, byte[] value) {
+			final int end = key.length() - ID_LENGTH;
+			final int fileId = parseHex(key, end - ID_LENGTH, end);
+			if (!fileMatches(fileId)) {
+				return true;
+			}
+			final Input in = new Input(value);
+			final int flags = in.readInt();
+			if (trueFlags != 0 && (flags & trueFlags) == 0
+					|| falseFlags != 0 && (flags & falseFlags) != 0) {
+				return true;
+			}
+			final int offset = in.readInt();
+			final int length = in.readInt();
+			final int nameOffset = in.readInt();
+			final int nameLength = in.readInt();
+			final String name = in.readString();
+			if (pattern != null && !pattern.matcher(name).matches()) {
+				return true;
+			}
+			final String metadata = in.readString();
+			final String doc = in.readString();
+			final String elementQualifier = in.readString();
+			if (qualifier != null && !qualifier.equals(elementQualifier)) {
+				return true;
+			}
+			final String elementParent = in.readString();
+			if (parent != null && !parent.equals(elementParent)) {
+				return true;
+			}
+			result.add(new StoredElement(elementType, flags, offset, length,
+					nameOffset, nameLength, name, metadata, doc,
+					elementQualifier, elementParent, fileId, isReference));
+			++count;
+			return !isFull();
+		}
+	}
+
+	private static Pattern createPattern(String pattern) {
+		final StringBuilder buf = new StringBuilder();
+		int start = 0;
+		for (int i = 0; i < pattern.length(); ++i) {
+			final char ch = pattern.charAt(i);
+			if (ch == '*' || ch == '?') {
+				if (start < i) {
+					buf.append(Pattern.quote(pattern.substring(start, i)));
+				}
+				buf.append(ch == '*' ? ".*" : ".?"); //$NON-NLS-1$ //$NON-NLS-2$
+				start = i + 1;
+			}
+		}
+		if (start < pattern.length()) {
+			buf.append(Pattern.quote(pattern.substring(start)));
+		}
+		return Pattern.compile(buf.toString(), Pattern.CASE_INSENSITIVE);
+	}
+
+	/**
+	 * Writes the pending changes to the disk
+	 */
+	public void flush() throws IOException {
+		store.flush();
+	}
+
+	private int nextId(String sequence) throws IOException {
+		final byte[] value = store.get(sequence);
+		final int id = value != null ? decodeInt(value) + 1 : 1;
+		store.put(sequence, encodeInt(id));
+		return id;
+	}
+
+	static String hex(int value) {
+		final char[] chars = new char[ID_LENGTH];
+		for (int i = ID_LENGTH - 1; i >= 0; --i) {
+			chars[i] = HEX_DIGITS[value & 0xF];
+			value >>>= 4;
+		}
+		return new String(chars);
+	}
+
+	private static int parseHex(String s, int start, int end) {
+		int value = 0;
+		for (int i = start; i < end; ++i) {
+			value = (value << 4) | Character.digit(s.charAt(i), 16);
+		}
+		return value;
+	}
+
+	private static byte[] encodeInt(int value) {
+		final Output out = new Output();
+		out.writeInt(value);
+		return out.toByteArray();
+	}
+
+	private static int decodeInt(byte[] value) {
+		return new Input(value).readInt();
+	}
+
+	private static byte[] encodeString(String value) {
+		final Output out = new Output();
+		out.writeString(value);
+		return out.toByteArray();
+	}
+
+	private static String decodeString(byte[] value) {
+		return new Input(value).readString();
+	}
+
+	/**
+	 * Writer of the values, strings are written as UTF-8 of any length.
+	 */
+	private static class Output {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+				64);
+		private final DataOutputStream out = new DataOutputStream(bytes);
+
+		void writeInt(int value) {
+			try {
+				out.writeInt(value);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		void writeLong(long value) {
+			try {
+				out.writeLong(value);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		void writeString(String value) {
+			try {
+				if (value == null) {
+					out.writeInt(-1);
+				} else {
+					final byte[] utf8 = value.getBytes("UTF-8"); //$NON-NLS-1$
+					out.writeInt(utf8.length);
+					out.write(utf8);
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		byte[] toByteArray() {
+			return bytes.toByteArray();
+		}
+	}
+
+	private static class Input {
+
+		private final byte[] bytes;
+		private final DataInputStream in;
+
+		Input(byte[] bytes) {
+			this.bytes = bytes;
+			this.in = new DataInputStream(new ByteArrayInputStream(bytes));
+		}
+
+		int readInt() {
+			try {
+				return in.readInt();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		long readLong() {
+			try {
+				return in.readLong();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		String readString() {
+			try {
+				final int length = in.readInt();
+				if (length < 0) {
+					return null;
+				}
+				final int offset = bytes.length - in.available();
+				in.skipBytes(length);
+				return new String(bytes, offset, length, "UTF-8"); //$NON-NLS-1$
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
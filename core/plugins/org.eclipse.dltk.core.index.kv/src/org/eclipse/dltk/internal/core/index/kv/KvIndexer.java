@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.kv;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.dltk.core.DLTKLanguageManager;
+import org.eclipse.dltk.core.IDLTKLanguageToolkit;
+import org.eclipse.dltk.core.IDLTKLanguageToolkitExtension;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.environment.EnvironmentPathUtils;
+import org.eclipse.dltk.core.environment.IFileHandle;
+import org.eclipse.dltk.core.index.kv.KvIndex;
+import org.eclipse.dltk.core.index2.AbstractIndexer;
+import org.eclipse.dltk.core.index2.IIndexerExtension;
+import org.eclipse.dltk.core.index2.IIndexingParser;
+import org.eclipse.dltk.core.index2.search.ISearchEngine;
+import org.eclipse.dltk.internal.core.ExternalSourceModule;
+import org.eclipse.dltk.internal.core.SourceModule;
+import org.eclipse.dltk.internal.core.util.Util;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Indexer storing the elements in an embedded key-value store, see
+ * {@link ElementStore}.
+ */
+public class KvIndexer extends AbstractIndexer implements IIndexerExtension {
+
+	private final ElementStore store;
+	private StoredFile file;
+	private String natureId;
+
+	/** Whether the changes are flushed at the end of the batch only */
+	private boolean inBatch;
+
+	public KvIndexer() {
+		final KvIndex plugin = KvIndex.getDefault();
+		store = plugin != null ? plugin.getElementStore() : null;
+		if (store == null) {
+			throw new IllegalStateException("Key-value store not available");
+		}
+	}
+
+	public void addDeclaration(DeclarationInfo info) {
+		try {
+			store.insertElement(file, natureId, false, info.elementType,
+					info.flags, info.offset, info.length, info.nameOffset,
+					info.nameLength, info.elementName, info.metadata,
+					info.doc, info.qualifier, info.parent);
+		} catch (IOException e) {
+			KvIndex.error(
+					"An exception was thrown while inserting model element declaration",
+					e);
+		}
+	}
+
+	public void addReference(ReferenceInfo info) {
+		try {
+			store.insertElement(file, natureId, true, info.elementType, 0,
+					info.offset, info.length, 0, 0, info.elementName,
+					info.metadata, null, info.qualifier, null);
+		} catch (IOException e) {
+			KvIndex.error(
+					"An exception was thrown while inserting model element reference",
+					e);
+		}
+	}
+
+	public void beginBatch(boolean rebuild) {
+		inBatch = true;
+	}
+
+	public void endBatch() {
+		inBatch = false;
+		flush();
+	}
+
+	private void flush() {
+		try {
+			store.flush();
+		} catch (IOException e) {
+			KvIndex.error("An exception was thrown while writing the index", e);
+		}
+	}
+
+	@Override
+	public void indexDocument(ISourceModule sourceModule,
+			IIndexingParser parser) {
+
+		final IFileHandle fileHandle = EnvironmentPathUtils
+				.getFile(sourceModule);
+
+		IDLTKLanguageToolkit toolkit = DLTKLanguageManager
+				.getLanguageToolkit(sourceModule);
+		if (toolkit == null) {
+			return;
+		}
+		try {
+			natureId = toolkit.getNatureId();
+
+			IPath containerPath;
+			if (sourceModule instanceof SourceModule) {
+				containerPath = sourceModule.getScriptProject().getPath();
+			} else {
+				containerPath = sourceModule.getAncestor(
+						IModelElement.PROJECT_FRAGMENT).getPath();
+			}
+			int containerId = store.insertContainer(containerPath.toString());
+
+			String relativePath;
+			if (toolkit instanceof IDLTKLanguageToolkitExtension
+					&& ((IDLTKLanguageToolkitExtension) toolkit)
+							.isArchiveFileName(sourceModule.getPath()
+									.toString())) {
+				relativePath = ((ExternalSourceModule) sourceModule)
+						.getFullPath().toString();
+			} else {
+				relativePath = Util.relativePath(sourceModule.getPath(),
+						containerPath.segmentCount());
+			}
+
+			long lastModified = fileHandle == null ? 0 : fileHandle
+					.lastModified();
+
+			StoredFile existing = store.selectFile(containerId, relativePath);
+			if (existing != null) {
+				if (existing.getTimestamp() == lastModified) {
+					// File is not updated - nothing to do
+					return;
+				}
+				// Re-index:
+				store.deleteFile(existing);
+			}
+			file = store.createFile(containerId, relativePath, lastModified);
+			boolean indexed = false;
+			try {
+				super.indexDocument(sourceModule, parser);
+				indexed = true;
+			} finally {
+				if (indexed) {
+					store.insertFile(file);
+				} else {
+					// drop the elements of the failed document
+					store.deleteFile(file);
+				}
+			}
+
+		} catch (IOException e) {
+			KvIndex.error("An exception was thrown while indexing document", e);
+		} finally {
+			file = null;
+			if (!inBatch) {
+				flush();
+			}
+		}
+	}
+
+	public Map<String, Long> getDocuments(IPath containerPath) {
+		int containerId = store.selectContainer(containerPath.toString());
+		if (containerId == -1) {
+			return null;
+		}
+		Map<String, Long> paths = new HashMap<String, Long>();
+		for (StoredFile storedFile : store.selectFiles(containerId)) {
+			paths.put(storedFile.getPath(), storedFile.getTimestamp());
+		}
+		return paths;
+	}
+
+	public void removeContainer(IPath containerPath) {
+		try {
+			store.deleteContainer(containerPath.toString());
+		} catch (IOException e) {
+			KvIndex.error(
+					NLS.bind(
+							"An exception thrown while removing container ''{0}'' from index",
+							containerPath.toString()), e);
+		} finally {
+			if (!inBatch) {
+				flush();
+			}
+		}
+	}
+
+	public void removeDocument(IPath containerPath, String relativePath) {
+		try {
+			int containerId = store.selectContainer(containerPath.toString());
+			if (containerId != -1) {
+				StoredFile existing = store.selectFile(containerId,
+						relativePath);
+				if (existing != null) {
+					store.deleteFile(existing);
+				}
+			}
+		} catch (IOException e) {
+			KvIndex.error(
+					NLS.bind(
+							"An exception thrown while removing file ''{0}'' from index",
+							containerPath.append(relativePath).toString()), e);
+		} finally {
+			if (!inBatch) {
+				flush();
+			}
+		}
+	}
+
+	public ISearchEngine createSearchEngine() {
+		return new KvSearchEngine(store);
+	}
+}
@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.kv;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.IDLTKLanguageToolkit;
+import org.eclipse.dltk.core.IDLTKLanguageToolkitExtension;
+import org.eclipse.dltk.core.IProjectFragment;
+import org.eclipse.dltk.core.IScriptFolder;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.ScriptModelUtil;
+import org.eclipse.dltk.core.index2.search.ISearchEngine;
+import org.eclipse.dltk.core.index2.search.ISearchRequestor;
+import org.eclipse.dltk.core.search.IDLTKSearchScope;
+import org.eclipse.dltk.internal.core.ArchiveFolder;
+import org.eclipse.dltk.internal.core.BuiltinScriptFolder;
+import org.eclipse.dltk.internal.core.ExternalScriptFolder;
+import org.eclipse.dltk.internal.core.ProjectFragment;
+import org.eclipse.dltk.internal.core.search.DLTKSearchScope;
+import org.eclipse.dltk.internal.core.search.DLTKWorkspaceScope;
+
+/**
+ * Search engine of the key-value index. The matching elements are collected
+ * from the store first and reported to the requestor afterwards, so the
+ * requestor doesn't run while the store is locked.
+ */
+public class KvSearchEngine implements ISearchEngine {
+
+	private static final String EMPTY = ""; //$NON-NLS-1$
+
+	private final ElementStore store;
+
+	public KvSearchEngine(ElementStore store) {
+		this.store = store;
+	}
+
+	public void search(int elementType, String qualifier, String elementName,
+			int trueFlags, int falseFlags, int limit, SearchFor searchFor,
+			MatchRule matchRule, IDLTKSearchScope scope,
+			ISearchRequestor requestor, IProgressMonitor monitor) {
+
+		String natureId = scope.getLanguageToolkit().getNatureId();
+		Set<Integer> containersId = null;
+		Set<Integer> filesId = null;
+
+		// Calculate filtering by container:
+		if (!(scope instanceof DLTKWorkspaceScope)) {
+			containersId = new HashSet<Integer>();
+			for (IPath containerPath : scope.enclosingProjectsAndZips()) {
+				int containerId = store.selectContainer(containerPath
+						.toString());
+				if (containerId != -1) {
+					containersId.add(containerId);
+				}
+			}
+			if (containersId.isEmpty()) {
+				containersId = null;
+			} else if (scope instanceof DLTKSearchScope) {
+				filesId = selectFiles((DLTKSearchScope) scope, containersId);
+			}
+		}
+
+		List<StoredElement> elements = new ArrayList<StoredElement>();
+		if (searchFor == SearchFor.DECLARATIONS
+				|| searchFor == SearchFor.ALL_OCCURRENCES) {
+			store.search(natureId, elementType, false, elementName,
+					matchRule, trueFlags, falseFlags, qualifier, null,
+					filesId, containersId, limit, elements);
+		}
+		if (searchFor == SearchFor.REFERENCES
+				|| searchFor == SearchFor.ALL_OCCURRENCES) {
+			store.search(natureId, elementType, true, elementName, matchRule,
+					trueFlags, falseFlags, qualifier, null, filesId,
+					containersId, limit, elements);
+		}
+
+		ElementHandler handler = new ElementHandler(scope, requestor);
+		for (StoredElement element : elements) {
+			if (monitor != null && monitor.isCanceled()) {
+				return;
+			}
+			handler.handle(element);
+		}
+	}
+
+	/**
+	 * Returns ids of the files of the scope, or <code>null</code> if the scope
+	 * doesn't specify files
+	 */
+	private Set<Integer> selectFiles(DLTKSearchScope scope,
+			Set<Integer> containersId) {
+		Set<Integer> filesId = new HashSet<Integer>();
+		String[] fileExtensions = ScriptModelUtil.getFileExtensions(scope
+				.getLanguageToolkit());
+
+		// XXX - need a better way do differentiate between file and container
+		// scopes
+		for (String relativePath : scope.getRelativePaths()) {
+			if (relativePath.length() > 0) {
+				if (fileExtensions != null) {
+					boolean isScriptFile = false;
+					for (String ext : fileExtensions) {
+						if (relativePath.endsWith("." + ext)) { //$NON-NLS-1$
+							isScriptFile = true;
+							break;
+						}
+					}
+					if (!isScriptFile) {
+						break;
+					}
+				}
+				for (Integer containerId : containersId) {
+					StoredFile file = store.selectFile(containerId,
+							relativePath);
+					if (file != null) {
+						filesId.add(file.getId());
+					}
+				}
+			}
+		}
+		return filesId.isEmpty() ? null : filesId;
+	}
+
+	/**
+	 * Resolves the source modules of the elements and reports them
+	 */
+	private class ElementHandler {
+
+		private final Map<Integer, StoredFile> fileCache = new HashMap<Integer, StoredFile>();
+		private final Map<Integer, String> containerCache = new HashMap<Integer, String>();
+		private final Map<String, IProjectFragment> projectFragmentCache = new HashMap<String, IProjectFragment>();
+		private final Map<String, ISourceModule> sourceModuleCache = new HashMap<String, ISourceModule>();
+		private final IDLTKSearchScope scope;
+		private final ISearchRequestor requestor;
+
+		ElementHandler(IDLTKSearchScope scope, ISearchRequestor requestor) {
+			this.scope = scope;
+			this.requestor = requestor;
+		}
+
+		void handle(StoredElement element) {
+			int fileId = element.getFileId();
+			StoredFile file = fileCache.get(fileId);
+			if (file == null) {
+				file = store.selectFileById(fileId);
+				if (file == null) {
+					return;
+				}
+				fileCache.put(fileId, file);
+			}
+
+			int containerId = file.getContainerId();
+			String containerPath = containerCache.get(containerId);
+			if (containerPath == null) {
+				containerPath = store.selectContainerPath(containerId);
+				if (containerPath == null) {
+					return;
+				}
+				IDLTKLanguageToolkit toolkit = scope.getLanguageToolkit();
+				if (toolkit instanceof IDLTKLanguageToolkitExtension
+						&& ((IDLTKLanguageToolkitExtension) toolkit)
+								.isArchiveFileName(containerPath)) {
+					containerPath = containerPath
+							+ IDLTKSearchScope.FILE_ENTRY_SEPARATOR;
+				}
+				if (containerPath.length() != 0
+						&& containerPath.charAt(containerPath.length() - 1) != IPath.SEPARATOR) {
+					containerPath = containerPath + IPath.SEPARATOR;
+				}
+				containerCache.put(containerId, containerPath);
+			}
+
+			String filePath = file.getPath();
+			final String resourcePath = containerPath + filePath;
+
+			IProjectFragment projectFragment = projectFragmentCache
+					.get(containerPath);
+			if (projectFragment == null) {
+				projectFragment = ((DLTKSearchScope) scope)
+						.projectFragment(resourcePath);
+				if (projectFragment == null) {
+					projectFragment = ((DLTKSearchScope) scope)
+							.projectFragment(containerPath);
+				}
+				projectFragmentCache.put(containerPath, projectFragment);
+			}
+			if (projectFragment == null) {
+				return;
+			}
+			if (!scope.encloses(resourcePath)) {
+				return;
+			}
+
+			ISourceModule sourceModule = sourceModuleCache.get(resourcePath);
+			if (sourceModule == null) {
+				String folderPath = EMPTY;
+				String fileName = filePath;
+				int i = filePath.lastIndexOf('/');
+				if (i == -1) {
+					i = filePath.lastIndexOf('\\');
+				}
+				if (i != -1) {
+					folderPath = filePath.substring(0, i);
+					fileName = filePath.substring(i + 1);
+				}
+				if (projectFragment.isExternal()) {
+					IScriptFolder scriptFolder = new ExternalScriptFolder(
+							(ProjectFragment) projectFragment, new Path(
+									folderPath));
+					sourceModule = scriptFolder.getSourceModule(fileName);
+				} else if (projectFragment.isArchive()) {
+					IScriptFolder scriptFolder = new ArchiveFolder(
+							(ProjectFragment) projectFragment, new Path(
+									folderPath));
+					sourceModule = scriptFolder.getSourceModule(fileName);
+				} else if (projectFragment.isBuiltin()) {
+					IScriptFolder scriptFolder = new BuiltinScriptFolder(
+							(ProjectFragment) projectFragment, new Path(
+									folderPath));
+					sourceModule = scriptFolder.getSourceModule(fileName);
+				} else {
+					IProject project = projectFragment.getScriptProject()
+							.getProject();
+					sourceModule = DLTKCore.createSourceModuleFrom(project
+							.getFile(filePath));
+				}
+				sourceModuleCache.put(resourcePath, sourceModule);
+			}
+
+			requestor.match(element.getType(), element.getFlags(),
+					element.getOffset(), element.getLength(),
+					element.getNameOffset(), element.getNameLength(),
+					element.getName(), element.getMetadata(),
+					element.getDoc(), element.getQualifier(),
+					element.getParent(), sourceModule, element.isReference());
+		}
+	}
+}
@@ -0,0 +1,446 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.kv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Embedded store of values ordered by their string keys. Every change is
+ * appended to a log file, which is replayed when the store is opened and
+ * rewritten when it contains more overwritten entries than live ones. Only the
+ * keys are kept in memory with the position of their values in the log, the
+ * values are read from the file when they are visited.
+ * <p>
+ * Reads may run concurrently, writes are exclusive. Changes become durable on
+ * {@link #flush()}.
+ */
+public class OrderedStore {
+
+	/**
+	 * Visitor of the entries of a key range
+	 */
+	public interface IVisitor {
+		/**
+		 * @return <code>false</code> to stop the scan
+		 */
+		boolean visit(String key, byte[] value);
+	}
+
+	/**
+	 * Upper bound of the keys starting with a prefix, when appended to it
+	 */
+	public static final char MAX_CHAR = '\uffff';
+
+	private static final int MAGIC = 0x444b5601;
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+
+	/** Size of the values written since the last flush kept in memory */
+	private static final int MAX_PENDING_BYTES = 4 * 1024 * 1024;
+
+	private final File file;
+	private final File temp;
+	/**
+	 * key -> position of the value in the log as a {@link Long}, or the value
+	 * itself as a <code>byte[]</code> if it isn't flushed yet
+	 */
+	private final TreeMap<String, Object> entries = new TreeMap<String, Object>();
+	/** key -> position of the values not flushed yet */
+	private final Map<String, Long> pending = new HashMap<String, Long>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private FileOutputStream logStream;
+	private DataOutputStream log;
+	private long logLength;
+	private RandomAccessFile reader;
+	private int pendingBytes;
+	private int garbage;
+
+	/**
+	 * Opens the store kept in the specified file, creating it if needed.
+	 */
+	public OrderedStore(File file) throws IOException {
+		this.file = file;
+		this.temp = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+		if (temp.exists()) {
+			// the file is only missing if it was being replaced by a
+			// complete temporary file
+			if (file.exists() ? !temp.delete() : !temp.renameTo(file)) {
+				throw new IOException("Can't recover " + file); //$NON-NLS-1$
+			}
+		}
+		final long length = file.exists() ? replay() : -1;
+		if (length < 0 || garbage > entries.size()) {
+			if (length >= 0) {
+				// the values are copied from the current log
+				reader = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+			}
+			rewrite();
+		} else {
+			if (length < file.length()) {
+				// drop the record interrupted by a crash
+				final RandomAccessFile raf = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+				try {
+					raf.setLength(length);
+				} finally {
+					raf.close();
+				}
+			}
+			openFiles();
+		}
+	}
+
+	/**
+	 * Reads the keys of the log into memory and returns the length of its
+	 * valid part, or <code>-1</code> if the file is not a log of this version.
+	 */
+	private long replay() throws IOException {
+		final long fileLength = file.length();
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		long length = -1;
+		try {
+			if (in.readInt() != MAGIC) {
+				return -1;
+			}
+			length = 4;
+			for (;;) {
+				final byte op = in.readByte();
+				final String key = readString(in, fileLength - length - 1);
+				long size = 1 + 4 + key.length() * 2L;
+				if (op == PUT) {
+					final int valueLength = readLength(in, fileLength - length
+							- size - 4);
+					skipFully(in, valueLength);
+					if (entries.put(key, Long.valueOf(length + size)) != null) {
+						++garbage;
+					}
+					size += 4 + valueLength;
+				} else if (op == REMOVE) {
+					if (entries.remove(key) != null) {
+						++garbage;
+					}
+					++garbage;
+				} else {
+					return length;
+				}
+				length += size;
+			}
+		} catch (EOFException e) {
+			// the last record is incomplete
+			return length;
+		} finally {
+			in.close();
+		}
+	}
+
+	private void openFiles() throws IOException {
+		logStream = new FileOutputStream(file, true);
+		log = new DataOutputStream(new BufferedOutputStream(logStream,
+				64 * 1024));
+		logLength = file.length();
+		reader = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+	}
+
+	private void closeFiles() throws IOException {
+		try {
+			if (log != null) {
+				log.close();
+			}
+		} finally {
+			log = null;
+			logStream = null;
+			if (reader != null) {
+				reader.close();
+				reader = null;
+			}
+		}
+	}
+
+	/**
+	 * Writes the live entries to a temporary file, which then replaces the
+	 * log, so a crash leaves either the old or the new log.
+	 */
+	private void rewrite() throws IOException {
+		final long[] positions = new long[entries.size()];
+		long length = 4;
+		final FileOutputStream tempStream = new FileOutputStream(temp);
+		try {
+			final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(tempStream, 64 * 1024));
+			out.writeInt(MAGIC);
+			int i = 0;
+			for (Map.Entry<String, Object> entry : entries.entrySet()) {
+				final String key = entry.getKey();
+				final byte[] value = read(entry.getValue());
+				writePut(out, key, value);
+				positions[i++] = length + 1 + 4 + key.length() * 2L;
+				length += 1 + 4 + key.length() * 2L + 4 + value.length;
+			}
+			out.flush();
+			tempStream.getChannel().force(true);
+		} finally {
+			tempStream.close();
+		}
+		closeFiles();
+		if (!temp.renameTo(file)) {
+			// the existing file isn't replaced on some platforms, the
+			// temporary file is renamed on open if this is interrupted
+			if (!file.delete() || !temp.renameTo(file)) {
+				throw new IOException("Can't replace " + file); //$NON-NLS-1$
+			}
+		}
+		int i = 0;
+		for (Map.Entry<String, Object> entry : entries.entrySet()) {
+			entry.setValue(Long.valueOf(positions[i++]));
+		}
+		pending.clear();
+		pendingBytes = 0;
+		garbage = 0;
+		openFiles();
+	}
+
+	/**
+	 * Returns the value of an entry, reading it from the log if needed
+	 */
+	private byte[] read(Object entry) {
+		if (entry == null || entry instanceof byte[]) {
+			return (byte[]) entry;
+		}
+		try {
+			final FileChannel channel = reader.getChannel();
+			final long position = ((Long) entry).longValue();
+			final ByteBuffer length = ByteBuffer.allocate(4);
+			readFully(channel, length, position);
+			final ByteBuffer value = ByteBuffer.allocate(length.getInt(0));
+			readFully(channel, value, position + 4);
+			return value.array();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	public byte[] get(String key) {
+		lock.readLock().lock();
+		try {
+			return read(entries.get(key));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public void put(String key, byte[] value) throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (entries.put(key, value) != null) {
+				++garbage;
+			}
+			pending.put(key, Long.valueOf(logLength + 1 + 4 + key.length()
+					* 2L));
+			writePut(log, key, value);
+			logLength += 1 + 4 + key.length() * 2L + 4 + value.length;
+			pendingBytes += value.length;
+			if (pendingBytes > MAX_PENDING_BYTES) {
+				flushLog();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(String key) throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (entries.remove(key) != null) {
+				pending.remove(key);
+				garbage += 2;
+				log.writeByte(REMOVE);
+				writeString(log, key);
+				logLength += 1 + 4 + key.length() * 2L;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the entries whose keys start with the prefix
+	 */
+	public void removePrefix(String prefix) throws IOException {
+		lock.writeLock().lock();
+		try {
+			final SortedMap<String, Object> range = entries.subMap(prefix,
+					prefix + MAX_CHAR);
+			final List<String> keys = new ArrayList<String>(range.keySet());
+			for (String key : keys) {
+				remove(key);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Visits the entries with keys from <code>fromKey</code> inclusive to
+	 * <code>toKey</code> exclusive in key order, while holding the read lock.
+	 */
+	public void scan(String fromKey, String toKey, IVisitor visitor) {
+		lock.readLock().lock();
+		try {
+			for (Map.Entry<String, Object> entry : entries.subMap(fromKey,
+					toKey).entrySet()) {
+				if (!visitor.visit(entry.getKey(), read(entry.getValue()))) {
+					break;
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Visits the entries whose keys start with the prefix
+	 */
+	public void scanPrefix(String prefix, IVisitor visitor) {
+		scan(prefix, prefix + MAX_CHAR, visitor);
+	}
+
+	/**
+	 * Writes the buffered changes to the log, the values written are then read
+	 * from the file instead of being kept in memory
+	 */
+	private void flushLog() throws IOException {
+		log.flush();
+		for (Map.Entry<String, Long> entry : pending.entrySet()) {
+			entries.put(entry.getKey(), entry.getValue());
+		}
+		pending.clear();
+		pendingBytes = 0;
+	}
+
+	/**
+	 * Writes the pending changes to the disk, compacting the log if needed
+	 */
+	public void flush() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (garbage > entries.size() && garbage > 1024) {
+				rewrite();
+			} else {
+				flushLog();
+				logStream.getChannel().force(false);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes all the entries
+	 */
+	public void clear() throws IOException {
+		lock.writeLock().lock();
+		try {
+			entries.clear();
+			rewrite();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			closeFiles();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private static void writePut(DataOutputStream out, String key,
+			byte[] value) throws IOException {
+		out.writeByte(PUT);
+		writeString(out, key);
+		out.writeInt(value.length);
+		out.write(value);
+	}
+
+	private static void writeString(DataOutputStream out, String s)
+			throws IOException {
+		out.writeInt(s.length());
+		out.writeChars(s);
+	}
+
+	/**
+	 * Reads a length, which can't exceed the bytes remaining in the file
+	 */
+	private static int readLength(DataInputStream in, long remaining)
+			throws IOException {
+		final int length = in.readInt();
+		if (length < 0 || length > remaining) {
+			// garbage after an interrupted record
+			throw new EOFException();
+		}
+		return length;
+	}
+
+	private static String readString(DataInputStream in, long remaining)
+			throws IOException {
+		final char[] chars = new char[readLength(in, (remaining - 4) / 2)];
+		for (int i = 0; i < chars.length; ++i) {
+			chars[i] = in.readChar();
+		}
+		return new String(chars);
+	}
+
+	private static void skipFully(DataInputStream in, int length)
+			throws IOException {
+		while (length > 0) {
+			final int skipped = in.skipBytes(length);
+			if (skipped <= 0) {
+				if (in.read() < 0) {
+					throw new EOFException();
+				}
+				--length;
+			} else {
+				length -= skipped;
+			}
+		}
+	}
+}
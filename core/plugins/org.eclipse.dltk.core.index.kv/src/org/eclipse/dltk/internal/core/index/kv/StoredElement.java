@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.kv;
+
+/**
+ * Element declaration or reference found in the {@link ElementStore}
+ */
+public class StoredElement {
+
+	private final int type;
+	private final int flags;
+	private final int offset;
+	private final int length;
+	private final int nameOffset;
+	private final int nameLength;
+	private final String name;
+	private final String metadata;
+	private final String doc;
+	private final String qualifier;
+	private final String parent;
+	private final int fileId;
+	private final boolean isReference;
+
+	public StoredElement(int type, int flags, int offset, int length,
+			int nameOffset, int nameLength, String name, String metadata,
+			String doc, String qualifier, String parent, int fileId,
+			boolean isReference) {
+		this.type = type;
+		this.flags = flags;
+		this.offset = offset;
+		this.length = length;
+		this.nameOffset = nameOffset;
+		this.nameLength = nameLength;
+		this.name = name;
+		this.metadata = metadata;
+		this.doc = doc;
+		this.qualifier = qualifier;
+		this.parent = parent;
+		this.fileId = fileId;
+		this.isReference = isReference;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public int getFlags() {
+		return flags;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public int getNameOffset() {
+		return nameOffset;
+	}
+
+	public int getNameLength() {
+		return nameLength;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getMetadata() {
+		return metadata;
+	}
+
+	public String getDoc() {
+		return doc;
+	}
+
+	public String getQualifier() {
+		return qualifier;
+	}
+
+	public String getParent() {
+		return parent;
+	}
+
+	public int getFileId() {
+		return fileId;
+	}
+
+	public boolean isReference() {
+		return isReference;
+	}
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.kv;
+
+import java.util.List;
+
+/**
+ * File of a container in the {@link ElementStore}
+ */
+public class StoredFile {
+
+	private final int id;
+	private final int containerId;
+	private final String path;
+	private final long timestamp;
+
+	/** Number of elements inserted, which numbers the next one */
+	int elementCount;
+
+	/** Keys of the elements, while the file is not inserted yet */
+	List<String> elementKeys;
+
+	public StoredFile(int id, int containerId, String path, long timestamp) {
+		this.id = id;
+		this.containerId = containerId;
+		this.path = path;
+		this.timestamp = timestamp;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public int getContainerId() {
+		return containerId;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+}
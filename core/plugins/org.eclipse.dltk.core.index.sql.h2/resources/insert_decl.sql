@@ -4,6 +4,7 @@
 -- is substituted in a runtime.
 
 INSERT INTO {0}(
+	ID,
 	FLAGS,
 	OFFSET,
 	LENGTH,
@@ -16,4 +17,4 @@ INSERT INTO {0}(
 	QUALIFIER,
 	PARENT,FILE_ID)
 
-VALUES(?,?,?,?,?,?,?,?,?,?,?,?);
\ No newline at end of file
+VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?);
\ No newline at end of file
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.sql.h2;
+
+import org.eclipse.dltk.core.index.sql.Element;
+
+/**
+ * Element declaration found in the {@link H2Cache}, which doesn't keep the
+ * documentation of the elements.
+ */
+class CachedElement extends Element {
+
+	private static final long serialVersionUID = 1L;
+
+	private final boolean hasDoc;
+	private String doc;
+
+	CachedElement(int id, int type, int flags, int offset, int length,
+			int nameOffset, int nameLength, String name, String camelCaseName,
+			String metadata, String qualifier, String parent, int fileId,
+			boolean hasDoc) {
+		super(id, type, flags, offset, length, nameOffset, nameLength, name,
+				camelCaseName, metadata, null, qualifier, parent, fileId,
+				false);
+		this.hasDoc = hasDoc;
+	}
+
+	/**
+	 * Returns whether the element has documentation which was not fetched yet
+	 */
+	boolean isDocPending() {
+		return hasDoc && doc == null;
+	}
+
+	void setDoc(String doc) {
+		this.doc = doc;
+	}
+
+	@Override
+	public String getDoc() {
+		return doc;
+	}
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.sql.h2;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.dltk.core.index.sql.Element;
+
+/**
+ * Append-only list of the element declarations of one type in one file, kept
+ * in parallel arrays instead of {@link Element} objects. The strings are
+ * shared with the other lists through a pool, and the documentation is not
+ * kept, only whether an element has any, so it can be read from the database
+ * for the elements which match a search.
+ * <p>
+ * Elements are added under the write lock of the {@link H2Cache}, and the list
+ * may be read concurrently: the readers see at least {@link #size()} elements
+ * in the {@link #columns()} which are read after it.
+ */
+final class ElementList {
+
+	static final class Columns {
+		final int[] ids;
+		final int[] flags;
+		final int[] offsets;
+		final int[] lengths;
+		final int[] nameOffsets;
+		final int[] nameLengths;
+		final String[] names;
+		final String[] camelCaseNames;
+		final String[] metadata;
+		final String[] qualifiers;
+		final String[] parents;
+		final long[] hasDoc;
+
+		Columns(int capacity) {
+			ids = new int[capacity];
+			flags = new int[capacity];
+			offsets = new int[capacity];
+			lengths = new int[capacity];
+			nameOffsets = new int[capacity];
+			nameLengths = new int[capacity];
+			names = new String[capacity];
+			camelCaseNames = new String[capacity];
+			metadata = new String[capacity];
+			qualifiers = new String[capacity];
+			parents = new String[capacity];
+			hasDoc = new long[(capacity + 63) >>> 6];
+		}
+
+		Columns grow(int size) {
+			final Columns c = new Columns(size * 2);
+			System.arraycopy(ids, 0, c.ids, 0, size);
+			System.arraycopy(flags, 0, c.flags, 0, size);
+			System.arraycopy(offsets, 0, c.offsets, 0, size);
+			System.arraycopy(lengths, 0, c.lengths, 0, size);
+			System.arraycopy(nameOffsets, 0, c.nameOffsets, 0, size);
+			System.arraycopy(nameLengths, 0, c.nameLengths, 0, size);
+			System.arraycopy(names, 0, c.names, 0, size);
+			System.arraycopy(camelCaseNames, 0, c.camelCaseNames, 0, size);
+			System.arraycopy(metadata, 0, c.metadata, 0, size);
+			System.arraycopy(qualifiers, 0, c.qualifiers, 0, size);
+			System.arraycopy(parents, 0, c.parents, 0, size);
+			System.arraycopy(hasDoc, 0, c.hasDoc, 0, hasDoc.length);
+			return c;
+		}
+
+		boolean hasDoc(int index) {
+			return (hasDoc[index >>> 6] & (1L << index)) != 0;
+		}
+	}
+
+	/**
+	 * Pool of the strings of all the lists, which doesn't prevent their
+	 * garbage collection. It isn't synchronized: the lists are only modified
+	 * by {@link H2Cache} holding its write lock.
+	 */
+	private static final Map<String, WeakReference<String>> STRINGS = new WeakHashMap<String, WeakReference<String>>();
+
+	private static String intern(String s) {
+		if (s == null) {
+			return null;
+		}
+		final WeakReference<String> ref = STRINGS.get(s);
+		if (ref != null) {
+			final String pooled = ref.get();
+			if (pooled != null) {
+				return pooled;
+			}
+		}
+		STRINGS.put(s, new WeakReference<String>(s));
+		return s;
+	}
+
+	final int type;
+	final int fileId;
+
+	private volatile Columns columns = new Columns(4);
+	private volatile int size;
+
+	ElementList(int type, int fileId) {
+		this.type = type;
+		this.fileId = fileId;
+	}
+
+	/**
+	 * Appends the element, the caller holds the write lock of {@link H2Cache}
+	 */
+	void add(Element element) {
+		final int index = size;
+		Columns c = columns;
+		if (index == c.flags.length) {
+			columns = c = c.grow(index);
+		}
+		c.ids[index] = element.getId();
+		c.flags[index] = element.getFlags();
+		c.offsets[index] = element.getOffset();
+		c.lengths[index] = element.getLength();
+		c.nameOffsets[index] = element.getNameOffset();
+		c.nameLengths[index] = element.getNameLength();
+		c.names[index] = intern(element.getName());
+		c.camelCaseNames[index] = intern(element.getCamelCaseName());
+		c.metadata[index] = intern(element.getMetadata());
+		c.qualifiers[index] = intern(element.getQualifier());
+		c.parents[index] = intern(element.getParent());
+		if (element.getDoc() != null) {
+			c.hasDoc[index >>> 6] |= 1L << index;
+		}
+		size = index + 1;
+	}
+
+	int size() {
+		return size;
+	}
+
+	Columns columns() {
+		return columns;
+	}
+
+	/**
+	 * Creates the element at the specified index of the columns, its
+	 * documentation is to be fetched with {@link CachedElement#setDoc(String)}
+	 */
+	CachedElement get(Columns c, int index) {
+		return new CachedElement(c.ids[index], type, c.flags[index],
+				c.offsets[index], c.lengths[index], c.nameOffsets[index],
+				c.nameLengths[index], c.names[index], c.camelCaseNames[index],
+				c.metadata[index], c.qualifiers[index], c.parents[index],
+				fileId, c.hasDoc(index));
+	}
+}
@@ -13,14 +13,13 @@ package org.eclipse.dltk.internal.core.index.sql.h2;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -38,241 +37,258 @@ import org.eclipse.dltk.core.index.sql.h2.H2Index;
 import org.eclipse.dltk.core.index2.search.ISearchEngine.MatchRule;
 
 /**
- * This is a cache layer between H2 database and model access
+ * This is a cache layer between H2 database and model access.
+ * <p>
+ * Containers, files and elements are kept in <code>int</code> keyed maps, and
+ * the elements are indexed by their type and by their file, so the elements of
+ * a file are found and deleted without visiting the other elements. Updates
+ * are serialized by a lock, while lookups and searches don't lock.
+ * <p>
+ * The elements are stored in columns by {@link ElementList}, and only the
+ * elements matching a search are created. Prefix, pattern and camel-case
+ * searches over all the files only visit the files selected by the
+ * {@link TrigramIndex} of the element type.
  * 
  * @author michael
  */
 public class H2Cache {
 
-	private static final ILock containerLock = Job.getJobManager().newLock();
-	private static final Map<Integer, Container> containerById = new HashMap<Integer, Container>();
+	private static final ILock writeLock = Job.getJobManager().newLock();
 
-	private static final ILock fileLock = Job.getJobManager().newLock();
-	private static final Map<Integer, Map<Integer, File>> filesByContainer = new HashMap<Integer, Map<Integer, File>>();
+	private static final IntHashMap<Container> containerById = new IntHashMap<Container>();
 
-	private static final ILock elementLock = Job.getJobManager().newLock();
-	private static final Map<Integer, Map<Integer, List<Element>>> elementsMap = new HashMap<Integer, Map<Integer, List<Element>>>();
+	private static final IntHashMap<File> fileById = new IntHashMap<File>();
+	private static final IntHashMap<IntHashMap<File>> filesByContainer = new IntHashMap<IntHashMap<File>>();
+
+	/** element type -> file id -> elements */
+	private static final IntHashMap<IntHashMap<ElementList>> elementsByType = new IntHashMap<IntHashMap<ElementList>>();
+	/** file id -> elements of all types */
+	private static final IntHashMap<ElementList[]> elementsByFile = new IntHashMap<ElementList[]>();
+	/** element type -> trigrams of the element names */
+	private static final IntHashMap<TrigramIndex> trigramsByType = new IntHashMap<TrigramIndex>();
+
+	private static final Comparator<Element> ID_ORDER = new Comparator<Element>() {
+		public int compare(Element e1, Element e2) {
+			return e1.getId() < e2.getId() ? -1
+					: (e1.getId() == e2.getId() ? 0 : 1);
+		}
+	};
 
 	private static final ILock loadedLock = Job.getJobManager().newLock();
-	private static boolean isLoaded;
+	private static volatile boolean isLoaded;
 
 	public static void addContainer(Container container) {
-		containerLock.acquire();
+		writeLock.acquire();
 		try {
-			int containerId = container.getId();
-			containerById.put(containerId, container);
+			containerById.put(container.getId(), container);
 		} finally {
-			containerLock.release();
+			writeLock.release();
 		}
 	}
 
 	public static void addElement(Element element) {
-		elementLock.acquire();
+		writeLock.acquire();
 		try {
 			int elementType = element.getType();
-			Map<Integer, List<Element>> elementsByFile = elementsMap
+			IntHashMap<ElementList> elementsOfType = elementsByType
 					.get(elementType);
-			if (elementsByFile == null) {
-				elementsByFile = new HashMap<Integer, List<Element>>();
-				elementsMap.put(elementType, elementsByFile);
+			if (elementsOfType == null) {
+				elementsOfType = new IntHashMap<ElementList>();
+				elementsByType.put(elementType, elementsOfType);
 			}
 			int fileId = element.getFileId();
-			List<Element> elementsSet = elementsByFile.get(fileId);
-			if (elementsSet == null) {
-				elementsSet = new LinkedList<Element>();
-				elementsByFile.put(fileId, elementsSet);
+			ElementList elements = elementsOfType.get(fileId);
+			if (elements == null) {
+				elements = new ElementList(elementType, fileId);
+				elementsOfType.put(fileId, elements);
+
+				ElementList[] lists = elementsByFile.get(fileId);
+				if (lists == null) {
+					lists = new ElementList[] { elements };
+				} else {
+					ElementList[] copy = new ElementList[lists.length + 1];
+					System.arraycopy(lists, 0, copy, 0, lists.length);
+					copy[lists.length] = elements;
+					lists = copy;
+				}
+				elementsByFile.put(fileId, lists);
+			}
+			elements.add(element);
+
+			TrigramIndex trigrams = trigramsByType.get(elementType);
+			if (trigrams == null) {
+				trigrams = new TrigramIndex();
+				trigramsByType.put(elementType, trigrams);
 			}
-			elementsSet.add(element);
+			trigrams.add(fileId, element.getName(), element.getCamelCaseName());
 		} finally {
-			elementLock.release();
+			writeLock.release();
 		}
 	}
 
 	public static void addFile(File file) {
-		fileLock.acquire();
+		writeLock.acquire();
 		try {
 			int containerId = file.getContainerId();
-			Map<Integer, File> files = filesByContainer.get(containerId);
+			File old = fileById.put(file.getId(), file);
+			if (old != null && old.getContainerId() != containerId) {
+				IntHashMap<File> files = filesByContainer.get(old
+						.getContainerId());
+				if (files != null) {
+					files.remove(file.getId());
+				}
+			}
+			IntHashMap<File> files = filesByContainer.get(containerId);
 			if (files == null) {
-				files = new HashMap<Integer, File>();
+				files = new IntHashMap<File>();
 				filesByContainer.put(containerId, files);
 			}
 			files.put(file.getId(), file);
 		} finally {
-			fileLock.release();
+			writeLock.release();
 		}
 	}
 
 	public static void deleteContainerById(int id) {
-		containerLock.acquire();
+		writeLock.acquire();
 		try {
 			containerById.remove(id);
 			deleteFilesByContainerId(id);
 		} finally {
-			containerLock.release();
+			writeLock.release();
 		}
 	}
 
 	public static void deleteContainerByPath(String path) {
-		containerLock.acquire();
+		writeLock.acquire();
 		try {
 			Container container = selectContainerByPath(path);
 			if (container != null) {
 				deleteContainerById(container.getId());
 			}
 		} finally {
-			containerLock.release();
+			writeLock.release();
 		}
 	}
 
 	public static void deleteElementsByFileId(int id) {
-		elementLock.acquire();
+		writeLock.acquire();
 		try {
-			Iterator<Map<Integer, List<Element>>> i = elementsMap.values()
-					.iterator();
-			while (i.hasNext()) {
-				Map<Integer, List<Element>> elementsByFile = i.next();
-				elementsByFile.remove(id);
+			ElementList[] lists = elementsByFile.remove(id);
+			if (lists != null) {
+				for (ElementList elements : lists) {
+					IntHashMap<ElementList> elementsOfType = elementsByType
+							.get(elements.type);
+					if (elementsOfType != null) {
+						elementsOfType.remove(id);
+					}
+					TrigramIndex trigrams = trigramsByType.get(elements.type);
+					if (trigrams != null) {
+						trigrams.remove(elements);
+					}
+				}
 			}
 		} finally {
-			elementLock.release();
+			writeLock.release();
 		}
 	}
 
 	public static void deleteFileByContainerIdAndPath(int containerId,
 			String path) {
-		fileLock.acquire();
+		writeLock.acquire();
 		try {
 			File file = selectFileByContainerIdAndPath(containerId, path);
 			if (file != null) {
 				deleteFileById(file.getId());
 			}
 		} finally {
-			fileLock.release();
+			writeLock.release();
 		}
 	}
 
 	public static void deleteFileById(int id) {
-		fileLock.acquire();
+		writeLock.acquire();
 		try {
-			Iterator<Map<Integer, File>> i = filesByContainer.values()
-					.iterator();
-			while (i.hasNext()) {
-				i.next().remove(id);
+			File file = fileById.remove(id);
+			if (file != null) {
+				IntHashMap<File> files = filesByContainer.get(file
+						.getContainerId());
+				if (files != null) {
+					files.remove(id);
+				}
 			}
 			deleteElementsByFileId(id);
 		} finally {
-			fileLock.release();
+			writeLock.release();
 		}
 	}
 
 	public static void deleteFilesByContainerId(int id) {
-		fileLock.acquire();
+		writeLock.acquire();
 		try {
-			Map<Integer, File> files = filesByContainer.remove(id);
+			IntHashMap<File> files = filesByContainer.remove(id);
 			if (files != null) {
-				Iterator<Integer> i = files.keySet().iterator();
-				while (i.hasNext()) {
-					deleteElementsByFileId(i.next());
+				for (File file : files.values()) {
+					fileById.remove(file.getId());
+					deleteElementsByFileId(file.getId());
 				}
 			}
 		} finally {
-			fileLock.release();
+			writeLock.release();
 		}
 	}
 
 	public static Container selectContainerById(int id) {
-		containerLock.acquire();
-		try {
-			return containerById.get(id);
-		} finally {
-			containerLock.release();
-		}
+		return containerById.get(id);
 	}
 
 	public static Container selectContainerByPath(String path) {
-		containerLock.acquire();
-		try {
-			Iterator<Container> i = containerById.values().iterator();
-			while (i.hasNext()) {
-				Container container = i.next();
-				if (container.getPath().equals(path)) {
-					return container;
-				}
+		for (Container container : containerById.values()) {
+			if (container.getPath().equals(path)) {
+				return container;
 			}
-			return null;
-		} finally {
-			containerLock.release();
 		}
+		return null;
 	}
 
 	public static Collection<Element> selectElementsByFileId(int id) {
-		elementLock.acquire();
-		try {
-			List<Element> elements = new LinkedList<Element>();
-			Iterator<Map<Integer, List<Element>>> i = elementsMap.values()
-					.iterator();
-			while (i.hasNext()) {
-				Map<Integer, List<Element>> elementsByFile = i.next();
-				List<Element> l = elementsByFile.get(id);
-				if (l != null) {
-					elements.addAll(l);
+		List<Element> result = new ArrayList<Element>();
+		ElementList[] lists = elementsByFile.get(id);
+		if (lists != null) {
+			for (ElementList elements : lists) {
+				int size = elements.size();
+				ElementList.Columns columns = elements.columns();
+				for (int i = 0; i < size; ++i) {
+					result.add(elements.get(columns, i));
 				}
 			}
-			return elements;
-		} finally {
-			elementLock.release();
 		}
+		return result;
 	}
 
 	public static File selectFileByContainerIdAndPath(int containerId,
 			String path) {
-		fileLock.acquire();
-		try {
-			Map<Integer, File> files = filesByContainer.get(containerId);
-			if (files != null) {
-				Iterator<File> i = files.values().iterator();
-				while (i.hasNext()) {
-					File file = i.next();
-					if (file.getPath().equals(path)) {
-						return file;
-					}
+		IntHashMap<File> files = filesByContainer.get(containerId);
+		if (files != null) {
+			for (File file : files.values()) {
+				if (file.getPath().equals(path)) {
+					return file;
 				}
 			}
-		} finally {
-			fileLock.release();
 		}
 		return null;
 	}
 
 	public static File selectFileById(int id) {
-		fileLock.acquire();
-		try {
-			Iterator<Map<Integer, File>> i = filesByContainer.values()
-					.iterator();
-			while (i.hasNext()) {
-				File file = i.next().get(id);
-				if (file != null) {
-					return file;
-				}
-			}
-			return null;
-		} finally {
-			fileLock.release();
-		}
+		return fileById.get(id);
 	}
 
 	public static Collection<File> selectFilesByContainerId(int id) {
-		fileLock.acquire();
-		try {
-			Map<Integer, File> files = filesByContainer.get(id);
-			if (files != null) {
-				return files.values();
-			}
-			return Collections.emptyList();
-		} finally {
-			fileLock.release();
+		IntHashMap<File> files = filesByContainer.get(id);
+		if (files != null) {
+			return files.values();
 		}
+		return Collections.emptyList();
 	}
 
 	public static Collection<Element> searchElements(String pattern,
@@ -280,124 +296,218 @@ public class H2Cache {
 			int falseFlags, String qualifier, String parent, int[] filesId,
 			int containersId[], String natureId, int limit) {
 
-		Set<Integer> filesIds = new HashSet<Integer>();
+		return searchElements(pattern, matchRule, elementType, trueFlags,
+				falseFlags, qualifier, parent, filesId, containersId,
+				natureId, -1, limit);
+	}
+
+	/**
+	 * Searches the cached elements. If <code>afterId</code> isn't negative,
+	 * only the elements with a greater id are returned, ordered by id, so the
+	 * search continues after the last element of a previous page. Otherwise
+	 * the first matching elements are returned in any order.
+	 */
+	public static Collection<Element> searchElements(String pattern,
+			MatchRule matchRule, int elementType, int trueFlags,
+			int falseFlags, String qualifier, String parent, int[] filesId,
+			int containersId[], String natureId, int afterId, int limit) {
+
+		List<Element> result = new ArrayList<Element>();
+		IntHashMap<ElementList> elementsOfType = elementsByType
+				.get(elementType);
+		if (elementsOfType == null) {
+			return result;
+		}
+
+		Set<String> patternSet = null;
+		Pattern posixPattern = null;
+
+		// Pre-cache pattern's lower and upper case variants:
+		String patternLC = null;
+		String patternUC = null;
+		if (pattern != null) {
+			patternLC = pattern.toLowerCase();
+			patternUC = pattern.toUpperCase();
+		}
+
+		if (matchRule == MatchRule.SET) {
+			patternSet = new HashSet<String>();
+			String[] parts = pattern.split(",");
+			for (String part : parts) {
+				if (part.length() > 0) {
+					patternSet.add(part.toLowerCase());
+				}
+			}
+		} else if (matchRule == MatchRule.PATTERN) {
+			posixPattern = createPosixPattern(pattern);
+		}
+
+		// a page after the cursor keeps only the matches with the smallest
+		// ids in a max-heap, instead of collecting and sorting all of them
+		final PriorityQueue<Element> page = afterId >= 0 && limit > 0 ? new PriorityQueue<Element>(
+				limit, Collections.reverseOrder(ID_ORDER))
+				: null;
+
 		if (filesId != null) {
 			for (int fileId : filesId) {
-				filesIds.add(fileId);
+				if (!searchInElements(elementsOfType.get(fileId), result,
+						pattern, matchRule, trueFlags, falseFlags, qualifier,
+						parent, patternSet, posixPattern, patternLC,
+						patternUC, afterId, page, limit)) {
+					break;
+				}
 			}
 		} else if (containersId != null) {
-			containerLock.acquire();
-			try {
-				for (int containerId : containersId) {
-					fileLock.acquire();
-					try {
-						Map<Integer, File> files = filesByContainer
-								.get(containerId);
-						if (files != null) {
-							filesIds.addAll(files.keySet());
+			containers: for (int containerId : containersId) {
+				IntHashMap<File> files = filesByContainer.get(containerId);
+				if (files != null) {
+					for (File file : files.values()) {
+						if (!searchInElements(
+								elementsOfType.get(file.getId()), result,
+								pattern, matchRule, trueFlags, falseFlags,
+								qualifier, parent, patternSet, posixPattern,
+								patternLC, patternUC, afterId, page, limit)) {
+							break containers;
 						}
-					} finally {
-						fileLock.release();
 					}
 				}
-			} finally {
-				containerLock.release();
 			}
-		}
-
-		elementLock.acquire();
-		try {
-			Set<String> patternSet = null;
-			Pattern posixPattern = null;
-
-			// Pre-cache pattern's lower and upper case variants:
-			String patternLC = null;
-			String patternUC = null;
-			if (pattern != null) {
-				patternLC = pattern.toLowerCase();
-				patternUC = pattern.toUpperCase();
-			}
-
-			if (matchRule == MatchRule.SET) {
-				patternSet = new HashSet<String>();
-				String[] parts = pattern.split(",");
-				for (String part : parts) {
-					if (part.length() > 0) {
-						patternSet.add(part.toLowerCase());
+		} else {
+			int[] candidates = selectCandidateFiles(pattern, matchRule,
+					elementType, patternUC);
+			if (candidates != null) {
+				for (int fileId : candidates) {
+					if (!searchInElements(elementsOfType.get(fileId), result,
+							pattern, matchRule, trueFlags, falseFlags,
+							qualifier, parent, patternSet, posixPattern,
+							patternLC, patternUC, afterId, page, limit)) {
+						break;
+					}
+				}
+			} else {
+				for (ElementList elements : elementsOfType.values()) {
+					if (!searchInElements(elements, result, pattern,
+							matchRule, trueFlags, falseFlags, qualifier,
+							parent, patternSet, posixPattern, patternLC,
+							patternUC, afterId, page, limit)) {
+						break;
 					}
 				}
-			} else if (matchRule == MatchRule.PATTERN) {
-				posixPattern = createPosixPattern(pattern);
 			}
+		}
+		if (page != null) {
+			result.addAll(page);
+		}
+		if (afterId >= 0) {
+			Collections.sort(result, ID_ORDER);
+		}
+		return result;
+	}
 
-			List<Element> result = new LinkedList<Element>();
-			Map<Integer, List<Element>> elementsByFile = elementsMap
-					.get(elementType);
-			if (elementsByFile != null) {
-
-				if (filesIds.size() == 0) {
-					Iterator<List<Element>> i = elementsByFile.values()
-							.iterator();
-					while (i.hasNext()) {
-						searchInElements(i.next(), result, pattern, matchRule,
-								trueFlags, falseFlags, qualifier, parent,
-								patternSet, posixPattern, patternLC, patternUC,
-								limit);
-					}
-				} else {
-					for (Integer fileId : filesIds) {
-						searchInElements(elementsByFile.get(fileId), result,
-								pattern, matchRule, trueFlags, falseFlags,
-								qualifier, parent, patternSet, posixPattern,
-								patternLC, patternUC, limit);
+	/**
+	 * Returns the ids of the files which may contain matching elements, or
+	 * <code>null</code> if the trigrams of the pattern can't select them and
+	 * all the files have to be visited.
+	 */
+	private static int[] selectCandidateFiles(String pattern,
+			MatchRule matchRule, int elementType, String patternUC) {
+		if (pattern == null || pattern.length() == 0) {
+			return null;
+		}
+		TrigramIndex trigrams = trigramsByType.get(elementType);
+		if (trigrams == null) {
+			return null;
+		}
+		if (matchRule == MatchRule.PREFIX) {
+			return trigrams.selectFilesByNames(Collections
+					.singletonList(pattern));
+		} else if (matchRule == MatchRule.PATTERN) {
+			// the literal parts between the wildcards are substrings of the
+			// matching names
+			List<String> substrings = new ArrayList<String>();
+			int start = 0;
+			for (int i = 0; i <= pattern.length(); ++i) {
+				if (i == pattern.length() || pattern.charAt(i) == '*'
+						|| pattern.charAt(i) == '?') {
+					if (i > start) {
+						substrings.add(pattern.substring(start, i));
 					}
+					start = i + 1;
 				}
 			}
-			return result;
-
-		} finally {
-			elementLock.release();
+			return trigrams.selectFilesByNames(substrings);
+		} else if (matchRule == MatchRule.CAMEL_CASE) {
+			return trigrams.selectFilesByCamelCaseName(patternUC);
 		}
+		return null;
 	}
 
-	private static void searchInElements(List<Element> elements,
+	/**
+	 * Adds the matching elements to the result, returns <code>false</code> if
+	 * the limit is reached. If the page isn't <code>null</code> the matching
+	 * elements are added to it instead, keeping the limit elements with the
+	 * smallest ids, and the whole list is searched.
+	 */
+	private static boolean searchInElements(ElementList elements,
 			List<Element> result, String pattern, MatchRule matchRule,
 			int trueFlags, int falseFlags, String qualifier, String parent,
 			Set<String> patternSet, Pattern posixPattern, String patternLC,
-			String patternUC, int limit) {
+			String patternUC, int afterId, PriorityQueue<Element> page,
+			int limit) {
 
 		if (elements != null) {
-			Iterator<Element> i = elements.iterator();
-			while (i.hasNext()) {
-				Element element = i.next();
-				if (elementMatches(element, pattern, matchRule, trueFlags,
+			int size = elements.size();
+			ElementList.Columns columns = elements.columns();
+			for (int i = 0; i < size; ++i) {
+				int id = columns.ids[i];
+				if (id <= afterId) {
+					continue;
+				}
+				// a full page only takes elements with a smaller id than its
+				// greatest one
+				boolean full = page != null && page.size() == limit;
+				if (full && id >= page.peek().getId()) {
+					continue;
+				}
+				if (elementMatches(columns, i, pattern, matchRule, trueFlags,
 						falseFlags, qualifier, parent, patternSet,
 						posixPattern, patternLC, patternUC)) {
 
-					result.add(element);
-					if (--limit == 0) {
-						break;
+					if (page != null) {
+						if (full) {
+							page.poll();
+						}
+						page.add(elements.get(columns, i));
+					} else {
+						result.add(elements.get(columns, i));
+						if (result.size() == limit) {
+							return false;
+						}
 					}
 				}
 			}
 		}
+		return true;
 	}
 
-	private static boolean elementMatches(Element element, String pattern,
-			MatchRule matchRule, int trueFlags, int falseFlags,
-			String qualifier, String parent, Set<String> patternSet,
-			Pattern posixPattern, String patternLC, String patternUC) {
+	private static boolean elementMatches(ElementList.Columns columns,
+			int index, String pattern, MatchRule matchRule, int trueFlags,
+			int falseFlags, String qualifier, String parent,
+			Set<String> patternSet, Pattern posixPattern, String patternLC,
+			String patternUC) {
 
-		if ((trueFlags == 0 || (element.getFlags() & trueFlags) != 0)
-				&& (falseFlags == 0 || (element.getFlags() & falseFlags) == 0)) {
+		int flags = columns.flags[index];
+		if ((trueFlags == 0 || (flags & trueFlags) != 0)
+				&& (falseFlags == 0 || (flags & falseFlags) == 0)) {
 
 			if (qualifier == null || qualifier.length() == 0
-					|| qualifier.equals(element.getQualifier())) {
+					|| qualifier.equals(columns.qualifiers[index])) {
 
 				if (parent == null || parent.length() == 0
-						|| parent.equals(element.getParent())) {
+						|| parent.equals(columns.parents[index])) {
 
-					String elementName = element.getName();
+					String elementName = columns.names[index];
+					String camelCaseName = columns.camelCaseNames[index];
 					if (pattern == null
 							|| pattern.length() == 0
 							|| (matchRule == MatchRule.EXACT && pattern
@@ -405,8 +515,8 @@ public class H2Cache {
 							|| (matchRule == MatchRule.PREFIX && startsWithIgnoreCase(
 									elementName, patternLC))
 							|| (matchRule == MatchRule.CAMEL_CASE
-									&& element.getCamelCaseName() != null && element
-									.getCamelCaseName().startsWith(patternUC))
+									&& camelCaseName != null && camelCaseName
+									.startsWith(patternUC))
 							|| (matchRule == MatchRule.SET && patternSet
 									.contains(elementName.toLowerCase()))
 							|| (matchRule == MatchRule.PATTERN && posixPattern
@@ -463,12 +573,7 @@ public class H2Cache {
 	}
 
 	public static boolean isLoaded() {
-		loadedLock.acquire();
-		try {
-			return isLoaded;
-		} finally {
-			loadedLock.release();
-		}
+		return isLoaded;
 	}
 
 	public static void load() {
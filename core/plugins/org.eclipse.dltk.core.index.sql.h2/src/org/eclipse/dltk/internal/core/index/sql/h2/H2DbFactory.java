@@ -145,6 +145,14 @@ public class H2DbFactory extends DbFactory {
 		return pool == null ? null : pool.getConnection();
 	}
 
+	public void beginBulkLoad(Connection connection) throws SQLException {
+		new Schema().beginBulkLoad(connection);
+	}
+
+	public void endBulkLoad(Connection connection) throws SQLException {
+		new Schema().endBulkLoad(connection);
+	}
+
 	public void dispose() throws SQLException {
 		if (pool != null) {
 			pool.dispose();
@@ -16,14 +16,19 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.dltk.core.index.sql.Element;
 import org.eclipse.dltk.core.index.sql.IElementDao;
+import org.eclipse.dltk.core.index.sql.IElementDaoExtension;
 import org.eclipse.dltk.core.index.sql.IElementHandler;
 import org.eclipse.dltk.core.index.sql.h2.H2Index;
 import org.eclipse.dltk.core.index2.search.ISearchEngine.MatchRule;
@@ -35,7 +40,7 @@ import org.eclipse.osgi.util.NLS;
  * 
  * @author michael
  */
-public class H2ElementDao implements IElementDao {
+public class H2ElementDao implements IElementDao, IElementDaoExtension {
 
 	private static final Pattern SEPARATOR_PATTERN = Pattern.compile(","); //$NON-NLS-1$
 
@@ -45,11 +50,24 @@ public class H2ElementDao implements IElementDao {
 	private static final String Q_INSERT_DECL = Schema
 			.readSqlFile("resources/insert_decl.sql"); //$NON-NLS-1$
 
+	private static final String Q_SELECT_MAX_ID = "SELECT MAX(ID) FROM {0}"; //$NON-NLS-1$
+
+	private static final String Q_SELECT_DOCS = "SELECT ID, DOC FROM {0} WHERE ID IN({1})"; //$NON-NLS-1$
+
+	/** Maximum number of ids in one {@link #Q_SELECT_DOCS} query */
+	private static final int DOCS_BATCH_SIZE = 500;
+
 	/** Cache for insert element declaration queries */
-	private static final Map<String, String> R_INSERT_QUERY_CACHE = new HashMap<String, String>();
+	private static final Map<String, String> R_INSERT_QUERY_CACHE = new ConcurrentHashMap<String, String>();
 
 	/** Cache for insert element reference queries */
-	private static final Map<String, String> D_INSERT_QUERY_CACHE = new HashMap<String, String>();
+	private static final Map<String, String> D_INSERT_QUERY_CACHE = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Last ids of the declaration tables. The ids are assigned on insertion,
+	 * so the elements added to {@link H2Cache} know them.
+	 */
+	private static final Map<String, AtomicInteger> LAST_IDS = new HashMap<String, AtomicInteger>();
 
 	private final ModelManager modelManager;
 	private final Map<String, PreparedStatement> batchStatements;
@@ -70,16 +88,44 @@ public class H2ElementDao implements IElementDao {
 		return tableName;
 	}
 
+	private static int nextId(Connection connection, String tableName)
+			throws SQLException {
+		AtomicInteger lastId;
+		synchronized (LAST_IDS) {
+			lastId = LAST_IDS.get(tableName);
+			if (lastId == null) {
+				Statement statement = connection.createStatement();
+				try {
+					ResultSet result = statement.executeQuery(NLS.bind(
+							Q_SELECT_MAX_ID, tableName));
+					try {
+						result.next();
+						lastId = new AtomicInteger(result.getInt(1));
+					} finally {
+						result.close();
+					}
+				} finally {
+					statement.close();
+				}
+				LAST_IDS.put(tableName, lastId);
+			}
+		}
+		return lastId.incrementAndGet();
+	}
+
 	private void insertBatch(Connection connection,
-			PreparedStatement statement, int type, int flags, int offset,
-			int length, int nameOffset, int nameLength, String name,
-			String metadata, String doc, String qualifier, String parent,
-			int fileId, String natureId, boolean isReference)
+			PreparedStatement statement, String tableName, int type,
+			int flags, int offset, int length, int nameOffset, int nameLength,
+			String name, String metadata, String doc, String qualifier,
+			String parent, int fileId, String natureId, boolean isReference)
 			throws SQLException {
 
 		int param = 0;
 
+		int id = 0;
 		if (!isReference) {
+			id = nextId(connection, tableName);
+			statement.setInt(++param, id);
 			statement.setInt(++param, flags);
 		}
 
@@ -124,7 +170,7 @@ public class H2ElementDao implements IElementDao {
 		statement.addBatch();
 
 		if (!isReference) {
-			H2Cache.addElement(new Element(type, flags, offset, length,
+			H2Cache.addElement(new Element(id, type, flags, offset, length,
 					nameOffset, nameLength, name, camelCaseName, metadata, doc,
 					qualifier, parent, fileId, isReference));
 		}
@@ -159,7 +205,8 @@ public class H2ElementDao implements IElementDao {
 				statement = connection.prepareStatement(query);
 				batchStatements.put(query, statement);
 			}
-			insertBatch(connection, statement, type, flags, offset, length,
+			insertBatch(connection, statement, tableName, type, flags,
+					offset, length,
 					nameOffset, nameLength, name, metadata, doc, qualifier,
 					parent, fileId, natureId, isReference);
 		}
@@ -181,6 +228,60 @@ public class H2ElementDao implements IElementDao {
 		}
 	}
 
+	/**
+	 * Reads the documentation of the cached elements from the database, with
+	 * one query per {@link #DOCS_BATCH_SIZE} elements
+	 */
+	private void fetchDocs(Connection connection,
+			Collection<Element> elements, int elementType, String natureId)
+			throws SQLException {
+
+		Map<Integer, CachedElement> pending = null;
+		for (Element element : elements) {
+			if (element instanceof CachedElement
+					&& ((CachedElement) element).isDocPending()) {
+				if (pending == null) {
+					pending = new HashMap<Integer, CachedElement>();
+				}
+				pending.put(element.getId(), (CachedElement) element);
+			}
+		}
+		if (pending == null) {
+			return;
+		}
+
+		String tableName = getTableName(connection, elementType, natureId,
+				false);
+		List<Integer> ids = new ArrayList<Integer>(pending.keySet());
+		Statement statement = connection.createStatement();
+		try {
+			for (int i = 0; i < ids.size(); i += DOCS_BATCH_SIZE) {
+				int end = Math.min(i + DOCS_BATCH_SIZE, ids.size());
+				StringBuilder idList = new StringBuilder();
+				for (int j = i; j < end; ++j) {
+					if (j > i) {
+						idList.append(',');
+					}
+					idList.append(ids.get(j));
+				}
+				ResultSet result = statement.executeQuery(NLS.bind(
+						Q_SELECT_DOCS, tableName, idList));
+				try {
+					while (result.next()) {
+						CachedElement element = pending.get(result.getInt(1));
+						if (element != null) {
+							element.setDoc(result.getString(2));
+						}
+					}
+				} finally {
+					result.close();
+				}
+			}
+		} finally {
+			statement.close();
+		}
+	}
+
 	private String escapeBackslash(String pattern) {
 		return pattern.replaceAll("\\\\", "\\\\\\\\");
 	}
@@ -192,19 +293,30 @@ public class H2ElementDao implements IElementDao {
 			boolean isReference, IElementHandler handler,
 			IProgressMonitor monitor) throws SQLException {
 
+		search(connection, pattern, matchRule, elementType, trueFlags,
+				falseFlags, qualifier, parent, filesId, containersId,
+				natureId, -1, limit, isReference, handler, monitor);
+	}
+
+	public int search(Connection connection, String pattern,
+			MatchRule matchRule, int elementType, int trueFlags,
+			int falseFlags, String qualifier, String parent, int[] filesId,
+			int containersId[], String natureId, int afterId, int limit,
+			boolean isReference, IElementHandler handler,
+			IProgressMonitor monitor) throws SQLException {
+
 		long timeStamp = System.currentTimeMillis();
 		int count = 0;
 
 		if (!isReference && H2Cache.isLoaded()) {
 			Collection<Element> elements = H2Cache.searchElements(pattern,
 					matchRule, elementType, trueFlags, falseFlags, qualifier,
-					parent, filesId, containersId, natureId, limit);
-			if (elements != null && elements.size() > 0) {
-				for (Element element : elements) {
-					handler.handle(element);
-				}
+					parent, filesId, containersId, natureId, afterId, limit);
+			fetchDocs(connection, elements, elementType, natureId);
+			for (Element element : elements) {
+				handler.handle(element);
 			}
-			return;
+			return elements.size();
 		}
 
 		String tableName = getTableName(connection, elementType, natureId,
@@ -300,6 +412,12 @@ public class H2ElementDao implements IElementDao {
 				query.append("))");
 			}
 
+			// Continue after the last record of the previous page
+			if (afterId >= 0) {
+				query.append(" AND ID > ").append(afterId);
+				query.append(" ORDER BY ID");
+			}
+
 			// Records limit
 			if (limit > 0) {
 				query.append(" LIMIT ").append(limit);
@@ -313,10 +431,10 @@ public class H2ElementDao implements IElementDao {
 			ResultSet result = statement.executeQuery(query.toString());
 			try {
 				while (result.next()) {
-					++count;
 					if (monitor != null && monitor.isCanceled()) {
-						return;
+						return count;
 					}
+					++count;
 
 					int columnIndex = 0;
 					int id = result.getInt(++columnIndex);
@@ -326,7 +444,7 @@ public class H2ElementDao implements IElementDao {
 						f = result.getInt(++columnIndex);
 					}
 
-					int offset = result.getInt(++columnIndex);
+					int elementOffset = result.getInt(++columnIndex);
 					int length = result.getInt(++columnIndex);
 
 					int nameOffset = 0;
@@ -355,10 +473,11 @@ public class H2ElementDao implements IElementDao {
 
 					int fileId = result.getInt(++columnIndex);
 
-					Element element = new Element(elementType, f, offset,
-							length, nameOffset, nameLength, modelManager
-									.intern(name), camelCaseName, metadata,
-							doc, qualifier, parent, fileId, isReference);
+					Element element = new Element(id, elementType, f,
+							elementOffset, length, nameOffset, nameLength,
+							modelManager.intern(name), camelCaseName,
+							metadata, doc, qualifier, parent, fileId,
+							isReference);
 					if (!isReference) {
 						H2Cache.addElement(element);
 					}
@@ -376,5 +495,6 @@ public class H2ElementDao implements IElementDao {
 			System.out.println("Results = " + count + " ; Time taken = "
 					+ (System.currentTimeMillis() - timeStamp) + " ms.");
 		}
+		return count;
 	}
 }
\ No newline at end of file
@@ -21,6 +21,7 @@ import java.util.LinkedList;
 
 import org.eclipse.dltk.core.index.sql.File;
 import org.eclipse.dltk.core.index.sql.IFileDao;
+import org.eclipse.dltk.core.index.sql.IFileDaoExtension;
 
 /**
  * Element file data access object
@@ -28,17 +29,23 @@ import org.eclipse.dltk.core.index.sql.IFileDao;
  * @author michael
  * 
  */
-public class H2FileDao implements IFileDao {
+public class H2FileDao implements IFileDao, IFileDaoExtension {
 
-	private static final String Q_INSERT = "INSERT INTO FILES(PATH,TIMESTAMP,CONTAINER_ID) VALUES(?,?,?);"; //$NON-NLS-1$
+	private static final String Q_INSERT = "INSERT INTO FILES(PATH,TIMESTAMP,CONTAINER_ID,DIGEST) VALUES(?,?,?,?);"; //$NON-NLS-1$
 	private static final String Q_SELECT = "SELECT * FROM FILES WHERE PATH=? AND CONTAINER_ID=?;"; //$NON-NLS-1$
 	private static final String Q_SELECT_BY_CONTAINER_ID = "SELECT * FROM FILES WHERE CONTAINER_ID=?;"; //$NON-NLS-1$
 	private static final String Q_SELECT_BY_ID = "SELECT * FROM FILES WHERE ID=?;"; //$NON-NLS-1$
 	private static final String Q_DELETE = "DELETE FROM FILES WHERE PATH=? AND CONTAINER_ID=?;"; //$NON-NLS-1$
 	private static final String Q_DELETE_BY_ID = "DELETE FROM FILES WHERE ID=?;"; //$NON-NLS-1$
+	private static final String Q_UPDATE_TIMESTAMP = "UPDATE FILES SET TIMESTAMP=? WHERE ID=?;"; //$NON-NLS-1$
 
 	public File insert(Connection connection, String path, long timestamp,
 			int containerId) throws SQLException {
+		return insert(connection, path, timestamp, null, containerId);
+	}
+
+	public File insert(Connection connection, String path, long timestamp,
+			String digest, int containerId) throws SQLException {
 
 		PreparedStatement statement = connection.prepareStatement(Q_INSERT,
 				Statement.RETURN_GENERATED_KEYS);
@@ -47,13 +54,14 @@ public class H2FileDao implements IFileDao {
 			statement.setString(++param, path);
 			statement.setLong(++param, timestamp);
 			statement.setInt(++param, containerId);
+			statement.setString(++param, digest);
 			statement.executeUpdate();
 
 			ResultSet result = statement.getGeneratedKeys();
 			try {
 				result.next();
 				File file = new File(result.getInt(1), path, timestamp,
-						containerId);
+						containerId, digest);
 				H2Cache.addFile(file);
 				return file;
 			} finally {
@@ -79,7 +87,8 @@ public class H2FileDao implements IFileDao {
 				try {
 					if (result.next()) {
 						file = new File(result.getInt(1), result.getString(2),
-								result.getLong(3), result.getInt(4));
+								result.getLong(3), result.getInt(4), result
+										.getString(5));
 
 						H2Cache.addFile(file);
 					}
@@ -110,7 +119,7 @@ public class H2FileDao implements IFileDao {
 					while (result.next()) {
 						File file = new File(result.getInt(1), result
 								.getString(2), result.getLong(3), result
-								.getInt(4));
+								.getInt(4), result.getString(5));
 
 						files.add(file);
 						H2Cache.addFile(file);
@@ -138,7 +147,8 @@ public class H2FileDao implements IFileDao {
 				try {
 					if (result.next()) {
 						file = new File(result.getInt(1), result.getString(2),
-								result.getLong(3), result.getInt(4));
+								result.getLong(3), result.getInt(4), result
+										.getString(5));
 
 						H2Cache.addFile(file);
 					}
@@ -152,6 +162,28 @@ public class H2FileDao implements IFileDao {
 		return file;
 	}
 
+	public void updateTimestamp(Connection connection, int id, long timestamp)
+			throws SQLException {
+
+		File file = selectById(connection, id);
+		if (file == null) {
+			return;
+		}
+		PreparedStatement statement = connection
+				.prepareStatement(Q_UPDATE_TIMESTAMP);
+		try {
+			int param = 0;
+			statement.setLong(++param, timestamp);
+			statement.setInt(++param, id);
+			statement.executeUpdate();
+		} finally {
+			statement.close();
+		}
+
+		H2Cache.addFile(new File(id, file.getPath(), timestamp, file
+				.getContainerId(), file.getDigest()));
+	}
+
 	public void delete(Connection connection, String path, int containerId)
 			throws SQLException {
 
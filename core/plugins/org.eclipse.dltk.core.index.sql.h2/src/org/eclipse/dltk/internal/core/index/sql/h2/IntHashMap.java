@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.sql.h2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Open addressing hash map with <code>int</code> keys. Updates are
+ * serialized, while {@link #get(int)} and {@link #values()} don't lock and may
+ * run concurrently with them.
+ * <p>
+ * Removed entries keep their key with a <code>null</code> value, so the probe
+ * sequences of the readers are never broken; they are dropped when the table
+ * is rehashed.
+ */
+final class IntHashMap<V> {
+
+	private static final int FREE = Integer.MIN_VALUE;
+
+	private static final int MIN_CAPACITY = 8;
+
+	private static final class Table<V> {
+		final AtomicIntegerArray keys;
+		final AtomicReferenceArray<V> values;
+		final int mask;
+
+		Table(int capacity) {
+			keys = new AtomicIntegerArray(capacity);
+			values = new AtomicReferenceArray<V>(capacity);
+			mask = capacity - 1;
+			for (int i = 0; i < capacity; ++i) {
+				keys.set(i, FREE);
+			}
+		}
+	}
+
+	private volatile Table<V> table = new Table<V>(MIN_CAPACITY);
+
+	/** number of slots with a key, including the removed entries */
+	private int used;
+
+	private volatile int size;
+
+	private static int hash(int key) {
+		final int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	public V get(int key) {
+		final Table<V> t = table;
+		int i = hash(key) & t.mask;
+		for (;;) {
+			final int k = t.keys.get(i);
+			if (k == key) {
+				return t.values.get(i);
+			}
+			if (k == FREE) {
+				return null;
+			}
+			i = (i + 1) & t.mask;
+		}
+	}
+
+	public synchronized V put(int key, V value) {
+		if (key == FREE) {
+			throw new IllegalArgumentException();
+		}
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		Table<V> t = table;
+		int i = indexOf(t, key);
+		if (t.keys.get(i) == key) {
+			final V old = t.values.getAndSet(i, value);
+			if (old == null) {
+				++size;
+			}
+			return old;
+		}
+		if ((used + 1) * 4 > (t.mask + 1) * 3) {
+			rehash(size + 1);
+			t = table;
+			i = indexOf(t, key);
+		}
+		// the value is published by the write of the key
+		t.values.set(i, value);
+		t.keys.set(i, key);
+		++used;
+		++size;
+		return null;
+	}
+
+	public synchronized V remove(int key) {
+		final Table<V> t = table;
+		final int i = indexOf(t, key);
+		if (t.keys.get(i) == key) {
+			final V old = t.values.getAndSet(i, null);
+			if (old != null) {
+				--size;
+			}
+			return old;
+		}
+		return null;
+	}
+
+	public synchronized void clear() {
+		table = new Table<V>(MIN_CAPACITY);
+		used = 0;
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns a snapshot of the values of this map
+	 */
+	public List<V> values() {
+		final Table<V> t = table;
+		final List<V> result = new ArrayList<V>(size);
+		for (int i = 0; i <= t.mask; ++i) {
+			final V value = t.values.get(i);
+			if (value != null) {
+				result.add(value);
+			}
+		}
+		return result;
+	}
+
+	private static <V> int indexOf(Table<V> t, int key) {
+		int i = hash(key) & t.mask;
+		for (;;) {
+			final int k = t.keys.get(i);
+			if (k == key || k == FREE) {
+				return i;
+			}
+			i = (i + 1) & t.mask;
+		}
+	}
+
+	private void rehash(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity * 3 < expectedSize * 6) {
+			capacity <<= 1;
+		}
+		final Table<V> oldTable = table;
+		final Table<V> newTable = new Table<V>(capacity);
+		int count = 0;
+		for (int i = 0; i <= oldTable.mask; ++i) {
+			final V value = oldTable.values.get(i);
+			if (value != null) {
+				final int key = oldTable.keys.get(i);
+				final int j = indexOf(newTable, key);
+				newTable.values.set(j, value);
+				newTable.keys.set(j, key);
+				++count;
+			}
+		}
+		used = count;
+		table = newTable;
+	}
+}
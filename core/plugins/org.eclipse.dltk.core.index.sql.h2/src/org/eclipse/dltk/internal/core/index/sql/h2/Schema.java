@@ -16,9 +16,11 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 
 import org.eclipse.core.runtime.FileLocator;
@@ -39,11 +41,28 @@ import org.osgi.service.prefs.BackingStoreException;
  */
 public class Schema {
 
-	public static final String VERSION = "0.7"; //$NON-NLS-1$
+	public static final String VERSION = "0.9"; //$NON-NLS-1$
 
 	/** Contains already created tables names */
 	private static final Set<String> TABLES_CACHE = new HashSet<String>();
 
+	private static final String FOREIGN_KEY = "FOREIGN KEY"; //$NON-NLS-1$
+
+	private static final String Q_ADD_FOREIGN_KEY = "ALTER TABLE {0} ADD FOREIGN KEY(FILE_ID) REFERENCES FILES(ID) ON UPDATE CASCADE ON DELETE CASCADE;"; //$NON-NLS-1$
+
+	private static final String Q_DELETE_ORPHANS = "DELETE FROM {0} WHERE FILE_ID NOT IN (SELECT ID FROM FILES);"; //$NON-NLS-1$
+
+	/** Number of bulk loads in progress, guarded by TABLES_CACHE */
+	private static int bulkLoads = 0;
+
+	/**
+	 * Tables still without foreign key, whose key is added at the end of the
+	 * bulk load. The database itself is the durable record: tables left
+	 * without foreign key by a failed or interrupted bulk load are found
+	 * again by {@link #createTable(Connection, String, boolean)}.
+	 */
+	private static final Set<String> DEFERRED_FOREIGN_KEYS = new HashSet<String>();
+
 	/**
 	 * Creates the database schema using given connection.
 	 * 
@@ -117,13 +136,25 @@ public class Schema {
 				query = NLS.bind(query, tableName);
 
 				try {
-					Statement statement = connection.createStatement();
-					try {
-						statement.executeUpdate(query);
-					} finally {
-						statement.close();
+					if (!tableExists(connection, tableName)) {
+						if (bulkLoads > 0) {
+							// the foreign key index is built at the end of
+							// bulk load
+							query = removeForeignKey(query);
+							DEFERRED_FOREIGN_KEYS.add(tableName);
+						}
+						execute(connection, query);
+					} else if (!hasForeignKey(connection, tableName)) {
+						// left by a bulk load which failed or was interrupted
+						if (bulkLoads > 0) {
+							DEFERRED_FOREIGN_KEYS.add(tableName);
+						} else {
+							addForeignKey(connection, tableName);
+							DEFERRED_FOREIGN_KEYS.remove(tableName);
+						}
 					}
 				} catch (SQLException e) {
+					TABLES_CACHE.remove(tableName);
 					H2Index.error(
 							"An exception was thrown while creating elements table", //$NON-NLS-1$
 							e);
@@ -133,6 +164,107 @@ public class Schema {
 		}
 	}
 
+	private static boolean tableExists(Connection connection, String tableName)
+			throws SQLException {
+		ResultSet result = connection.getMetaData().getTables(null, null,
+				tableName, null);
+		try {
+			return result.next();
+		} finally {
+			result.close();
+		}
+	}
+
+	private static boolean hasForeignKey(Connection connection,
+			String tableName) throws SQLException {
+		ResultSet result = connection.getMetaData().getImportedKeys(null,
+				null, tableName);
+		try {
+			while (result.next()) {
+				if ("FILES".equalsIgnoreCase(result.getString("PKTABLE_NAME"))) { //$NON-NLS-1$ //$NON-NLS-2$
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			result.close();
+		}
+	}
+
+	private static void addForeignKey(Connection connection, String tableName)
+			throws SQLException {
+		// files removed meanwhile had no cascade to this table
+		execute(connection, NLS.bind(Q_DELETE_ORPHANS, tableName));
+		execute(connection, NLS.bind(Q_ADD_FOREIGN_KEY, tableName));
+	}
+
+	private static String removeForeignKey(String query) {
+		StringBuilder buf = new StringBuilder(query.length());
+		for (String line : query.split("\n")) { //$NON-NLS-1$
+			if (line.indexOf(FOREIGN_KEY) == -1) {
+				buf.append(line).append('\n');
+			}
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Starts loading many elements at once. Until the matching
+	 * {@link #endBulkLoad(Connection)} the tables created are left without the
+	 * foreign key and its index, which are built at the end in one pass
+	 * instead of row by row. The existing tables keep their foreign keys, the
+	 * referential integrity of the database is never turned off.
+	 * 
+	 * @param connection
+	 *            Database connection
+	 * @throws SQLException
+	 */
+	public void beginBulkLoad(Connection connection) throws SQLException {
+		synchronized (TABLES_CACHE) {
+			++bulkLoads;
+		}
+	}
+
+	/**
+	 * Ends loading many elements at once, adding the foreign keys deferred by
+	 * {@link #beginBulkLoad(Connection)} when the last bulk load ends. A table
+	 * is forgotten only once its foreign key is added, the others are retried
+	 * by the next bulk load or when the table is used again.
+	 * 
+	 * @param connection
+	 *            Database connection
+	 * @throws SQLException
+	 */
+	public void endBulkLoad(Connection connection) throws SQLException {
+		synchronized (TABLES_CACHE) {
+			if (--bulkLoads > 0) {
+				return;
+			}
+			for (Iterator<String> i = DEFERRED_FOREIGN_KEYS.iterator(); i
+					.hasNext();) {
+				String tableName = i.next();
+				try {
+					addForeignKey(connection, tableName);
+				} catch (SQLException e) {
+					// checked again by createTable() on the next use
+					TABLES_CACHE.remove(tableName);
+					throw e;
+				}
+				i.remove();
+			}
+		}
+	}
+
+	private static void execute(Connection connection, String query)
+			throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			statement.executeUpdate(query);
+		} finally {
+			statement.close();
+		}
+	}
+
 	/**
 	 * Checks whether the schema version is compatible with the stored one.
 	 */
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index.sql.h2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of the files containing the element names of one type by the
+ * trigrams of the names, which are case insensitive, and by the trigrams of
+ * the camel-case names. A search intersects the files of the trigrams of the
+ * pattern, so only the elements of these files have to be matched.
+ * <p>
+ * Trigrams are hashed to <code>int</code> keys, so a collision may only add
+ * candidate files. Updates are done under the write lock of the
+ * {@link H2Cache}, while searches don't lock.
+ */
+final class TrigramIndex {
+
+	/**
+	 * Sorted file ids, which are appended in place and copied on other
+	 * changes, so the readers always see a consistent snapshot
+	 */
+	private static final class Postings {
+
+		private static final class Snapshot {
+			final int[] ids;
+			final int size;
+
+			Snapshot(int[] ids, int size) {
+				this.ids = ids;
+				this.size = size;
+			}
+		}
+
+		private volatile Snapshot snapshot = new Snapshot(new int[4], 0);
+
+		void add(int id) {
+			final Snapshot s = snapshot;
+			if (s.size != 0 && s.ids[s.size - 1] >= id) {
+				final int index = binarySearch(s.ids, 0, s.size, id);
+				if (index >= 0) {
+					return;
+				}
+				final int insert = -(index + 1);
+				final int[] ids = new int[Math.max(4, s.size * 2)];
+				System.arraycopy(s.ids, 0, ids, 0, insert);
+				ids[insert] = id;
+				System.arraycopy(s.ids, insert, ids, insert + 1, s.size
+						- insert);
+				snapshot = new Snapshot(ids, s.size + 1);
+			} else if (s.size == s.ids.length) {
+				final int[] ids = new int[s.size * 2];
+				System.arraycopy(s.ids, 0, ids, 0, s.size);
+				ids[s.size] = id;
+				snapshot = new Snapshot(ids, s.size + 1);
+			} else {
+				s.ids[s.size] = id;
+				snapshot = new Snapshot(s.ids, s.size + 1);
+			}
+		}
+
+		void remove(int id) {
+			final Snapshot s = snapshot;
+			final int index = binarySearch(s.ids, 0, s.size, id);
+			if (index >= 0) {
+				final int[] ids = new int[Math.max(4, s.size)];
+				System.arraycopy(s.ids, 0, ids, 0, index);
+				System.arraycopy(s.ids, index + 1, ids, index, s.size - index
+						- 1);
+				snapshot = new Snapshot(ids, s.size - 1);
+			}
+		}
+	}
+
+	private final IntHashMap<Postings> names = new IntHashMap<Postings>();
+	private final IntHashMap<Postings> camelCaseNames = new IntHashMap<Postings>();
+
+	private static int trigram(char c1, char c2, char c3) {
+		return ((c1 << 20) ^ (c2 << 10) ^ c3) & 0x7FFFFFFF;
+	}
+
+	private static int[] trigrams(String s, boolean ignoreCase) {
+		final int count = s.length() - 2;
+		if (count <= 0) {
+			return new int[0];
+		}
+		final int[] trigrams = new int[count];
+		for (int i = 0; i < count; ++i) {
+			char c1 = s.charAt(i);
+			char c2 = s.charAt(i + 1);
+			char c3 = s.charAt(i + 2);
+			if (ignoreCase) {
+				c1 = Character.toLowerCase(c1);
+				c2 = Character.toLowerCase(c2);
+				c3 = Character.toLowerCase(c3);
+			}
+			trigrams[i] = trigram(c1, c2, c3);
+		}
+		return trigrams;
+	}
+
+	void add(int fileId, String name, String camelCaseName) {
+		if (name != null) {
+			add(names, trigrams(name, true), fileId);
+		}
+		if (camelCaseName != null) {
+			add(camelCaseNames, trigrams(camelCaseName, false), fileId);
+		}
+	}
+
+	private static void add(IntHashMap<Postings> map, int[] trigrams,
+			int fileId) {
+		for (int trigram : trigrams) {
+			Postings postings = map.get(trigram);
+			if (postings == null) {
+				postings = new Postings();
+				map.put(trigram, postings);
+			}
+			postings.add(fileId);
+		}
+	}
+
+	/**
+	 * Removes the file of the elements from the postings of their names
+	 */
+	void remove(ElementList elements) {
+		final int size = elements.size();
+		final ElementList.Columns columns = elements.columns();
+		for (int i = 0; i < size; ++i) {
+			if (columns.names[i] != null) {
+				remove(names, trigrams(columns.names[i], true),
+						elements.fileId);
+			}
+			if (columns.camelCaseNames[i] != null) {
+				remove(camelCaseNames, trigrams(columns.camelCaseNames[i],
+						false), elements.fileId);
+			}
+		}
+	}
+
+	private static void remove(IntHashMap<Postings> map, int[] trigrams,
+			int fileId) {
+		for (int trigram : trigrams) {
+			final Postings postings = map.get(trigram);
+			if (postings != null) {
+				postings.remove(fileId);
+				if (postings.snapshot.size == 0) {
+					map.remove(trigram);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the ids of the files which may contain a name having all the
+	 * specified substrings, or <code>null</code> if the substrings are too
+	 * short to select files
+	 */
+	int[] selectFilesByNames(List<String> substrings) {
+		final List<Integer> trigrams = new ArrayList<Integer>();
+		for (String substring : substrings) {
+			for (int trigram : trigrams(substring, true)) {
+				trigrams.add(trigram);
+			}
+		}
+		return selectFiles(names, trigrams);
+	}
+
+	/**
+	 * Returns the ids of the files which may contain a camel-case name having
+	 * the specified prefix, or <code>null</code> if the prefix is too short to
+	 * select files
+	 */
+	int[] selectFilesByCamelCaseName(String prefix) {
+		final List<Integer> trigrams = new ArrayList<Integer>();
+		for (int trigram : trigrams(prefix, false)) {
+			trigrams.add(trigram);
+		}
+		return selectFiles(camelCaseNames, trigrams);
+	}
+
+	private static int[] selectFiles(IntHashMap<Postings> map,
+			List<Integer> trigrams) {
+		if (trigrams.isEmpty()) {
+			return null;
+		}
+		final Postings.Snapshot[] snapshots = new Postings.Snapshot[trigrams
+				.size()];
+		int smallest = 0;
+		for (int i = 0; i < snapshots.length; ++i) {
+			final Postings postings = map.get(trigrams.get(i));
+			if (postings == null) {
+				return new int[0];
+			}
+			snapshots[i] = postings.snapshot;
+			if (snapshots[i].size < snapshots[smallest].size) {
+				smallest = i;
+			}
+		}
+		final Postings.Snapshot candidates = snapshots[smallest];
+		final int[] result = new int[candidates.size];
+		int count = 0;
+		candidates: for (int i = 0; i < candidates.size; ++i) {
+			final int id = candidates.ids[i];
+			for (Postings.Snapshot s : snapshots) {
+				if (s != candidates
+						&& binarySearch(s.ids, 0, s.size, id) < 0) {
+					continue candidates;
+				}
+			}
+			result[count++] = id;
+		}
+		return count == result.length ? result : copyOf(result, count);
+	}
+
+	private static int binarySearch(int[] array, int fromIndex, int toIndex,
+			int key) {
+		int low = fromIndex;
+		int high = toIndex - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final int value = array[mid];
+			if (value < key) {
+				low = mid + 1;
+			} else if (value > key) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	private static int[] copyOf(int[] array, int length) {
+		final int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, length);
+		return copy;
+	}
+}
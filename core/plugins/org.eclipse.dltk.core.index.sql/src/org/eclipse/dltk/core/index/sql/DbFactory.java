@@ -100,6 +100,31 @@ public abstract class DbFactory {
 	 */
 	public abstract Connection createConnection() throws SQLException;
 
+	/**
+	 * Prepares the database for loading many elements through the given
+	 * connection, for example by deferring the maintenance of its indexes.
+	 * Every call must be followed by {@link #endBulkLoad(Connection)}. Does
+	 * nothing by default.
+	 * 
+	 * @param connection
+	 *            Database connection
+	 * @throws SQLException
+	 * @since 5.0
+	 */
+	public void beginBulkLoad(Connection connection) throws SQLException {
+	}
+
+	/**
+	 * Completes the work deferred by {@link #beginBulkLoad(Connection)}.
+	 * 
+	 * @param connection
+	 *            Database connection
+	 * @throws SQLException
+	 * @since 5.0
+	 */
+	public void endBulkLoad(Connection connection) throws SQLException {
+	}
+
 	/**
 	 * Dispose connection pool
 	 * 
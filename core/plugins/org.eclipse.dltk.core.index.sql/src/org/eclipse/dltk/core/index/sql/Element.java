@@ -21,6 +21,7 @@ import java.io.Serializable;
 public class Element implements Serializable {
 
 	private static final long serialVersionUID = 1L;
+	private int id;
 	private int type;
 	private int flags;
 	private int offset;
@@ -40,7 +41,20 @@ public class Element implements Serializable {
 			int nameLength, String name, String camelCaseName, String metadata,
 			String doc, String qualifier, String parent, int fileId,
 			boolean isReference) {
+		this(0, type, flags, offset, length, nameOffset, nameLength, name,
+				camelCaseName, metadata, doc, qualifier, parent, fileId,
+				isReference);
+	}
+
+	/**
+	 * @since 5.0
+	 */
+	public Element(int id, int type, int flags, int offset, int length,
+			int nameOffset, int nameLength, String name, String camelCaseName,
+			String metadata, String doc, String qualifier, String parent,
+			int fileId, boolean isReference) {
 		super();
+		this.id = id;
 		this.type = type;
 		this.flags = flags;
 		this.offset = offset;
@@ -57,6 +71,16 @@ public class Element implements Serializable {
 		this.isReference = isReference;
 	}
 
+	/**
+	 * Returns the id of the element record, or <code>0</code> if it is not
+	 * known.
+	 * 
+	 * @since 5.0
+	 */
+	public int getId() {
+		return id;
+	}
+
 	public int getType() {
 		return type;
 	}
@@ -26,12 +26,22 @@ public class File implements Serializable {
 	private String path;
 	private long timestamp;
 	private int containerId;
+	private String digest;
 
 	public File(int id, String path, long timestamp, int containerId) {
+		this(id, path, timestamp, containerId, null);
+	}
+
+	/**
+	 * @since 5.0
+	 */
+	public File(int id, String path, long timestamp, int containerId,
+			String digest) {
 		this.id = id;
 		this.path = path;
 		this.timestamp = timestamp;
 		this.containerId = containerId;
+		this.digest = digest;
 	}
 
 	/**
@@ -65,6 +75,16 @@ public class File implements Serializable {
 		return containerId;
 	}
 
+	/**
+	 * Returns digest of the file content when it was indexed
+	 * 
+	 * @return digest or <code>null</code> if it is unknown
+	 * @since 5.0
+	 */
+	public String getDigest() {
+		return digest;
+	}
+
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.index.sql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.dltk.core.index2.search.ISearchEngine.MatchRule;
+
+/**
+ * Optional interface of an {@link IElementDao} able to return a page of the
+ * search results. Without it every page of a search cursor reruns the whole
+ * query and skips the records of the previous pages, so reading all the
+ * results costs time quadratic in their number.
+ * 
+ * @since 5.0
+ */
+public interface IElementDaoExtension {
+
+	/**
+	 * Search elements in index ordered by their id, continuing after the
+	 * last record of a previous page. The id of a record is returned by
+	 * {@link Element#getId()}. See {@link IElementDao#search} for the other
+	 * parameters.
+	 * 
+	 * @param afterId
+	 *            Id of the last record of the previous page, <code>0</code>
+	 *            for the first page
+	 * @param limit
+	 *            Records limit (<code>0</code> - disable limit)
+	 * @return number of records passed to the handler
+	 * @throws SQLException
+	 */
+	int search(Connection connection, String pattern, MatchRule matchRule,
+			int elementType, int trueFlags, int falseFlags, String qualifier,
+			String parent, int[] filesId, int containersId[], String natureId,
+			int afterId, int limit, boolean isReference,
+			IElementHandler handler, IProgressMonitor monitor)
+			throws SQLException;
+
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.index.sql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Optional interface of an {@link IFileDao} storing the digest of the file
+ * content.
+ * 
+ * @since 5.0
+ */
+public interface IFileDaoExtension {
+
+	/**
+	 * Inserts new type into FILES table.
+	 * 
+	 * @param connection
+	 *            Database connection
+	 * @param path
+	 *            Element file
+	 * @param timestamp
+	 *            File last update time
+	 * @param digest
+	 *            Digest of the file content or <code>null</code>
+	 * @param containerId
+	 *            Container path
+	 * @return new file DAO associated with added row
+	 * @throws SQLException
+	 */
+	public File insert(Connection connection, String path, long timestamp,
+			String digest, int containerId) throws SQLException;
+
+	/**
+	 * Updates last update time of a file whose content didn't change
+	 * 
+	 * @param connection
+	 *            Database connection
+	 * @param id
+	 *            Primary key
+	 * @param timestamp
+	 *            File last update time
+	 * @throws SQLException
+	 */
+	public void updateTimestamp(Connection connection, int id, long timestamp)
+			throws SQLException;
+
+}
@@ -29,6 +29,19 @@ public class SqlIndex extends Plugin {
 	public static final boolean DEBUG = Boolean.valueOf(
 			Platform.getDebugOption(PLUGIN_ID + "/debug")).booleanValue(); //$NON-NLS-1$
 
+	/**
+	 * Number of documents indexed in a batch between two commits of the
+	 * database transaction.
+	 * 
+	 * @since 5.0
+	 */
+	public static final String INDEXER_BATCH_SIZE = "indexerBatchSize"; //$NON-NLS-1$
+
+	/**
+	 * @since 5.0
+	 */
+	public static final int DEFAULT_INDEXER_BATCH_SIZE = 500;
+
 	private static SqlIndex plugin;
 
 	@Override
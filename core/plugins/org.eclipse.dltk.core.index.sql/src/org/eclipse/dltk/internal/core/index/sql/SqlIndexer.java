@@ -11,12 +11,17 @@
  *******************************************************************************/
 package org.eclipse.dltk.internal.core.index.sql;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.dltk.core.DLTKLanguageManager;
 import org.eclipse.dltk.core.IDLTKLanguageToolkit;
 import org.eclipse.dltk.core.IDLTKLanguageToolkitExtension;
@@ -28,8 +33,13 @@ import org.eclipse.dltk.core.index.sql.Container;
 import org.eclipse.dltk.core.index.sql.DbFactory;
 import org.eclipse.dltk.core.index.sql.File;
 import org.eclipse.dltk.core.index.sql.IElementDao;
+import org.eclipse.dltk.core.index.sql.IFileDao;
+import org.eclipse.dltk.core.index.sql.IFileDaoExtension;
 import org.eclipse.dltk.core.index.sql.SqlIndex;
 import org.eclipse.dltk.core.index2.AbstractIndexer;
+import org.eclipse.dltk.core.index2.IIndexerDigests;
+import org.eclipse.dltk.core.index2.IIndexerExtension;
+import org.eclipse.dltk.core.index2.IIndexingParser;
 import org.eclipse.dltk.core.index2.search.ISearchEngine;
 import org.eclipse.dltk.internal.core.ExternalSourceModule;
 import org.eclipse.dltk.internal.core.SourceModule;
@@ -42,13 +52,24 @@ import org.eclipse.osgi.util.NLS;
  * @author michael
  * 
  */
-public class SqlIndexer extends AbstractIndexer {
+public class SqlIndexer extends AbstractIndexer implements IIndexerExtension,
+		IIndexerDigests {
+
+	private static final String DIGEST_ALGORITHM = "SHA-1"; //$NON-NLS-1$
+	private static final char[] HEX_DIGITS = "0123456789abcdef" //$NON-NLS-1$
+			.toCharArray();
 
 	private Connection connection;
 	private File file;
 	private String natureId;
 	private IElementDao elementDao;
 
+	/** Connection shared by the documents of the current batch */
+	private Connection batchConnection;
+	private int batchSize;
+	private int batchDocuments;
+	private boolean bulkLoad;
+
 	public SqlIndexer() {
 		final DbFactory db = DbFactory.getInstance();
 		if (db == null) {
@@ -86,14 +107,99 @@ public class SqlIndexer extends AbstractIndexer {
 		}
 	}
 
-	public void indexDocument(ISourceModule sourceModule) {
+	public void beginBatch(boolean rebuild) {
+		if (batchConnection != null) {
+			return;
+		}
+		final DbFactory dbFactory = DbFactory.getInstance();
+		Connection connection = null;
+		try {
+			connection = dbFactory.createConnection();
+			connection.setAutoCommit(false);
+			if (rebuild) {
+				dbFactory.beginBulkLoad(connection);
+				bulkLoad = true;
+			}
+		} catch (SQLException e) {
+			SqlIndex.error("An exception was thrown while starting a batch", e);
+			if (connection != null) {
+				try {
+					connection.close();
+				} catch (SQLException e1) {
+					// ignore
+				}
+			}
+			return;
+		}
+		batchConnection = connection;
+		batchSize = Platform.getPreferencesService().getInt(
+				SqlIndex.PLUGIN_ID, SqlIndex.INDEXER_BATCH_SIZE,
+				SqlIndex.DEFAULT_INDEXER_BATCH_SIZE, null);
+		batchDocuments = 0;
+	}
+
+	public void endBatch() {
+		if (batchConnection == null) {
+			return;
+		}
+		try {
+			try {
+				try {
+					commitBatch();
+				} finally {
+					if (bulkLoad) {
+						bulkLoad = false;
+						DbFactory.getInstance().endBulkLoad(batchConnection);
+						batchConnection.commit();
+					}
+				}
+			} finally {
+				batchConnection.close();
+				batchConnection = null;
+			}
+		} catch (SQLException e) {
+			SqlIndex.error("An exception was thrown while committing a batch",
+					e);
+		}
+	}
+
+	private void commitBatch() throws SQLException {
+		try {
+			elementDao.commitInsertions();
+		} finally {
+			batchConnection.commit();
+			batchDocuments = 0;
+		}
+	}
+
+	/**
+	 * Returns the connection of the current batch or a new connection, which
+	 * must be released by {@link #releaseConnection(Connection)}.
+	 */
+	private Connection acquireConnection() throws SQLException {
+		if (batchConnection != null) {
+			return batchConnection;
+		}
+		return DbFactory.getInstance().createConnection();
+	}
+
+	private void releaseConnection(Connection connection) throws SQLException {
+		if (connection != batchConnection) {
+			connection.close();
+		}
+	}
+
+	@Override
+	public void indexDocument(ISourceModule sourceModule,
+			IIndexingParser parser) {
 
 		final IFileHandle fileHandle = EnvironmentPathUtils
 				.getFile(sourceModule);
 
 		try {
 			DbFactory dbFactory = DbFactory.getInstance();
-			connection = dbFactory.createConnection();
+			connection = acquireConnection();
+			file = null;
 			try {
 				connection.setAutoCommit(false);
 
@@ -130,32 +236,82 @@ public class SqlIndexer extends AbstractIndexer {
 				long lastModified = fileHandle == null ? 0 : fileHandle
 						.lastModified();
 
-				File existing = dbFactory.getFileDao().select(connection,
-						relativePath, container.getId());
+				IFileDao fileDao = dbFactory.getFileDao();
+				File existing = fileDao.select(connection, relativePath,
+						container.getId());
+				if (existing != null
+						&& existing.getTimestamp() == lastModified) {
+					// File is not updated - nothing to do
+					return;
+				}
+				String digest = null;
+				if (fileHandle != null && fileDao instanceof IFileDaoExtension) {
+					digest = computeDigest(fileHandle);
+				}
 				if (existing != null) {
-					if (existing.getTimestamp() == lastModified) {
-						// File is not updated - nothing to do
+					if (digest != null && digest.equals(existing.getDigest())) {
+						// Only the timestamp was updated - keep the elements
+						((IFileDaoExtension) fileDao).updateTimestamp(
+								connection, existing.getId(), lastModified);
 						return;
 					}
 					// Re-index:
-					dbFactory.getFileDao().deleteById(connection,
-							existing.getId());
+					fileDao.deleteById(connection, existing.getId());
+				}
+				if (fileDao instanceof IFileDaoExtension) {
+					file = ((IFileDaoExtension) fileDao).insert(connection,
+							relativePath, lastModified, digest,
+							container.getId());
+				} else {
+					file = fileDao.insert(connection, relativePath,
+							lastModified, container.getId());
 				}
-				file = dbFactory.getFileDao().insert(connection, relativePath,
-						lastModified, container.getId());
 
-				super.indexDocument(sourceModule);
+				super.indexDocument(sourceModule, parser);
 
+			} catch (Exception e) {
+				SqlIndex.error("An exception was thrown while indexing document",
+						e);
+				if (file != null) {
+					discardDocument(connection, file);
+				}
 			} finally {
-				elementDao.commitInsertions();
-				connection.commit();
-				connection.close();
+				if (connection == batchConnection) {
+					if (++batchDocuments >= batchSize) {
+						commitBatch();
+					}
+				} else {
+					try {
+						elementDao.commitInsertions();
+						connection.commit();
+					} finally {
+						connection.close();
+					}
+				}
 			}
 		} catch (Exception e) {
 			SqlIndex.error("An exception was thrown while indexing document", e);
 		}
 	}
 
+	/**
+	 * Removes the rows of a document which failed to index, so its partial
+	 * content is not committed with the other documents of the batch. The
+	 * pending insertions are executed first, then the elements of the document
+	 * are removed together with its file row.
+	 */
+	private void discardDocument(Connection connection, File file) {
+		try {
+			elementDao.commitInsertions();
+			DbFactory.getInstance().getFileDao().deleteById(connection,
+					file.getId());
+		} catch (SQLException e) {
+			SqlIndex.error(
+					"An exception was thrown while removing a document which failed to index",
+					e);
+		}
+	}
+
 	public Map<String, Long> getDocuments(IPath containerPath) {
 		try {
 			DbFactory dbFactory = DbFactory.getInstance();
@@ -184,15 +340,107 @@ public class SqlIndexer extends AbstractIndexer {
 		return null;
 	}
 
-	public void removeContainer(IPath containerPath) {
+	public Map<String, String> getDocumentDigests(IPath containerPath) {
 		try {
 			DbFactory dbFactory = DbFactory.getInstance();
 			Connection connection = dbFactory.createConnection();
+			try {
+				Container containerDao = dbFactory.getContainerDao()
+						.selectByPath(connection, containerPath.toString());
+				if (containerDao != null) {
+
+					File[] files = dbFactory.getFileDao().selectByContainerId(
+							connection, containerDao.getId());
+					Map<String, String> digests = new HashMap<String, String>();
+					for (File fileDao : files) {
+						if (fileDao.getDigest() != null) {
+							digests.put(fileDao.getPath(), fileDao.getDigest());
+						}
+					}
+					return digests;
+				}
+			} finally {
+				connection.close();
+			}
+		} catch (SQLException e) {
+			SqlIndex.error(
+					"An exception thrown while analyzing source module changes",
+					e);
+		}
+		return null;
+	}
+
+	public String computeDigest(IFileHandle handle) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+			InputStream stream = handle.openInputStream(null);
+			try {
+				byte[] buffer = new byte[8192];
+				int count;
+				while ((count = stream.read(buffer)) != -1) {
+					digest.update(buffer, 0, count);
+				}
+			} finally {
+				stream.close();
+			}
+			byte[] bytes = digest.digest();
+			char[] chars = new char[bytes.length * 2];
+			for (int i = 0; i < bytes.length; ++i) {
+				chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+				chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+			}
+			return new String(chars);
+		} catch (NoSuchAlgorithmException e) {
+			SqlIndex.error("Digest algorithm is not available", e);
+		} catch (IOException e) {
+			// the file can't be read - it will be re-indexed
+		}
+		return null;
+	}
+
+	public void updateDocumentTimestamps(IPath containerPath,
+			Map<String, Long> timestamps) {
+		DbFactory dbFactory = DbFactory.getInstance();
+		if (!(dbFactory.getFileDao() instanceof IFileDaoExtension)) {
+			return;
+		}
+		IFileDaoExtension fileDao = (IFileDaoExtension) dbFactory.getFileDao();
+		try {
+			Connection connection = acquireConnection();
+			try {
+				Container containerDao = dbFactory.getContainerDao()
+						.selectByPath(connection, containerPath.toString());
+				if (containerDao != null) {
+					for (Map.Entry<String, Long> entry : timestamps.entrySet()) {
+						File existing = dbFactory.getFileDao().select(
+								connection, entry.getKey(),
+								containerDao.getId());
+						if (existing != null) {
+							fileDao.updateTimestamp(connection,
+									existing.getId(), entry.getValue());
+						}
+					}
+				}
+			} finally {
+				releaseConnection(connection);
+			}
+		} catch (SQLException e) {
+			SqlIndex.error(
+					NLS.bind(
+							"An exception thrown while updating timestamps of ''{0}''",
+							containerPath.toString()), e);
+		}
+	}
+
+	public void removeContainer(IPath containerPath) {
+		try {
+			DbFactory dbFactory = DbFactory.getInstance();
+			Connection connection = acquireConnection();
 			try {
 				dbFactory.getContainerDao().deleteByPath(connection,
 						containerPath.toString());
 			} finally {
-				connection.close();
+				releaseConnection(connection);
 			}
 		} catch (SQLException e) {
 			SqlIndex.error(
@@ -205,7 +453,7 @@ public class SqlIndexer extends AbstractIndexer {
 	public void removeDocument(IPath containerPath, String relativePath) {
 		try {
 			DbFactory dbFactory = DbFactory.getInstance();
-			Connection connection = dbFactory.createConnection();
+			Connection connection = acquireConnection();
 			try {
 				Container containerDao = dbFactory.getContainerDao()
 						.selectByPath(connection, containerPath.toString());
@@ -214,7 +462,7 @@ public class SqlIndexer extends AbstractIndexer {
 							containerDao.getId());
 				}
 			} finally {
-				connection.close();
+				releaseConnection(connection);
 			}
 		} catch (SQLException e) {
 			SqlIndex.error(
@@ -33,9 +33,12 @@ import org.eclipse.dltk.core.index.sql.Container;
 import org.eclipse.dltk.core.index.sql.DbFactory;
 import org.eclipse.dltk.core.index.sql.Element;
 import org.eclipse.dltk.core.index.sql.File;
+import org.eclipse.dltk.core.index.sql.IElementDao;
+import org.eclipse.dltk.core.index.sql.IElementDaoExtension;
 import org.eclipse.dltk.core.index.sql.IElementHandler;
 import org.eclipse.dltk.core.index.sql.SqlIndex;
-import org.eclipse.dltk.core.index2.search.ISearchEngine;
+import org.eclipse.dltk.core.index2.search.ISearchCursor;
+import org.eclipse.dltk.core.index2.search.ISearchEngineExtension;
 import org.eclipse.dltk.core.index2.search.ISearchRequestor;
 import org.eclipse.dltk.core.search.IDLTKSearchScope;
 import org.eclipse.dltk.internal.core.ArchiveFolder;
@@ -51,7 +54,10 @@ import org.eclipse.dltk.internal.core.search.DLTKWorkspaceScope;
  * @author michael
  * @since 2.0
  */
-public class SqlSearchEngine implements ISearchEngine {
+public class SqlSearchEngine implements ISearchEngineExtension {
+
+	/** Whether the cost of paging without IElementDaoExtension was logged */
+	private static volatile boolean warnedSkippingPages;
 
 	public void search(int elementType, String qualifier, String elementName,
 			int trueFlags, int falseFlags, int limit, SearchFor searchFor,
@@ -71,71 +77,8 @@ public class SqlSearchEngine implements ISearchEngine {
 				String natureId = scope.getLanguageToolkit().getNatureId();
 				ElementHandler elementHandler = new ElementHandler(connection,
 						scope, requestor);
-
-				// Calculate filtering by container:
-				int[] containersId = null;
-				int[] filesId = null;
-				if (!(scope instanceof DLTKWorkspaceScope)) {
-					// Calculate container IDs:
-					IPath[] containerPaths = scope.enclosingProjectsAndZips();
-					List<Integer> containerIdsList = new LinkedList<Integer>();
-					for (IPath containerPath : containerPaths) {
-						Container container = dbFactory.getContainerDao()
-								.selectByPath(connection,
-										containerPath.toString());
-						if (container != null) {
-							containerIdsList.add(container.getId());
-						}
-					}
-					if (containerIdsList.size() > 0) {
-						containersId = new int[containerIdsList.size()];
-						for (int i = 0; i < containerIdsList.size(); ++i) {
-							containersId[i] = containerIdsList.get(i);
-						}
-					}
-
-					// Calculate file IDs:
-					if (scope instanceof DLTKSearchScope) {
-						List<Integer> fileIdsList = new LinkedList<Integer>();
-						String[] relativePaths = ((DLTKSearchScope) scope)
-								.getRelativePaths();
-						String[] fileExtensions = ScriptModelUtil
-								.getFileExtensions(scope.getLanguageToolkit());
-
-						// XXX - need a better way do differentiate between file
-						// and container scopes
-						for (String relativePath : relativePaths) {
-							if (relativePath.length() > 0) {
-								if (fileExtensions != null) {
-									boolean isScriptFile = false;
-									for (String ext : fileExtensions) {
-										if (relativePath.endsWith("." + ext)) {
-											isScriptFile = true;
-											break;
-										}
-									}
-									if (!isScriptFile) {
-										break;
-									}
-								}
-								for (Integer containerId : containerIdsList) {
-									File file = dbFactory.getFileDao().select(
-											connection, relativePath,
-											containerId);
-									if (file != null) {
-										fileIdsList.add(file.getId());
-									}
-								}
-							}
-						}
-						if (fileIdsList.size() > 0) {
-							filesId = new int[fileIdsList.size()];
-							for (int i = 0; i < fileIdsList.size(); ++i) {
-								filesId[i] = fileIdsList.get(i);
-							}
-						}
-					}
-				}
+				ScopeFilter filter = new ScopeFilter(dbFactory, connection,
+						scope);
 
 				boolean searchForDecls = searchFor == SearchFor.DECLARATIONS
 						|| searchFor == SearchFor.ALL_OCCURENCES;
@@ -145,14 +88,16 @@ public class SqlSearchEngine implements ISearchEngine {
 				if (searchForDecls) {
 					dbFactory.getElementDao().search(connection, elementName,
 							matchRule, elementType, trueFlags, falseFlags,
-							qualifier, null, filesId, containersId, natureId,
-							limit, false, elementHandler, monitor);
+							qualifier, null, filter.filesId,
+							filter.containersId, natureId, limit, false,
+							elementHandler, monitor);
 				}
 				if (searchForRefs) {
 					dbFactory.getElementDao().search(connection, elementName,
 							matchRule, elementType, trueFlags, falseFlags,
-							qualifier, null, filesId, containersId, natureId,
-							limit, true, elementHandler, monitor);
+							qualifier, null, filter.filesId,
+							filter.containersId, natureId, limit, true,
+							elementHandler, monitor);
 				}
 			} finally {
 				connection.close();
@@ -163,6 +108,270 @@ public class SqlSearchEngine implements ISearchEngine {
 		}
 	}
 
+	public ISearchCursor openCursor(int elementType, String qualifier,
+			String elementName, int trueFlags, int falseFlags,
+			SearchFor searchFor, MatchRule matchRule, IDLTKSearchScope scope,
+			String resumeToken, IProgressMonitor monitor) {
+
+		return new SearchCursor(elementType, qualifier, elementName,
+				trueFlags, falseFlags, searchFor, matchRule, scope,
+				resumeToken, monitor);
+	}
+
+	/**
+	 * Ids of the containers and files of the search scope
+	 */
+	static class ScopeFilter {
+
+		int[] containersId;
+		int[] filesId;
+
+		ScopeFilter(DbFactory dbFactory, Connection connection,
+				IDLTKSearchScope scope) throws SQLException {
+
+			// Calculate filtering by container:
+			if (!(scope instanceof DLTKWorkspaceScope)) {
+				// Calculate container IDs:
+				IPath[] containerPaths = scope.enclosingProjectsAndZips();
+				List<Integer> containerIdsList = new LinkedList<Integer>();
+				for (IPath containerPath : containerPaths) {
+					Container container = dbFactory.getContainerDao()
+							.selectByPath(connection, containerPath.toString());
+					if (container != null) {
+						containerIdsList.add(container.getId());
+					}
+				}
+				if (containerIdsList.size() > 0) {
+					containersId = new int[containerIdsList.size()];
+					for (int i = 0; i < containerIdsList.size(); ++i) {
+						containersId[i] = containerIdsList.get(i);
+					}
+				}
+
+				// Calculate file IDs:
+				if (scope instanceof DLTKSearchScope) {
+					List<Integer> fileIdsList = new LinkedList<Integer>();
+					String[] relativePaths = ((DLTKSearchScope) scope)
+							.getRelativePaths();
+					String[] fileExtensions = ScriptModelUtil
+							.getFileExtensions(scope.getLanguageToolkit());
+
+					// XXX - need a better way do differentiate between file
+					// and container scopes
+					for (String relativePath : relativePaths) {
+						if (relativePath.length() > 0) {
+							if (fileExtensions != null) {
+								boolean isScriptFile = false;
+								for (String ext : fileExtensions) {
+									if (relativePath.endsWith("." + ext)) {
+										isScriptFile = true;
+										break;
+									}
+								}
+								if (!isScriptFile) {
+									break;
+								}
+							}
+							for (Integer containerId : containerIdsList) {
+								File file = dbFactory.getFileDao().select(
+										connection, relativePath, containerId);
+								if (file != null) {
+									fileIdsList.add(file.getId());
+								}
+							}
+						}
+					}
+					if (fileIdsList.size() > 0) {
+						filesId = new int[fileIdsList.size()];
+						for (int i = 0; i < fileIdsList.size(); ++i) {
+							filesId[i] = fileIdsList.get(i);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cursor running the search again for each page, continuing after the id
+	 * of the last record read. Declarations are reported before references,
+	 * and the resume token is made of the kind of the current records and of
+	 * the last id.
+	 */
+	class SearchCursor implements ISearchCursor {
+
+		private static final int DECLARATIONS = 0;
+		private static final int REFERENCES = 1;
+		private static final int DONE = 2;
+
+		private final int elementType;
+		private final String qualifier;
+		private final String elementName;
+		private final int trueFlags;
+		private final int falseFlags;
+		private final SearchFor searchFor;
+		private final MatchRule matchRule;
+		private final IDLTKSearchScope scope;
+		private final IProgressMonitor monitor;
+
+		private int phase;
+		private int lastId;
+
+		SearchCursor(int elementType, String qualifier, String elementName,
+				int trueFlags, int falseFlags, SearchFor searchFor,
+				MatchRule matchRule, IDLTKSearchScope scope,
+				String resumeToken, IProgressMonitor monitor) {
+			this.elementType = elementType;
+			this.qualifier = qualifier;
+			this.elementName = elementName;
+			this.trueFlags = trueFlags;
+			this.falseFlags = falseFlags;
+			this.searchFor = searchFor;
+			this.matchRule = matchRule;
+			this.scope = scope;
+			this.monitor = monitor;
+
+			phase = DECLARATIONS;
+			lastId = 0;
+			if (resumeToken != null) {
+				int i = resumeToken.indexOf(':');
+				try {
+					phase = Integer.parseInt(resumeToken.substring(0, i));
+					lastId = Integer.parseInt(resumeToken.substring(i + 1));
+				} catch (RuntimeException e) {
+					throw new IllegalArgumentException("Invalid resume token: " //$NON-NLS-1$
+							+ resumeToken);
+				}
+			}
+			skipPhases();
+		}
+
+		private void skipPhases() {
+			if (phase == DECLARATIONS && searchFor == SearchFor.REFERENCES) {
+				phase = REFERENCES;
+			}
+			if (phase == REFERENCES && searchFor == SearchFor.DECLARATIONS) {
+				phase = DONE;
+			}
+		}
+
+		public boolean next(int pageSize, ISearchRequestor requestor) {
+			if (phase == DONE || pageSize <= 0) {
+				return phase != DONE;
+			}
+			try {
+				DbFactory dbFactory = DbFactory.getInstance();
+				if (dbFactory == null) {
+					return false;
+				}
+				Connection connection = dbFactory.createConnection();
+				if (connection == null) {
+					return false;
+				}
+				try {
+					String natureId = scope.getLanguageToolkit()
+							.getNatureId();
+					final int[] matches = new int[1];
+					ElementHandler elementHandler = new ElementHandler(
+							connection, scope, requestor) {
+						@Override
+						public void handle(Element element) {
+							lastId = element.getId();
+							super.handle(element);
+						}
+
+						@Override
+						public void match(int elementType, int flags,
+								int offset, int length, int nameOffset,
+								int nameLength, String elementName,
+								String metadata, String doc,
+								String qualifier, String parent,
+								ISourceModule sourceModule,
+								boolean isReference) {
+							++matches[0];
+							super.match(elementType, flags, offset, length,
+									nameOffset, nameLength, elementName,
+									metadata, doc, qualifier, parent,
+									sourceModule, isReference);
+						}
+					};
+					ScopeFilter filter = new ScopeFilter(dbFactory,
+							connection, scope);
+
+					// records out of the scope are not reported, so read until
+					// the page is full
+					while (phase != DONE && matches[0] < pageSize) {
+						if (monitor != null && monitor.isCanceled()) {
+							return false;
+						}
+						int limit = pageSize - matches[0];
+						int count = search(dbFactory, connection, filter,
+								natureId, limit, elementHandler);
+						if (monitor != null && monitor.isCanceled()) {
+							return false;
+						}
+						if (count < limit) {
+							++phase;
+							lastId = 0;
+							skipPhases();
+						}
+					}
+				} finally {
+					connection.close();
+				}
+			} catch (SQLException e) {
+				SqlIndex.error(
+						"An exception has thrown while performing a search", //$NON-NLS-1$
+						e);
+				return false;
+			}
+			return phase != DONE;
+		}
+
+		private int search(DbFactory dbFactory, Connection connection,
+				ScopeFilter filter, String natureId, int limit,
+				ElementHandler elementHandler) throws SQLException {
+			IElementDao elementDao = dbFactory.getElementDao();
+			boolean isReference = phase == REFERENCES;
+			if (elementDao instanceof IElementDaoExtension) {
+				return ((IElementDaoExtension) elementDao).search(connection,
+						elementName, matchRule, elementType, trueFlags,
+						falseFlags, qualifier, null, filter.filesId,
+						filter.containersId, natureId, lastId, limit,
+						isReference, elementHandler, monitor);
+			}
+			// without paging support the records have no id, the number of
+			// records already read is kept instead. Each page reruns the query
+			// and skips the previous ones, so paging through all the results
+			// is quadratic in their number
+			if (!warnedSkippingPages) {
+				warnedSkippingPages = true;
+				SqlIndex.warn(elementDao.getClass().getName()
+						+ " does not implement IElementDaoExtension, search pages are read by skipping the previous ones"); //$NON-NLS-1$
+			}
+			final int skip = lastId;
+			final int[] count = new int[1];
+			final IElementHandler handler = elementHandler;
+			elementDao.search(connection, elementName, matchRule,
+					elementType, trueFlags, falseFlags, qualifier, null,
+					filter.filesId, filter.containersId, natureId, skip
+							+ limit, isReference, new IElementHandler() {
+						public void handle(Element element) {
+							if (count[0]++ >= skip) {
+								handler.handle(element);
+							}
+						}
+					}, monitor);
+			int read = Math.max(0, count[0] - skip);
+			lastId = skip + read;
+			return read;
+		}
+
+		public String getResumeToken() {
+			return phase + ":" + lastId; //$NON-NLS-1$
+		}
+	}
+
 	class ElementHandler implements IElementHandler, ISearchRequestor {
 
 		private static final String EMPTY = ""; //$NON-NLS-1$
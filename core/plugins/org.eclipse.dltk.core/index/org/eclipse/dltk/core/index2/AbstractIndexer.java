@@ -32,18 +32,45 @@ public abstract class AbstractIndexer implements IIndexer, IIndexingRequestor {
 	}
 
 	public void indexDocument(ISourceModule sourceModule) {
+		indexDocument(sourceModule, getIndexingParser(sourceModule));
+	}
+
+	/**
+	 * Indexes the document reporting the declarations and references found by
+	 * the specified parser, which can replay the result of an earlier parse.
+	 * Subclasses preparing the storage of the document should override this
+	 * method instead of {@link #indexDocument(ISourceModule)}.
+	 * 
+	 * @param parser
+	 *            the parser of the document or <code>null</code> if there is
+	 *            none
+	 * @since 5.0
+	 */
+	public void indexDocument(ISourceModule sourceModule,
+			IIndexingParser parser) {
+		if (parser != null) {
+			parser.parseSourceModule(sourceModule, this);
+		}
+	}
+
+	/**
+	 * Returns a new parser of the document for this indexer or
+	 * <code>null</code> if the language doesn't contribute one. Unlike the
+	 * indexing itself this method can be called from any thread.
+	 * 
+	 * @since 5.0
+	 */
+	public IIndexingParser getIndexingParser(ISourceModule sourceModule) {
 		IDLTKLanguageToolkit toolkit = DLTKLanguageManager
 				.getLanguageToolkit(sourceModule);
 		if (toolkit == null) {
-			return;
+			return null;
 		}
 		IIndexerParticipant participant = IndexerManager.getIndexerParticipant(
 				this, toolkit.getNatureId());
 		if (participant != null) {
-			IIndexingParser parser = participant.getIndexingParser();
-			if (parser != null) {
-				parser.parseSourceModule(sourceModule, this);
-			}
+			return participant.getIndexingParser();
 		}
+		return null;
 	}
 }
@@ -19,6 +19,12 @@ import org.eclipse.dltk.core.index2.search.ISearchEngine;
 
 /**
  * Abstract source module indexer
+ * <p>
+ * An indexer instance is an indexing session used by one thread at a time. A
+ * new instance is created for each session, so concurrent sessions use
+ * different instances and implementations must only share thread safe state
+ * between them.
+ * </p>
  * 
  * @author michael
  * @since 2.0
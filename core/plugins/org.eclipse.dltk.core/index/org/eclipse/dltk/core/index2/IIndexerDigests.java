@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.index2;
+
+import java.util.Map;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.dltk.core.environment.IFileHandle;
+
+/**
+ * Optional interface of an {@link IIndexer} storing a digest of the content
+ * of the indexed documents, so a document whose timestamp changed but whose
+ * content didn't doesn't have to be indexed again.
+ * 
+ * @since 5.0
+ */
+public interface IIndexerDigests {
+
+	/**
+	 * Returns digests of the documents stored under the given container path.
+	 * 
+	 * @param containerPath
+	 *            Container path
+	 * @return map of relative paths to digests, documents indexed without a
+	 *         digest are not included
+	 */
+	Map<String, String> getDocumentDigests(IPath containerPath);
+
+	/**
+	 * Computes the digest of the file content in the same way as it is done
+	 * when the document is indexed.
+	 * 
+	 * @return digest or <code>null</code> if the file can't be read
+	 */
+	String computeDigest(IFileHandle handle);
+
+	/**
+	 * Updates the timestamps of the documents whose content didn't change
+	 * since they were indexed.
+	 * 
+	 * @param containerPath
+	 *            Container path
+	 * @param timestamps
+	 *            map of relative paths to new timestamps
+	 */
+	void updateDocumentTimestamps(IPath containerPath,
+			Map<String, Long> timestamps);
+
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.index2;
+
+/**
+ * Optional interface of an {@link IIndexer} able to apply the changes of many
+ * documents at once. Between {@link #beginBatch(boolean)} and
+ * {@link #endBatch()} the changes made by
+ * {@link IIndexer#indexDocument(org.eclipse.dltk.core.ISourceModule)} and
+ * {@link IIndexer#removeDocument(org.eclipse.core.runtime.IPath, String)} may
+ * be buffered and become visible to searches only when the indexer decides
+ * to flush them, at the latest in {@link #endBatch()}.
+ * 
+ * @since 5.0
+ */
+public interface IIndexerExtension {
+
+	/**
+	 * Starts a batch of index changes made by this indexer instance.
+	 * 
+	 * @param rebuild
+	 *            whether the documents of the batch are indexed from scratch,
+	 *            in which case the indexer may defer the maintenance of its
+	 *            own indexes until {@link #endBatch()}
+	 */
+	void beginBatch(boolean rebuild);
+
+	/**
+	 * Applies the buffered changes and ends the batch. Must be called after
+	 * {@link #beginBatch(boolean)}, even when the indexing fails.
+	 */
+	void endBatch();
+
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.index2.search;
+
+/**
+ * Position in the matches of a search opened by
+ * {@link ISearchEngineExtension#openCursor}. The matches are reported page by
+ * page, and a cursor doesn't hold any resources between the pages, so it may
+ * simply be dropped.
+ * 
+ * @since 5.0
+ */
+public interface ISearchCursor {
+
+	/**
+	 * Reports the matches of the next page to the requestor.
+	 * 
+	 * @param pageSize
+	 *            Maximum number of matches to report
+	 * @param requestor
+	 *            Search requestor
+	 * @return whether more matches may follow, <code>false</code> if the
+	 *         search is complete or was canceled
+	 */
+	boolean next(int pageSize, ISearchRequestor requestor);
+
+	/**
+	 * Returns the token to pass to
+	 * {@link ISearchEngineExtension#openCursor} to continue the search after
+	 * the last reported page, with the same search parameters.
+	 */
+	String getResumeToken();
+
+}
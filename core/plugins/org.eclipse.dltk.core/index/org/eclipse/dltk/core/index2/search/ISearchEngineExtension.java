@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.index2.search;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.dltk.core.search.IDLTKSearchScope;
+
+/**
+ * Optional interface of an {@link ISearchEngine} able to report the matches
+ * page by page, so callers which only need the first matches don't pay for
+ * the rest.
+ * 
+ * @since 5.0
+ */
+public interface ISearchEngineExtension extends ISearchEngine {
+
+	/**
+	 * Opens a cursor over the matching model elements, see
+	 * {@link ISearchEngine#search} for the search parameters.
+	 * 
+	 * @param resumeToken
+	 *            Token returned by {@link ISearchCursor#getResumeToken()} of a
+	 *            cursor with the same parameters, or <code>null</code> to
+	 *            start from the first match
+	 * @param monitor
+	 *            Progress monitor, which cancels the search
+	 */
+	ISearchCursor openCursor(int elementType, String qualifier,
+			String elementName, int trueFlags, int falseFlags,
+			SearchFor searchFor, MatchRule matchRule, IDLTKSearchScope scope,
+			String resumeToken, IProgressMonitor monitor);
+
+}
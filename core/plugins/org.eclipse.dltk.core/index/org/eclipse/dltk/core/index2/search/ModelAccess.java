@@ -12,8 +12,10 @@
 package org.eclipse.dltk.core.index2.search;
 
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.dltk.core.DLTKLanguageManager;
@@ -241,6 +243,154 @@ public class ModelAccess {
 		return result.toArray(new IType[result.size()]);
 	}
 
+	/**
+	 * Finds field elements in index lazily, the index is searched and the
+	 * elements are resolved page by page while iterating.
+	 * 
+	 * @param qualifier
+	 *            Element qualifier (package name)
+	 * @param name
+	 *            Element name
+	 * @param matchRule
+	 *            Match rule
+	 * @param trueFlags
+	 *            Logical OR of flags that must exist in element flags bitset.
+	 *            Set to <code>0</code> to disable filtering by trueFlags.
+	 * @param falseFlags
+	 *            Logical OR of flags that must not exist in the element flags
+	 *            bitset. Set to <code>0</code> to disable filtering by
+	 *            falseFlags.
+	 * @param scope
+	 *            Search scope
+	 * @param monitor
+	 *            Progress monitor, which cancels the iteration
+	 * @return elements, or <code>null</code> in case error has occurred.
+	 * @since 5.0
+	 */
+	public Iterable<IField> iterateFields(String qualifier, String name,
+			MatchRule matchRule, int trueFlags, int falseFlags,
+			IDLTKSearchScope scope, IProgressMonitor monitor) {
+		return iterateElements(IModelElement.FIELD, qualifier, name,
+				matchRule, trueFlags, falseFlags, scope, monitor);
+	}
+
+	/**
+	 * Finds method elements in index lazily, see
+	 * {@link #iterateFields(String, String, MatchRule, int, int, IDLTKSearchScope, IProgressMonitor)}
+	 * 
+	 * @since 5.0
+	 */
+	public Iterable<IMethod> iterateMethods(String qualifier, String name,
+			MatchRule matchRule, int trueFlags, int falseFlags,
+			IDLTKSearchScope scope, IProgressMonitor monitor) {
+		return iterateElements(IModelElement.METHOD, qualifier, name,
+				matchRule, trueFlags, falseFlags, scope, monitor);
+	}
+
+	/**
+	 * Finds type elements in index lazily, see
+	 * {@link #iterateFields(String, String, MatchRule, int, int, IDLTKSearchScope, IProgressMonitor)}
+	 * 
+	 * @since 5.0
+	 */
+	public Iterable<IType> iterateTypes(String qualifier, String name,
+			MatchRule matchRule, int trueFlags, int falseFlags,
+			IDLTKSearchScope scope, IProgressMonitor monitor) {
+		return iterateElements(IModelElement.TYPE, qualifier, name,
+				matchRule, trueFlags, falseFlags, scope, monitor);
+	}
+
+	/**
+	 * @since 5.0
+	 */
+	protected <T extends IModelElement> Iterable<T> iterateElements(
+			final int elementType, final String qualifier, final String name,
+			final MatchRule matchRule, final int trueFlags,
+			final int falseFlags, final IDLTKSearchScope scope,
+			final IProgressMonitor monitor) {
+
+		IDLTKLanguageToolkit toolkit = scope.getLanguageToolkit();
+		if (toolkit == null) {
+			return null;
+		}
+		final IElementResolver elementResolver = getElementResolver(toolkit);
+		if (elementResolver == null) {
+			return null;
+		}
+		final ISearchEngine searchEngine = getSearchEngine(toolkit);
+		if (searchEngine == null) {
+			return null;
+		}
+		if (!(searchEngine instanceof ISearchEngineExtension)) {
+			List<T> result = new LinkedList<T>();
+			findElements(elementType, qualifier, name, matchRule, trueFlags,
+					falseFlags, scope, result, monitor);
+			return result;
+		}
+		return new Iterable<T>() {
+			public Iterator<T> iterator() {
+				return new ElementIterator<T>(
+						((ISearchEngineExtension) searchEngine).openCursor(
+								elementType, qualifier, name, trueFlags,
+								falseFlags, SearchFor.DECLARATIONS,
+								matchRule, scope, null, monitor),
+						elementResolver);
+			}
+		};
+	}
+
+	/**
+	 * Iterator reading the pages of a search cursor when they are needed
+	 */
+	private static class ElementIterator<T extends IModelElement> implements
+			Iterator<T>, ISearchRequestor {
+
+		private static final int PAGE_SIZE = 100;
+
+		private final ISearchCursor cursor;
+		private final IElementResolver elementResolver;
+		private final LinkedList<T> page = new LinkedList<T>();
+		private boolean hasMorePages = true;
+
+		ElementIterator(ISearchCursor cursor, IElementResolver elementResolver) {
+			this.cursor = cursor;
+			this.elementResolver = elementResolver;
+		}
+
+		public boolean hasNext() {
+			while (page.isEmpty() && hasMorePages) {
+				hasMorePages = cursor.next(PAGE_SIZE, this);
+			}
+			return !page.isEmpty();
+		}
+
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return page.removeFirst();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@SuppressWarnings("unchecked")
+		public void match(int elementType, int flags, int offset, int length,
+				int nameOffset, int nameLength, String elementName,
+				String metadata, String doc, String qualifier, String parent,
+				ISourceModule sourceModule, boolean isReference) {
+
+			IModelElement element = elementResolver.resolve(elementType,
+					flags, offset, length, nameOffset, nameLength,
+					elementName, metadata, doc, qualifier, parent,
+					sourceModule);
+			if (element != null) {
+				page.add((T) element);
+			}
+		}
+	}
+
 	protected <T extends IModelElement> boolean findElements(int elementType,
 			String name, MatchRule matchRule, int trueFlags, int falseFlags,
 			IDLTKSearchScope scope, final Collection<T> result,
@@ -12,6 +12,7 @@
 package org.eclipse.dltk.internal.core.index2;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.eclipse.core.resources.IResource;
@@ -23,6 +24,7 @@ import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.core.environment.EnvironmentPathUtils;
 import org.eclipse.dltk.core.environment.IFileHandle;
 import org.eclipse.dltk.core.index2.IIndexer;
+import org.eclipse.dltk.core.index2.IIndexerDigests;
 import org.eclipse.dltk.core.index2.ProjectIndexer2;
 import org.eclipse.dltk.core.search.indexing.AbstractJob;
 import org.eclipse.dltk.internal.core.ExternalSourceModule;
@@ -127,6 +129,13 @@ public abstract class AbstractIndexRequest extends AbstractJob {
 
 		toRemove.addAll(documentNames.keySet());
 
+		IIndexerDigests digests = null;
+		if (indexer instanceof IIndexerDigests) {
+			digests = (IIndexerDigests) indexer;
+		}
+		Map<String, String> documentDigests = null;
+		Map<String, Long> unchanged = new HashMap<String, Long>();
+
 		for (ISourceModule sourceModule : sourceModules) {
 			String relativePath = Util.relativePath(sourceModule.getPath(),
 					containerPath.segmentCount());
@@ -134,12 +143,31 @@ public abstract class AbstractIndexRequest extends AbstractJob {
 					false);
 
 			if (toRemove.remove(relativePath)) {
-				if (documentNames.get(relativePath) < handle.lastModified()) {
+				long lastModified = handle.lastModified();
+				if (documentNames.get(relativePath) < lastModified) {
+					if (digests != null) {
+						if (documentDigests == null) {
+							documentDigests = digests
+									.getDocumentDigests(containerPath);
+						}
+						String digest = documentDigests != null ? documentDigests
+								.get(relativePath) : null;
+						if (digest != null
+								&& digest.equals(digests.computeDigest(handle))) {
+							// Content is the same - only the timestamp changed
+							unchanged.put(relativePath, lastModified);
+							continue;
+						}
+					}
 					toReindex.add(sourceModule);
 				}
 			} else {
 				toReindex.add(sourceModule);
 			}
 		}
+
+		if (!unchanged.isEmpty()) {
+			digests.updateDocumentTimestamps(containerPath, unchanged);
+		}
 	}
 }
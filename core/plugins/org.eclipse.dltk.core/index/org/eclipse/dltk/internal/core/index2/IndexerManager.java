@@ -40,17 +40,31 @@ public class IndexerManager {
 	private static final String ID_ATTR = "id"; //$NON-NLS-1$
 	private static final String TARGET_ID_ATTR = "targetId"; //$NON-NLS-1$
 
+	/**
+	 * System property selecting the indexer by its id when more than one is
+	 * installed
+	 */
+	private static final String INDEXER_PROPERTY = DLTKCore.PLUGIN_ID
+			+ ".indexer"; //$NON-NLS-1$
+
 	private static IConfigurationElement indexer;
 	private static Map<String, Map<String, IConfigurationElement>> indexerParticipants = new HashMap<String, Map<String, IConfigurationElement>>();
 
 	static {
 		IConfigurationElement[] elements = Platform.getExtensionRegistry()
 				.getConfigurationElementsFor(INDEXER_POINT);
+		String indexerId = System.getProperty(INDEXER_PROPERTY);
 		for (IConfigurationElement element : elements) {
 			String name = element.getName();
 			if (INDEXER_ATTR.equals(name)) {
-				indexer = element;
-				break;
+				if (indexerId == null
+						|| indexerId.equals(element.getAttribute(ID_ATTR))) {
+					indexer = element;
+					break;
+				}
+				if (indexer == null) {
+					indexer = element;
+				}
 			}
 		}
 
@@ -93,16 +107,26 @@ public class IndexerManager {
 
 		Map<String, IConfigurationElement> participants = indexerParticipants
 				.get(((AbstractIndexer) indexer).getId());
-		if (participants != null) {
-			IConfigurationElement element = participants.get(natureId);
-			if (element != null) {
-				try {
-					return (IIndexerParticipant) element
-							.createExecutableExtension(CLASS_ATTR);
-				} catch (CoreException e) {
-					if (DLTKCore.DEBUG) {
-						e.printStackTrace();
-					}
+		IConfigurationElement element = participants != null ? participants
+				.get(natureId) : null;
+		if (element == null) {
+			// the declarations reported by a participant don't depend on the
+			// indexer, so use one contributed to another indexer
+			for (Map<String, IConfigurationElement> others : indexerParticipants
+					.values()) {
+				element = others.get(natureId);
+				if (element != null) {
+					break;
+				}
+			}
+		}
+		if (element != null) {
+			try {
+				return (IIndexerParticipant) element
+						.createExecutableExtension(CLASS_ATTR);
+			} catch (CoreException e) {
+				if (DLTKCore.DEBUG) {
+					e.printStackTrace();
 				}
 			}
 		}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.index2.IIndexingParser;
+import org.eclipse.dltk.core.index2.IIndexingRequestor;
+
+/**
+ * Declarations and references reported by the parser of a source module,
+ * recorded on a parsing thread and replayed to the indexer on the writing
+ * thread.
+ */
+class ParsedSourceModule implements IIndexingRequestor, IIndexingParser {
+
+	final ISourceModule sourceModule;
+
+	/** Set until the parser has completed successfully */
+	volatile boolean failed = true;
+
+	/** {@link DeclarationInfo} and {@link ReferenceInfo} in reported order */
+	private final List<ReferenceInfo> infos = new ArrayList<ReferenceInfo>();
+
+	ParsedSourceModule(ISourceModule sourceModule) {
+		this.sourceModule = sourceModule;
+	}
+
+	public void addDeclaration(DeclarationInfo info) {
+		// parsers may reuse the info objects
+		infos.add(new DeclarationInfo(info.elementType, info.flags,
+				info.offset, info.length, info.nameOffset, info.nameLength,
+				info.elementName, info.metadata, info.doc, info.qualifier,
+				info.parent));
+	}
+
+	public void addReference(ReferenceInfo info) {
+		infos.add(new ReferenceInfo(info.elementType, info.offset,
+				info.length, info.elementName, info.metadata, info.qualifier));
+	}
+
+	public void parseSourceModule(ISourceModule module,
+			IIndexingRequestor requestor) {
+		for (ReferenceInfo info : infos) {
+			if (info instanceof DeclarationInfo) {
+				requestor.addDeclaration((DeclarationInfo) info);
+			} else {
+				requestor.addReference(info);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.index2;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.index2.AbstractIndexer;
+import org.eclipse.dltk.core.index2.IIndexingParser;
+
+/**
+ * Parses source modules on several threads, handing the results over to the
+ * single thread writing the index through a bounded queue, so parsing doesn't
+ * run too far ahead of the writer.
+ */
+class ParsingPipeline {
+
+	private final AbstractIndexer indexer;
+	private final List<ISourceModule> sourceModules;
+	private final AtomicInteger next = new AtomicInteger();
+	private final BlockingQueue<ParsedSourceModule> queue;
+	private final Thread[] threads;
+	private final AtomicInteger running = new AtomicInteger();
+	private volatile boolean stopped;
+	// threads waiting for room in the queue, the only ones interrupted by
+	// stop(), since interrupting a parser could close the channels it shares
+	private final Set<Thread> putting = new HashSet<Thread>();
+
+	ParsingPipeline(AbstractIndexer indexer,
+			List<ISourceModule> sourceModules, int threadCount) {
+		this.indexer = indexer;
+		this.sourceModules = sourceModules;
+		this.queue = new ArrayBlockingQueue<ParsedSourceModule>(
+				threadCount * 4);
+		this.threads = new Thread[threadCount];
+		this.running.set(threadCount);
+		for (int i = 0; i < threadCount; ++i) {
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						parse();
+					} finally {
+						if (running.decrementAndGet() == 0) {
+							discardRemaining();
+						}
+					}
+				}
+			}, "DLTK Indexing Parser " + (i + 1)); //$NON-NLS-1$
+			threads[i].setDaemon(true);
+		}
+	}
+
+	/**
+	 * Returns the number of threads for parsing source modules configured by
+	 * {@link DLTKCore#INDEXER_PARSER_THREADS}.
+	 */
+	static int getThreadCount() {
+		final String value = DLTKCore
+				.getOption(DLTKCore.INDEXER_PARSER_THREADS);
+		if (value != null) {
+			try {
+				return Math.max(1, Integer.parseInt(value.trim()));
+			} catch (NumberFormatException e) {
+				// fall thru
+			}
+		}
+		return 1;
+	}
+
+	void start() {
+		for (Thread thread : threads) {
+			thread.start();
+		}
+	}
+
+	private void parse() {
+		while (!stopped) {
+			final int index = next.getAndIncrement();
+			if (index >= sourceModules.size()) {
+				return;
+			}
+			final ISourceModule sourceModule = sourceModules.get(index);
+			final ParsedSourceModule parsed = new ParsedSourceModule(
+					sourceModule);
+			boolean queued = false;
+			try {
+				final IIndexingParser parser = indexer
+						.getIndexingParser(sourceModule);
+				if (parser != null) {
+					parser.parseSourceModule(sourceModule, parsed);
+				}
+				parsed.failed = false;
+			} catch (RuntimeException e) {
+				DLTKCore.error("Error parsing " + sourceModule.getPath(), e); //$NON-NLS-1$
+			} finally {
+				// exactly one entry per source module, the writer waits for it
+				queued = put(parsed);
+			}
+			if (!queued) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Queues failure markers for the source modules not claimed by any thread,
+	 * called when the last parsing thread terminates, normally or not.
+	 */
+	private void discardRemaining() {
+		int index;
+		while (!stopped && (index = next.getAndIncrement()) < sourceModules
+				.size()) {
+			if (!put(new ParsedSourceModule(sourceModules.get(index)))) {
+				return;
+			}
+		}
+	}
+
+	private boolean put(ParsedSourceModule parsed) {
+		final Thread thread = Thread.currentThread();
+		synchronized (putting) {
+			if (stopped) {
+				return false;
+			}
+			putting.add(thread);
+		}
+		try {
+			queue.put(parsed);
+			return true;
+		} catch (InterruptedException e) {
+			return false;
+		} finally {
+			synchronized (putting) {
+				putting.remove(thread);
+			}
+			if (stopped) {
+				// stop() may have interrupted it after the put succeeded
+				Thread.interrupted();
+			}
+		}
+	}
+
+	/**
+	 * Returns the next parsed source module, waiting for it if necessary. Must
+	 * be called once per source module, the modules which could not be parsed
+	 * are returned with {@link ParsedSourceModule#failed} set.
+	 */
+	ParsedSourceModule take() throws InterruptedException {
+		return queue.take();
+	}
+
+	/**
+	 * Stops the parsing threads, the source modules not taken yet are
+	 * discarded. The threads finish the source module they are parsing
+	 * before they stop, only those waiting for room in the queue are
+	 * interrupted.
+	 */
+	void stop() {
+		synchronized (putting) {
+			stopped = true;
+			for (Thread thread : putting) {
+				thread.interrupt();
+			}
+		}
+		queue.clear();
+	}
+
+}
@@ -22,8 +22,12 @@ import java.util.Set;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.index2.AbstractIndexer;
 import org.eclipse.dltk.core.index2.IIndexer;
+import org.eclipse.dltk.core.index2.IIndexerExtension;
 import org.eclipse.dltk.core.index2.ProjectIndexer2;
+import org.eclipse.dltk.internal.core.util.Util;
+import org.eclipse.osgi.util.NLS;
 
 /**
  * Request for re-indexing a set of source modules. First, source modules are
@@ -35,6 +39,13 @@ import org.eclipse.dltk.core.index2.ProjectIndexer2;
  */
 public class SourceModulesRequest extends AbstractIndexRequest {
 
+	/**
+	 * Minimum number of source modules for a container reindexed from scratch
+	 * to be loaded in bulk, smaller ones don't pay for adding the foreign keys
+	 * afterwards.
+	 */
+	private static final int MIN_REBUILD_SIZE = 100;
+
 	private final IPath containerPath;
 	private final Set<ISourceModule> sourceModules;
 
@@ -62,8 +73,8 @@ public class SourceModulesRequest extends AbstractIndexRequest {
 		analyzeSourceModuleChanges(containerPath, sourceModules, toRemove,
 				toReindex);
 
-		for (final String path : toRemove) {
-			indexer.removeDocument(containerPath, path);
+		if (toRemove.isEmpty() && toReindex.isEmpty()) {
+			return;
 		}
 
 		Collections.sort(toReindex, new Comparator<ISourceModule>() {
@@ -73,9 +84,67 @@ public class SourceModulesRequest extends AbstractIndexRequest {
 			}
 		});
 
-		for (final ISourceModule sourceModule : toReindex) {
-			reportToProgress(sourceModule);
-			indexer.indexDocument(sourceModule);
+		final IIndexerExtension extension = indexer instanceof IIndexerExtension ? (IIndexerExtension) indexer
+				: null;
+		// nothing of the container is kept, e.g. after a schema change
+		final boolean rebuild = toRemove.isEmpty()
+				&& toReindex.size() == sourceModules.size()
+				&& toReindex.size() >= MIN_REBUILD_SIZE;
+		if (extension != null) {
+			extension.beginBatch(rebuild);
+		}
+		try {
+			for (final String path : toRemove) {
+				indexer.removeDocument(containerPath, path);
+			}
+			final int threadCount = ParsingPipeline.getThreadCount();
+			if (threadCount > 1 && toReindex.size() > 1
+					&& indexer instanceof AbstractIndexer) {
+				indexInParallel((AbstractIndexer) indexer, toReindex,
+						threadCount);
+			} else {
+				for (final ISourceModule sourceModule : toReindex) {
+					reportToProgress(sourceModule);
+					indexer.indexDocument(sourceModule);
+				}
+			}
+		} finally {
+			if (extension != null) {
+				if (rebuild && progressJob != null) {
+					progressJob.subTask(NLS.bind("building index of ''{0}''",
+							containerPath.toString()));
+				}
+				extension.endBatch();
+			}
+		}
+	}
+
+	/**
+	 * Parses the source modules on several threads, while the indexer writes
+	 * them one by one on this thread.
+	 */
+	private void indexInParallel(AbstractIndexer indexer,
+			List<ISourceModule> sourceModules, int threadCount) {
+		final ParsingPipeline pipeline = new ParsingPipeline(indexer,
+				sourceModules, Math.min(threadCount, sourceModules.size()));
+		pipeline.start();
+		try {
+			for (int i = 0; i < sourceModules.size() && !isCancelled; ++i) {
+				final ParsedSourceModule parsed = pipeline.take();
+				reportToProgress(parsed.sourceModule);
+				if (!parsed.failed) {
+					indexer.indexDocument(parsed.sourceModule, parsed);
+				} else {
+					// don't keep serving the elements of the previous content
+					indexer.removeDocument(containerPath, Util.relativePath(
+							parsed.sourceModule.getPath(), containerPath
+									.segmentCount()));
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			pipeline.stop();
 		}
 	}
 
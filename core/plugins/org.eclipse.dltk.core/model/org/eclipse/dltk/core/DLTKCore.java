@@ -357,6 +357,60 @@ public class DLTKCore extends Plugin {
 	 */
 	public static final String INDEXER_ENABLED = PLUGIN_ID + ".indexer"; //$NON-NLS-1$					
 
+	/**
+	 * Possible configurable option ID. Value is the maximum number of
+	 * background indexing jobs for the different indexes executed at the same
+	 * time, "1" means the jobs are executed one by one.
+	 * 
+	 * @since 5.0
+	 */
+	public static final String INDEXER_PARALLEL_JOBS = PLUGIN_ID
+			+ ".indexer.parallelJobs"; //$NON-NLS-1$
+
+	/**
+	 * Possible configurable option ID. Value is the number of threads parsing
+	 * the source modules of a container for the indexer contributed to the
+	 * <code>org.eclipse.dltk.core.indexer</code> extension point, while the
+	 * index is written by a single thread. "1" means the source modules are
+	 * parsed by the thread writing the index.
+	 * 
+	 * @since 5.0
+	 */
+	public static final String INDEXER_PARSER_THREADS = PLUGIN_ID
+			+ ".indexer.parserThreads"; //$NON-NLS-1$
+
+	/**
+	 * Possible configurable option ID. Value is the number of segments
+	 * appended to an index file by incremental saves after which the file is
+	 * rewritten by a background job, "0" disables the background compaction.
+	 * 
+	 * @since 5.0
+	 */
+	public static final String INDEXER_COMPACTION_THRESHOLD = PLUGIN_ID
+			+ ".indexer.compactionThreshold"; //$NON-NLS-1$
+
+	/**
+	 * Possible configurable option ID. Value is the path of a local directory
+	 * containing prebuilt indexes of interpreter libraries, named after a
+	 * checksum of the library content. A library whose index is empty adopts
+	 * the matching prebuilt index instead of being indexed. Empty to disable.
+	 * 
+	 * @since 5.0
+	 */
+	public static final String INDEXER_PREBUILT_INDEXES = PLUGIN_ID
+			+ ".indexer.prebuiltIndexes"; //$NON-NLS-1$
+
+	/**
+	 * Possible configurable option ID. Value should be {@link #ENABLED} or
+	 * {@link #DISABLED}. When enabled, libraries indexed from scratch are
+	 * exported to the {@link #INDEXER_PREBUILT_INDEXES} directory if it
+	 * doesn't contain their prebuilt index yet.
+	 * 
+	 * @since 5.0
+	 */
+	public static final String INDEXER_PREBUILT_INDEXES_EXPORT = PLUGIN_ID
+			+ ".indexer.prebuiltIndexes.export"; //$NON-NLS-1$
+
 	/**
 	 * Possible project configurable option ID. Value is the identifier of
 	 * contributed {@link org.eclipse.dltk.ast.parser.ISourceParser}.
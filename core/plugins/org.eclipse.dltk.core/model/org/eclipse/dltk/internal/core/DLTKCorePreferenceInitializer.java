@@ -45,6 +45,12 @@ public class DLTKCorePreferenceInitializer extends
 				DLTKCore.CORE_ENABLE_BUILDPATH_EXCLUSION_PATTERNS,
 				DLTKCore.ENABLED);
 		defaultOptionsMap.put(DLTKCore.INDEXER_ENABLED, DLTKCore.ENABLED);
+		defaultOptionsMap.put(DLTKCore.INDEXER_PARALLEL_JOBS, "1"); //$NON-NLS-1$
+		defaultOptionsMap.put(DLTKCore.INDEXER_PARSER_THREADS, "1"); //$NON-NLS-1$
+		defaultOptionsMap.put(DLTKCore.INDEXER_COMPACTION_THRESHOLD, "4"); //$NON-NLS-1$
+		defaultOptionsMap.put(DLTKCore.INDEXER_PREBUILT_INDEXES, ""); //$NON-NLS-1$
+		defaultOptionsMap.put(DLTKCore.INDEXER_PREBUILT_INDEXES_EXPORT,
+				DLTKCore.DISABLED);
 		defaultOptionsMap.put(DLTKCore.BUILDER_ENABLED, DLTKCore.ENABLED);
 		defaultOptionsMap.put(DLTKCore.CODEASSIST_CAMEL_CASE_MATCH,
 				DLTKCore.ENABLED);
@@ -91,6 +91,7 @@ import org.eclipse.dltk.core.WorkingCopyOwner;
 import org.eclipse.dltk.core.caching.IContentCache;
 import org.eclipse.dltk.core.environment.EnvironmentPathUtils;
 import org.eclipse.dltk.core.environment.IFileHandle;
+import org.eclipse.dltk.core.mixin.MixinModelRegistry;
 import org.eclipse.dltk.core.search.indexing.IndexManager;
 import org.eclipse.dltk.internal.core.builder.ScriptBuilder;
 import org.eclipse.dltk.internal.core.caching.DLTKCoreCache;
@@ -1592,6 +1593,8 @@ public class ModelManager implements ISaveParticipant {
 		if (sourceModuleInfoCache != null) {
 			sourceModuleInfoCache.stop();
 		}
+		// while the state of the indexes is still known
+		MixinModelRegistry.saveSnapshots();
 		if (this.indexManager != null) { // no more indexing
 			this.indexManager.shutdown();
 		}
@@ -9,14 +9,18 @@
  *******************************************************************************/
 package org.eclipse.dltk.core.mixin;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
@@ -26,9 +30,12 @@ import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.ListenerList;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.dltk.compiler.CharOperation;
 import org.eclipse.dltk.core.DLTKCore;
 import org.eclipse.dltk.core.DLTKLanguageManager;
@@ -51,7 +58,9 @@ import org.eclipse.dltk.core.search.indexing.IIndexConstants;
 import org.eclipse.dltk.internal.core.OverflowingLRUCache;
 import org.eclipse.dltk.internal.core.mixin.IInternalMixinElement;
 import org.eclipse.dltk.internal.core.mixin.MixinCache;
+import org.eclipse.dltk.internal.core.mixin.MixinKeyStore;
 import org.eclipse.dltk.internal.core.mixin.MixinManager;
+import org.eclipse.dltk.internal.core.mixin.MixinModelSnapshot;
 import org.eclipse.dltk.internal.core.util.LRUCache;
 
 public class MixinModel {
@@ -65,9 +74,21 @@ public class MixinModel {
 	private static final int CACHE_LIMIT = 250000;
 	private static final int KEYS_CACHE_LIMIT = 500000;
 	private static final int REQUEST_CACHE_LIMIT = 500;
+	private static final long REPORT_DELAY = 100;
 
 	private final MixinCache cache;
 
+	/**
+	 * Keys of the elements and the keys known to exist or to be missing. The
+	 * elements of the cache are the values of their keys, for the lookups
+	 * without the lock. The cache is keyed by the nodes of the keys and only
+	 * updated with the lock being held. The store is read without the lock,
+	 * but every change is made with the lock being held, so a node added is
+	 * not reclaimed before its value is set.
+	 */
+	private final MixinKeyStore keyStore = new MixinKeyStore(
+			IIndexConstants.SEPARATOR);
+
 	/**
 	 * Contains map of source modules to mixin elements.
 	 */
@@ -76,24 +97,76 @@ public class MixinModel {
 	private final RequestCache requestCache = new RequestCache(
 			REQUEST_CACHE_LIMIT);
 
-	// true if exists, false if doesn't
-	private Map<String, Boolean> knownKeysCache = new HashMap<String, Boolean>();
 	// boolean, for the atomicity of it
-	public boolean removes = true;
+	public volatile boolean removes = true;
 
 	private final IDLTKLanguageToolkit toolkit;
 
 	private final IScriptProject project;
 
-	private MixinRequestor mixinRequestor = new MixinRequestor();
-
 	private ISourceModule currentModule;
 
+	/**
+	 * source modules being parsed
+	 */
+	private final Map<ISourceModule, ModuleReport> reports = new HashMap<ISourceModule, ModuleReport>();
+
+	/**
+	 * source modules to be reported by {@link #reportJob}
+	 */
+	private final Set<ISourceModule> reportQueue = new LinkedHashSet<ISourceModule>();
+
+	/**
+	 * Reports the source modules added to the model in the background
+	 */
+	private final Job reportJob = new Job("Mixin model update") { //$NON-NLS-1$
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			for (;;) {
+				final ISourceModule module;
+				synchronized (MixinModel.this) {
+					final Iterator<ISourceModule> i = reportQueue.iterator();
+					if (!i.hasNext()) {
+						return Status.OK_STATUS;
+					}
+					module = i.next();
+					i.remove();
+				}
+				if (monitor.isCanceled()) {
+					return Status.CANCEL_STATUS;
+				}
+				reportModule(module);
+			}
+		}
+	};
+
 	/**
 	 * modules required to be reparsed
 	 */
 	private Set<ISourceModule> modulesToReparse = new HashSet<ISourceModule>();
 
+	/**
+	 * Element tree saved by the previous session, elements not found in the
+	 * cache are restored from it without index queries. It is loaded by
+	 * {@link #loadSnapshot()} without the model lock and then only used with
+	 * the lock held.
+	 */
+	private volatile MixinModelSnapshot snapshot;
+
+	private volatile boolean snapshotLoaded = false;
+
+	/**
+	 * Incremented when the snapshot is invalidated, so a snapshot loaded in
+	 * the meantime is discarded
+	 */
+	private int snapshotGeneration;
+
+	/**
+	 * Held while loading the snapshot, never acquired with the model lock
+	 * being held
+	 */
+	private final Object snapshotLock = new Object();
+
 	/**
 	 * Creates workspace instance
 	 * 
@@ -116,6 +189,8 @@ public class MixinModel {
 		// long maxMemory = Runtime.getRuntime().freeMemory();
 
 		this.cache = new MixinCache(CACHE_LIMIT);
+		reportJob.setSystem(true);
+		reportJob.setPriority(Job.DECORATE);
 		DLTKCore.addElementChangedListener(changedListener,
 				ElementChangedEvent.POST_CHANGE);
 		ResourcesPlugin.getWorkspace().addResourceChangeListener(
@@ -124,6 +199,8 @@ public class MixinModel {
 	}
 
 	public void stop() {
+		reportJob.cancel();
+		saveSnapshot();
 		DLTKCore.removeElementChangedListener(changedListener);
 		ResourcesPlugin.getWorkspace().removeResourceChangeListener(
 				changedListener);
@@ -135,19 +212,43 @@ public class MixinModel {
 		if (DLTKCore.VERBOSE) {
 			System.out.println("MixinModel.get(" + key + ')'); //$NON-NLS-1$
 		}
-		MixinElement element = null;
+		final int known = keyStore.getKnown(key);
+		if (known == MixinKeyStore.MISSING) {
+			return null;
+		}
+		MixinElement element = (MixinElement) keyStore.getValue(key);
+		if (element != null && element.isFinal() && element.hasModules()) {
+			return element;
+		}
+		loadSnapshot();
+		boolean unknown;
 		synchronized (this) {
-			if (knownKeysCache.get(key) == Boolean.FALSE) {
-				return null;
+			if (removes && getCached(key) == null) {
+				element = restore(key);
+				if (element != null) {
+					return element;
+				}
+			}
+			unknown = known == 0 && removes && getCached(key) == null;
+		}
+		// the Bloom filters of the indexes answer most misses without a query
+		if (unknown
+				&& !SearchEngine.mightContainMixinKey(createSearchScope(), key,
+						toolkit)) {
+			synchronized (this) {
+				keyStore.setKnown(key, false);
 			}
-			element = (MixinElement) cache.get(key);
+			return null;
+		}
+		synchronized (this) {
+			element = getCached(key);
 			if (element == null) {
 				if (!removes) {
 					return null;
 				} else {
-					element = new MixinElement(key, currentModule);
-					cache.put(key, element);
-					cache.ensureSpaceLimit(1, element);
+					element = new MixinElement(keyStore.add(key),
+							currentModule);
+					cachePut(element);
 				}
 			}
 			if (DLTKCore.VERBOSE) {
@@ -158,17 +259,175 @@ public class MixinModel {
 		}
 		buildElementTree(element);
 		synchronized (this) {
-			if (element.isFinal() && element.sourceModules.size() > 0) {
-				knownKeysCache.put(key, Boolean.TRUE);
+			if (element.isFinal() && element.hasModules()) {
+				element.setKnown(true);
 				return element;
 			}
-			knownKeysCache.put(key, Boolean.FALSE);
-			cache.remove(element.key);
-			cache.resetSpaceLimit(CACHE_LIMIT, element);
+			element.setKnown(false);
+			cacheRemove(element);
 		}
 		return null;
 	}
 
+	// called with lock being held
+	private void cachePut(MixinElement element) {
+		keyStore.setValue(element.node, element);
+		cache.put(Integer.valueOf(element.node), element);
+		cache.ensureSpaceLimit(1, element);
+	}
+
+	// called with lock being held
+	private void cacheRemove(MixinElement element) {
+		if (!element.isDetached()) {
+			cache.remove(Integer.valueOf(element.node));
+			cache.resetSpaceLimit(CACHE_LIMIT, element);
+			element.detach();
+		}
+	}
+
+	// called with lock being held
+	private MixinElement getCached(String key) {
+		final int node = keyStore.find(key);
+		if (node == MixinKeyStore.NONE) {
+			return null;
+		}
+		return (MixinElement) cache.get(Integer.valueOf(node));
+	}
+
+	// called with lock being held
+	private MixinElement getCachedParent(MixinElement element) {
+		if (element.isDetached()) {
+			final String parentKey = element.getParentKey();
+			return parentKey != null ? getCached(parentKey) : null;
+		}
+		final int parent = keyStore.getParent(element.node);
+		if (parent == MixinKeyStore.NONE) {
+			return null;
+		}
+		return (MixinElement) cache.get(Integer.valueOf(parent));
+	}
+
+	private File getSnapshotFile() {
+		return MixinModelSnapshot.getFile(toolkit, project);
+	}
+
+	/**
+	 * Loads the snapshot on the first call. The file is read without the model
+	 * lock, concurrent lookups wait for the load instead of repeating it.
+	 */
+	private void loadSnapshot() {
+		if (snapshotLoaded || MixinModelSnapshot.isIndexing()
+				|| Thread.holdsLock(this)) {
+			return;
+		}
+		synchronized (snapshotLock) {
+			if (snapshotLoaded) {
+				return;
+			}
+			final int generation;
+			synchronized (this) {
+				generation = snapshotGeneration;
+			}
+			final MixinModelSnapshot loaded = MixinModelSnapshot.load(
+					getSnapshotFile(), toolkit, createSearchScope());
+			synchronized (this) {
+				// otherwise it is loaded again on the next lookup
+				if (generation == snapshotGeneration) {
+					snapshot = loaded;
+					snapshotLoaded = true;
+				}
+			}
+		}
+	}
+
+	// called with lock being held
+	private void invalidateSnapshot() {
+		snapshot = null;
+		++snapshotGeneration;
+	}
+
+	/**
+	 * Creates the element from the snapshot together with its children. The
+	 * objects of the element are reported when requested.
+	 */
+	// called with lock being held
+	private MixinElement restore(String key) {
+		if (snapshot == null) {
+			return null;
+		}
+		final ISourceModule[] modules = snapshot.getModules(key);
+		if (modules == null) {
+			return null;
+		}
+		final MixinElement element = new MixinElement(keyStore.add(key), null);
+		element.pendingModules = new ArrayList<ISourceModule>();
+		for (ISourceModule module : modules) {
+			element.addModule(module);
+			element.pendingModules.add(module);
+		}
+		element.bFinal = true;
+		cachePut(element);
+		for (String childKey : snapshot.getChildren(key)) {
+			MixinElement child = getCached(childKey);
+			if (child == null) {
+				child = restore(childKey);
+			}
+			if (child != null) {
+				element.addChild(child);
+			}
+		}
+		element.setKnown(true);
+		return element;
+	}
+
+	// called with lock being held
+	private void removeRestored(ISourceModule module) {
+		// a snapshot being loaded can still contain the keys of the module
+		++snapshotGeneration;
+		if (snapshot == null) {
+			return;
+		}
+		for (String key : snapshot.remove(module)) {
+			keyStore.removeKnown(key);
+			final MixinElement mixin = getCached(key);
+			if (mixin != null && mixin.pendingModules != null) {
+				final MixinElement parent = getCachedParent(mixin);
+				if (parent != null) {
+					parent.removeChild(mixin);
+					parent.bFinal = false;
+				}
+				cacheRemove(mixin);
+			}
+		}
+	}
+
+	// called with lock being held
+	private Set<ISourceModule> getKnownModules() {
+		final Set<ISourceModule> modules = new HashSet<ISourceModule>(
+				elementToMixinCache.keySet());
+		if (snapshot != null) {
+			modules.addAll(snapshot.getSourceModules());
+		}
+		return modules;
+	}
+
+	/**
+	 * Saves the resolved elements, so the next session could restore them
+	 * instead of querying the indexes.
+	 */
+	synchronized void saveSnapshot() {
+		final Map<String, ISourceModule[]> elements = new HashMap<String, ISourceModule[]>();
+		final Enumeration<?> enumeration = cache.elements();
+		while (enumeration.hasMoreElements()) {
+			final MixinElement e = (MixinElement) enumeration.nextElement();
+			if (e.bFinal && e.hasModules()) {
+				elements.put(e.getKey(), e.getModules());
+			}
+		}
+		MixinModelSnapshot.save(getSnapshotFile(), toolkit,
+				createSearchScope(), elements);
+	}
+
 	private IDLTKSearchScope createSearchScope() {
 		if (project != null) {
 			return SearchEngine.createSearchScope(project);
@@ -256,12 +515,12 @@ public class MixinModel {
 			MixinElement element, String pattern) {
 		// Skip all not matched keys
 		if (!CharOperation.match(pattern.toCharArray(),
-				element.key.toCharArray(), true)) {
+				element.getKey().toCharArray(), true)) {
 			return;
 		}
 		result.add(element);
-		knownKeysCache.put(element.key, Boolean.TRUE);
-		for (MixinElement child : element.children)
+		element.setKnown(true);
+		for (MixinElement child : element.getChildElements())
 			addKeyToSet(result, child, pattern);
 	}
 
@@ -328,26 +587,30 @@ public class MixinModel {
 
 	// long-running operation
 	public boolean keyExists(String key) {
+		// TODO: For this version we cache all information, so should be
+		// false.
+		if (!removes) {
+			return keyStore.getValue(key) != null;
+		}
+		MixinElement e = (MixinElement) keyStore.getValue(key);
+		if (e != null && e.hasModules()) {
+			return true;
+		}
+		final int known = keyStore.getKnown(key);
+		if (known != 0)
+			return known == MixinKeyStore.EXISTS;
+		loadSnapshot();
 		synchronized (this) {
-			// TODO: For this version we cache all information, so should be
-			// false.
-			if (!removes) {
-				return cache.get(key) != null;
-			}
-			MixinElement e = (MixinElement) this.cache.get(key);
-			if (e != null && e.sourceModules.size() > 0) {
+			if (snapshot != null && snapshot.getModules(key) != null) {
 				return true;
 			}
-			Boolean cached = knownKeysCache.get(key);
-			if (cached != null)
-				return cached;
 		}
 		boolean exists = get(key) != null;
 		synchronized (this) {
-			if (knownKeysCache.size() > KEYS_CACHE_LIMIT) {
-				knownKeysCache.clear();
+			if (keyStore.getKnownCount() > KEYS_CACHE_LIMIT) {
+				keyStore.clearKnown();
 			}
-			knownKeysCache.put(key, exists);
+			keyStore.setKnown(key, exists);
 		}
 		return exists;
 	}
@@ -360,9 +623,8 @@ public class MixinModel {
 		}
 		ISourceModule[] containedModules = findModules(element.getKey());
 		if (containedModules.length == 0) {
-			synchronized (cache) {
-				cache.remove(element.key);
-				cache.resetSpaceLimit(CACHE_LIMIT, element);
+			synchronized (this) {
+				cacheRemove(element);
 			}
 			return;
 		}
@@ -378,36 +640,76 @@ public class MixinModel {
 	// called with lock being held
 	private void markElementAsFinal(MixinElement element) {
 		element.bFinal = true;
-		for (MixinElement child : element.children) {
+		for (MixinElement child : element.getChildElements()) {
 			markElementAsFinal(child);
 		}
 	}
 
-	// TODO long-running operation. shouldn't be synchronized
-	public synchronized void reportModule(ISourceModule sourceModule) {
-			if (!elementToMixinCache.containsKey(sourceModule)) {
-				elementToMixinCache.put(sourceModule,
-						new ArrayList<MixinElement>());
-			} else {
-				// Module already in model. So we do not to rebuild it.
-				if (!modulesToReparse.remove(sourceModule)) {
-					return;
-				}
-				// We need to reparse module if some elements are moved from it.
+	/**
+	 * Parses the source module and adds its elements to the model, unless it
+	 * was already reported. The parser runs without the lock being held, the
+	 * concurrent reports of the same module wait for it. If the caller holds
+	 * the lock the module is reported by {@link #reportJob} instead.
+	 */
+	// long-running operation
+	public void reportModule(ISourceModule sourceModule) {
+		if (Thread.holdsLock(this)) {
+			// the parser can't be locked after the model, see
+			// ModuleReport#parse()
+			if (reportQueue.add(sourceModule)) {
+				reportJob.schedule(REPORT_DELAY);
 			}
-		try {
-			IMixinParser mixinParser = MixinManager
-					.getMixinParser(sourceModule);
-			if (mixinParser != null) {
-				this.currentModule = sourceModule;
-				mixinParser.setRequirestor(mixinRequestor);
-				mixinParser.parserSourceModule(true, sourceModule);
-				this.currentModule = null;
-			}
-		} catch (CoreException e) {
-			DLTKCore.error("Error in reportModule", e); //$NON-NLS-1$
 			return;
 		}
+		ModuleReport report;
+		final boolean owner;
+		synchronized (this) {
+			report = reports.get(sourceModule);
+			owner = report == null;
+			if (owner) {
+				if (!elementToMixinCache.containsKey(sourceModule)) {
+					elementToMixinCache.put(sourceModule,
+							new ArrayList<MixinElement>());
+				} else {
+					// Module already in model. So we do not to rebuild it.
+					if (!modulesToReparse.remove(sourceModule)) {
+						return;
+					}
+					// We need to reparse module if some elements are moved
+					// from it.
+				}
+				report = new ModuleReport(sourceModule);
+				reports.put(sourceModule, report);
+			}
+		}
+		if (owner) {
+			try {
+				report.parse();
+			} finally {
+				try {
+					synchronized (this) {
+						reports.remove(sourceModule);
+						report.apply();
+					}
+				} finally {
+					report.done.countDown();
+				}
+			}
+		} else if (report.owner != Thread.currentThread()
+				&& (report.parser == null || !Thread.holdsLock(report.parser))) {
+			// the owner could be waiting for the parser held by this thread
+			report.await();
+		}
+	}
+
+	// called with lock being held
+	private void scheduleReport(ISourceModule module) {
+		if (elementToMixinCache.containsKey(module)) {
+			modulesToReparse.add(module);
+		}
+		if (reportQueue.add(module)) {
+			reportJob.schedule(REPORT_DELAY);
+		}
 	}
 
 	/**
@@ -439,11 +741,20 @@ public class MixinModel {
 	 */
 	private MixinElement getCreateEmpty(String key) {
 		// called with lock being held
-		MixinElement element = (MixinElement) cache.get(key);
+		MixinElement element = getCached(key);
 		if (element == null) {
-			element = new MixinElement(key, currentModule);
-			this.cache.put(key, element);
-			this.cache.ensureSpaceLimit(1, element);
+			element = new MixinElement(keyStore.add(key), currentModule);
+			cachePut(element);
+		}
+		return element;
+	}
+
+	// called with lock being held
+	private MixinElement getCreateEmpty(int node) {
+		MixinElement element = (MixinElement) cache.get(Integer.valueOf(node));
+		if (element == null) {
+			element = new MixinElement(node, currentModule);
+			cachePut(element);
 		}
 		return element;
 	}
@@ -510,12 +821,11 @@ public class MixinModel {
 			}
 			if (delta.getKind() == IModelElementDelta.ADDED) {
 				if (element.getElementType() == IModelElement.SOURCE_MODULE) {
-					if (modulesToReparse.add((ISourceModule) element)) {
-						reportModule((ISourceModule) element);
-					}
+					scheduleReport((ISourceModule) element);
 				}
-				knownKeysCache.clear();
+				keyStore.clearKnown();
 				requestCache.flush();
+				invalidateSnapshot();
 			}
 
 			if ((delta.getFlags() & IModelElementDelta.F_CHILDREN) != 0) {
@@ -561,8 +871,7 @@ public class MixinModel {
 					List<ISourceModule> toRemove = new ArrayList<ISourceModule>();
 					synchronized (this) {
 						IProject project = (IProject) resource;
-						for (ISourceModule module : elementToMixinCache
-								.keySet()) {
+						for (ISourceModule module : getKnownModules()) {
 							IScriptProject scriptProject = module
 									.getScriptProject();
 							if (scriptProject != null) {
@@ -609,34 +918,34 @@ public class MixinModel {
 		if (DEBUG) {
 			log("remove " + element.getElementName()); //$NON-NLS-1$
 		}
+		final ModuleReport report = reports.get(element);
+		if (report != null) {
+			report.cancelled = true;
+		}
+		reportQueue.remove(element);
 		List<MixinElement> mixinCache = elementToMixinCache.get(element);
 		if (mixinCache != null) {
 			removeFromRequestCache(element);
 
 			for (MixinElement mixin : mixinCache) {
 				removes = true;
-				knownKeysCache.remove(mixin.key);
+				mixin.forgetKnown();
 				mixin.bFinal = false;
-				mixin.sourceModules.remove(element);
-				mixin.sourceModuleToObject.remove(element);
-				if (mixin.sourceModules.size() == 0) {
+				mixin.removeModule(element);
+				if (!mixin.hasModules()) {
 					// Remove frob parent.
-					String parentKey = mixin.getParentKey();
-					if (parentKey != null) {
-						MixinElement parent = (MixinElement) this.cache
-								.get(parentKey);
-						if (parent != null) {
-							parent.children.remove(mixin);
-							parent.bFinal = false;
-						}
+					MixinElement parent = getCachedParent(mixin);
+					if (parent != null) {
+						parent.removeChild(mixin);
+						parent.bFinal = false;
 					}
 					// Remove from cache
-					cache.remove(mixin.key);
-					cache.resetSpaceLimit(CACHE_LIMIT, mixin);
+					cacheRemove(mixin);
 				}
 			}
 			this.elementToMixinCache.remove(element);
 		}
+		removeRestored(element);
 	}
 
 	/**
@@ -645,7 +954,7 @@ public class MixinModel {
 	protected synchronized void removeFolder(IScriptFolder folder) {
 		final IPath folderPath = folder.getPath();
 		final List<ISourceModule> modulesToRemove = new ArrayList<ISourceModule>();
-		for (final ISourceModule module : elementToMixinCache.keySet()) {
+		for (final ISourceModule module : getKnownModules()) {
 			final IPath path = module.getPath();
 			if (folderPath.isPrefixOf(path)) {
 				modulesToRemove.add(module);
@@ -686,86 +995,237 @@ public class MixinModel {
 
 	private static final Object[] NO_OBJECTS = new Object[0];
 
+	private static final MixinElement[] NO_ELEMENTS = new MixinElement[0];
+
 	private final class MixinElement implements IMixinElement,
 			IInternalMixinElement {
-		private String key;
-		private boolean bFinal = false;
-		private List<ISourceModule> sourceModules = new ArrayList<ISourceModule>();
-		private Map<ISourceModule, List<Object>> sourceModuleToObject = new HashMap<ISourceModule, List<Object>>();
+		/** node of the key in {@link MixinModel#keyStore} */
+		private final int node;
+		/**
+		 * Key of the element removed from the cache, its node could be reused
+		 * by another key afterwards.
+		 */
+		private volatile String detachedKey;
+		private int hash;
+		private volatile boolean bFinal = false;
+		/**
+		 * Source modules followed by the arrays of their objects, replaced
+		 * with a modified copy on change.
+		 */
+		private volatile Object[] sourceModules = NO_OBJECTS;
 
-		private Set<MixinElement> children = new HashSet<MixinElement>();
+		/**
+		 * Source modules not reported yet, if the element was restored from
+		 * the snapshot
+		 */
+		private List<ISourceModule> pendingModules;
 
 		public boolean equals(Object obj) {
 			if (this == obj)
 				return true;
 			if (obj instanceof MixinElement) {
-				return this.key.equals(((MixinElement) obj).key);
+				final MixinElement other = (MixinElement) obj;
+				if (other.getModel() == MixinModel.this && !isDetached()
+						&& !other.isDetached()) {
+					return node == other.node;
+				}
+				return getKey().equals(other.getKey());
 			}
 			return false;
 		}
 
 		public int hashCode() {
-			return this.key.hashCode();
+			int h = hash;
+			if (h == 0) {
+				h = getKey().hashCode();
+				hash = h;
+			}
+			return h;
 		}
 
-		/*
-		 * public MixinElement(String key) { this.key = key; }
-		 */
+		private MixinModel getModel() {
+			return MixinModel.this;
+		}
 
 		public String toString() {
 			return this.getLastKeySegment() + " final[" + this.bFinal + "]" //$NON-NLS-1$ //$NON-NLS-2$
-					+ this.children + " "; //$NON-NLS-1$
+					+ Arrays.asList(getChildElements()) + " "; //$NON-NLS-1$
 		}
 
-		/*
-		 * public MixinElement(ElementInfo info, ISourceModule module) {
-		 * this(info.key, currentModule); addInfo(info, module); }
-		 */
 		// called with lock being held
 		void addInfo(ElementInfo info, ISourceModule module) {
 			if (info.object != null) {
-				List<Object> list = this.sourceModuleToObject.get(module);
-				if (list == null) {
-					list = new ArrayList<Object>();
-					this.sourceModuleToObject.put(module, list);
-				}
-				list.add(info.object);
+				addModule(module);
+				final Object[] data = sourceModules.clone();
+				final int i = indexOf(data, module);
+				final Object[] objects = (Object[]) data[i + 1];
+				final Object[] newObjects = new Object[objects.length + 1];
+				System.arraycopy(objects, 0, newObjects, 0, objects.length);
+				newObjects[objects.length] = info.object;
+				data[i + 1] = newObjects;
+				sourceModules = data;
 			}
 		}
 
 		// called with lock being held
-		public MixinElement(String key, ISourceModule currentModule) {
-			this.key = key;
+		public MixinElement(int node, ISourceModule currentModule) {
+			this.node = node;
 			addModule(currentModule);
 		}
 
 		// called with lock being held
 		void addModule(ISourceModule currentModule) {
 			if (currentModule != null) {
-				if (!this.sourceModules.contains(currentModule)) {
-					this.sourceModules.add(currentModule);
+				final Object[] data = sourceModules;
+				if (indexOf(data, currentModule) == -1) {
+					final Object[] newData = new Object[data.length + 2];
+					System.arraycopy(data, 0, newData, 0, data.length);
+					newData[data.length] = currentModule;
+					newData[data.length + 1] = NO_OBJECTS;
+					sourceModules = newData;
+				}
+			}
+		}
+
+		// called with lock being held
+		void removeModule(ISourceModule module) {
+			final Object[] data = sourceModules;
+			final int i = indexOf(data, module);
+			if (i != -1) {
+				final Object[] newData = new Object[data.length - 2];
+				System.arraycopy(data, 0, newData, 0, i);
+				System.arraycopy(data, i + 2, newData, i, newData.length - i);
+				sourceModules = newData;
+			}
+		}
+
+		private int indexOf(Object[] data, ISourceModule module) {
+			for (int i = 0; i < data.length; i += 2) {
+				if (data[i].equals(module)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		boolean hasModules() {
+			return sourceModules.length != 0;
+		}
+
+		ISourceModule[] getModules() {
+			final Object[] data = sourceModules;
+			final ISourceModule[] result = new ISourceModule[data.length / 2];
+			for (int i = 0; i < result.length; ++i) {
+				result[i] = (ISourceModule) data[i * 2];
+			}
+			return result;
+		}
+
+		boolean isDetached() {
+			return detachedKey != null;
+		}
+
+		/**
+		 * Called when the element is removed from the cache, the key is kept
+		 * in the element from now on.
+		 */
+		// called with lock being held
+		void detach() {
+			if (detachedKey == null) {
+				detachedKey = keyStore.getKey(node);
+				if (keyStore.getValue(node) == this) {
+					keyStore.setValue(node, null);
+				}
+			}
+		}
+
+		// called with lock being held
+		void setKnown(boolean exists) {
+			if (isDetached()) {
+				keyStore.setKnown(detachedKey, exists);
+			} else {
+				keyStore.setKnown(node, exists);
+			}
+		}
+
+		// called with lock being held
+		void forgetKnown() {
+			if (isDetached()) {
+				keyStore.removeKnown(detachedKey);
+			} else {
+				keyStore.removeKnown(node);
+			}
+		}
+
+		// called with lock being held
+		void addChild(MixinElement child) {
+			if (!child.isDetached()) {
+				keyStore.setChild(child.node, true);
+			}
+		}
+
+		// called with lock being held
+		void removeChild(MixinElement child) {
+			if (!child.isDetached()) {
+				keyStore.setChild(child.node, false);
+			}
+		}
+
+		MixinElement[] getChildElements() {
+			if (!isDetached()) {
+				final Object[] values = keyStore.getChildValues(node,
+						MixinKeyStore.CHILD);
+				// the node could be reused after the element is detached
+				if (!isDetached()) {
+					final MixinElement[] result = new MixinElement[values.length];
+					System.arraycopy(values, 0, result, 0, values.length);
+					return result;
 				}
 			}
+			return NO_ELEMENTS;
 		}
 
 		public IMixinElement[] getChildren() {
 			this.validate();
-			synchronized (MixinModel.this) {
-				return children.toArray(new IMixinElement[children.size()]);
+			final MixinElement[] children = getChildElements();
+			if (children.length == 0 && isDetached()) {
+				// removed from the cache, the children are of the new element
+				final IMixinElement element = get(detachedKey);
+				if (element != null && element != this) {
+					return element.getChildren();
+				}
 			}
+			final IMixinElement[] result = new IMixinElement[children.length];
+			System.arraycopy(children, 0, result, 0, children.length);
+			return result;
 		}
 
 		public IMixinElement getChildren(String key) {
 			this.validate();
-			return MixinModel.this.get(this.key
+			return MixinModel.this.get(this.getKey()
 					+ IMixinRequestor.MIXIN_NAME_SEPARATOR + key);
 		}
 
 		public String getKey() {
-			return this.key;
+			if (!isDetached()) {
+				final String key = keyStore.getKey(node);
+				if (!isDetached()) {
+					return key;
+				}
+			}
+			return detachedKey;
 		}
 
 		protected String getParentKey() {
+			if (!isDetached()) {
+				final int parent = keyStore.getParent(node);
+				final String parentKey = parent != MixinKeyStore.NONE ? keyStore
+						.getKey(parent) : null;
+				if (!isDetached()) {
+					return parentKey;
+				}
+			}
+			final String key = detachedKey;
 			int pos = key.lastIndexOf(IMixinRequestor.MIXIN_NAME_SEPARATOR);
 			if (pos == -1) {
 				return null;
@@ -774,6 +1234,13 @@ public class MixinModel {
 		}
 
 		public String getLastKeySegment() {
+			if (!isDetached()) {
+				final String segment = keyStore.getSegment(node);
+				if (!isDetached()) {
+					return segment;
+				}
+			}
+			final String key = detachedKey;
 			int pos = key.lastIndexOf(IMixinRequestor.MIXIN_NAME_SEPARATOR);
 			if (pos == -1) {
 				return key;
@@ -794,52 +1261,76 @@ public class MixinModel {
 			this.validate();
 			// TODO understand why we need this
 			if (!isFinal()) {
-				get(key);
-			}
-			synchronized (MixinModel.this) {
-				return this.sourceModules
-						.toArray(new ISourceModule[this.sourceModules.size()]);
+				get(getKey());
 			}
+			return getModules();
 		}
 
 		public Object[] getObjects(ISourceModule module) {
 			this.validate();
-			synchronized (MixinModel.this) {
-				List<Object> list = this.sourceModuleToObject.get(module);
-				if (list == null)
-					return NO_OBJECTS;
-				Object[] objs = list.toArray();
-				for (Object obj : objs) {
-					notifyInitializeListener(this, module, obj);
-				}
-				return objs;
+			reportPendingModule(module);
+			final Object[] data = sourceModules;
+			final int i = indexOf(data, module);
+			if (i == -1)
+				return NO_OBJECTS;
+			Object[] objs = (Object[]) data[i + 1];
+			if (objs.length == 0)
+				return NO_OBJECTS;
+			objs = objs.clone();
+			for (Object obj : objs) {
+				notifyInitializeListener(this, module, obj);
 			}
+			return objs;
 		}
 
 		public Object[] getAllObjects() {
 			this.validate();
-			synchronized (MixinModel.this) {
-				Set<Object> objects = new HashSet<Object>();
-				for (ISourceModule module : sourceModules) {
-					for (Object obj : this.getObjects(module)) {
-						objects.add(obj);
-					}
+			reportPendingModule(null);
+			Set<Object> objects = new HashSet<Object>();
+			for (ISourceModule module : getModules()) {
+				for (Object obj : this.getObjects(module)) {
+					objects.add(obj);
 				}
-				return objects.toArray();
 			}
+			return objects.toArray();
 		}
 
 		public boolean isFinal() {
 			return bFinal;
 		}
 
+		/**
+		 * Reports the source module (all of them if <code>null</code>) if the
+		 * element was restored without its objects.
+		 */
+		// potentially long-running operation
+		private void reportPendingModule(ISourceModule module) {
+			final ISourceModule[] modules;
+			synchronized (MixinModel.this) {
+				if (pendingModules == null || pendingModules.isEmpty()) {
+					return;
+				}
+				if (module == null) {
+					modules = pendingModules
+							.toArray(new ISourceModule[pendingModules.size()]);
+					pendingModules.clear();
+				} else if (pendingModules.remove(module)) {
+					modules = new ISourceModule[] { module };
+				} else {
+					return;
+				}
+			}
+			for (ISourceModule m : modules) {
+				reportModule(m);
+			}
+		}
+
 		public void close() {
 			synchronized (MixinModel.this) {
-				knownKeysCache.remove(key);
+				forgetKnown();
 				removes = true;
 				this.bFinal = false;
-				for (int i = 0; i < sourceModules.size(); i++) {
-					ISourceModule module = sourceModules.get(i);
+				for (ISourceModule module : getModules()) {
 					List<MixinElement> list = elementToMixinCache.get(module);
 					if (list != null) {
 						list.remove(this);
@@ -851,26 +1342,21 @@ public class MixinModel {
 						modulesToReparse.add(module);
 					}
 				}
-				this.sourceModules.clear();
-				this.sourceModuleToObject.clear();
+				this.sourceModules = NO_OBJECTS;
 
 				// Lets also clean parent data
 				// Remove frob parent.
-				String parentKey = getParentKey();
 				MixinElement element = this;
-				while (parentKey != null) {
-					MixinElement parent = (MixinElement) cache.get(parentKey);
-					if (parent != null) {
-						removes = true;
-						knownKeysCache.remove(parent.key);
-						parent.children.remove(element);
-						parent.bFinal = false;
-						element = parent;
-						parentKey = parent.getParentKey();
-					} else {
-						break;
-					}
+				MixinElement parent = getCachedParent(this);
+				while (parent != null) {
+					removes = true;
+					parent.forgetKnown();
+					parent.removeChild(element);
+					parent.bFinal = false;
+					element = parent;
+					parent = getCachedParent(parent);
 				}
+				detach();
 			}
 		}
 
@@ -882,31 +1368,94 @@ public class MixinModel {
 		}
 	};
 
-	private final class MixinRequestor implements IMixinRequestor {
+	/**
+	 * Elements reported by the mixin parser for a source module. The parser
+	 * runs without the lock being held, the elements are added to the model
+	 * afterwards.
+	 * <p>
+	 * The shared parser is locked while it runs and it may call back into the
+	 * model, so its monitor is always acquired before the model lock and never
+	 * while holding it.
+	 */
+	private final class ModuleReport implements IMixinRequestor {
+		final ISourceModule module;
+		final List<ElementInfo> infos = new ArrayList<ElementInfo>();
+		final CountDownLatch done = new CountDownLatch(1);
+		final Thread owner = Thread.currentThread();
+		final IMixinParser parser;
+		// modified with lock being held
+		boolean cancelled = false;
+
+		ModuleReport(ISourceModule module) {
+			this.module = module;
+			IMixinParser mixinParser = null;
+			try {
+				mixinParser = MixinManager.getMixinParser(module);
+			} catch (CoreException e) {
+				DLTKCore.error("Error in reportModule", e); //$NON-NLS-1$
+			}
+			this.parser = mixinParser;
+		}
+
+		void await() {
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
 		public void reportElement(ElementInfo info) {
-			// if( DLTKCore.VERBOSE_MIXIN ) {
-			// System.out.println("Append mixin:" + info.key);
-			// }
-			synchronized (MixinModel.this) {
-				knownKeysCache.put(info.key, Boolean.TRUE);
-				String[] list = info.key.split("\\" //$NON-NLS-1$
-						+ IMixinRequestor.MIXIN_NAME_SEPARATOR);
-				MixinElement element = getCreateEmpty(info.key);
-				addElementToModules(element);
-				element.addModule(currentModule);
-				element.addInfo(info, currentModule);
-				// Append as childs for all other elements. Also append modules
-				// to
-				// all selected elements.
-				if (list.length != 1) {
-					for (int i = 0; i < list.length - 1; ++i) {
-						MixinElement parent = getCreateEmpty(element
-								.getParentKey());
-						parent.children.add(element);
-						addElementToModules(parent);
-						element = parent;
-					}
+			// the parser could reuse the info
+			final ElementInfo copy = new ElementInfo();
+			copy.key = info.key;
+			copy.object = info.object;
+			infos.add(copy);
+		}
+
+		// long-running operation
+		void parse() {
+			if (parser != null) {
+				// the parser is shared, the model lock isn't held here
+				synchronized (parser) {
+					parser.setRequirestor(this);
+					parser.parserSourceModule(true, module);
+				}
+			}
+		}
+
+		// called with lock being held
+		void apply() {
+			if (cancelled) {
+				return;
+			}
+			currentModule = module;
+			try {
+				for (ElementInfo info : infos) {
+					addElement(info);
 				}
+			} finally {
+				currentModule = null;
+			}
+		}
+
+		// called with lock being held
+		private void addElement(ElementInfo info) {
+			MixinElement element = getCreateEmpty(info.key);
+			element.setKnown(true);
+			addElementToModules(element);
+			element.addModule(currentModule);
+			element.addInfo(info, currentModule);
+			// Append as childs for all other elements. Also append modules
+			// to
+			// all selected elements.
+			int parentNode = keyStore.getParent(element.node);
+			while (parentNode != MixinKeyStore.NONE) {
+				MixinElement parent = getCreateEmpty(parentNode);
+				parent.addChild(element);
+				addElementToModules(parent);
+				element = parent;
+				parentNode = keyStore.getParent(element.node);
 			}
 		}
 
@@ -950,14 +1499,16 @@ public class MixinModel {
 	}
 
 	public synchronized void clearKeysCache(String key) {
-		knownKeysCache.remove(key);
+		keyStore.removeKnown(key);
 		requestCache.remove(key);
 		// MixinElement e = (MixinElement)this.cache.get(key);
 	}
 
 	public synchronized void clearKeysCache() {
-		knownKeysCache.clear();
+		keyStore.clearKnown();
 		requestCache.flush();
+		// the indexes changed, the snapshot can miss their new keys
+		invalidateSnapshot();
 	}
 
 	// // Mixin object initialize listeners code
@@ -972,7 +1523,6 @@ public class MixinModel {
 				.remove(mixinObjectInitializeListener);
 	}
 
-	// called with lock being help
 	private void notifyInitializeListener(IMixinElement element,
 			ISourceModule module, Object o) {
 		Object[] listeners = mixinObjectInitializeListeners.getListeners();
@@ -983,11 +1533,20 @@ public class MixinModel {
 	}
 
 	protected synchronized void clear() {
+		final Enumeration<?> enumeration = cache.elements();
+		while (enumeration.hasMoreElements()) {
+			((MixinElement) enumeration.nextElement()).detach();
+		}
 		cache.flush();
+		keyStore.clear();
+		for (ModuleReport report : reports.values()) {
+			report.cancelled = true;
+		}
+		reportQueue.clear();
 		elementToMixinCache.clear();
-		knownKeysCache.clear();
 		modulesToReparse.clear();
 		requestCache.flush();
+		invalidateSnapshot();
 	}
 
 	public String getNature() {
@@ -49,6 +49,20 @@ public class MixinModelRegistry {
 
 	}
 
+	/**
+	 * Saves the snapshots of the registered models, see
+	 * {@link MixinModel#stop()}.
+	 * 
+	 * @since 5.0
+	 */
+	public static void saveSnapshots() {
+		synchronized (models) {
+			for (final MixinModel model : models.keySet()) {
+				model.saveSnapshot();
+			}
+		}
+	}
+
 	public static void clearKeysCache(IDLTKLanguageToolkit toolkit) {
 		synchronized (models) {
 			for (final MixinModel model : models.keySet()) {
@@ -17,6 +17,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.dltk.core.DLTKCore;
@@ -31,7 +32,9 @@ import org.eclipse.dltk.core.RuntimePerformanceMonitor;
 import org.eclipse.dltk.core.WorkingCopyOwner;
 import org.eclipse.dltk.core.RuntimePerformanceMonitor.PerformanceNode;
 import org.eclipse.dltk.core.index2.search.NewSearchEngine;
+import org.eclipse.dltk.core.search.index.Index;
 import org.eclipse.dltk.core.search.indexing.IndexManager;
+import org.eclipse.dltk.core.search.indexing.ReadWriteMonitor;
 import org.eclipse.dltk.internal.compiler.env.AccessRuleSet;
 import org.eclipse.dltk.internal.core.ModelManager;
 import org.eclipse.dltk.internal.core.Openable;
@@ -1062,6 +1065,53 @@ public class SearchEngine {
 				new NullProgressMonitor());
 	}
 
+	/**
+	 * Returns false if the mixin indexes of the scope certainly don't contain
+	 * the key, so a mixin search for it would find nothing. The indexes answer
+	 * from their Bloom filters without reading their category tables. Returns
+	 * true if the key is a pattern or if some indexes are not ready yet.
+	 * 
+	 * @since 5.0
+	 */
+	public static boolean mightContainMixinKey(IDLTKSearchScope scope,
+			String key, IDLTKLanguageToolkit toolkit) {
+		if (key.indexOf('*') != -1 || key.indexOf('?') != -1)
+			return true;
+		IndexManager indexManager = ModelManager.getModelManager()
+				.getIndexManager();
+		if (indexManager.awaitingJobsCount() > 0)
+			return true; // the indexes are being updated
+
+		MixinPattern pattern = new MixinPattern(key.toCharArray(),
+				SearchPattern.R_EXACT_MATCH | SearchPattern.R_CASE_SENSITIVE,
+				toolkit);
+		SearchParticipant participant = SearchEngine
+				.getDefaultSearchParticipant();
+		IPath[] indexLocations = participant.selectMixinIndexes(pattern,
+				scope);
+		char[][] categories = pattern.getIndexCategories();
+		char[] indexKey = pattern.getIndexKey();
+		for (int i = 0; i < indexLocations.length; i++) {
+			Index index = indexManager.getIndex(indexLocations[i]
+					.toOSString());
+			if (index == null)
+				return true; // not loaded yet
+			if (participant.isSkipped(index))
+				continue;
+			ReadWriteMonitor monitor = index.monitor;
+			if (monitor == null)
+				continue; // index got deleted since acquired
+			monitor.enterRead();
+			try {
+				if (index.mightContain(categories, indexKey))
+					return true;
+			} finally {
+				monitor.exitRead();
+			}
+		}
+		return false;
+	}
+
 	public static String[] searchMixinPatterns(final IDLTKSearchScope scope,
 			String key, IDLTKLanguageToolkit toolkit) {
 		// Index requestor
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.search.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Set of words answering whether a word might have been added, without false
+ * negatives. With 10 bits per word and 7 hash functions about 1% of the words
+ * which were not added are reported as present.
+ */
+final class BloomFilter {
+
+	private static final int BITS_PER_WORD = 10;
+
+	private static final int HASH_COUNT = 7;
+
+	private final byte[] bits;
+
+	private final int hashCount;
+
+	BloomFilter(int wordCount) {
+		this(new byte[Math.max(8, (wordCount * BITS_PER_WORD + 7) / 8)],
+				HASH_COUNT);
+	}
+
+	private BloomFilter(byte[] bits, int hashCount) {
+		this.bits = bits;
+		this.hashCount = hashCount;
+	}
+
+	void add(char[] word) {
+		long hash = hash(word);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		int size = this.bits.length << 3;
+		for (int i = 0; i < this.hashCount; i++) {
+			int bit = ((hash1 + i * hash2) & 0x7FFFFFFF) % size;
+			this.bits[bit >>> 3] |= 1 << (bit & 7);
+		}
+	}
+
+	boolean mightContain(char[] word) {
+		long hash = hash(word);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		int size = this.bits.length << 3;
+		for (int i = 0; i < this.hashCount; i++) {
+			int bit = ((hash1 + i * hash2) & 0x7FFFFFFF) % size;
+			if ((this.bits[bit >>> 3] & (1 << (bit & 7))) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	private static long hash(char[] word) {
+		// FNV-1a followed by the finalizer of MurmurHash3, so both halves of
+		// the result are well distributed
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0, l = word.length; i < l; i++) {
+			hash ^= word[i];
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	void write(DataOutput stream) throws IOException {
+		stream.writeByte(this.hashCount);
+		stream.writeInt(this.bits.length);
+		stream.write(this.bits);
+	}
+
+	static BloomFilter read(DataInput stream) throws IOException {
+		int hashCount = stream.readUnsignedByte();
+		byte[] bits = new byte[stream.readInt()];
+		stream.readFully(bits);
+		return new BloomFilter(bits, hashCount);
+	}
+}
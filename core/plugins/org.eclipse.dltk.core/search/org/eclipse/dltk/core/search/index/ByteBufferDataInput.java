@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.search.index;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link DataInput} implementation reading from a {@link ByteBuffer}, used to
+ * decode memory mapped index files with the same code as the stream based
+ * path.
+ */
+class ByteBufferDataInput implements DataInput {
+
+	private final ByteBuffer buffer;
+
+	ByteBufferDataInput(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	private void ensureAvailable(int count) throws EOFException {
+		if (buffer.remaining() < count)
+			throw new EOFException();
+	}
+
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		ensureAvailable(len);
+		buffer.get(b, off, len);
+	}
+
+	public int skipBytes(int n) {
+		final int count = Math.min(n, buffer.remaining());
+		buffer.position(buffer.position() + count);
+		return count;
+	}
+
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	public byte readByte() throws IOException {
+		ensureAvailable(1);
+		return buffer.get();
+	}
+
+	public int readUnsignedByte() throws IOException {
+		ensureAvailable(1);
+		return buffer.get() & 0xFF;
+	}
+
+	public short readShort() throws IOException {
+		ensureAvailable(2);
+		return buffer.getShort();
+	}
+
+	public int readUnsignedShort() throws IOException {
+		ensureAvailable(2);
+		return buffer.getShort() & 0xFFFF;
+	}
+
+	public char readChar() throws IOException {
+		ensureAvailable(2);
+		return buffer.getChar();
+	}
+
+	public int readInt() throws IOException {
+		ensureAvailable(4);
+		return buffer.getInt();
+	}
+
+	public long readLong() throws IOException {
+		ensureAvailable(8);
+		return buffer.getLong();
+	}
+
+	public float readFloat() throws IOException {
+		ensureAvailable(4);
+		return buffer.getFloat();
+	}
+
+	public double readDouble() throws IOException {
+		ensureAvailable(8);
+		return buffer.getDouble();
+	}
+
+	/**
+	 * Reads the next line of text the same way as
+	 * {@link DataInputStream#readLine()}: bytes are converted to characters
+	 * one to one and the line is terminated by LF, CR or CR LF.
+	 */
+	public String readLine() {
+		if (!buffer.hasRemaining())
+			return null;
+		final StringBuilder sb = new StringBuilder();
+		while (buffer.hasRemaining()) {
+			final int c = buffer.get() & 0xFF;
+			if (c == '\n')
+				break;
+			if (c == '\r') {
+				if (buffer.hasRemaining()
+						&& buffer.get(buffer.position()) == '\n')
+					buffer.position(buffer.position() + 1);
+				break;
+			}
+			sb.append((char) c);
+		}
+		return sb.toString();
+	}
+
+	public String readUTF() throws IOException {
+		return DataInputStream.readUTF(this);
+	}
+
+}
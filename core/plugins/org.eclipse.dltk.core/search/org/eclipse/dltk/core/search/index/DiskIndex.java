@@ -12,13 +12,19 @@ package org.eclipse.dltk.core.search.index;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Pattern;
 
 import org.eclipse.dltk.compiler.CharOperation;
@@ -44,26 +50,62 @@ public class DiskIndex {
 
 	private int[] chunkOffsets;
 
-	private int documentReferenceSize; // 1, 2 or more bytes... depends on # of
-	// document names
-
 	private int startOfCategoryTables;
 
 	private HashtableOfIntValues categoryOffsets;
 
-	private int cacheUserCount;
+	private HashtableOfObject categoryFilters; // category name -> BloomFilter
+	// of the words of the category table, read with the header so exact
+	// lookups of missing words don't read the table
+
+	private volatile int cacheUserCount;
 
-	private String[][] cachedChunks; // decompressed chunks of document names
+	private volatile AtomicReferenceArray<String[]> cachedChunks; // decompressed
+	// chunks of document names
 
-	private HashtableOfObject categoryTables; // category name ->
+	private volatile HashtableOfObject categoryTables; // category name ->
 	// HashtableOfObject(words ->
 	// int[] of document #'s) or
 	// offset if not read yet
 
-	private char[] cachedCategoryName;
+	// Queries don't take the monitor of the index: once published the
+	// categoryTables snapshot and the tables it contains are never modified
+	// while the index is readable, new entries are added to a copy which
+	// replaces the snapshot. Concurrent readers may lose each other's update,
+	// which only means the table is decoded again. The tables are changed in
+	// place only while merging, which happens with the write lock held.
+
+	private volatile HashtableOfObject categoryWords; // category name ->
+	// char[][] of the words of the category table in sorted order, used to
+	// visit only the words which can match prefixes and patterns
+
+	private volatile char[] cachedCategoryName;
+
+	private volatile ByteBuffer mappedFile; // content of the index file while
+	// queries are running, see getMappedFile()
+
+	private DiskIndex previous; // previous segment of the index file if the
+	// changes were appended by appendSegment(), null for the first one
+
+	private String[] deletedDocumentNames; // documents of the previous
+	// segments removed by this segment
+
+	private SimpleLookupTable newerDocuments; // documents added, changed or
+	// removed by the next segments, which hide the content of this one, null
+	// for the last segment. See computeNewerDocuments()
+
 	char separator = Index.DEFAULT_SEPARATOR;
 
-	public static final String SIGNATURE = "DLTK INDEX VERSION 1.014"; //$NON-NLS-1$
+	/**
+	 * The signature of the file format. Index files with another signature
+	 * fail to initialize, so the IndexManager discards and rebuilds them on
+	 * the first open.
+	 */
+	public static final String SIGNATURE = "DLTK INDEX VERSION 1.017"; //$NON-NLS-1$
+
+	// the offset to the header info of the last segment follows the signature
+	private static final int HEADER_INFO_OFFSET_POSITION = 2 + SIGNATURE
+			.length();
 
 	public final static boolean DEBUG = false;
 
@@ -73,6 +115,21 @@ public class DiskIndex {
 
 	private static final int CHUNK_SIZE = 100;
 
+	private static final char[] NON_ASCII = { '\u0080' };
+
+	private static final Object UNMAPPER = createUnmapper();
+
+	/**
+	 * Whether the index file should be memory mapped while queries are running
+	 * instead of being opened for each category table, document array and
+	 * document name chunk. Mappings are unmapped explicitly when released, if
+	 * the running VM does not allow that they are disabled on Windows, since
+	 * the mapped file could not be replaced on save until the mapping is
+	 * garbage collected.
+	 */
+	private static final boolean MAPPED_READS = canUnmap()
+			|| File.separatorChar != '\\';
+
 	static class IntList {
 
 		int size;
@@ -110,115 +167,188 @@ public class DiskIndex {
 		this.numberOfChunks = -1;
 		this.sizeOfLastChunk = -1;
 		this.chunkOffsets = null;
-		this.documentReferenceSize = -1;
 		this.cacheUserCount = -1;
 		this.cachedChunks = null;
 		this.categoryTables = null;
+		this.categoryWords = null;
 		this.cachedCategoryName = null;
 		this.categoryOffsets = null;
+		this.categoryFilters = null;
+		this.mappedFile = null;
+		this.previous = null;
+		this.deletedDocumentNames = null;
+		this.newerDocuments = null;
+	}
+
+	/**
+	 * Output stream appending to the existing index file, its size() is the
+	 * offset in the file.
+	 */
+	private static class AppendingOutputStream extends DataOutputStream {
+
+		AppendingOutputStream(OutputStream out, int fileLength) {
+			super(out);
+			this.written = fileLength;
+		}
 	}
 
 	SimpleSet addDocumentNames(String substring, MemoryIndex memoryIndex)
 			throws IOException {
+		int size = this.numberOfChunks > 0 ? this.numberOfChunks * CHUNK_SIZE
+				: 3;
+		SimpleSet results = new SimpleSet(size);
+		// callers only hold the read lock, the query reference keeps the
+		// mapped file of the segments from being released while it is read
+		startQuery();
+		try {
+			addDocumentNames(substring, memoryIndex == null ? null
+					: memoryIndex.docsToReferences, results);
+		} finally {
+			stopQuery();
+		}
+		return results;
+	}
+
+	private void addDocumentNames(String substring,
+			SimpleLookupTable maskedDocuments, SimpleSet results)
+			throws IOException {
 		// must skip over documents which have been added/changed/deleted in the
-		// memory index
+		// memory index or in the next segments
 		String[] docNames = readAllDocumentNames();
-		SimpleSet results = new SimpleSet(docNames.length);
-		if (substring == null) {
-			if (memoryIndex == null) {
-				for (int i = 0, l = docNames.length; i < l; i++)
+		SimpleLookupTable newerDocs = this.newerDocuments;
+		if (maskedDocuments == null && newerDocs == null) {
+			for (int i = 0, l = docNames.length; i < l; i++)
+				if (substring == null || docNames[i].startsWith(substring, 0))
 					results.add(docNames[i]);
-			} else {
-				SimpleLookupTable docsToRefs = memoryIndex.docsToReferences;
-				for (int i = 0, l = docNames.length; i < l; i++) {
-					String docName = docNames[i];
-					if (!docsToRefs.containsKey(docName))
-						results.add(docName);
-				}
-			}
 		} else {
-			if (memoryIndex == null) {
-				for (int i = 0, l = docNames.length; i < l; i++)
-					if (docNames[i].startsWith(substring, 0))
-						results.add(docNames[i]);
+			for (int i = 0, l = docNames.length; i < l; i++) {
+				String docName = docNames[i];
+				if ((substring == null || docName.startsWith(substring, 0))
+						&& !isMasked(docName, maskedDocuments, newerDocs))
+					results.add(docName);
+			}
+		}
+		if (this.previous != null)
+			this.previous.addDocumentNames(substring, maskedDocuments,
+					results);
+	}
+
+	private static boolean isMasked(String docName,
+			SimpleLookupTable maskedDocuments, SimpleLookupTable newerDocs) {
+		return maskedDocuments != null && maskedDocuments.containsKey(docName)
+				|| newerDocs != null && newerDocs.containsKey(docName);
+	}
+
+	/**
+	 * Computes the documents hiding the content of each previous segment: the
+	 * documents added, changed or removed by the segments appended after it.
+	 * Called once the segments are read or appended, so queries only look the
+	 * document names up instead of collecting them on every call. The sender
+	 * must own the write lock, this must be the last segment.
+	 */
+	private void computeNewerDocuments() throws IOException {
+		this.newerDocuments = null;
+		SimpleLookupTable newer = null;
+		for (DiskIndex segment = this; segment.previous != null; segment = segment.previous) {
+			SimpleLookupTable masks;
+			if (newer == null) {
+				masks = new SimpleLookupTable();
 			} else {
-				SimpleLookupTable docsToRefs = memoryIndex.docsToReferences;
-				for (int i = 0, l = docNames.length; i < l; i++) {
-					String docName = docNames[i];
-					if (docName.startsWith(substring, 0)
-							&& !docsToRefs.containsKey(docName))
-						results.add(docName);
+				try {
+					masks = (SimpleLookupTable) newer.clone();
+				} catch (CloneNotSupportedException e) {
+					throw new IllegalStateException(e.getMessage());
 				}
 			}
+			String[] docNames = segment.readAllDocumentNames();
+			for (int i = 0, l = docNames.length; i < l; i++)
+				masks.put(docNames[i], null);
+			for (int i = 0, l = segment.deletedDocumentNames.length; i < l; i++)
+				masks.put(segment.deletedDocumentNames[i], null);
+			segment.previous.newerDocuments = masks;
+			newer = masks;
 		}
-		return results;
 	}
 
-	private HashtableOfObject addQueryResult(HashtableOfObject results,
+	private boolean acceptQueryResult(IEntryResultRequestor requestor,
 			char[] word, HashtableOfObject wordsToDocNumbers,
-			MemoryIndex memoryIndex) throws IOException {
+			SimpleLookupTable maskedDocuments) throws IOException {
 		// must skip over documents which have been added/changed/deleted in the
-		// memory index
-		if (results == null)
-			results = new HashtableOfObject(13);
-		EntryResult result = (EntryResult) results.get(word);
-		if (memoryIndex == null) {
-			if (result == null)
-				results.put(word, new EntryResult(word, wordsToDocNumbers));
-			else
-				result.addDocumentTable(wordsToDocNumbers);
+		// memory index or in the next segments
+		EntryResult result;
+		SimpleLookupTable newerDocs = this.newerDocuments;
+		if (maskedDocuments == null && newerDocs == null) {
+			result = new EntryResult(word, wordsToDocNumbers);
 		} else {
-			SimpleLookupTable docsToRefs = memoryIndex.docsToReferences;
-			if (result == null)
-				result = new EntryResult(word, null);
+			result = new EntryResult(word, null);
 			int[] docNumbers = readDocumentNumbers(wordsToDocNumbers.get(word));
 			for (int i = 0, l = docNumbers.length; i < l; i++) {
 				String docName = readDocumentName(docNumbers[i]);
-				if (!docsToRefs.containsKey(docName))
+				if (!isMasked(docName, maskedDocuments, newerDocs))
 					result.addDocumentName(docName);
 			}
-			if (!result.isEmpty())
-				results.put(word, result);
+			if (result.isEmpty())
+				return true;
+		}
+		return requestor.acceptEntry(result);
+	}
+
+	/**
+	 * Passes the entries matching the key to the requestor as they are read,
+	 * the same word is passed once per segment containing it. Returns false if
+	 * the requestor stopped the query.
+	 */
+	boolean query(char[][] categories, char[] key, int matchRule,
+			MemoryIndex memoryIndex, IEntryResultRequestor requestor)
+			throws IOException {
+		// the sender should have called startQuery() so the caches survive
+		// between queries, the nested reference keeps the mapped file of the
+		// segments from being released while it is read if it did not
+		startQuery();
+		try {
+			return query(categories, key, matchRule, memoryIndex == null ? null
+					: memoryIndex.docsToReferences, requestor);
+		} finally {
+			stopQuery();
 		}
-		return results;
 	}
 
-	HashtableOfObject addQueryResults(char[][] categories, char[] key,
-			int matchRule, MemoryIndex memoryIndex) throws IOException {
-		// assumes sender has called startQuery() & will call stopQuery() when
-		// finished
+	private boolean query(char[][] categories, char[] key, int matchRule,
+			SimpleLookupTable maskedDocuments, IEntryResultRequestor requestor)
+			throws IOException {
 		if (this.categoryOffsets == null)
-			return null; // file is empty
+			return true; // file is empty
 
-		HashtableOfObject results = null; // initialized if needed
 		if (key == null) {
 			for (int i = 0, l = categories.length; i < l; i++) {
 				HashtableOfObject wordsToDocNumbers = readCategoryTable(
 						categories[i], true); // cache if key is null since
 				// its a definite match
-				if (wordsToDocNumbers != null) {
+				if (wordsToDocNumbers != null
+						&& wordsToDocNumbers.elementSize > 0) {
+					if (this.cachedChunks == null)
+						cacheDocumentNames();
 					char[][] words = wordsToDocNumbers.keyTable;
-					if (results == null)
-						results = new HashtableOfObject(
-								wordsToDocNumbers.elementSize);
 					for (int j = 0, m = words.length; j < m; j++)
-						if (words[j] != null)
-							results = addQueryResult(results, words[j],
-									wordsToDocNumbers, memoryIndex);
+						if (words[j] != null
+								&& !acceptQueryResult(requestor, words[j],
+										wordsToDocNumbers, maskedDocuments))
+							return false;
 				}
 			}
-			if (results != null && this.cachedChunks == null)
-				cacheDocumentNames();
 		} else {
 			switch (matchRule) {
 			case SearchPattern.R_EXACT_MATCH | SearchPattern.R_CASE_SENSITIVE:
 				for (int i = 0, l = categories.length; i < l; i++) {
+					if (!mightContain(categories[i], key))
+						continue;
 					HashtableOfObject wordsToDocNumbers = readCategoryTable(
 							categories[i], false);
 					if (wordsToDocNumbers != null
-							&& wordsToDocNumbers.containsKey(key))
-						results = addQueryResult(results, key,
-								wordsToDocNumbers, memoryIndex);
+							&& wordsToDocNumbers.containsKey(key)
+							&& !acceptQueryResult(requestor, key,
+									wordsToDocNumbers, maskedDocuments))
+						return false;
 				}
 				break;
 			case SearchPattern.R_PREFIX_MATCH | SearchPattern.R_CASE_SENSITIVE:
@@ -226,13 +356,15 @@ public class DiskIndex {
 					HashtableOfObject wordsToDocNumbers = readCategoryTable(
 							categories[i], false);
 					if (wordsToDocNumbers != null) {
-						char[][] words = wordsToDocNumbers.keyTable;
-						for (int j = 0, m = words.length; j < m; j++) {
+						char[][] words = readSortedWords(categories[i],
+								wordsToDocNumbers);
+						for (int j = findFirstWord(words, key), m = words.length; j < m; j++) {
 							char[] word = words[j];
-							if (word != null && key[0] == word[0]
-									&& CharOperation.prefixEquals(key, word))
-								results = addQueryResult(results, word,
-										wordsToDocNumbers, memoryIndex);
+							if (!CharOperation.prefixEquals(key, word))
+								break; // no more words with this prefix
+							if (!acceptQueryResult(requestor, word,
+									wordsToDocNumbers, maskedDocuments))
+								return false;
 						}
 					}
 				}
@@ -262,58 +394,213 @@ public class DiskIndex {
 									decodedWord = word;
 								}
 								if (regexpPattern.matcher(
-										new String(decodedWord)).matches()) {
-									results = addQueryResult(results, word,
-											wordsToDocNumbers, memoryIndex);
-								}
+										new String(decodedWord)).matches()
+										&& !acceptQueryResult(requestor, word,
+												wordsToDocNumbers,
+												maskedDocuments))
+									return false;
 							}
 						}
 					}
 				}
 				break;
 			default:
+				int prefixLength = getMatchPrefixLength(key, matchRule);
 				for (int i = 0, l = categories.length; i < l; i++) {
 					HashtableOfObject wordsToDocNumbers = readCategoryTable(
 							categories[i], false);
-					if (wordsToDocNumbers != null) {
+					if (wordsToDocNumbers == null)
+						continue;
+					if (prefixLength == 0) {
 						char[][] words = wordsToDocNumbers.keyTable;
 						for (int j = 0, m = words.length; j < m; j++) {
 							char[] word = words[j];
 							if (word != null
-									&& Index.isMatch(key, word, matchRule)) {
-								results = addQueryResult(results, word,
-										wordsToDocNumbers, memoryIndex);
-							}
+									&& Index.isMatch(key, word, matchRule)
+									&& !acceptQueryResult(requestor, word,
+											wordsToDocNumbers, maskedDocuments))
+								return false;
 						}
+					} else if ((matchRule & SearchPattern.R_CASE_SENSITIVE) != 0) {
+						if (!acceptMatchingWords(requestor, CharOperation
+								.subarray(key, 0, prefixLength),
+								wordsToDocNumbers, readSortedWords(
+										categories[i], wordsToDocNumbers), key,
+								matchRule, maskedDocuments))
+							return false;
+					} else {
+						// the first character of the matching words is the
+						// lower or upper case variant of the first character
+						// of the key, or a non ASCII character which could be
+						// one of its variants
+						char[][] words = readSortedWords(categories[i],
+								wordsToDocNumbers);
+						char lowerCase = Character.toLowerCase(key[0]);
+						char upperCase = Character.toUpperCase(key[0]);
+						if (!acceptMatchingWords(requestor,
+								new char[] { lowerCase }, wordsToDocNumbers,
+								words, key, matchRule, maskedDocuments))
+							return false;
+						if (upperCase != lowerCase
+								&& !acceptMatchingWords(requestor,
+										new char[] { upperCase },
+										wordsToDocNumbers, words, key,
+										matchRule, maskedDocuments))
+							return false;
+						for (int j = findFirstWord(words, NON_ASCII), m = words.length; j < m; j++)
+							if (Index.isMatch(key, words[j], matchRule)
+									&& !acceptQueryResult(requestor, words[j],
+											wordsToDocNumbers, maskedDocuments))
+								return false;
 					}
 				}
 			}
 		}
 
-		if (results == null)
-			return null;
-		return results;
+		if (this.previous != null)
+			return this.previous.query(categories, key, matchRule,
+					maskedDocuments, requestor);
+		return true;
+	}
+
+	/**
+	 * Passes the words starting with the specified prefix which match the key
+	 * to the requestor, returns false if it stopped the query.
+	 */
+	private boolean acceptMatchingWords(IEntryResultRequestor requestor,
+			char[] prefix, HashtableOfObject wordsToDocNumbers,
+			char[][] sortedWords, char[] key, int matchRule,
+			SimpleLookupTable maskedDocuments) throws IOException {
+		for (int i = findFirstWord(sortedWords, prefix), l = sortedWords.length; i < l; i++) {
+			char[] word = sortedWords[i];
+			if (!CharOperation.prefixEquals(prefix, word))
+				break; // no more words with this prefix
+			if (Index.isMatch(key, word, matchRule)
+					&& !acceptQueryResult(requestor, word, wordsToDocNumbers,
+							maskedDocuments))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the index of the first of the sorted words which is not less
+	 * than the specified prefix.
+	 */
+	private static int findFirstWord(char[][] sortedWords, char[] prefix) {
+		int low = 0;
+		int high = sortedWords.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (Util.compare(sortedWords[middle], prefix) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the number of the leading characters of the key which must be
+	 * the same in the matching words (ignoring case if the match rule is not
+	 * case sensitive), or 0 if any word could match.
+	 */
+	private static int getMatchPrefixLength(char[] key, int matchRule) {
+		if (key.length == 0)
+			return 0;
+		int length = key.length;
+		if ((matchRule & SearchPattern.R_PATTERN_MATCH) != 0) {
+			for (int i = 0; i < length; i++) {
+				if (key[i] == '*' || key[i] == '?') {
+					length = i;
+					break;
+				}
+			}
+		} else if ((matchRule & SearchPattern.R_REGEXP_MATCH) != 0) {
+			return 0;
+		}
+		if ((matchRule & SearchPattern.R_CAMELCASE_MATCH) != 0 && length > 1)
+			length = 1; // camel case only requires the same first character
+		if ((matchRule & SearchPattern.R_CASE_SENSITIVE) == 0
+				&& key[0] >= NON_ASCII[0])
+			return 0; // the case variants are not known
+		return length;
 	}
 
 	private void cacheDocumentNames() throws IOException {
+		if (this.numberOfChunks <= 0)
+			return;
 		// will need all document names so get them now
-		this.cachedChunks = new String[this.numberOfChunks][];
-		DataInputStream stream = new DataInputStream(new BufferedInputStream(
-				new FileInputStream(getIndexFile()),
-				this.numberOfChunks > 5 ? 4096 : 2048));
+		AtomicReferenceArray<String[]> chunks = new AtomicReferenceArray<String[]>(
+				this.numberOfChunks);
+		DataInput stream = openInput(this.chunkOffsets[0],
+				this.numberOfChunks > 5 ? 4096 : 2048);
 		try {
-			stream.skip(this.chunkOffsets[0]);
 			for (int i = 0; i < this.numberOfChunks; i++) {
 				int size = i == this.numberOfChunks - 1 ? this.sizeOfLastChunk
 						: CHUNK_SIZE;
-				readChunk(this.cachedChunks[i] = new String[size], stream, 0,
-						size);
+				String[] chunk = new String[size];
+				readChunk(chunk, stream, 0, size);
+				chunks.set(i, chunk);
 			}
 		} finally {
-			stream.close();
+			closeInput(stream);
+		}
+		this.cachedChunks = chunks;
+	}
+
+	private static HashtableOfObject copyOf(HashtableOfObject table) {
+		try {
+			return (HashtableOfObject) table.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e.getMessage());
 		}
 	}
 
+	/**
+	 * Publishes a new snapshot of the cached category tables, containing the
+	 * specified table (or without the category if the table is
+	 * <code>null</code>).
+	 */
+	private void cacheCategoryTable(char[] categoryName,
+			HashtableOfObject categoryTable) {
+		HashtableOfObject tables = this.categoryTables;
+		tables = tables == null ? new HashtableOfObject(3) : copyOf(tables);
+		tables.put(categoryName, categoryTable);
+		this.categoryTables = tables;
+	}
+
+	/**
+	 * Returns the words of the category table in sorted order.
+	 */
+	private char[][] readSortedWords(char[] categoryName,
+			HashtableOfObject wordsToDocNumbers) {
+		HashtableOfObject words = this.categoryWords;
+		if (words != null) {
+			char[][] sortedWords = (char[][]) words.get(categoryName);
+			if (sortedWords != null
+					&& sortedWords.length == wordsToDocNumbers.elementSize)
+				return sortedWords;
+		}
+		// the table was cached without its words, sort them now
+		char[][] sortedWords = new char[wordsToDocNumbers.elementSize][];
+		int count = 0;
+		char[][] keys = wordsToDocNumbers.keyTable;
+		for (int i = 0, l = keys.length; i < l; i++)
+			if (keys[i] != null)
+				sortedWords[count++] = keys[i];
+		Util.sort(sortedWords);
+		cacheSortedWords(categoryName, sortedWords);
+		return sortedWords;
+	}
+
+	private void cacheSortedWords(char[] categoryName, char[][] sortedWords) {
+		HashtableOfObject words = this.categoryWords;
+		words = words == null ? new HashtableOfObject(3) : copyOf(words);
+		words.put(categoryName, sortedWords);
+		this.categoryWords = words;
+	}
+
 	private String[] computeDocumentNames(String[] onDiskNames,
 			int[] positions, SimpleLookupTable indexedDocuments,
 			MemoryIndex memoryIndex) {
@@ -498,6 +785,7 @@ public class DiskIndex {
 				} finally {
 					file.close();
 				}
+				computeNewerDocuments();
 				return;
 			}
 			if (!indexFile.delete()) {
@@ -542,6 +830,7 @@ public class DiskIndex {
 		int size = diskIndex.categoryOffsets == null ? 8
 				: diskIndex.categoryOffsets.elementSize;
 		this.categoryOffsets = new HashtableOfIntValues(size);
+		this.categoryFilters = new HashtableOfObject(size);
 		this.categoryTables = new HashtableOfObject(size);
 		this.separator = diskIndex.separator;
 	}
@@ -614,14 +903,186 @@ public class DiskIndex {
 					}
 				}
 			}
-			onDisk.categoryTables.put(categoryName, null); // flush cached
+			onDisk.cacheCategoryTable(categoryName, null); // flush cached
 			// table
 		}
 		writeCategoryTable(categoryName, wordsToDocs, stream);
 	}
 
+	/**
+	 * Appends the changes of the memory index to the index file as a new
+	 * segment, without rewriting the existing content. Returns the new last
+	 * segment.
+	 */
+	DiskIndex appendSegment(MemoryIndex memoryIndex) throws IOException {
+		// assume write lock is held
+		File indexFile = getIndexFile();
+		long fileLength = indexFile.length();
+		if (this.categoryOffsets == null || fileLength > Integer.MAX_VALUE)
+			return mergeWith(memoryIndex); // nothing to append to
+
+		Object[] names = memoryIndex.docsToReferences.keyTable;
+		Object[] referenceTables = memoryIndex.docsToReferences.valueTable;
+		SimpleLookupTable indexedDocuments = new SimpleLookupTable(3);
+		String[] deletedNames = new String[memoryIndex.docsToReferences.elementSize];
+		int deletedCount = 0;
+		for (int i = 0, l = names.length; i < l; i++) {
+			if (names[i] != null) {
+				if (referenceTables[i] != null)
+					indexedDocuments.put(names[i], null);
+				else
+					deletedNames[deletedCount++] = (String) names[i];
+			}
+		}
+		if (deletedCount < deletedNames.length)
+			System.arraycopy(deletedNames, 0,
+					deletedNames = new String[deletedCount], 0, deletedCount);
+		String[] docNames = new String[indexedDocuments.elementSize];
+		int count = 0;
+		Object[] added = indexedDocuments.keyTable;
+		for (int i = 0, l = added.length; i < l; i++)
+			if (added[i] != null)
+				docNames[count++] = (String) added[i];
+		Util.sort(docNames);
+
+		DiskIndex segment = new DiskIndex(this.fileName);
+		segment.previous = this;
+		segment.deletedDocumentNames = deletedNames;
+		segment.categoryOffsets = new HashtableOfIntValues(
+				this.categoryOffsets.elementSize);
+		segment.categoryFilters = new HashtableOfObject(
+				this.categoryOffsets.elementSize);
+		segment.categoryTables = new HashtableOfObject(
+				this.categoryOffsets.elementSize);
+		segment.separator = this.separator;
+		try {
+			DataOutputStream stream = new AppendingOutputStream(
+					new BufferedOutputStream(new FileOutputStream(indexFile,
+							true), 2048), (int) fileLength);
+			int offsetToHeader = -1;
+			try {
+				segment.writeDocumentNames(docNames, stream);
+				for (int i = 0; i < docNames.length; i++)
+					segment.copyQueryResults(
+							(HashtableOfObject) memoryIndex.docsToReferences
+									.get(docNames[i]), i);
+				segment.writeCategories(stream);
+				offsetToHeader = stream.size();
+				segment.writeHeaderInfo(stream);
+			} finally {
+				stream.close();
+			}
+			// the new segment is visible once the offset to its header is
+			// written
+			segment.headerInfoOffset = HEADER_INFO_OFFSET_POSITION;
+			segment.writeOffsetToHeader(offsetToHeader);
+		} catch (IOException e) {
+			// forget the partially written segment
+			RandomAccessFile file = new RandomAccessFile(this.fileName, "rw"); //$NON-NLS-1$
+			try {
+				file.setLength(fileLength);
+			} finally {
+				file.close();
+			}
+			throw e;
+		}
+		segment.computeNewerDocuments();
+		return segment;
+	}
+
+	/**
+	 * Returns false if no segment contains the key in one of the categories,
+	 * answering from the Bloom filters without reading the category tables.
+	 */
+	boolean mightContain(char[][] categories, char[] key) {
+		for (DiskIndex segment = this; segment != null; segment = segment.previous)
+			for (int i = 0, l = categories.length; i < l; i++)
+				if (segment.mightContain(categories[i], key))
+					return true;
+		return false;
+	}
+
+	private boolean mightContain(char[] categoryName, char[] key) {
+		if (this.categoryOffsets == null
+				|| !this.categoryOffsets.containsKey(categoryName))
+			return false;
+		BloomFilter filter = (BloomFilter) this.categoryFilters
+				.get(categoryName);
+		return filter == null || filter.mightContain(key);
+	}
+
+	/**
+	 * Returns the number of segments appended to the index file since it was
+	 * last rewritten.
+	 */
+	int getSegmentCount() {
+		int count = 0;
+		for (DiskIndex segment = this.previous; segment != null; segment = segment.previous)
+			count++;
+		return count;
+	}
+
+	/**
+	 * Returns a memory index containing the changes of the appended segments
+	 * followed by the changes of the specified memory index.
+	 */
+	private MemoryIndex collectSegments(MemoryIndex memoryIndex)
+			throws IOException {
+		DiskIndex[] segments = new DiskIndex[getSegmentCount()];
+		int count = 0;
+		for (DiskIndex segment = this; segment.previous != null; segment = segment.previous)
+			segments[count++] = segment;
+		MemoryIndex result = new MemoryIndex();
+		while (--count >= 0)
+			segments[count].copyInto(result);
+		Object[] names = memoryIndex.docsToReferences.keyTable;
+		Object[] referenceTables = memoryIndex.docsToReferences.valueTable;
+		for (int i = 0, l = names.length; i < l; i++)
+			if (names[i] != null)
+				result.docsToReferences.put(names[i], referenceTables[i]);
+		return result;
+	}
+
+	private void copyInto(MemoryIndex memoryIndex) throws IOException {
+		for (int i = 0, l = this.deletedDocumentNames.length; i < l; i++)
+			memoryIndex.remove(this.deletedDocumentNames[i]);
+		String[] docNames = readAllDocumentNames();
+		for (int i = 0, l = docNames.length; i < l; i++) {
+			memoryIndex.remove(docNames[i]); // forget the previous content
+			// keep the documents indexed by this segment even without entries
+			memoryIndex.docsToReferences.put(docNames[i],
+					new HashtableOfObject(3));
+		}
+		char[][] categoryNames = this.categoryOffsets.keyTable;
+		for (int i = 0, l = categoryNames.length; i < l; i++) {
+			char[] categoryName = categoryNames[i];
+			if (categoryName == null)
+				continue;
+			HashtableOfObject wordsToDocs = readCategoryTable(categoryName,
+					true);
+			char[][] words = wordsToDocs.keyTable;
+			Object[] documentNumbers = wordsToDocs.valueTable;
+			for (int j = 0, m = words.length; j < m; j++) {
+				if (words[j] != null) {
+					int[] numbers = (int[]) documentNumbers[j];
+					for (int k = 0, n = numbers.length; k < n; k++)
+						memoryIndex.addIndexEntry(categoryName, words[j],
+								docNames[numbers[k]]);
+				}
+			}
+		}
+	}
+
 	DiskIndex mergeWith(MemoryIndex memoryIndex) throws IOException {
 		// assume write lock is held
+		if (this.previous != null) {
+			// rewrite the file folding the appended segments
+			MemoryIndex changes = collectSegments(memoryIndex);
+			DiskIndex first = this;
+			for (; first.previous != null; first = first.previous)
+				first.releaseMappedFile();
+			return first.mergeWith(changes);
+		}
 		// compute & write out new docNames
 		String[] docNames = readAllDocumentNames();
 		int previousLength = docNames.length;
@@ -691,6 +1152,7 @@ public class DiskIndex {
 			newDiskIndex.writeOffsetToHeader(offsetToHeader);
 
 			// rename file by deleting previous index file & renaming temp one
+			releaseMappedFiles();
 			File old = getIndexFile();
 			if (old.exists() && !old.delete()) {
 				if (DEBUG)
@@ -718,15 +1180,13 @@ public class DiskIndex {
 		return newDiskIndex;
 	}
 
-	private synchronized String[] readAllDocumentNames() throws IOException {
+	private String[] readAllDocumentNames() throws IOException {
 		if (this.numberOfChunks <= 0)
 			return new String[0];
 
-		DataInputStream stream = new DataInputStream(new BufferedInputStream(
-				new FileInputStream(getIndexFile()),
-				this.numberOfChunks > 5 ? 4096 : 2048));
+		DataInput stream = openInput(this.chunkOffsets[0],
+				this.numberOfChunks > 5 ? 4096 : 2048);
 		try {
-			stream.skip(this.chunkOffsets[0]);
 			int lastIndex = this.numberOfChunks - 1;
 			String[] docNames = new String[lastIndex * CHUNK_SIZE
 					+ sizeOfLastChunk];
@@ -735,42 +1195,50 @@ public class DiskIndex {
 						i < lastIndex ? CHUNK_SIZE : sizeOfLastChunk);
 			return docNames;
 		} finally {
-			stream.close();
+			closeInput(stream);
 		}
 	}
 
-	private synchronized HashtableOfObject readCategoryTable(
-			char[] categoryName, boolean readDocNumbers) throws IOException {
+	private HashtableOfObject readCategoryTable(char[] categoryName,
+			boolean readDocNumbers) throws IOException {
 		// result will be null if categoryName is unknown
 		int offset = this.categoryOffsets.get(categoryName);
 		if (offset == HashtableOfIntValues.NO_VALUE)
 			return null;
 
-		if (this.categoryTables == null) {
-			this.categoryTables = new HashtableOfObject(3);
-		} else {
-			HashtableOfObject cachedTable = (HashtableOfObject) this.categoryTables
+		HashtableOfObject tables = this.categoryTables;
+		if (tables != null) {
+			HashtableOfObject cachedTable = (HashtableOfObject) tables
 					.get(categoryName);
 			if (cachedTable != null) {
 				if (readDocNumbers) { // must cache remaining document number
 					// arrays
+					HashtableOfObject resolvedTable = null;
 					Object[] arrayOffsets = cachedTable.valueTable;
-					for (int i = 0, l = arrayOffsets.length; i < l; i++)
-						if (arrayOffsets[i] instanceof Integer)
-							arrayOffsets[i] = readDocumentNumbers(arrayOffsets[i]);
+					for (int i = 0, l = arrayOffsets.length; i < l; i++) {
+						if (arrayOffsets[i] != null
+								&& !(arrayOffsets[i] instanceof int[])) {
+							if (resolvedTable == null)
+								resolvedTable = copyOf(cachedTable);
+							resolvedTable.valueTable[i] = readDocumentNumbers(arrayOffsets[i]);
+						}
+					}
+					if (resolvedTable != null) {
+						cacheCategoryTable(categoryName, resolvedTable);
+						return resolvedTable;
+					}
 				}
 				return cachedTable;
 			}
 		}
 
-		DataInputStream stream = new DataInputStream(new BufferedInputStream(
-				new FileInputStream(getIndexFile()), 2048));
+		DataInput stream = openInput(offset, 2048);
 		HashtableOfObject categoryTable = null;
+		char[][] sortedWords = null; // the words are stored in sorted order
 		char[][] matchingWords = null;
 		int count = 0;
 		int firstOffset = -1;
 		try {
-			stream.skip(offset);
 			int size = stream.readInt();
 			try {
 				if (size < 0) { // DEBUG
@@ -796,29 +1264,37 @@ public class DiskIndex {
 				throw oom;
 			}
 			int largeArraySize = 256;
+			sortedWords = new char[size][];
+			char[] word = CharOperation.NO_CHAR;
 			for (int i = 0; i < size; i++) {
-				char[] word = Util.readUTF(stream);
-				int arrayOffset = stream.readInt();
-				// if arrayOffset is:
-				// <= 0 then the array size == 1 with the value -> -arrayOffset
-				// > 1 & < 256 then the size of the array is > 1 & < 256, the
-				// document array follows immediately
-				// 256 if the array size >= 256 followed by another int which is
-				// the offset to the array (written prior to the table)
-				if (arrayOffset <= 0) {
-					categoryTable.put(word, new int[] { -arrayOffset }); // store
-					// 1
-					// element
-					// array
-					// by
-					// negating
-					// documentNumber
-				} else if (arrayOffset < largeArraySize) {
+				// each word is stored as the number of characters shared with
+				// the previous word followed by the remaining characters
+				char[] previousWord = word;
+				int prefixLength = readVarInt(stream);
+				char[] suffix = Util.readUTF(stream);
+				word = new char[prefixLength + suffix.length];
+				System.arraycopy(previousWord, 0, word, 0, prefixLength);
+				System.arraycopy(suffix, 0, word, prefixLength, suffix.length);
+				sortedWords[i] = word;
+				int arraySize = readVarInt(stream);
+				// if arraySize is:
+				// 1 then the document number follows
+				// > 1 & < 256 then the length in bytes of the encoded document
+				// array follows, then the array itself
+				// >= 256 then the offset to the array (written prior to the
+				// table) follows
+				if (arraySize == 1) {
+					categoryTable.put(word, new int[] { readVarInt(stream) });
+				} else if (arraySize < largeArraySize) {
+					byte[] encodedArray = new byte[readVarInt(stream)];
+					stream.readFully(encodedArray);
+					// keep the encoded array, it is decoded when the document
+					// numbers are requested
 					categoryTable.put(word,
-							readDocumentArray(stream, arrayOffset));
-					// read in-lined array providing size
+							readDocNumbers ? readDocumentArray(encodedArray)
+									: encodedArray);
 				} else {
-					arrayOffset = stream.readInt(); // read actual offset
+					int arrayOffset = readVarInt(stream);
 					if (readDocNumbers) {
 						if (matchingWords == null)
 							matchingWords = new char[size][];
@@ -834,33 +1310,33 @@ public class DiskIndex {
 					// file
 				}
 			}
-			this.categoryTables.put(categoryName, categoryTable);
-			// cache the table as long as its not too big
-			// in practise, some tables can be greater than 500K when the
-			// contain more than 10K elements
-			this.cachedCategoryName = categoryTable.elementSize < 10000 ? categoryName
-					: null;
 		} finally {
-			stream.close();
+			closeInput(stream);
 		}
 
 		if (matchingWords != null && count > 0) {
-			stream = new DataInputStream(new BufferedInputStream(
-					new FileInputStream(getIndexFile()), 2048));
+			stream = openInput(firstOffset, 2048);
 			try {
-				stream.skip(firstOffset);
 				for (int i = 0; i < count; i++)
 					// each array follows the previous one
 					categoryTable.put(matchingWords[i],
-							readDocumentArray(stream, stream.readInt()));
+							readDocumentArray(stream));
 			} finally {
-				stream.close();
+				closeInput(stream);
 			}
 		}
+		// the table is complete, so it can be published to other readers
+		cacheSortedWords(categoryName, sortedWords);
+		cacheCategoryTable(categoryName, categoryTable);
+		// cache the table as long as its not too big
+		// in practise, some tables can be greater than 500K when the
+		// contain more than 10K elements
+		this.cachedCategoryName = categoryTable.elementSize < 10000 ? categoryName
+				: null;
 		return categoryTable;
 	}
 
-	private void readChunk(String[] docNames, DataInputStream stream,
+	private void readChunk(String[] docNames, DataInput stream,
 			int index, int size) throws IOException {
 		String current = stream.readUTF();
 		docNames[index++] = current;
@@ -888,32 +1364,59 @@ public class DiskIndex {
 		}
 	}
 
-	private int[] readDocumentArray(DataInputStream stream, int arraySize)
-			throws IOException {
+	private static int[] readDocumentArray(DataInput stream) throws IOException {
+		// must be same order as writeDocumentNumbers()
+		int arraySize = readVarInt(stream);
 		int[] result = new int[arraySize];
-		switch (this.documentReferenceSize) {
-		case 1:
-			for (int i = 0; i < arraySize; i++)
-				result[i] = stream.readUnsignedByte();
-			break;
-		case 2:
-			for (int i = 0; i < arraySize; i++)
-				result[i] = stream.readUnsignedShort();
-			break;
-		default:
-			for (int i = 0; i < arraySize; i++)
-				result[i] = stream.readInt();
-			break;
+		int documentNumber = 0;
+		for (int i = 0; i < arraySize; i++)
+			result[i] = documentNumber += readVarInt(stream);
+		return result;
+	}
+
+	private static int[] readDocumentArray(byte[] encodedArray) {
+		// the encoded array has no size, each number ends with a byte which
+		// has the high bit cleared
+		int arraySize = 0;
+		for (int i = 0, l = encodedArray.length; i < l; i++)
+			if (encodedArray[i] >= 0)
+				arraySize++;
+		int[] result = new int[arraySize];
+		int documentNumber = 0;
+		for (int i = 0, position = 0; i < arraySize; i++) {
+			int delta = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = encodedArray[position++];
+				delta |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			result[i] = documentNumber += delta;
 		}
 		return result;
 	}
 
-	synchronized String readDocumentName(int docNumber) throws IOException {
-		if (this.cachedChunks == null)
-			this.cachedChunks = new String[this.numberOfChunks][];
+	private static int readVarInt(DataInput stream) throws IOException {
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = stream.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	String readDocumentName(int docNumber) throws IOException {
+		AtomicReferenceArray<String[]> chunks = this.cachedChunks;
+		if (chunks == null)
+			this.cachedChunks = chunks = new AtomicReferenceArray<String[]>(
+					this.numberOfChunks);
 
 		int chunkNumber = docNumber / CHUNK_SIZE;
-		String[] chunk = this.cachedChunks[chunkNumber];
+		String[] chunk = chunks.get(chunkNumber);
 		if (chunk == null) {
 			boolean isLastChunk = chunkNumber == this.numberOfChunks - 1;
 			int start = this.chunkOffsets[chunkNumber];
@@ -921,39 +1424,187 @@ public class DiskIndex {
 					: this.chunkOffsets[chunkNumber + 1]) - start;
 			if (numberOfBytes < 0)
 				throw new IllegalArgumentException();
-			byte[] bytes = new byte[numberOfBytes];
-			FileInputStream file = new FileInputStream(getIndexFile());
-			try {
-				file.skip(start);
-				if (file.read(bytes, 0, numberOfBytes) != numberOfBytes)
-					throw new IOException();
-			} finally {
-				file.close();
+			DataInput stream;
+			ByteBuffer mapped = getMappedFile();
+			if (mapped != null) {
+				ByteBuffer buffer = mapped.duplicate();
+				buffer.position(start);
+				stream = new ByteBufferDataInput(buffer);
+			} else {
+				byte[] bytes = new byte[numberOfBytes];
+				FileInputStream file = new FileInputStream(getIndexFile());
+				try {
+					file.skip(start);
+					if (file.read(bytes, 0, numberOfBytes) != numberOfBytes)
+						throw new IOException();
+				} finally {
+					file.close();
+				}
+				stream = new DataInputStream(new ByteArrayInputStream(bytes));
 			}
-			DataInputStream stream = new DataInputStream(
-					new ByteArrayInputStream(bytes));
 			int numberOfNames = isLastChunk ? this.sizeOfLastChunk : CHUNK_SIZE;
-			chunk = this.cachedChunks[chunkNumber] = new String[numberOfNames];
+			chunk = new String[numberOfNames];
 			readChunk(chunk, stream, 0, numberOfNames);
+			chunks.set(chunkNumber, chunk);
 		}
 		return chunk[docNumber - (chunkNumber * CHUNK_SIZE)];
 	}
 
-	synchronized int[] readDocumentNumbers(Object arrayOffset)
+	int[] readDocumentNumbers(Object arrayOffset)
 			throws IOException {
-		// arrayOffset is either a cached array of docNumbers or an Integer
-		// offset in the file
+		// arrayOffset is either a cached array of docNumbers, an encoded array
+		// in-lined in the category table or an Integer offset in the file
 		if (arrayOffset instanceof int[])
 			return (int[]) arrayOffset;
+		if (arrayOffset instanceof byte[])
+			return readDocumentArray((byte[]) arrayOffset);
 
-		DataInputStream stream = new DataInputStream(new BufferedInputStream(
-				new FileInputStream(getIndexFile()), 2048));
+		DataInput stream = openInput(((Integer) arrayOffset).intValue(), 2048);
 		try {
-			stream.skip(((Integer) arrayOffset).intValue());
-			return readDocumentArray(stream, stream.readInt());
+			return readDocumentArray(stream);
 		} finally {
+			closeInput(stream);
+		}
+	}
+
+	/**
+	 * Returns the memory mapped content of the index file or <code>null</code>
+	 * if mapped reads are disabled or there are no running queries. The
+	 * mapping is created on the first read after startQuery() and released by
+	 * the last stopQuery(), so it never outlives the read lock of the index
+	 * monitor. Every reader must hold a query reference of its own while it
+	 * reads the mapping, otherwise the last stopQuery() of another thread
+	 * could unmap the buffer under it.
+	 */
+	private ByteBuffer getMappedFile() throws IOException {
+		if (!MAPPED_READS || this.cacheUserCount < 0)
+			return null;
+		ByteBuffer mapped = this.mappedFile;
+		if (mapped == null) {
+			synchronized (this) {
+				mapped = this.mappedFile;
+				if (mapped == null && this.cacheUserCount >= 0) {
+					RandomAccessFile file = new RandomAccessFile(
+							this.fileName, "r"); //$NON-NLS-1$
+					try {
+						FileChannel channel = file.getChannel();
+						long size = channel.size();
+						if (size > Integer.MAX_VALUE)
+							return null;
+						this.mappedFile = mapped = channel.map(
+								FileChannel.MapMode.READ_ONLY, 0, size);
+					} finally {
+						file.close();
+					}
+				}
+			}
+		}
+		return mapped;
+	}
+
+	/**
+	 * Unmaps the content of the index file mapped by this segment. Must only
+	 * be called when no query is reading this segment, i.e. by the last
+	 * stopQuery() or with the write lock of the index monitor.
+	 */
+	synchronized void releaseMappedFile() {
+		ByteBuffer mapped = this.mappedFile;
+		if (mapped != null) {
+			this.mappedFile = null;
+			unmap(mapped);
+		}
+	}
+
+	/**
+	 * Unmaps the index file in this and all previous segments, before the
+	 * file is deleted or replaced. The sender must own the write lock.
+	 */
+	void releaseMappedFiles() {
+		for (DiskIndex segment = this; segment != null; segment = segment.previous)
+			segment.releaseMappedFile();
+	}
+
+	/**
+	 * Returns the object releasing mapped buffers explicitly: the
+	 * <code>sun.misc.Unsafe</code> instance on Java 9 and later, the
+	 * <code>cleaner()</code> method of the mapped buffer class before, or
+	 * <code>null</code> if neither is accessible.
+	 */
+	private static Object createUnmapper() {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe"); //$NON-NLS-1$
+			unsafeClass.getMethod("invokeCleaner", ByteBuffer.class); //$NON-NLS-1$
+			java.lang.reflect.Field field = unsafeClass
+					.getDeclaredField("theUnsafe"); //$NON-NLS-1$
+			field.setAccessible(true);
+			return field.get(null);
+		} catch (Exception e) {
+			// fall back to the cleaner of the buffer
+		}
+		try {
+			java.lang.reflect.Method cleaner = Class.forName(
+					"java.nio.DirectByteBuffer").getMethod("cleaner"); //$NON-NLS-1$ //$NON-NLS-2$
+			cleaner.setAccessible(true);
+			return cleaner;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	static boolean canUnmap() {
+		return UNMAPPER != null;
+	}
+
+	/**
+	 * Releases the specified mapped buffer without waiting for the garbage
+	 * collector, so the mapped file can be deleted on Windows. The buffer and
+	 * all its duplicates must not be read afterwards.
+	 */
+	private static void unmap(ByteBuffer buffer) {
+		if (UNMAPPER == null || !buffer.isDirect())
+			return;
+		try {
+			if (UNMAPPER instanceof java.lang.reflect.Method) {
+				Object cleaner = ((java.lang.reflect.Method) UNMAPPER)
+						.invoke(buffer);
+				if (cleaner != null)
+					cleaner.getClass().getMethod("clean").invoke(cleaner); //$NON-NLS-1$
+			} else {
+				UNMAPPER.getClass()
+						.getMethod("invokeCleaner", ByteBuffer.class) //$NON-NLS-1$
+						.invoke(UNMAPPER, buffer);
+			}
+		} catch (Exception e) {
+			// the mapping is released by the garbage collector
+		}
+	}
+
+	/**
+	 * Opens the index file for reading at the specified offset, either from
+	 * the memory mapped content or from a new stream which must be closed with
+	 * {@link #closeInput(DataInput)}.
+	 */
+	private DataInput openInput(int offset, int bufferSize) throws IOException {
+		ByteBuffer mapped = getMappedFile();
+		if (mapped != null) {
+			ByteBuffer buffer = mapped.duplicate();
+			buffer.position(offset);
+			return new ByteBufferDataInput(buffer);
+		}
+		DataInputStream stream = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(getIndexFile()), bufferSize));
+		try {
+			stream.skip(offset);
+		} catch (IOException e) {
 			stream.close();
+			throw e;
 		}
+		return stream;
+	}
+
+	private static void closeInput(DataInput input) throws IOException {
+		if (input instanceof DataInputStream)
+			((DataInputStream) input).close();
 	}
 
 	private void readHeaderInfo(RandomAccessFile file) throws IOException {
@@ -962,7 +1613,6 @@ public class DiskIndex {
 		// must be same order as writeHeaderInfo()
 		this.numberOfChunks = file.readInt();
 		this.sizeOfLastChunk = file.readUnsignedByte();
-		this.documentReferenceSize = file.readUnsignedByte();
 		this.separator = (char) file.readUnsignedByte();
 
 		this.chunkOffsets = new int[this.numberOfChunks];
@@ -973,34 +1623,64 @@ public class DiskIndex {
 
 		int size = file.readInt();
 		this.categoryOffsets = new HashtableOfIntValues(size);
-		for (int i = 0; i < size; i++)
-			this.categoryOffsets.put(Util.readUTF(file), file.readInt()); // cache
-		// offset
-		// to
-		// category
-		// table
+		this.categoryFilters = new HashtableOfObject(size);
+		for (int i = 0; i < size; i++) {
+			char[] categoryName = Util.readUTF(file);
+			this.categoryOffsets.put(categoryName, file.readInt()); // cache
+			// offset to category table
+			this.categoryFilters.put(categoryName, BloomFilter.read(file));
+		}
 		this.categoryTables = new HashtableOfObject(3);
+
+		int previousHeaderInfoOffset = file.readInt();
+		size = file.readInt();
+		this.deletedDocumentNames = new String[size];
+		for (int i = 0; i < size; i++)
+			this.deletedDocumentNames[i] = file.readUTF();
+		if (previousHeaderInfoOffset > 0) {
+			this.previous = new DiskIndex(this.fileName);
+			this.previous.headerInfoOffset = previousHeaderInfoOffset;
+			this.previous.readHeaderInfo(file);
+		}
 	}
 
 	synchronized void startQuery() {
 		this.cacheUserCount++;
+		if (this.previous != null)
+			this.previous.startQuery();
 	}
 
 	synchronized void stopQuery() {
+		if (this.previous != null)
+			this.previous.stopQuery();
 		if (--this.cacheUserCount < 0) {
 			// clear cached items
 			this.cacheUserCount = -1;
 			this.cachedChunks = null;
-			if (this.categoryTables != null) {
-				if (this.cachedCategoryName == null) {
+			releaseMappedFile();
+			HashtableOfObject tables = this.categoryTables;
+			if (tables != null) {
+				char[] categoryName = this.cachedCategoryName;
+				if (categoryName == null) {
 					this.categoryTables = null;
-				} else if (this.categoryTables.elementSize > 1) {
+				} else if (tables.elementSize > 1) {
 					HashtableOfObject newTables = new HashtableOfObject(3);
-					newTables.put(this.cachedCategoryName,
-							this.categoryTables.get(this.cachedCategoryName));
+					newTables.put(categoryName, tables.get(categoryName));
 					this.categoryTables = newTables;
 				}
 			}
+			HashtableOfObject words = this.categoryWords;
+			if (words != null) {
+				char[] categoryName = this.cachedCategoryName;
+				if (categoryName == null
+						|| !words.containsKey(categoryName)) {
+					this.categoryWords = null;
+				} else if (words.elementSize > 1) {
+					HashtableOfObject newWords = new HashtableOfObject(3);
+					newWords.put(categoryName, words.get(categoryName));
+					this.categoryWords = newWords;
+				}
+			}
 		}
 	}
 
@@ -1015,7 +1695,11 @@ public class DiskIndex {
 		stream.writeUTF(SIGNATURE);
 		this.headerInfoOffset = stream.size();
 		stream.writeInt(-1); // will overwrite with correct value later
+		writeDocumentNames(sortedDocNames, stream);
+	}
 
+	private void writeDocumentNames(String[] sortedDocNames,
+			DataOutputStream stream) throws IOException {
 		int size = sortedDocNames.length;
 		this.numberOfChunks = (size / CHUNK_SIZE) + 1;
 		this.sizeOfLastChunk = size % CHUNK_SIZE;
@@ -1023,10 +1707,6 @@ public class DiskIndex {
 			this.numberOfChunks--;
 			this.sizeOfLastChunk = CHUNK_SIZE;
 		}
-		this.documentReferenceSize = size <= 0x7F ? 1
-				: (size <= 0x7FFF ? 2 : 4); // number of bytes used to encode a
-		// reference
-
 		this.chunkOffsets = new int[this.numberOfChunks];
 		int lastIndex = this.numberOfChunks - 1;
 		for (int i = 0; i < this.numberOfChunks; i++) {
@@ -1090,25 +1770,48 @@ public class DiskIndex {
 		// any document number arrays with >= 256 elements are written before
 		// the table (the offset to each array is remembered)
 		// then the number of word->int[] pairs in the table is written
-		// for each word -> int[] pair, the word is written followed by:
-		// an int <= 0 if the array size == 1
-		// an int > 1 & < 256 for the size of the array if its > 1 & < 256, the
+		// the words are sorted and each word is written as the number of
+		// characters shared with the previous word followed by the remaining
+		// characters, then the size of the array followed by:
+		// the document number if the array size == 1
+		// the length in bytes of the array if its > 1 & < 256, the encoded
 		// document array follows immediately
-		// 256 if the array size >= 256 followed by another int which is the
-		// offset to the array (written prior to the table)
+		// the offset to the array (written prior to the table) if the array
+		// size >= 256
+		// all the numbers except the count of pairs are written as variable
+		// length ints, see writeVarInt()
 
 		int largeArraySize = 256;
+		char[][] words = new char[wordsToDocs.elementSize][];
+		int size = 0;
+		char[][] keys = wordsToDocs.keyTable;
 		Object[] values = wordsToDocs.valueTable;
 		for (int i = 0, l = values.length; i < l; i++) {
 			Object o = values[i];
 			if (o != null) {
 				if (o instanceof IntList)
-					o = values[i] = ((IntList) values[i]).asArray();
-				int[] documentNumbers = (int[]) o;
-				if (documentNumbers.length >= largeArraySize) {
-					values[i] = new Integer(stream.size());
-					writeDocumentNumbers(documentNumbers, stream);
-				}
+					values[i] = ((IntList) o).asArray();
+				words[size++] = keys[i];
+			}
+		}
+		if (size < words.length)
+			System.arraycopy(words, 0, words = new char[size][], 0, size);
+		Util.sort(words);
+
+		BloomFilter filter = new BloomFilter(size);
+		for (int i = 0; i < size; i++)
+			filter.add(words[i]);
+		this.categoryFilters.put(categoryName, filter);
+
+		// large arrays are written in the same order as the words, so they
+		// can be read with a single stream, see readCategoryTable()
+		int[] arrayOffsets = new int[size];
+		for (int i = 0; i < size; i++) {
+			int[] documentNumbers = (int[]) wordsToDocs.get(words[i]);
+			if (documentNumbers.length >= largeArraySize) {
+				arrayOffsets[i] = stream.size();
+				writeVarInt(stream, documentNumbers.length);
+				writeDocumentNumbers(documentNumbers, stream);
 			}
 		}
 
@@ -1117,63 +1820,68 @@ public class DiskIndex {
 		// start of the
 		// table
 		this.categoryTables.put(categoryName, null); // flush cached table
-		stream.writeInt(wordsToDocs.elementSize);
-		char[][] words = wordsToDocs.keyTable;
-		for (int i = 0, l = words.length; i < l; i++) {
-			Object o = values[i];
-			if (o != null) {
-				Util.writeUTF(stream, words[i]);
-				if (o instanceof int[]) {
-					int[] documentNumbers = (int[]) o;
-					if (documentNumbers.length == 1)
-						stream.writeInt(-documentNumbers[0]); // store an
-					// array of 1
-					// element by
-					// negating the
-					// documentNumber
-					// (can be zero)
-					else
-						writeDocumentNumbers(documentNumbers, stream);
-				} else {
-					stream.writeInt(largeArraySize); // mark to identify that
-					// an offset follows
-					stream.writeInt(((Integer) o).intValue()); // offset in the
-					// file of the
-					// array of
-					// document
-					// numbers
-				}
+		stream.writeInt(size);
+		ByteArrayOutputStream encodedArray = null;
+		char[] previousWord = CharOperation.NO_CHAR;
+		for (int i = 0; i < size; i++) {
+			char[] word = words[i];
+			int max = Math.min(previousWord.length, word.length);
+			int prefixLength = 0;
+			while (prefixLength < max
+					&& previousWord[prefixLength] == word[prefixLength])
+				prefixLength++;
+			writeVarInt(stream, prefixLength);
+			Util.writeUTF(stream, CharOperation.subarray(word, prefixLength,
+					word.length));
+			previousWord = word;
+
+			int[] documentNumbers = (int[]) wordsToDocs.get(word);
+			int length = documentNumbers.length;
+			writeVarInt(stream, length);
+			if (length == 1) {
+				writeVarInt(stream, documentNumbers[0]);
+			} else if (length < largeArraySize) {
+				if (encodedArray == null)
+					encodedArray = new ByteArrayOutputStream(largeArraySize);
+				else
+					encodedArray.reset();
+				writeDocumentNumbers(documentNumbers, encodedArray);
+				writeVarInt(stream, encodedArray.size());
+				encodedArray.writeTo(stream);
+			} else {
+				writeVarInt(stream, arrayOffsets[i]);
 			}
 		}
 	}
 
-	private void writeDocumentNumbers(int[] documentNumbers,
-			DataOutputStream stream) throws IOException {
-		// must store length as a positive int to detect in-lined array of 1
-		// element
-		int length = documentNumbers.length;
-		stream.writeInt(length);
+	private static void writeDocumentNumbers(int[] documentNumbers,
+			OutputStream stream) throws IOException {
+		// the sorted numbers are stored as the first document number followed
+		// by the difference to the previous one
 		Util.sort(documentNumbers);
-		switch (this.documentReferenceSize) {
-		case 1:
-			for (int i = 0; i < length; i++)
-				stream.writeByte(documentNumbers[i]);
-			break;
-		case 2:
-			for (int i = 0; i < length; i++)
-				stream.writeShort(documentNumbers[i]);
-			break;
-		default:
-			for (int i = 0; i < length; i++)
-				stream.writeInt(documentNumbers[i]);
-			break;
+		int previous = 0;
+		for (int i = 0, l = documentNumbers.length; i < l; i++) {
+			writeVarInt(stream, documentNumbers[i] - previous);
+			previous = documentNumbers[i];
 		}
 	}
 
+	/**
+	 * Writes a non negative int using 7 bits per byte, the high bit is set if
+	 * more bytes follow.
+	 */
+	private static void writeVarInt(OutputStream stream, int value)
+			throws IOException {
+		while ((value & ~0x7F) != 0) {
+			stream.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		stream.write(value);
+	}
+
 	private void writeHeaderInfo(DataOutputStream stream) throws IOException {
 		stream.writeInt(this.numberOfChunks);
 		stream.writeByte(this.sizeOfLastChunk);
-		stream.writeByte(this.documentReferenceSize);
 		stream.writeByte(this.separator);
 
 		// apend the file with chunk offsets
@@ -1183,7 +1891,8 @@ public class DiskIndex {
 		stream.writeInt(this.startOfCategoryTables);
 
 		// append the file with the category offsets... # of name -> offset
-		// pairs, followed by each name & an offset to its word->doc# table
+		// pairs, followed by each name, an offset to its word->doc# table &
+		// the Bloom filter of its words
 		stream.writeInt(this.categoryOffsets.elementSize);
 		char[][] categoryNames = this.categoryOffsets.keyTable;
 		int[] offsets = this.categoryOffsets.valueTable;
@@ -1191,8 +1900,22 @@ public class DiskIndex {
 			if (categoryNames[i] != null) {
 				Util.writeUTF(stream, categoryNames[i]);
 				stream.writeInt(offsets[i]);
+				((BloomFilter) this.categoryFilters.get(categoryNames[i]))
+						.write(stream);
 			}
 		}
+
+		// append the offset to the header of the previous segment, followed
+		// by the documents removed from the previous segments
+		stream.writeInt(this.previous == null ? -1
+				: this.previous.headerInfoOffset);
+		if (this.deletedDocumentNames == null) {
+			stream.writeInt(0);
+		} else {
+			stream.writeInt(this.deletedDocumentNames.length);
+			for (int i = 0, l = this.deletedDocumentNames.length; i < l; i++)
+				stream.writeUTF(this.deletedDocumentNames[i]);
+		}
 	}
 
 	private void writeOffsetToHeader(int offsetToHeader) throws IOException {
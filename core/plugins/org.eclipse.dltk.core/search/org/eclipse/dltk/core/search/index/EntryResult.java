@@ -44,29 +44,48 @@ public class EntryResult {
 		}
 	}
 
+	void addDocuments(EntryResult result) {
+		if (result.documentTables != null)
+			for (int i = 0, l = result.documentTables.length; i < l; i++)
+				addDocumentTable(result.documentTables[i]);
+		if (result.documentNames != null) {
+			Object[] values = result.documentNames.values;
+			for (int i = 0, l = values.length; i < l; i++)
+				if (values[i] != null)
+					addDocumentName((String) values[i]);
+		}
+	}
+
 	public char[] getWord() {
 		return this.word;
 	}
 
 	public String[] getDocumentNames(Index index) throws java.io.IOException {
 		if (this.documentTables != null) {
-			int length = this.documentTables.length;
-			if (length == 1 && this.documentNames == null) { // have a single
-				// table
-				Object offset = this.documentTables[0].get(word);
-				int[] numbers = index.diskIndex.readDocumentNumbers(offset);
-				String[] names = new String[numbers.length];
-				for (int i = 0, l = numbers.length; i < l; i++)
-					names[i] = index.diskIndex.readDocumentName(numbers[i]);
-				return names;
-			}
+			// the query reference keeps the mapped index file valid while the
+			// document names are read
+			DiskIndex diskIndex = index.diskIndex;
+			diskIndex.startQuery();
+			try {
+				int length = this.documentTables.length;
+				if (length == 1 && this.documentNames == null) { // have a
+					// single table
+					Object offset = this.documentTables[0].get(word);
+					int[] numbers = diskIndex.readDocumentNumbers(offset);
+					String[] names = new String[numbers.length];
+					for (int i = 0, l = numbers.length; i < l; i++)
+						names[i] = diskIndex.readDocumentName(numbers[i]);
+					return names;
+				}
 
-			for (int i = 0; i < length; i++) {
-				Object offset = this.documentTables[i].get(word);
-				int[] numbers = index.diskIndex.readDocumentNumbers(offset);
-				for (int j = 0, k = numbers.length; j < k; j++)
-					addDocumentName(index.diskIndex
-							.readDocumentName(numbers[j]));
+				for (int i = 0; i < length; i++) {
+					Object offset = this.documentTables[i].get(word);
+					int[] numbers = diskIndex.readDocumentNumbers(offset);
+					for (int j = 0, k = numbers.length; j < k; j++)
+						addDocumentName(diskIndex.readDocumentName(numbers[j]));
+				}
+			} finally {
+				diskIndex.stopQuery();
 			}
 		}
 
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.search.index;
+
+import org.eclipse.dltk.compiler.util.HashtableOfObject;
+
+/**
+ * Collects the entries passed by a streaming index query, merging the entries
+ * of the same word.
+ * 
+ * @since 5.0
+ */
+public class EntryResultCollector implements IEntryResultRequestor {
+
+	private HashtableOfObject results;
+
+	public boolean acceptEntry(EntryResult entry) {
+		if (this.results == null)
+			this.results = new HashtableOfObject(13);
+		EntryResult result = (EntryResult) this.results.get(entry.getWord());
+		if (result == null)
+			this.results.put(entry.getWord(), entry);
+		else
+			result.addDocuments(entry);
+		return true;
+	}
+
+	/**
+	 * Returns the collected entries or <code>null</code> if there are none.
+	 */
+	public EntryResult[] getResults() {
+		if (this.results == null)
+			return null;
+
+		EntryResult[] entryResults = new EntryResult[this.results.elementSize];
+		int count = 0;
+		Object[] values = this.results.valueTable;
+		for (int i = 0, l = values.length; i < l; i++) {
+			EntryResult result = (EntryResult) values[i];
+			if (result != null)
+				entryResults[count++] = result;
+		}
+		return entryResults;
+	}
+}
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.search.index;
+
+import java.io.IOException;
+
+/**
+ * Receives the entries matching an index query as they are read, see
+ * {@link Index#query(char[][], char[], int, IEntryResultRequestor)}.
+ * 
+ * @since 5.0
+ */
+public interface IEntryResultRequestor {
+
+	/**
+	 * Accepts an entry matching the query. The same word can be passed several
+	 * times with different documents, when it is found in several segments of
+	 * the index file and in the unsaved changes.
+	 * 
+	 * @return <code>true</code> to continue the query, <code>false</code> to
+	 *         stop it
+	 */
+	boolean acceptEntry(EntryResult entry) throws IOException;
+}
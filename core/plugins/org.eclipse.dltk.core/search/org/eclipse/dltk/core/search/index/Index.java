@@ -10,7 +10,10 @@
 package org.eclipse.dltk.core.search.index;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 
 import org.eclipse.core.runtime.Path;
 import org.eclipse.dltk.compiler.CharOperation;
@@ -47,6 +50,14 @@ public class Index {
 
 	protected MemoryIndex memoryIndex;
 
+	/**
+	 * Maximum number of segments appended to the index file by save() before
+	 * it rewrites the whole file, 0 to always rewrite it. The segments are
+	 * usually folded earlier by the background compaction of the
+	 * IndexManager, see {@link #compact()}.
+	 */
+	public static final int MAX_SEGMENTS = 16;
+
 	/**
 	 * Mask used on match rule for indexing.
 	 */
@@ -146,6 +157,23 @@ public class Index {
 	 */
 	public EntryResult[] query(char[][] categories, char[] key, int matchRule)
 			throws IOException {
+		EntryResultCollector collector = new EntryResultCollector();
+		query(categories, key, matchRule, collector);
+		return collector.getResults();
+	}
+
+	/**
+	 * Passes the entries containing the given key in a group of categories to
+	 * the requestor as they are read, without collecting them first. The
+	 * requestor can stop the query, in which case false is returned. Unlike
+	 * {@link #query(char[][], char[], int)} the same word can be passed
+	 * several times with different documents. The sender must have called
+	 * {@link #startQuery()}.
+	 * 
+	 * @since 5.0
+	 */
+	public boolean query(char[][] categories, char[] key, int matchRule,
+			IEntryResultRequestor requestor) throws IOException {
 		if (this.memoryIndex.shouldMerge() && monitor.exitReadEnterWrite()) {
 			try {
 				save();
@@ -154,29 +182,37 @@ public class Index {
 			}
 		}
 
-		HashtableOfObject results;
 		int rule = matchRule & MATCH_RULE_INDEX_MASK;
-		if (this.memoryIndex.hasChanged()) {
-			results = this.diskIndex.addQueryResults(categories, key, rule,
-					this.memoryIndex);
-			results = this.memoryIndex.addQueryResults(categories, key, rule,
-					results);
-		} else {
-			results = this.diskIndex.addQueryResults(categories, key, rule,
-					null);
+		if (!this.memoryIndex.hasChanged())
+			return this.diskIndex.query(categories, key, rule, null, requestor);
+		if (!this.diskIndex.query(categories, key, rule, this.memoryIndex,
+				requestor))
+			return false;
+		HashtableOfObject results = this.memoryIndex.addQueryResults(
+				categories, key, rule, null);
+		if (results != null) {
+			Object[] values = results.valueTable;
+			for (int i = 0, l = values.length; i < l; i++)
+				if (values[i] != null
+						&& !requestor.acceptEntry((EntryResult) values[i]))
+					return false;
 		}
-		if (results == null)
-			return null;
+		return true;
+	}
 
-		EntryResult[] entryResults = new EntryResult[results.elementSize];
-		int count = 0;
-		Object[] values = results.valueTable;
-		for (int i = 0, l = values.length; i < l; i++) {
-			EntryResult result = (EntryResult) values[i];
-			if (result != null)
-				entryResults[count++] = result;
-		}
-		return entryResults;
+	/**
+	 * Returns false if none of the categories contains the key, true if they
+	 * might contain it. Unlike an exact match query it doesn't read the
+	 * category tables of the index file, the answer comes from the Bloom
+	 * filters stored with its header. The sender must hold the read lock.
+	 * 
+	 * @since 5.0
+	 */
+	public boolean mightContain(char[][] categories, char[] key) {
+		if (this.memoryIndex.hasChanged()
+				&& this.memoryIndex.contains(categories, key))
+			return true;
+		return this.diskIndex.mightContain(categories, key);
 	}
 
 	/**
@@ -218,12 +254,115 @@ public class Index {
 		}
 		// int numberOfChanges = this.memoryIndex.docsToReferences.elementSize;
 		this.diskIndex.separator = this.separator;
-		this.diskIndex = this.diskIndex.mergeWith(this.memoryIndex);
+		if (this.diskIndex.getSegmentCount() < MAX_SEGMENTS)
+			this.diskIndex = this.diskIndex.appendSegment(this.memoryIndex);
+		else
+			this.diskIndex = this.diskIndex.mergeWith(this.memoryIndex);
 		this.memoryIndex = new MemoryIndex();
 		// if (numberOfChanges > 1000)
 		// System.gc(); // reclaim space if the MemoryIndex was very BIG
 	}
 
+	/**
+	 * Returns the number of segments appended to the index file by save()
+	 * since the file was last rewritten.
+	 * 
+	 * @since 5.0
+	 */
+	public int getSegmentCount() {
+		if (this.diskIndex == null)
+			return 0;
+		return this.diskIndex.getSegmentCount();
+	}
+
+	/**
+	 * Rewrites the index file folding the appended segments and the unsaved
+	 * changes together.
+	 * 
+	 * @since 5.0
+	 */
+	public void compact() throws IOException {
+		// must own the write lock of the monitor
+		if (this.diskIndex == null
+				|| (getSegmentCount() == 0 && !hasChanged()))
+			return;
+
+		this.diskIndex.separator = this.separator;
+		this.diskIndex = this.diskIndex.mergeWith(this.memoryIndex);
+		this.memoryIndex = new MemoryIndex();
+	}
+
+	/**
+	 * Writes the content of this index to the specified file, which can be
+	 * adopted by {@link #importFrom(File)} of an index for the same container
+	 * on another machine. The file is written under a temporary name and
+	 * renamed when complete. The sender must own the write lock.
+	 * 
+	 * @since 5.0
+	 */
+	public void exportTo(File file) throws IOException {
+		compact();
+		save();
+		File tempFile = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+		try {
+			copyFile(getIndexFile(), tempFile);
+			if (file.exists() && !file.delete())
+				throw new IOException("Failed to delete " + file); //$NON-NLS-1$
+			if (!tempFile.renameTo(file))
+				throw new IOException("Failed to rename " + tempFile); //$NON-NLS-1$
+		} finally {
+			tempFile.delete();
+		}
+	}
+
+	/**
+	 * Replaces the content of this index by the content of a file written by
+	 * {@link #exportTo(File)}, discarding the unsaved changes. Throws an
+	 * IOException and leaves the index unchanged if the file has another
+	 * format. The sender must own the write lock.
+	 * 
+	 * @since 5.0
+	 */
+	public void importFrom(File file) throws IOException {
+		File indexFile = getIndexFile();
+		File tempFile = new File(indexFile.getPath() + ".import"); //$NON-NLS-1$
+		try {
+			copyFile(file, tempFile);
+			new DiskIndex(tempFile.getPath()).initialize(true); // check format
+			if (this.diskIndex != null)
+				this.diskIndex.releaseMappedFiles();
+			if (!indexFile.delete())
+				throw new IOException("Failed to delete " + indexFile); //$NON-NLS-1$
+			if (!tempFile.renameTo(indexFile))
+				throw new IOException("Failed to rename " + tempFile); //$NON-NLS-1$
+		} finally {
+			tempFile.delete();
+		}
+		DiskIndex imported = new DiskIndex(indexFile.getPath());
+		imported.initialize(true);
+		this.diskIndex = imported;
+		this.memoryIndex = new MemoryIndex();
+		this.separator = imported.separator;
+	}
+
+	static void copyFile(File source, File target) throws IOException {
+		FileInputStream input = new FileInputStream(source);
+		try {
+			FileOutputStream output = new FileOutputStream(target);
+			try {
+				FileChannel channel = input.getChannel();
+				long size = channel.size();
+				for (long position = 0; position < size;)
+					position += channel.transferTo(position, size - position,
+							output.getChannel());
+			} finally {
+				output.close();
+			}
+		} finally {
+			input.close();
+		}
+	}
+
 	public void startQuery() {
 		if (this.diskIndex != null)
 			this.diskIndex.startQuery();
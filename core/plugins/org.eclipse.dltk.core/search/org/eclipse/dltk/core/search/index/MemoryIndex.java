@@ -186,6 +186,22 @@ public class MemoryIndex {
 		return results;
 	}
 
+	boolean contains(char[][] categories, char[] key) {
+		Object[] referenceTables = this.docsToReferences.valueTable;
+		for (int i = 0, l = referenceTables.length; i < l; i++) {
+			HashtableOfObject categoryToWords = (HashtableOfObject) referenceTables[i];
+			if (categoryToWords != null) {
+				for (int j = 0, m = categories.length; j < m; j++) {
+					SimpleWordSet wordSet = (SimpleWordSet) categoryToWords
+							.get(categories[j]);
+					if (wordSet != null && wordSet.includes(key))
+						return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	boolean hasChanged() {
 		return this.docsToReferences.elementSize > 0;
 	}
@@ -23,11 +23,11 @@ import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.dltk.compiler.CharOperation;
 import org.eclipse.dltk.compiler.util.HashtableOfObject;
-import org.eclipse.dltk.compiler.util.ObjectVector;
 import org.eclipse.dltk.compiler.util.SimpleSet;
 import org.eclipse.dltk.core.DLTKCore;
 import org.eclipse.dltk.core.search.indexing.IIndexConstants;
 import org.eclipse.dltk.core.search.indexing.IndexManager;
+import org.eclipse.dltk.internal.core.util.Messages;
 import org.eclipse.dltk.internal.core.util.Util;
 
 public class MixinIndex extends Index {
@@ -36,8 +36,8 @@ public class MixinIndex extends Index {
 	private static final char[] OLD_HEADER_2 = "MIXIN INDEX 0.2".toCharArray(); //$NON-NLS-1$
 	private static final char[] HEADER = "MIXIN INDEX 0.3".toCharArray(); //$NON-NLS-1$
 
-	private final HashtableOfObject keyToDocs = new HashtableOfObject(10);
-	private final SimpleSet documentNames = new SimpleSet(10);
+	private HashtableOfObject keyToDocs = new HashtableOfObject(10);
+	private SimpleSet documentNames = new SimpleSet(10);
 
 	private final String fileName;
 
@@ -110,16 +110,16 @@ public class MixinIndex extends Index {
 
 	public EntryResult[] query(char[][] categories, char[] key, int matchRule)
 			throws IOException {
-		if (!isMixinCategory(categories))
-			return new EntryResult[0];
-		final ObjectVector results = new ObjectVector();
-		performQuery(key, matchRule, results);
-		final EntryResult[] entryResults = new EntryResult[results.size];
-		results.copyInto(entryResults);
-		return entryResults;
+		EntryResultCollector collector = new EntryResultCollector();
+		query(categories, key, matchRule, collector);
+		final EntryResult[] results = collector.getResults();
+		return results != null ? results : new EntryResult[0];
 	}
 
-	private void performQuery(char[] key, int matchRule, ObjectVector results) {
+	public boolean query(char[][] categories, char[] key, int matchRule,
+			IEntryResultRequestor requestor) throws IOException {
+		if (!isMixinCategory(categories))
+			return true;
 		final char[][] keyTable = keyToDocs.keyTable;
 		for (int i = 0, keyLen = keyTable.length; i < keyLen; i++) {
 			final char[] nextKey = keyTable[i];
@@ -127,7 +127,6 @@ public class MixinIndex extends Index {
 				continue;
 			if (Index.isMatch(key, nextKey, matchRule)) {
 				final EntryResult s = new EntryResult(nextKey, null);
-				results.add(s);
 				final Object[] docTable = ((SimpleSet) keyToDocs.valueTable[i]).values;
 				for (int j = 0, docLen = docTable.length; j < docLen; j++) {
 					final String doc = (String) docTable[j];
@@ -135,8 +134,19 @@ public class MixinIndex extends Index {
 						s.addDocumentName(doc);
 					}
 				}
+				if (!requestor.acceptEntry(s)) {
+					return false;
+				}
 			}
 		}
+		return true;
+	}
+
+	public boolean mightContain(char[][] categories, char[] key) {
+		if (!isMixinCategory(categories))
+			return false;
+		final SimpleSet docs = (SimpleSet) keyToDocs.get(key);
+		return docs != null && docs.elementSize != 0;
 	}
 
 	private static String[] extractKeysFromTable(SimpleSet table,
@@ -230,6 +240,33 @@ public class MixinIndex extends Index {
 		}
 	}
 
+	public void importFrom(File file) throws IOException {
+		DataInputStream stream = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), 8192));
+		try {
+			final char[] header = Util.readUTF(stream);
+			if (!CharOperation.equals(OLD_HEADER_2, header)
+					&& !CharOperation.equals(HEADER, header)) {
+				throw new IOException(Messages.exception_wrongFormat);
+			}
+			final HashtableOfObject savedKeyToDocs = keyToDocs;
+			final SimpleSet savedDocumentNames = documentNames;
+			keyToDocs = new HashtableOfObject(10);
+			documentNames = new SimpleSet(10);
+			try {
+				loadKeyToDocFormat(stream);
+			} catch (IOException e) {
+				keyToDocs = savedKeyToDocs;
+				documentNames = savedDocumentNames;
+				throw e;
+			}
+		} finally {
+			stream.close();
+		}
+		this.dirty = true;
+		save();
+	}
+
 	private void initialize(boolean reuseExistingFile) throws IOException {
 		boolean successful = false;
 		File indexFile = getIndexFile();
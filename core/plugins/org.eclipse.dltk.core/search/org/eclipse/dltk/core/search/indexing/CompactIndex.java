@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.search.indexing;
+
+import java.io.IOException;
+
+import org.eclipse.dltk.core.search.index.Index;
+import org.eclipse.dltk.internal.core.search.processing.IContainerJob;
+
+/**
+ * Rewrites the file of an index folding the segments appended by the
+ * incremental saves, see {@link Index#compact()}.
+ */
+class CompactIndex extends AbstractJob implements IContainerJob {
+
+	private final Index index;
+
+	CompactIndex(Index index) {
+		this.index = index;
+	}
+
+	public Object getContainerKey() {
+		return index.getIndexFile().getPath();
+	}
+
+	@Override
+	protected String getName() {
+		return index.getIndexFile().getPath();
+	}
+
+	@Override
+	protected void run() throws IOException {
+		if (isCancelled)
+			return;
+		final ReadWriteMonitor monitor = index.monitor;
+		if (monitor == null)
+			return; // index got deleted since acquired
+		monitor.enterWrite();
+		try {
+			index.compact();
+		} finally {
+			monitor.exitWrite();
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return index.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof CompactIndex
+				&& ((CompactIndex) obj).index == index;
+	}
+
+}
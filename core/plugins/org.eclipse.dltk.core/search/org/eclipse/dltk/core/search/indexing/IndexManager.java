@@ -513,6 +513,33 @@ public class IndexManager extends JobManager implements IIndexConstants {
 		}
 	}
 
+	@Override
+	protected int getMaxParallelJobs() {
+		final String value = DLTKCore
+				.getOption(DLTKCore.INDEXER_PARALLEL_JOBS);
+		if (value != null) {
+			try {
+				return Math.max(1, Integer.parseInt(value.trim()));
+			} catch (NumberFormatException e) {
+				// fall thru
+			}
+		}
+		return 1;
+	}
+
+	private int getCompactionThreshold() {
+		final String value = DLTKCore
+				.getOption(DLTKCore.INDEXER_COMPACTION_THRESHOLD);
+		if (value != null) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				// fall thru
+			}
+		}
+		return 0;
+	}
+
 	/**
 	 * Name of the background process
 	 */
@@ -766,6 +793,10 @@ public class IndexManager extends JobManager implements IIndexConstants {
 				Util.verbose("-> saving index " + index.getIndexFile()); //$NON-NLS-1$
 			}
 			index.save();
+			final int threshold = getCompactionThreshold();
+			if (threshold > 0 && index.getSegmentCount() >= threshold) {
+				this.requestIfNotWaiting(new CompactIndex(index));
+			}
 		}
 		if (!index.isRebuildable()) {
 			return;
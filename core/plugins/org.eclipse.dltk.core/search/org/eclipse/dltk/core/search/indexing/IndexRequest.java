@@ -10,10 +10,10 @@
 package org.eclipse.dltk.core.search.indexing;
 
 import org.eclipse.core.runtime.IPath;
-import org.eclipse.dltk.internal.core.search.processing.IJob;
+import org.eclipse.dltk.internal.core.search.processing.IContainerJob;
 
 
-public abstract class IndexRequest implements IJob {
+public abstract class IndexRequest implements IContainerJob {
 	protected boolean isCancelled = false;
 	protected IPath containerPath;
 	protected IndexManager manager;
@@ -28,6 +28,9 @@ public abstract class IndexRequest implements IJob {
 		return projectNameOrArchivePath.equals(this.containerPath.segment(0))
 			|| projectNameOrArchivePath.equals(this.containerPath.toString());
 	}
+	public Object getContainerKey() {
+		return this.containerPath;
+	}
 	public void cancel() {
 		this.manager.jobWasCancelled(this.containerPath);
 		this.isCancelled = true;
@@ -57,6 +57,11 @@ public class ArchiveProjectFragmentRequest extends IndexRequest {
 		return fragment.getElementName();
 	}
 
+	@Override
+	public Object getContainerKey() {
+		return fragment.getPath();
+	}
+
 	protected void run() throws CoreException, IOException {
 		IEnvironment environment = EnvironmentManager.getEnvironment(fragment
 				.getScriptProject());
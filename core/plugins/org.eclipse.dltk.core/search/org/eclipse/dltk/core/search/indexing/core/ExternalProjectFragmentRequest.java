@@ -11,6 +11,7 @@
  *******************************************************************************/
 package org.eclipse.dltk.core.search.indexing.core;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -27,11 +28,14 @@ import org.eclipse.dltk.core.IModelElementVisitor;
 import org.eclipse.dltk.core.IProjectFragment;
 import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.core.ModelException;
+import org.eclipse.dltk.core.caching.IContentCache;
 import org.eclipse.dltk.core.environment.EnvironmentManager;
 import org.eclipse.dltk.core.environment.EnvironmentPathUtils;
 import org.eclipse.dltk.core.environment.IEnvironment;
 import org.eclipse.dltk.core.environment.IFileHandle;
+import org.eclipse.dltk.core.mixin.MixinModelRegistry;
 import org.eclipse.dltk.core.search.index.Index;
+import org.eclipse.dltk.core.search.index.MixinIndex;
 import org.eclipse.dltk.core.search.indexing.IProjectIndexer;
 import org.eclipse.dltk.core.search.indexing.ReadWriteMonitor;
 import org.eclipse.dltk.internal.core.BuiltinSourceModule;
@@ -53,6 +57,11 @@ public class ExternalProjectFragmentRequest extends IndexRequest {
 		return fragment.getElementName();
 	}
 
+	@Override
+	public Object getContainerKey() {
+		return fragment.getPath();
+	}
+
 	protected void run() throws CoreException, IOException {
 		IEnvironment environment = EnvironmentManager.getEnvironment(fragment
 				.getScriptProject());
@@ -65,6 +74,12 @@ public class ExternalProjectFragmentRequest extends IndexRequest {
 			return;
 		}
 		final IPath containerPath = fragment.getPath();
+		final File prebuiltIndex = getPrebuiltIndexFile(index, modules,
+				containerPath);
+		if (prebuiltIndex != null
+				&& importPrebuiltIndex(index, prebuiltIndex, modules)) {
+			return;
+		}
 		Set<IFileHandle> parentFolders = new HashSet<IFileHandle>();
 		final List<Object> changes = checkChanges(index, modules,
 				containerPath, getEnvironment(), parentFolders);
@@ -76,6 +91,7 @@ public class ExternalProjectFragmentRequest extends IndexRequest {
 		}
 		final ReadWriteMonitor imon = index.monitor;
 		imon.enterWrite();
+		boolean completed = false;
 		try {
 			for (Iterator<Object> i = changes.iterator(); !isCancelled
 					&& i.hasNext();) {
@@ -98,12 +114,16 @@ public class ExternalProjectFragmentRequest extends IndexRequest {
 							containerPath);
 				}
 			}
-
+			completed = !isCancelled;
 		} catch (Throwable e) {
 			e.printStackTrace();
 		} finally {
 			try {
 				index.save();
+				if (completed && prebuiltIndex != null
+						&& PrebuiltIndexes.isExportEnabled()) {
+					PrebuiltIndexes.exportIndex(index, prebuiltIndex);
+				}
 			} catch (IOException e) {
 				DLTKCore.error("error saving index", e); //$NON-NLS-1$
 			} finally {
@@ -112,6 +132,62 @@ public class ExternalProjectFragmentRequest extends IndexRequest {
 		}
 	}
 
+	/**
+	 * Returns the prebuilt index file for the modules if the index is empty
+	 * and a directory of prebuilt indexes is configured, which either contains
+	 * prebuilt indexes or receives the exported ones.
+	 */
+	private File getPrebuiltIndexFile(Index index, Set<ISourceModule> modules,
+			IPath containerPath) throws ModelException, IOException {
+		final File directory = PrebuiltIndexes.getDirectory();
+		if (directory == null || modules.isEmpty()) {
+			return null;
+		}
+		final String[] documents = queryDocumentNames(index);
+		if (documents != null && documents.length != 0) {
+			return null;
+		}
+		// the checksum reads the source of every module
+		if (!PrebuiltIndexes.isExportEnabled()
+				&& !PrebuiltIndexes.hasIndexFiles(directory)) {
+			return null;
+		}
+		return PrebuiltIndexes.getIndexFile(directory, getIndexer(), index,
+				toolkit, containerPath, modules);
+	}
+
+	private boolean importPrebuiltIndex(Index index, File file,
+			Set<ISourceModule> modules) {
+		final ReadWriteMonitor imon = index.monitor;
+		imon.enterWrite();
+		try {
+			if (!PrebuiltIndexes.importIndex(index, file)) {
+				return false;
+			}
+		} finally {
+			imon.exitWrite();
+		}
+		if (DEBUG) {
+			log("imported " + file); //$NON-NLS-1$
+		}
+		if (index instanceof MixinIndex) {
+			MixinModelRegistry.clearKeysCache(toolkit);
+		}
+		// mark the modules as indexed, see checkChanges()
+		if (getEnvironment() != null) {
+			final IContentCache coreCache = ModelManager.getModelManager()
+					.getCoreCache();
+			for (ISourceModule module : modules) {
+				final IFileHandle handle = EnvironmentPathUtils.getFile(module,
+						false);
+				if (handle != null) {
+					coreCache.setCacheEntryAttribute(handle, "indexed", ""); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+		}
+		return true;
+	}
+
 	protected IEnvironment getEnvironment() {
 		return EnvironmentManager.getEnvironment(fragment);
 	}
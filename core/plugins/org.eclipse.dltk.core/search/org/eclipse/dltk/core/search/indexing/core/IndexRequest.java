@@ -33,11 +33,13 @@ import org.eclipse.dltk.core.search.indexing.IProjectIndexer;
 import org.eclipse.dltk.core.search.indexing.IProjectIndexer.Internal;
 import org.eclipse.dltk.core.search.indexing.ReadWriteMonitor;
 import org.eclipse.dltk.internal.core.ModelManager;
+import org.eclipse.dltk.internal.core.search.processing.IContainerJob;
 
 /**
  * @since 2.0
  */
-public abstract class IndexRequest extends AbstractJob {
+public abstract class IndexRequest extends AbstractJob implements
+		IContainerJob {
 	private IProjectIndexer indexer;
 
 	public IndexRequest(IProjectIndexer indexer) {
@@ -48,6 +50,17 @@ public abstract class IndexRequest extends AbstractJob {
 		return (Internal) indexer;
 	}
 
+	/**
+	 * Returns the path of the index container updated by this request or
+	 * <code>null</code> if this request should not be executed concurrently
+	 * with the other ones.
+	 * 
+	 * @since 5.0
+	 */
+	public Object getContainerKey() {
+		return null;
+	}
+
 	/**
 	 * Returns all the document names. Read lock is acquired automatically.
 	 * 
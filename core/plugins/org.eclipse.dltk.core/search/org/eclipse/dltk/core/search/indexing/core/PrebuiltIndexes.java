@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.search.indexing.core;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.IDLTKLanguageToolkit;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.ModelException;
+import org.eclipse.dltk.core.search.index.Index;
+import org.eclipse.dltk.core.search.indexing.IProjectIndexer;
+
+/**
+ * Prebuilt indexes of libraries, kept in the directory configured by
+ * {@link DLTKCore#INDEXER_PREBUILT_INDEXES}. The name of a prebuilt index is a
+ * checksum of the indexer, of the language and of the paths and content of
+ * the library modules, so the index of identical libraries can be shared by
+ * different workspaces and machines.
+ */
+final class PrebuiltIndexes {
+
+	private static final String EXTENSION = ".index"; //$NON-NLS-1$
+
+	private PrebuiltIndexes() {
+	}
+
+	/**
+	 * Returns the directory of the prebuilt indexes or <code>null</code> if
+	 * none is configured.
+	 */
+	static File getDirectory() {
+		final String value = DLTKCore
+				.getOption(DLTKCore.INDEXER_PREBUILT_INDEXES);
+		if (value == null || value.trim().length() == 0) {
+			return null;
+		}
+		final File directory = new File(value.trim());
+		return directory.isDirectory() ? directory : null;
+	}
+
+	static boolean isExportEnabled() {
+		return DLTKCore.ENABLED.equals(DLTKCore
+				.getOption(DLTKCore.INDEXER_PREBUILT_INDEXES_EXPORT));
+	}
+
+	/**
+	 * Returns whether the directory contains any prebuilt index, if not there
+	 * is nothing to import and the checksum of the modules isn't needed
+	 * unless the index is exported.
+	 */
+	static boolean hasIndexFiles(File directory) {
+		final String[] names = directory.list(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(EXTENSION);
+			}
+		});
+		return names != null && names.length != 0;
+	}
+
+	/**
+	 * Returns the file of the prebuilt index of the specified library modules,
+	 * which may not exist. The content of all the modules is read to compute
+	 * its name, see {@link #hasIndexFiles(File)} to avoid that when it can't
+	 * be used.
+	 */
+	static File getIndexFile(File directory, IProjectIndexer indexer,
+			Index index, IDLTKLanguageToolkit toolkit, IPath containerPath,
+			Collection<ISourceModule> modules) throws ModelException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e.getMessage());
+		}
+		update(digest, indexer.getClass().getName().toCharArray());
+		update(digest, index.getClass().getName().toCharArray());
+		update(digest, toolkit.getNatureId().toCharArray());
+		final Map<String, ISourceModule> paths = new TreeMap<String, ISourceModule>();
+		for (ISourceModule module : modules) {
+			paths.put(SourceIndexUtil.containerRelativePath(containerPath,
+					module), module);
+		}
+		for (Map.Entry<String, ISourceModule> entry : paths.entrySet()) {
+			update(digest, entry.getKey().toCharArray());
+			update(digest, entry.getValue().getSourceAsCharArray());
+		}
+		final byte[] checksum = digest.digest();
+		final StringBuilder name = new StringBuilder(checksum.length * 2
+				+ EXTENSION.length());
+		for (int i = 0; i < checksum.length; ++i) {
+			name.append(Character.forDigit((checksum[i] >> 4) & 0xF, 16));
+			name.append(Character.forDigit(checksum[i] & 0xF, 16));
+		}
+		name.append(EXTENSION);
+		return new File(directory, name.toString());
+	}
+
+	private static void update(MessageDigest digest, char[] chars) {
+		final int length = chars.length;
+		digest.update((byte) (length >>> 24));
+		digest.update((byte) (length >>> 16));
+		digest.update((byte) (length >>> 8));
+		digest.update((byte) length);
+		for (int i = 0; i < length; ++i) {
+			digest.update((byte) (chars[i] >>> 8));
+			digest.update((byte) chars[i]);
+		}
+	}
+
+	/**
+	 * Replaces the content of the index by the prebuilt index file if it
+	 * exists, returns <code>true</code> if it was adopted. The write lock of
+	 * the index must be held.
+	 */
+	static boolean importIndex(Index index, File file) {
+		if (!file.isFile()) {
+			return false;
+		}
+		try {
+			index.importFrom(file);
+			return true;
+		} catch (IOException e) {
+			DLTKCore.error("Failed to import prebuilt index " + file, e); //$NON-NLS-1$
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the index to the prebuilt index file unless some other workspace
+	 * already did. The write lock of the index must be held.
+	 */
+	static void exportIndex(Index index, File file) {
+		if (file.exists()) {
+			return;
+		}
+		try {
+			index.exportTo(file);
+		} catch (IOException e) {
+			DLTKCore.error("Failed to export prebuilt index " + file, e); //$NON-NLS-1$
+		}
+	}
+}
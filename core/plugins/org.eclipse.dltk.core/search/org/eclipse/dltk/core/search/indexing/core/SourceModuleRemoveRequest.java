@@ -43,6 +43,11 @@ public class SourceModuleRemoveRequest extends IndexRequest {
 		return path;
 	}
 
+	@Override
+	public Object getContainerKey() {
+		return project.getPath();
+	}
+
 	@Override
 	public boolean belongsTo(String jobFamily) {
 		return jobFamily.equals(project.getElementName());
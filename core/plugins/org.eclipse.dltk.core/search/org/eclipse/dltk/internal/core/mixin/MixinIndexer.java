@@ -77,10 +77,12 @@ public class MixinIndexer extends AbstractIndexer {
 						.getNatureId());
 				if (parser != null) {
 					final MixinIndexRequestor requestor = new MixinIndexRequestor();
-					parser.setRequirestor(requestor);
-					parser
-							.parserSourceModule(false, document
-									.getSourceModule());
+					// the parser is shared with the mixin models
+					synchronized (parser) {
+						parser.setRequirestor(requestor);
+						parser.parserSourceModule(false,
+								document.getSourceModule());
+					}
 					if (requestor.count == 0) {
 						((MixinIndex) document.getIndex())
 								.addDocumentName(document
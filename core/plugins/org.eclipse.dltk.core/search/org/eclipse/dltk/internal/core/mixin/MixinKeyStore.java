@@ -0,0 +1,638 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.mixin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Mixin keys stored as a trie of their segments. Each distinct segment is
+ * stored once and the nodes are kept in primitive arrays, so a key takes a few
+ * dozen bytes instead of a string and a map entry. A node has a value (the
+ * mixin element of the key) and flags, among them whether the key is known to
+ * exist or to be missing.
+ * <p>
+ * Node ids are stable while the node has a value. The nodes without a value,
+ * known state and children are reclaimed when the arrays are full, the
+ * segments are kept until the store is cleared. Each method is thread-safe,
+ * but a node returned by {@link #add(String)} can be reclaimed by the next
+ * change until its value is set, so the changes are expected to be serialized
+ * by the caller while reads may run concurrently.
+ */
+public class MixinKeyStore {
+
+	/** id returned for the keys not in the store */
+	public static final int NONE = -1;
+
+	/** the key is known to exist */
+	public static final int EXISTS = 0x01;
+	/** the key is known to be missing */
+	public static final int MISSING = 0x02;
+	/** the value of the node is a child of the value of the parent node */
+	public static final int CHILD = 0x04;
+
+	private static final int KNOWN = EXISTS | MISSING;
+
+	private static final int ROOT = 0;
+	/** parent of a free node */
+	private static final int FREE = -2;
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final char separator;
+	private final Lock readLock;
+	private final Lock writeLock;
+
+	// interned segments, the hash table contains their ids + 1
+	private String[] segments;
+	private int[] segmentTable;
+	private int segmentCount;
+
+	// nodes, the free ones are linked by nextSiblings
+	private int[] parents;
+	private int[] segmentIds;
+	private int[] firstChildren;
+	private int[] nextSiblings;
+	private byte[] flags;
+	/** generations of the known flags, they are valid in the current one */
+	private byte[] generations;
+	private Object[] values;
+	private int nodeCount;
+	private int freeNodes;
+	private int freeCount;
+
+	/** (parent, segment) hash table of the node ids + 1 */
+	private int[] childTable;
+	private int childCount;
+
+	private byte generation;
+	private int knownCount;
+	private int valueCount;
+
+	public MixinKeyStore(char separator) {
+		this.separator = separator;
+		final ReadWriteLock lock = new ReentrantReadWriteLock();
+		readLock = lock.readLock();
+		writeLock = lock.writeLock();
+		init();
+	}
+
+	private void init() {
+		segments = new String[INITIAL_CAPACITY];
+		segmentTable = new int[INITIAL_CAPACITY * 2];
+		segmentCount = 0;
+		parents = new int[INITIAL_CAPACITY];
+		segmentIds = new int[INITIAL_CAPACITY];
+		firstChildren = new int[INITIAL_CAPACITY];
+		nextSiblings = new int[INITIAL_CAPACITY];
+		flags = new byte[INITIAL_CAPACITY];
+		generations = new byte[INITIAL_CAPACITY];
+		values = new Object[INITIAL_CAPACITY];
+		childTable = new int[INITIAL_CAPACITY * 2];
+		childCount = 0;
+		freeNodes = NONE;
+		freeCount = 0;
+		knownCount = 0;
+		valueCount = 0;
+		// the root is the parent of the first segments
+		parents[ROOT] = NONE;
+		segmentIds[ROOT] = NONE;
+		firstChildren[ROOT] = NONE;
+		nextSiblings[ROOT] = NONE;
+		nodeCount = 1;
+	}
+
+	/**
+	 * Returns the node of the key, or {@link #NONE} if the key is not stored.
+	 */
+	public int find(String key) {
+		readLock.lock();
+		try {
+			return lookup(key);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the node of the key, adding it if it is not stored yet.
+	 */
+	public int add(String key) {
+		writeLock.lock();
+		try {
+			int node = ROOT;
+			int start = 0;
+			for (;;) {
+				int end = key.indexOf(separator, start);
+				if (end == -1) {
+					end = key.length();
+				}
+				final int segment = addSegment(key, start, end);
+				int child = findChild(node, segment);
+				if (child == NONE) {
+					child = addChild(node, segment);
+				}
+				node = child;
+				if (end == key.length()) {
+					return node;
+				}
+				start = end + 1;
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the key of the node
+	 */
+	public String getKey(int node) {
+		readLock.lock();
+		try {
+			int length = -1;
+			for (int n = node; n != ROOT; n = parents[n]) {
+				length += segments[segmentIds[n]].length() + 1;
+			}
+			if (length <= 0) {
+				return length == 0 ? segments[segmentIds[node]] : ""; //$NON-NLS-1$
+			}
+			final char[] chars = new char[length];
+			int end = length;
+			for (int n = node; n != ROOT; n = parents[n]) {
+				final String segment = segments[segmentIds[n]];
+				end -= segment.length();
+				segment.getChars(0, segment.length(), chars, end);
+				if (--end >= 0) {
+					chars[end] = separator;
+				}
+			}
+			return new String(chars);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the last segment of the key of the node
+	 */
+	public String getSegment(int node) {
+		readLock.lock();
+		try {
+			return segments[segmentIds[node]];
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the node of the parent key, or {@link #NONE} if the key has a
+	 * single segment.
+	 */
+	public int getParent(int node) {
+		readLock.lock();
+		try {
+			final int parent = parents[node];
+			return parent == ROOT ? NONE : parent;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	public Object getValue(int node) {
+		readLock.lock();
+		try {
+			return values[node];
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the value of the key, or <code>null</code> if it has none.
+	 */
+	public Object getValue(String key) {
+		readLock.lock();
+		try {
+			final int node = lookup(key);
+			return node != NONE ? values[node] : null;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the value of the node. The node is kept as long as it has a value,
+	 * removing the value also clears the {@link #CHILD} flag.
+	 */
+	public void setValue(int node, Object value) {
+		writeLock.lock();
+		try {
+			if (values[node] == null) {
+				if (value != null) {
+					++valueCount;
+				}
+			} else if (value == null) {
+				--valueCount;
+				flags[node] &= ~CHILD;
+			}
+			values[node] = value;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the values of the child nodes having all the specified flags
+	 */
+	public Object[] getChildValues(int node, int flag) {
+		readLock.lock();
+		try {
+			final List<Object> result = new ArrayList<Object>();
+			for (int child = firstChildren[node]; child != NONE;) {
+				if (values[child] != null && (flags[child] & flag) == flag) {
+					result.add(values[child]);
+				}
+				child = nextSiblings[child];
+			}
+			return result.toArray();
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Sets or clears the {@link #CHILD} flag of the node
+	 */
+	public void setChild(int node, boolean child) {
+		writeLock.lock();
+		try {
+			if (child) {
+				flags[node] |= CHILD;
+			} else {
+				flags[node] &= ~CHILD;
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns {@link #EXISTS} or {@link #MISSING} if the state of the key is
+	 * known, 0 otherwise.
+	 */
+	public int getKnown(String key) {
+		readLock.lock();
+		try {
+			final int node = lookup(key);
+			return node != NONE ? getFlags(node) & KNOWN : 0;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	public void setKnown(String key, boolean exists) {
+		writeLock.lock();
+		try {
+			setKnown(add(key), exists);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	public void setKnown(int node, boolean exists) {
+		writeLock.lock();
+		try {
+			if (!isKnown(node)) {
+				++knownCount;
+			}
+			flags[node] = (byte) ((flags[node] & ~KNOWN) | (exists ? EXISTS
+					: MISSING));
+			generations[node] = generation;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	public void removeKnown(String key) {
+		writeLock.lock();
+		try {
+			final int node = lookup(key);
+			if (node != NONE) {
+				removeKnown(node);
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	public void removeKnown(int node) {
+		writeLock.lock();
+		try {
+			if (isKnown(node)) {
+				--knownCount;
+				flags[node] &= ~KNOWN;
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Forgets the known state of all the keys
+	 */
+	public void clearKnown() {
+		writeLock.lock();
+		try {
+			if (++generation == 0) {
+				// the flags of the previous use of the generation
+				for (int i = 0; i < nodeCount; ++i) {
+					flags[i] &= ~KNOWN;
+				}
+			}
+			knownCount = 0;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of keys with the known state
+	 */
+	public int getKnownCount() {
+		readLock.lock();
+		try {
+			return knownCount;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of nodes, including the unused ones not reclaimed yet
+	 */
+	public int size() {
+		readLock.lock();
+		try {
+			return nodeCount - freeCount - 1;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	public int getSegmentCount() {
+		readLock.lock();
+		try {
+			return segmentCount;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes all the keys and segments
+	 */
+	public void clear() {
+		writeLock.lock();
+		try {
+			init();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	// called with lock being held
+	private boolean isKnown(int node) {
+		return (getFlags(node) & KNOWN) != 0;
+	}
+
+	// called with lock being held
+	private int getFlags(int node) {
+		final int f = flags[node];
+		return generations[node] == generation ? f : f & ~KNOWN;
+	}
+
+	// called with lock being held
+	private int lookup(String key) {
+		int node = ROOT;
+		int start = 0;
+		for (;;) {
+			int end = key.indexOf(separator, start);
+			if (end == -1) {
+				end = key.length();
+			}
+			final int segment = findSegment(key, start, end);
+			if (segment == NONE) {
+				return NONE;
+			}
+			node = findChild(node, segment);
+			if (node == NONE || end == key.length()) {
+				return node;
+			}
+			start = end + 1;
+		}
+	}
+
+	private static int hash(String key, int start, int end) {
+		// the same as String.hashCode()
+		int h = 0;
+		for (int i = start; i < end; ++i) {
+			h = 31 * h + key.charAt(i);
+		}
+		return h;
+	}
+
+	private static int mix(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int hash(int parent, int segment) {
+		return mix(parent * 31 + segment);
+	}
+
+	// called with lock being held
+	private int findSegment(String key, int start, int end) {
+		final int length = end - start;
+		final int mask = segmentTable.length - 1;
+		for (int i = mix(hash(key, start, end)) & mask;; i = (i + 1) & mask) {
+			final int id = segmentTable[i] - 1;
+			if (id == NONE) {
+				return NONE;
+			}
+			final String segment = segments[id];
+			if (segment.length() == length
+					&& key.regionMatches(start, segment, 0, length)) {
+				return id;
+			}
+		}
+	}
+
+	// called with write lock being held
+	private int addSegment(String key, int start, int end) {
+		int id = findSegment(key, start, end);
+		if (id != NONE) {
+			return id;
+		}
+		if (segmentCount == segments.length) {
+			final String[] newSegments = new String[segments.length * 2];
+			System.arraycopy(segments, 0, newSegments, 0, segmentCount);
+			segments = newSegments;
+		}
+		id = segmentCount++;
+		segments[id] = key.substring(start, end);
+		if (segmentCount * 4 > segmentTable.length * 3) {
+			segmentTable = new int[segmentTable.length * 2];
+			for (int i = 0; i < segmentCount; ++i) {
+				insertSegment(i);
+			}
+		} else {
+			insertSegment(id);
+		}
+		return id;
+	}
+
+	// called with write lock being held
+	private void insertSegment(int id) {
+		final int mask = segmentTable.length - 1;
+		int i = mix(segments[id].hashCode()) & mask;
+		while (segmentTable[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		segmentTable[i] = id + 1;
+	}
+
+	// called with lock being held
+	private int findChild(int parent, int segment) {
+		final int mask = childTable.length - 1;
+		for (int i = hash(parent, segment) & mask;; i = (i + 1) & mask) {
+			final int node = childTable[i] - 1;
+			if (node == NONE
+					|| (parents[node] == parent && segmentIds[node] == segment)) {
+				return node;
+			}
+		}
+	}
+
+	// called with write lock being held
+	private int addChild(int parent, int segment) {
+		if (freeNodes == NONE && nodeCount == parents.length) {
+			reclaim(parent);
+		}
+		final int node;
+		if (freeNodes != NONE) {
+			node = freeNodes;
+			freeNodes = nextSiblings[node];
+			--freeCount;
+		} else {
+			node = nodeCount++;
+		}
+		parents[node] = parent;
+		segmentIds[node] = segment;
+		firstChildren[node] = NONE;
+		nextSiblings[node] = firstChildren[parent];
+		firstChildren[parent] = node;
+		flags[node] = 0;
+		values[node] = null;
+		if (++childCount * 4 > childTable.length * 3) {
+			rehashChildren(childTable.length * 2);
+		} else {
+			insertChild(node);
+		}
+		return node;
+	}
+
+	// called with write lock being held
+	private void insertChild(int node) {
+		final int mask = childTable.length - 1;
+		int i = hash(parents[node], segmentIds[node]) & mask;
+		while (childTable[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		childTable[i] = node + 1;
+	}
+
+	// called with write lock being held
+	private void rehashChildren(int capacity) {
+		childTable = new int[capacity];
+		for (int node = ROOT + 1; node < nodeCount; ++node) {
+			if (parents[node] != FREE) {
+				insertChild(node);
+			}
+		}
+	}
+
+	/**
+	 * Frees the nodes without a value, known state and used descendants,
+	 * except the specified node being added to. The arrays grow if less than a
+	 * quarter of them becomes free.
+	 */
+	// called with write lock being held
+	private void reclaim(int pinned) {
+		if (nodeCount - valueCount - knownCount > nodeCount / 4) {
+			final boolean[] used = new boolean[nodeCount];
+			used[ROOT] = true;
+			for (int node = ROOT + 1; node < nodeCount; ++node) {
+				if (parents[node] != FREE
+						&& (node == pinned || values[node] != null || isKnown(node))) {
+					for (int n = node; !used[n]; n = parents[n]) {
+						used[n] = true;
+					}
+				}
+			}
+			for (int node = ROOT; node < nodeCount; ++node) {
+				firstChildren[node] = NONE;
+			}
+			childCount = 0;
+			for (int node = nodeCount - 1; node > ROOT; --node) {
+				if (used[node]) {
+					nextSiblings[node] = firstChildren[parents[node]];
+					firstChildren[parents[node]] = node;
+					++childCount;
+				} else {
+					if (parents[node] != FREE) {
+						parents[node] = FREE;
+						++freeCount;
+					}
+					flags[node] = 0;
+					nextSiblings[node] = freeNodes;
+					freeNodes = node;
+				}
+			}
+			rehashChildren(childTable.length);
+		}
+		if (freeCount < nodeCount / 4) {
+			final int capacity = parents.length * 2;
+			parents = grow(parents, capacity);
+			segmentIds = grow(segmentIds, capacity);
+			firstChildren = grow(firstChildren, capacity);
+			nextSiblings = grow(nextSiblings, capacity);
+			final byte[] newFlags = new byte[capacity];
+			System.arraycopy(flags, 0, newFlags, 0, nodeCount);
+			flags = newFlags;
+			final byte[] newGenerations = new byte[capacity];
+			System.arraycopy(generations, 0, newGenerations, 0, nodeCount);
+			generations = newGenerations;
+			final Object[] newValues = new Object[capacity];
+			System.arraycopy(values, 0, newValues, 0, nodeCount);
+			values = newValues;
+		}
+	}
+
+	private int[] grow(int[] array, int capacity) {
+		final int[] result = new int[capacity];
+		System.arraycopy(array, 0, result, 0, nodeCount);
+		return result;
+	}
+
+}
@@ -0,0 +1,462 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.mixin;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.IDLTKLanguageToolkit;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.IScriptProject;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.environment.EnvironmentPathUtils;
+import org.eclipse.dltk.core.environment.IFileHandle;
+import org.eclipse.dltk.core.mixin.IMixinRequestor;
+import org.eclipse.dltk.core.search.IDLTKSearchScope;
+import org.eclipse.dltk.core.search.SearchEngine;
+import org.eclipse.dltk.core.search.SearchParticipant;
+import org.eclipse.dltk.core.search.SearchPattern;
+import org.eclipse.dltk.core.search.index.Index;
+import org.eclipse.dltk.core.search.indexing.IndexManager;
+import org.eclipse.dltk.internal.core.ModelManager;
+import org.eclipse.dltk.internal.core.search.matching.MixinPattern;
+import org.eclipse.dltk.internal.core.util.Util;
+
+/**
+ * Element tree of a mixin model saved by the previous session: the keys of
+ * the resolved elements with the source modules containing them. The
+ * snapshot is keyed by the state of the mixin index files of the model scope
+ * and is discarded as a whole if they changed since it was saved. Each source
+ * module is additionally checked against its timestamp, the keys of the
+ * modules changed in the meantime are dropped together with their parent
+ * keys, so they are looked up in the indexes again.
+ * <p>
+ * The file is read into memory at once when loaded, as all of it is decoded
+ * into the snapshot. Sorted keys are stored with the length of the prefix
+ * shared with the previous key.
+ */
+public class MixinModelSnapshot {
+
+	private static final int MAGIC = 0x444d5301;
+	private static final int VERSION = 1;
+
+	private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+
+	private static final long UNKNOWN_STAMP = IResource.NULL_STAMP;
+
+	/** valid keys to the source modules containing them */
+	private final Map<String, ISourceModule[]> keys;
+	/** parent keys to the keys of their children */
+	private final Map<String, List<String>> children = new HashMap<String, List<String>>();
+	/** source modules to the keys they contain */
+	private final Map<ISourceModule, List<String>> moduleKeys = new HashMap<ISourceModule, List<String>>();
+
+	private MixinModelSnapshot(Map<String, ISourceModule[]> keys) {
+		this.keys = keys;
+		for (Map.Entry<String, ISourceModule[]> entry : keys.entrySet()) {
+			final String key = entry.getKey();
+			final String parentKey = getParentKey(key);
+			if (parentKey != null) {
+				List<String> list = children.get(parentKey);
+				if (list == null) {
+					list = new ArrayList<String>();
+					children.put(parentKey, list);
+				}
+				list.add(key);
+			}
+			for (ISourceModule module : entry.getValue()) {
+				List<String> list = moduleKeys.get(module);
+				if (list == null) {
+					list = new ArrayList<String>();
+					moduleKeys.put(module, list);
+				}
+				list.add(key);
+			}
+		}
+	}
+
+	/**
+	 * Returns the source modules containing the key or <code>null</code> if
+	 * the snapshot doesn't know it.
+	 */
+	public ISourceModule[] getModules(String key) {
+		return keys.get(key);
+	}
+
+	/**
+	 * Returns the keys of the children of the key
+	 */
+	public List<String> getChildren(String key) {
+		final List<String> list = children.get(key);
+		if (list == null) {
+			return Collections.emptyList();
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the source modules of the snapshot
+	 */
+	public Set<ISourceModule> getSourceModules() {
+		return moduleKeys.keySet();
+	}
+
+	/**
+	 * Forgets the keys contained in the source module and their parent keys.
+	 *
+	 * @return the forgotten keys
+	 */
+	public Set<String> remove(ISourceModule module) {
+		final List<String> list = moduleKeys.remove(module);
+		if (list == null) {
+			return Collections.emptySet();
+		}
+		final Set<String> removed = new HashSet<String>();
+		for (String key : list) {
+			for (String k = key; k != null && removed.add(k); k = getParentKey(k)) {
+				final ISourceModule[] modules = keys.remove(k);
+				if (modules != null) {
+					for (ISourceModule m : modules) {
+						final List<String> mk = moduleKeys.get(m);
+						if (mk != null) {
+							mk.remove(k);
+						}
+					}
+				}
+				final String parentKey = getParentKey(k);
+				if (parentKey != null) {
+					final List<String> siblings = children.get(parentKey);
+					if (siblings != null) {
+						siblings.remove(k);
+					}
+				}
+			}
+		}
+		return removed;
+	}
+
+	private static String getParentKey(String key) {
+		final int pos = key.lastIndexOf(IMixinRequestor.MIXIN_NAME_SEPARATOR);
+		return pos != -1 ? key.substring(0, pos) : null;
+	}
+
+	/**
+	 * Returns the file of the snapshot of the model
+	 */
+	public static File getFile(IDLTKLanguageToolkit toolkit,
+			IScriptProject project) {
+		String name = toolkit.getNatureId();
+		if (project != null) {
+			name += '-' + project.getElementName();
+		}
+		return DLTKCore.getDefault().getStateLocation().append("mixin") //$NON-NLS-1$
+				.append(name + ".snapshot").toFile(); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns <code>true</code> while the indexes are being updated, the
+	 * snapshots should be neither loaded nor saved then.
+	 */
+	public static boolean isIndexing() {
+		return ModelManager.getModelManager().getIndexManager()
+				.awaitingJobsCount() > 0;
+	}
+
+	/**
+	 * Returns the locations of the mixin indexes of the scope with the last
+	 * modification times and the lengths of their files, or <code>null</code>
+	 * if some of them have unsaved changes.
+	 */
+	private static Map<String, long[]> getIndexStates(IDLTKSearchScope scope,
+			IDLTKLanguageToolkit toolkit) {
+		final IndexManager indexManager = ModelManager.getModelManager()
+				.getIndexManager();
+		final MixinPattern pattern = new MixinPattern(new char[] { '*' },
+				SearchPattern.R_PATTERN_MATCH, toolkit);
+		final SearchParticipant participant = SearchEngine
+				.getDefaultSearchParticipant();
+		final IPath[] locations = participant.selectMixinIndexes(pattern,
+				scope);
+		final Map<String, long[]> states = new TreeMap<String, long[]>();
+		for (IPath location : locations) {
+			final String path = location.toOSString();
+			final Index index = indexManager.getIndex(path);
+			if (index != null && index.hasChanged()) {
+				return null;
+			}
+			final File file = new File(path);
+			states.put(path, new long[] { file.lastModified(), file.length() });
+		}
+		return states;
+	}
+
+	private static long getStamp(ISourceModule module) {
+		final IResource resource = module.getResource();
+		if (resource != null) {
+			return resource.getLocalTimeStamp();
+		}
+		final IFileHandle file = EnvironmentPathUtils.getFile(module, false);
+		if (file != null && file.exists()) {
+			return file.lastModified();
+		}
+		return UNKNOWN_STAMP;
+	}
+
+	/**
+	 * Saves the snapshot of the elements. The elements contained in source
+	 * modules without a timestamp aren't saved.
+	 *
+	 * @param elements
+	 *            keys of the elements to the source modules containing them,
+	 *            the children of each element must be present too
+	 */
+	public static void save(File file, IDLTKLanguageToolkit toolkit,
+			IDLTKSearchScope scope, Map<String, ISourceModule[]> elements) {
+		if (isIndexing()) {
+			return;
+		}
+		final Map<String, long[]> indexStates = getIndexStates(scope, toolkit);
+		if (indexStates == null) {
+			return;
+		}
+		final Map<ISourceModule, Integer> moduleIds = new HashMap<ISourceModule, Integer>();
+		final List<ISourceModule> modules = new ArrayList<ISourceModule>();
+		final List<Long> stamps = new ArrayList<Long>();
+		final Set<ISourceModule> skipped = new HashSet<ISourceModule>();
+		final TreeMap<String, int[]> keys = new TreeMap<String, int[]>();
+		final Set<String> skippedKeys = new HashSet<String>();
+		for (Map.Entry<String, ISourceModule[]> entry : elements.entrySet()) {
+			final ISourceModule[] elementModules = entry.getValue();
+			final int[] ids = new int[elementModules.length];
+			for (int i = 0; i < elementModules.length; ++i) {
+				final ISourceModule module = elementModules[i];
+				Integer id = moduleIds.get(module);
+				if (id == null && !skipped.contains(module)) {
+					final long stamp = getStamp(module);
+					if (stamp == UNKNOWN_STAMP) {
+						skipped.add(module);
+					} else {
+						id = modules.size();
+						moduleIds.put(module, id);
+						modules.add(module);
+						stamps.add(stamp);
+					}
+				}
+				if (id == null) {
+					skippedKeys.add(entry.getKey());
+					break;
+				}
+				ids[i] = id.intValue();
+			}
+			keys.put(entry.getKey(), ids);
+		}
+		removeWithParents(keys, skippedKeys);
+
+		file.getParentFile().mkdirs();
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(file)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(indexStates.size());
+			for (Map.Entry<String, long[]> entry : indexStates.entrySet()) {
+				writeString(out, entry.getKey());
+				out.writeLong(entry.getValue()[0]);
+				out.writeLong(entry.getValue()[1]);
+			}
+			out.writeInt(modules.size());
+			for (int i = 0; i < modules.size(); ++i) {
+				writeString(out, modules.get(i).getHandleIdentifier());
+				out.writeLong(stamps.get(i).longValue());
+			}
+			out.writeInt(keys.size());
+			String previous = ""; //$NON-NLS-1$
+			for (Map.Entry<String, int[]> entry : keys.entrySet()) {
+				final String key = entry.getKey();
+				int shared = 0;
+				final int max = Math.min(key.length(), previous.length());
+				while (shared < max
+						&& key.charAt(shared) == previous.charAt(shared)) {
+					++shared;
+				}
+				out.writeInt(shared);
+				writeString(out, key.substring(shared));
+				out.writeInt(entry.getValue().length);
+				for (int id : entry.getValue()) {
+					out.writeInt(id);
+				}
+				previous = key;
+			}
+		} catch (IOException e) {
+			Util.log(e, "Unable to save mixin model snapshot"); //$NON-NLS-1$
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e1) {
+					// nothing we can do: ignore
+				}
+				out = null;
+			}
+			file.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// nothing we can do: ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads the snapshot of the model, returns <code>null</code> if there is
+	 * no snapshot or if the mixin indexes changed since it was saved.
+	 */
+	public static MixinModelSnapshot load(File file,
+			IDLTKLanguageToolkit toolkit, IDLTKSearchScope scope) {
+		if (!file.exists()) {
+			return null;
+		}
+		final Map<String, long[]> indexStates = getIndexStates(scope, toolkit);
+		if (indexStates == null) {
+			return null;
+		}
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			final FileChannel channel = in.getChannel();
+			final ByteBuffer buffer = ByteBuffer.allocate((int) channel
+					.size());
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					throw new EOFException();
+				}
+			}
+			buffer.flip();
+			return read(buffer, indexStates, scope);
+		} catch (IOException e) {
+			Util.log(e, "Unable to read mixin model snapshot"); //$NON-NLS-1$
+		} catch (BufferUnderflowException e) {
+			Util.log(e, "Unable to read mixin model snapshot"); //$NON-NLS-1$
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// nothing we can do: ignore
+				}
+			}
+		}
+		return null;
+	}
+
+	private static MixinModelSnapshot read(ByteBuffer buffer,
+			Map<String, long[]> indexStates, IDLTKSearchScope scope)
+			throws IOException {
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			return null;
+		}
+		int indexCount = buffer.getInt();
+		if (indexCount != indexStates.size()) {
+			return null;
+		}
+		while (indexCount-- > 0) {
+			final long[] state = indexStates.get(readString(buffer));
+			final long lastModified = buffer.getLong();
+			final long length = buffer.getLong();
+			if (state == null || state[0] != lastModified
+					|| state[1] != length) {
+				return null;
+			}
+		}
+		final ISourceModule[] modules = new ISourceModule[buffer.getInt()];
+		for (int i = 0; i < modules.length; ++i) {
+			final IModelElement element = DLTKCore.create(readString(buffer));
+			final long stamp = buffer.getLong();
+			if (element instanceof ISourceModule && scope.encloses(element)
+					&& getStamp((ISourceModule) element) == stamp) {
+				modules[i] = (ISourceModule) element;
+			}
+		}
+		final Map<String, ISourceModule[]> keys = new HashMap<String, ISourceModule[]>();
+		final Set<String> invalidKeys = new HashSet<String>();
+		String previous = ""; //$NON-NLS-1$
+		int keyCount = buffer.getInt();
+		while (keyCount-- > 0) {
+			final int shared = buffer.getInt();
+			final String key = previous.substring(0, shared)
+					+ readString(buffer);
+			final ISourceModule[] keyModules = new ISourceModule[buffer
+					.getInt()];
+			for (int i = 0; i < keyModules.length; ++i) {
+				keyModules[i] = modules[buffer.getInt()];
+				if (keyModules[i] == null) {
+					invalidKeys.add(key);
+				}
+			}
+			keys.put(key, keyModules);
+			previous = key;
+		}
+		removeWithParents(keys, invalidKeys);
+		return new MixinModelSnapshot(keys);
+	}
+
+	/**
+	 * Removes the keys and their parent keys from the map
+	 */
+	private static void removeWithParents(Map<String, ?> keys,
+			Set<String> removed) {
+		for (String key : removed) {
+			for (String k = key; k != null; k = getParentKey(k)) {
+				keys.remove(k);
+			}
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value)
+			throws IOException {
+		final byte[] bytes = value.getBytes(ENCODING);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) throws IOException {
+		final int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IOException("Corrupted mixin model snapshot"); //$NON-NLS-1$
+		}
+		final byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, ENCODING);
+	}
+}
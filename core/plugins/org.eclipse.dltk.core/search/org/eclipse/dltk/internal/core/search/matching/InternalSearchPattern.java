@@ -18,6 +18,8 @@ import org.eclipse.dltk.core.search.IDLTKSearchScope;
 import org.eclipse.dltk.core.search.SearchParticipant;
 import org.eclipse.dltk.core.search.SearchPattern;
 import org.eclipse.dltk.core.search.index.EntryResult;
+import org.eclipse.dltk.core.search.index.EntryResultCollector;
+import org.eclipse.dltk.core.search.index.IEntryResultRequestor;
 import org.eclipse.dltk.core.search.index.Index;
 import org.eclipse.dltk.internal.compiler.env.AccessRuleSet;
 import org.eclipse.dltk.internal.core.search.DLTKSearchScope;
@@ -39,6 +41,19 @@ public abstract class InternalSearchPattern {
 			char separator, SearchPattern pattern,
 			IndexQueryRequestor requestor, SearchParticipant participant,
 			IDLTKSearchScope scope) {
+		if (!acceptIndexMatch(relativePath, containerPath, separator, pattern,
+				requestor, participant, scope))
+			throw new OperationCanceledException();
+	}
+
+	/**
+	 * Passes the document to the requestor if the scope encloses it, answers
+	 * <code>false</code> if the requestor asked to cancel the search.
+	 */
+	private boolean acceptIndexMatch(String relativePath,
+			String containerPath, char separator, SearchPattern pattern,
+			IndexQueryRequestor requestor, SearchParticipant participant,
+			IDLTKSearchScope scope) {
 
 		if (scope instanceof DLTKSearchScope) {
 			DLTKSearchScope javaSearchScope = (DLTKSearchScope) scope;
@@ -51,19 +66,17 @@ public abstract class InternalSearchPattern {
 				// the document path
 				String documentPath = documentPath(containerPath, separator,
 						relativePath);
-				if (!requestor.acceptIndexMatch(documentPath, pattern,
-						participant, access))
-					throw new OperationCanceledException();
+				return requestor.acceptIndexMatch(documentPath, pattern,
+						participant, access);
 			}
 		} else {
 			String documentPath = documentPath(containerPath, separator,
 					relativePath);
 			if (scope.encloses(documentPath))
-				if (!requestor.acceptIndexMatch(documentPath, pattern,
-						participant, null))
-					throw new OperationCanceledException();
-
+				return requestor.acceptIndexMatch(documentPath, pattern,
+						participant, null);
 		}
+		return true;
 	}
 
 	public SearchPattern currentPattern() {
@@ -84,9 +97,10 @@ public abstract class InternalSearchPattern {
 	 * Query a given index for matching entries. Assumes the sender has opened
 	 * the index and will close when finished.
 	 */
-	public void findIndexMatches(Index index, IndexQueryRequestor requestor,
-			SearchParticipant participant, IDLTKSearchScope scope,
-			IProgressMonitor monitor) throws IOException {
+	public void findIndexMatches(final Index index,
+			final IndexQueryRequestor requestor,
+			final SearchParticipant participant, final IDLTKSearchScope scope,
+			final IProgressMonitor monitor) throws IOException {
 		if (participant.isSkipped(index)) {
 			return;
 		}
@@ -94,29 +108,36 @@ public abstract class InternalSearchPattern {
 			throw new OperationCanceledException();
 		try {
 			index.startQuery();
-			SearchPattern pattern = currentPattern();
-			EntryResult[] entries = ((InternalSearchPattern) pattern)
-					.queryIn(index);
-			if (entries == null)
-				return;
-
+			final SearchPattern pattern = currentPattern();
 			final SearchPattern decodedResult = pattern.getBlankPattern();
 			final String containerPath = index.getContainerPath();
 			final char separator = index.separator;
-			for (int i = 0, l = entries.length; i < l; i++) {
-				if (monitor != null && monitor.isCanceled())
-					throw new OperationCanceledException();
+			final boolean completed = ((InternalSearchPattern) pattern)
+					.queryIn(index, new IEntryResultRequestor() {
+						public boolean acceptEntry(EntryResult entry)
+								throws IOException {
+							if (monitor != null && monitor.isCanceled())
+								throw new OperationCanceledException();
 
-				EntryResult entry = entries[i];
-				decodedResult.decodeIndexKey(entry.getWord());
-				if (pattern.matchesDecodedKey(decodedResult)) {
-					// TODO (kent) some clients may not need the document names
-					String[] names = entry.getDocumentNames(index);
-					for (int j = 0, n = names.length; j < n; j++)
-						acceptMatch(names[j], containerPath, separator,
-								decodedResult, requestor, participant, scope);
-				}
-			}
+							decodedResult.decodeIndexKey(entry.getWord());
+							if (pattern.matchesDecodedKey(decodedResult)) {
+								// TODO (kent) some clients may not need the
+								// document names
+								String[] names = entry
+										.getDocumentNames(index);
+								for (int j = 0, n = names.length; j < n; j++)
+									if (!acceptIndexMatch(names[j],
+											containerPath, separator,
+											decodedResult, requestor,
+											participant, scope))
+										return false; // stop the scan
+							}
+							return true;
+						}
+					});
+			if (!completed)
+				// the requestor refused a match
+				throw new OperationCanceledException();
 		} finally {
 			index.stopQuery();
 		}
@@ -127,8 +148,21 @@ public abstract class InternalSearchPattern {
 	}
 
 	public EntryResult[] queryIn(Index index) throws IOException {
+		EntryResultCollector collector = new EntryResultCollector();
+		queryIn(index, collector);
+		return collector.getResults();
+	}
+
+	/**
+	 * Passes the index entries matching this pattern to the requestor as they
+	 * are read, returns <code>false</code> if the requestor stopped the query.
+	 * 
+	 * @since 5.0
+	 */
+	public boolean queryIn(Index index, IEntryResultRequestor requestor)
+			throws IOException {
 		SearchPattern pattern = (SearchPattern) this;
 		return index.query(pattern.getIndexCategories(), pattern.getIndexKey(),
-				pattern.getMatchRule());
+				pattern.getMatchRule(), requestor);
 	}
 }
@@ -14,7 +14,7 @@ import java.io.IOException;
 import org.eclipse.dltk.compiler.CharOperation;
 import org.eclipse.dltk.core.IDLTKLanguageToolkit;
 import org.eclipse.dltk.core.search.SearchPattern;
-import org.eclipse.dltk.core.search.index.EntryResult;
+import org.eclipse.dltk.core.search.index.IEntryResultRequestor;
 import org.eclipse.dltk.core.search.index.Index;
 import org.eclipse.dltk.core.search.indexing.IIndexConstants;
 
@@ -192,7 +192,8 @@ public class MethodDeclarationPattern extends DLTKSearchPattern implements
 		return true;
 	}
 
-	public EntryResult[] queryIn(Index index) throws IOException {
+	public boolean queryIn(Index index, IEntryResultRequestor requestor)
+			throws IOException {
 		char[] key = this.simpleName; // can be null
 		int matchRule = getMatchRule();
 		switch (getMatchMode()) {
@@ -216,7 +217,7 @@ public class MethodDeclarationPattern extends DLTKSearchPattern implements
 			// TODO (frederic) implement regular expression match
 			break;
 		}
-		return index.query(getIndexCategories(), key, matchRule);
+		return index.query(getIndexCategories(), key, matchRule, requestor);
 		// match rule is irrelevant when the key is null
 	}
 
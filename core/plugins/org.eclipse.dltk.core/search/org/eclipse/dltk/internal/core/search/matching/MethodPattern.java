@@ -16,7 +16,7 @@ import org.eclipse.dltk.core.IDLTKLanguageToolkit;
 import org.eclipse.dltk.core.IMethod;
 import org.eclipse.dltk.core.IType;
 import org.eclipse.dltk.core.search.SearchPattern;
-import org.eclipse.dltk.core.search.index.EntryResult;
+import org.eclipse.dltk.core.search.index.IEntryResultRequestor;
 import org.eclipse.dltk.core.search.index.Index;
 import org.eclipse.dltk.core.search.indexing.IIndexConstants;
 
@@ -176,7 +176,8 @@ public class MethodPattern extends DLTKSearchPattern implements IIndexConstants
 				&& matchesName(this.selector, pattern.selector);
 	}
 
-	public EntryResult[] queryIn(Index index) throws IOException {
+	public boolean queryIn(Index index, IEntryResultRequestor requestor)
+			throws IOException {
 		char[] key = this.selector; // can be null
 		int matchRule = getMatchRule();
 		switch (getMatchMode()) {
@@ -206,12 +207,8 @@ public class MethodPattern extends DLTKSearchPattern implements IIndexConstants
 			// TODO (frederic) implement regular expression match
 			break;
 		}
-		return index.query(getIndexCategories(), key, matchRule); // match
-		// rule is
-		// irrelevant
-		// when the
-		// key is
-		// null
+		return index.query(getIndexCategories(), key, matchRule, requestor);
+		// match rule is irrelevant when the key is null
 	}
 
 	protected StringBuffer print(StringBuffer output) {
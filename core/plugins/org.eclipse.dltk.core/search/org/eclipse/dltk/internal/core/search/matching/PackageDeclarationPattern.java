@@ -11,7 +11,7 @@
 package org.eclipse.dltk.internal.core.search.matching;
 
 import org.eclipse.dltk.core.IDLTKLanguageToolkit;
-import org.eclipse.dltk.core.search.index.EntryResult;
+import org.eclipse.dltk.core.search.index.IEntryResultRequestor;
 import org.eclipse.dltk.core.search.index.Index;
 import org.eclipse.dltk.core.search.indexing.IIndexConstants;
 
@@ -26,9 +26,9 @@ public class PackageDeclarationPattern extends DLTKSearchPattern implements
 		this.pkgName = pkgName;
 	}
 
-	public EntryResult[] queryIn(Index index) {
+	public boolean queryIn(Index index, IEntryResultRequestor requestor) {
 		// package declarations are not indexed
-		return null;
+		return true;
 	}
 
 	protected StringBuffer print(StringBuffer output) {
@@ -14,7 +14,7 @@ import java.io.IOException;
 import org.eclipse.dltk.compiler.CharOperation;
 import org.eclipse.dltk.core.IDLTKLanguageToolkit;
 import org.eclipse.dltk.core.search.SearchPattern;
-import org.eclipse.dltk.core.search.index.EntryResult;
+import org.eclipse.dltk.core.search.index.IEntryResultRequestor;
 import org.eclipse.dltk.core.search.index.Index;
 import org.eclipse.dltk.core.search.indexing.IIndexConstants;
 
@@ -278,7 +278,8 @@ public class SuperTypeReferencePattern extends DLTKSearchPattern {
 		return matchesName(this.superSimpleName, pattern.superSimpleName);
 	}
 
-	public EntryResult[] queryIn(Index index) throws IOException {
+	public boolean queryIn(Index index, IEntryResultRequestor requestor)
+			throws IOException {
 		char[] key = this.superSimpleName; // can be null
 		int matchRule = getMatchRule();
 
@@ -306,12 +307,8 @@ public class SuperTypeReferencePattern extends DLTKSearchPattern {
 			break;
 		}
 
-		return index.query(getIndexCategories(), key, matchRule); // match
-		// rule is
-		// irrelevant
-		// when the
-		// key is
-		// null
+		return index.query(getIndexCategories(), key, matchRule, requestor);
+		// match rule is irrelevant when the key is null
 	}
 
 	protected StringBuffer print(StringBuffer output) {
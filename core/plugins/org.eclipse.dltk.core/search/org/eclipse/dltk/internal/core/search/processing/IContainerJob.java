@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.internal.core.search.processing;
+
+/**
+ * Optional interface for the {@link IJob}s updating a single index container.
+ * If parallel processing is enabled in the {@link JobManager} such jobs are
+ * executed concurrently with the jobs for the other containers, while the jobs
+ * for the same container are still executed one by one in the order they were
+ * requested. Jobs not implementing this interface (or returning
+ * <code>null</code> key) are executed exclusively.
+ */
+public interface IContainerJob extends IJob {
+
+	/**
+	 * Returns the key identifying the index container updated by this job or
+	 * <code>null</code> if this job should be executed exclusively. Keys are
+	 * compared using {@link Object#equals(Object)}.
+	 */
+	Object getContainerKey();
+
+}
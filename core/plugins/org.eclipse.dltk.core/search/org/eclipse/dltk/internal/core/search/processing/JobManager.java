@@ -9,6 +9,14 @@
  *******************************************************************************/
 package org.eclipse.dltk.internal.core.search.processing;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.OperationCanceledException;
@@ -44,6 +52,12 @@ public abstract class JobManager implements Runnable {
 
 	private int awaitingClients = 0;
 
+	/* parallel processing, see getMaxParallelJobs() */
+	private ExecutorService workers;
+	private int workersCount;
+	private final List<IJob> runningJobs = new ArrayList<IJob>();
+	private final Set<Object> runningContainers = new HashSet<Object>();
+
 	/**
 	 * Invoked exactly once, in background, before starting processing any job
 	 */
@@ -57,7 +71,8 @@ public abstract class JobManager implements Runnable {
 	public synchronized int awaitingJobsCount() {
 		// pretend busy in case concurrent job attempts performing before
 		// activated
-		return this.activated ? this.jobEnd - this.jobStart + 1 : 1;
+		return this.activated ? this.jobEnd - this.jobStart + 1
+				+ this.runningJobs.size() : 1;
 	}
 
 	/**
@@ -109,6 +124,9 @@ public abstract class JobManager implements Runnable {
 					}
 				}
 			}
+			// cancel jobs of the given family executed in parallel and wait
+			// until they have finished
+			cancelRunningJobs(jobFamily);
 
 			// flush and compact awaiting jobs
 			int loc = -1;
@@ -140,6 +158,44 @@ public abstract class JobManager implements Runnable {
 					.verbose("DISCARD   DONE with background job family - " + jobFamily); //$NON-NLS-1$
 	}
 
+	/**
+	 * Cancels the jobs of the given family executed in parallel and waits
+	 * until they have finished. The workers notify this monitor when a job
+	 * completes, new jobs are not started since the sender has disabled the
+	 * job manager.
+	 */
+	private synchronized void cancelRunningJobs(String jobFamily) {
+		for (IJob job : this.runningJobs) {
+			if (jobFamily == null || job.belongsTo(jobFamily))
+				job.cancel();
+		}
+		while (hasRunningJobs(jobFamily)) {
+			try {
+				if (VERBOSE)
+					Util.verbose("-> waiting end of parallel background jobs"); //$NON-NLS-1$
+				this.wait();
+			} catch (InterruptedException e) {
+				// ignore
+			}
+		}
+	}
+
+	private boolean hasRunningJobs(String jobFamily) {
+		// assume this monitor is held
+		for (IJob job : this.runningJobs) {
+			if (jobFamily == null || job.belongsTo(jobFamily))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Answers the number of jobs currently executed by the parallel workers.
+	 */
+	public synchronized int runningJobsCount() {
+		return this.runningJobs.size();
+	}
+
 	public synchronized void enable() {
 		this.enableCount++;
 		if (VERBOSE)
@@ -309,6 +365,105 @@ public abstract class JobManager implements Runnable {
 
 	public abstract String processName();
 
+	/**
+	 * Answers the maximum number of jobs executed at the same time. If it is
+	 * greater than 1 then {@link IContainerJob}s for the different containers
+	 * are executed concurrently in the background worker threads. Jobs for the
+	 * same container and jobs without container are still executed in the
+	 * order they were requested. Evaluated when background processing starts.
+	 */
+	protected int getMaxParallelJobs() {
+		return 1;
+	}
+
+	/**
+	 * Tries to start the specified job (which should be the current one) in
+	 * the worker thread. Answers <code>true</code> if the job was started or
+	 * the job can't be started yet, in which case this method waits until one
+	 * of the running jobs finishes. Answers <code>false</code> if the job
+	 * should be executed in the processing thread, which happens when there
+	 * are no running jobs and the job is not an {@link IContainerJob}.
+	 */
+	private boolean executeInParallel(final IJob job)
+			throws InterruptedException {
+		final Object containerKey = job instanceof IContainerJob ? ((IContainerJob) job)
+				.getContainerKey()
+				: null;
+		synchronized (this) {
+			if (this.processingThread == null || currentJob() != job) {
+				// the queue was changed in the meantime
+				return true;
+			}
+			if (containerKey == null) {
+				if (this.runningJobs.isEmpty()) {
+					return false;
+				}
+				// wait until all the running jobs have completed
+				this.wait();
+				return true;
+			}
+			if (this.runningJobs.size() >= this.workersCount
+					|| this.runningContainers.contains(containerKey)) {
+				this.wait();
+				return true;
+			}
+			this.runningJobs.add(job);
+			this.runningContainers.add(containerKey);
+			moveToNextJob();
+		}
+		if (VERBOSE)
+			Util.verbose("STARTING parallel background job - " + job); //$NON-NLS-1$
+		showProgress();
+		this.workers.execute(new Runnable() {
+			public void run() {
+				try {
+					/* boolean status = */job.execute(null);
+				} catch (RuntimeException e) {
+					Util.log(e, "Background Indexer Job Failure"); //$NON-NLS-1$
+				} finally {
+					if (VERBOSE)
+						Util.verbose("FINISHED parallel background job - " + job); //$NON-NLS-1$
+					synchronized (JobManager.this) {
+						runningJobs.remove(job);
+						runningContainers.remove(containerKey);
+						JobManager.this.notifyAll();
+					}
+				}
+			}
+		});
+		return true;
+	}
+
+	private void startWorkers() {
+		this.workersCount = getMaxParallelJobs();
+		if (this.workersCount > 1 && this.workers == null) {
+			final String name = processName();
+			this.workers = Executors.newFixedThreadPool(this.workersCount,
+					new ThreadFactory() {
+						private int count = 0;
+
+						public synchronized Thread newThread(Runnable r) {
+							final Thread thread = new Thread(r, name + " #" //$NON-NLS-1$
+									+ (++count));
+							thread.setDaemon(true);
+							thread.setPriority(Thread.NORM_PRIORITY - 1);
+							return thread;
+						}
+					});
+			if (VERBOSE)
+				Util.verbose("Parallel background processing with " //$NON-NLS-1$
+						+ this.workersCount + " workers"); //$NON-NLS-1$
+		}
+	}
+
+	private void stopWorkers() {
+		final ExecutorService executor = this.workers;
+		if (executor != null) {
+			this.workers = null;
+			executor.shutdown();
+		}
+	}
+
 	private static final class WaitJob implements IJob {
 		public boolean belongsTo(String jobFamily) {
 			return false;
@@ -422,6 +577,7 @@ public abstract class JobManager implements Runnable {
 	public void run() {
 		long idlingStart = -1;
 		activateProcessing();
+		startWorkers();
 		try {
 			this.progressJob = null;
 			while (this.processingThread != null) {
@@ -436,12 +592,14 @@ public abstract class JobManager implements Runnable {
 						// must check for new job inside this sync block to
 						// avoid timing hole
 						if ((job = currentJob()) == null) {
-							hideProgress();
-							if (idlingStart < 0)
-								idlingStart = System.currentTimeMillis();
-							else
-								notifyIdle(System.currentTimeMillis()
-										- idlingStart);
+							if (this.runningJobs.isEmpty()) {
+								hideProgress();
+								if (idlingStart < 0)
+									idlingStart = System.currentTimeMillis();
+								else
+									notifyIdle(System.currentTimeMillis()
+											- idlingStart);
+							}
 							this.wait(); // wait until a new job is posted (or
 							// reenabled:38901)
 						} else {
@@ -449,7 +607,8 @@ public abstract class JobManager implements Runnable {
 						}
 					}
 					if (job == null) {
-						notifyIdle(System.currentTimeMillis() - idlingStart);
+						if (idlingStart >= 0)
+							notifyIdle(System.currentTimeMillis() - idlingStart);
 						// just woke up, delay before processing any new jobs,
 						// allow some time for the active thread to finish
 						synchronized (delaySignal) {
@@ -457,6 +616,9 @@ public abstract class JobManager implements Runnable {
 						}
 						continue;
 					}
+					if (this.workers != null && executeInParallel(job)) {
+						continue;
+					}
 					if (VERBOSE) {
 						Util.verbose(awaitingJobsCount() + " awaiting jobs"); //$NON-NLS-1$
 						Util.verbose("STARTING background job - " + job); //$NON-NLS-1$
@@ -558,6 +720,7 @@ public abstract class JobManager implements Runnable {
 		} catch (InterruptedException e) {
 			// ignore
 		}
+		stopWorkers();
 	}
 
 	@Override
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.ti;
+
+import org.eclipse.dltk.ti.goals.GoalEvaluator;
+
+/**
+ * {@link BudgetPruner} spending the budget on the promising goals:
+ * <ul>
+ * <li>the subgoals limit of an evaluator is reduced in proportion to its
+ * subgoals done without a result, once the specified number of them is done
+ * <li>the depth limit is reduced in proportion to the goals budget spent, so
+ * the remaining budget goes to the goals closer to the root
+ * </ul>
+ *
+ * @since 5.0
+ */
+public class AdaptiveBudgetPruner extends BudgetPruner {
+
+	private int minSamples = 3;
+
+	/**
+	 * Sets the number of the subgoals an evaluator should have done before its
+	 * subgoals limit is reduced
+	 */
+	public void setMinSamples(int minSamples) {
+		this.minSamples = minSamples;
+	}
+
+	public int getMinSamples() {
+		return minSamples;
+	}
+
+	@Override
+	protected int getDepthLimit() {
+		final int maxDepth = getMaxDepth();
+		final int maxGoals = getMaxGoals();
+		if (maxDepth <= 0 || maxGoals <= 0) {
+			return maxDepth;
+		}
+		final long remaining = maxGoals - getGoalCount();
+		return Math.max(1,
+				(int) ((maxDepth * remaining + maxGoals - 1) / maxGoals));
+	}
+
+	@Override
+	protected int getSubGoalsLimit(GoalEvaluator creator,
+			EvaluatorStatistics stat) {
+		final int maxSubGoals = getMaxSubGoals();
+		if (maxSubGoals <= 0 || stat == null
+				|| stat.getSubGoalsDone() < minSamples) {
+			return maxSubGoals;
+		}
+		final long successful = stat.getSubGoalsDoneSuccessful() + 1;
+		return Math.max(1, (int) (maxSubGoals * successful / (stat
+				.getSubGoalsDone() + 1)));
+	}
+
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.ti;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.eclipse.dltk.ti.goals.AbstractReferencesGoal;
+import org.eclipse.dltk.ti.goals.GoalEvaluator;
+import org.eclipse.dltk.ti.goals.IGoal;
+
+/**
+ * Pruner limiting the work of the evaluation by the number of the goals, their
+ * depth, the number of the subgoals of every evaluator and the number of the
+ * searches. Unlike the {@link TimelimitPruner} the same goals are pruned on
+ * every evaluation of the root goal, if the goals are requested in the same
+ * order.
+ * <p>
+ * The limits less or equal to zero are not checked. The root goal is never
+ * pruned and is not counted.
+ *
+ * @since 5.0
+ */
+public class BudgetPruner implements IPruner, IPrunerExtension {
+
+	private int maxGoals;
+	private int maxDepth;
+	private int maxSubGoals;
+	private int maxSearches;
+
+	private int goals;
+	private int searches;
+	private final Map<GoalEvaluator, int[]> subGoals = new IdentityHashMap<GoalEvaluator, int[]>();
+
+	/**
+	 * Sets the number of the goals evaluated
+	 */
+	public void setMaxGoals(int maxGoals) {
+		this.maxGoals = maxGoals;
+	}
+
+	public int getMaxGoals() {
+		return maxGoals;
+	}
+
+	/**
+	 * Sets the depth of the goals evaluated, the subgoals of the root goal
+	 * have depth 1
+	 */
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Sets the number of the subgoals evaluated for every evaluator
+	 */
+	public void setMaxSubGoals(int maxSubGoals) {
+		this.maxSubGoals = maxSubGoals;
+	}
+
+	public int getMaxSubGoals() {
+		return maxSubGoals;
+	}
+
+	/**
+	 * Sets the number of the search goals evaluated, see
+	 * {@link #isSearchGoal(IGoal)}
+	 */
+	public void setMaxSearches(int maxSearches) {
+		this.maxSearches = maxSearches;
+	}
+
+	public int getMaxSearches() {
+		return maxSearches;
+	}
+
+	/**
+	 * Returns the number of the goals evaluated so far
+	 */
+	public int getGoalCount() {
+		return goals;
+	}
+
+	/**
+	 * Returns the number of the search goals evaluated so far
+	 */
+	public int getSearchCount() {
+		return searches;
+	}
+
+	public void init() {
+		goals = 0;
+		searches = 0;
+		subGoals.clear();
+	}
+
+	public boolean prune(IGoal goal, EvaluatorStatistics stat) {
+		return prune(goal, null, 0, stat);
+	}
+
+	public boolean prune(IGoal goal, GoalEvaluator creator, int depth,
+			EvaluatorStatistics stat) {
+		if (exceeds(goals, maxGoals) || exceeds(depth - 1, getDepthLimit())) {
+			return true;
+		}
+		final boolean search = isSearchGoal(goal);
+		if (search && exceeds(searches, maxSearches)) {
+			return true;
+		}
+		if (creator != null) {
+			int[] count = subGoals.get(creator);
+			if (count == null) {
+				count = new int[1];
+				subGoals.put(creator, count);
+			}
+			if (exceeds(count[0], getSubGoalsLimit(creator, stat))) {
+				return true;
+			}
+			++count[0];
+		}
+		++goals;
+		if (search) {
+			++searches;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if the goal queries the index, the searches are counted
+	 * separately as they are the most expensive goals.
+	 */
+	protected boolean isSearchGoal(IGoal goal) {
+		return goal instanceof AbstractReferencesGoal;
+	}
+
+	/**
+	 * Returns the depth limit for the next goal
+	 */
+	protected int getDepthLimit() {
+		return maxDepth;
+	}
+
+	/**
+	 * Returns the limit of the subgoals of the evaluator for its next subgoal
+	 *
+	 * @param stat
+	 *            information about the evaluator, could be <code>null</code>
+	 */
+	protected int getSubGoalsLimit(GoalEvaluator creator,
+			EvaluatorStatistics stat) {
+		return maxSubGoals;
+	}
+
+	private static boolean exceeds(int count, int limit) {
+		return limit > 0 && count >= limit;
+	}
+
+}
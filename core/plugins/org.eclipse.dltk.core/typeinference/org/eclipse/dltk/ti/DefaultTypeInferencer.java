@@ -15,6 +15,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.dltk.core.DLTKCore;
@@ -197,6 +198,30 @@ public class DefaultTypeInferencer implements ITypeInferencer {
 		initStdGoals();
 	}
 
+	/**
+	 * Creates the inferencer initializing the evaluators in the executor, see
+	 * {@link ParallelGoalEngine}
+	 * 
+	 * @since 5.0
+	 */
+	public DefaultTypeInferencer(IGoalEvaluatorFactory userFactory,
+			Executor executor) {
+		engine = new ParallelGoalEngine(new MapBasedEvaluatorFactory(),
+				executor);
+		this.userFactory = userFactory;
+		initStdGoals();
+	}
+
+	/**
+	 * Sets the cache of the goal results shared between the evaluations, see
+	 * {@link GoalEngine#setResultCache(GoalResultCache)}
+	 * 
+	 * @since 5.0
+	 */
+	public void setResultCache(GoalResultCache resultCache) {
+		engine.setResultCache(resultCache);
+	}
+
 	public void registerEvaluator(Class goalClass, Class evaluatorClass) {
 		Assert.isLegal((IGoal.class.isAssignableFrom(goalClass)));
 		Assert.isLegal(GoalEvaluator.class.isAssignableFrom(evaluatorClass));
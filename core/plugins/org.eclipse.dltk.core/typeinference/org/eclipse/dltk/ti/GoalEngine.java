@@ -12,12 +12,16 @@ package org.eclipse.dltk.ti;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.core.runtime.Assert;
+import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.ti.goals.GoalEvaluator;
 import org.eclipse.dltk.ti.goals.IGoal;
+import org.eclipse.dltk.ti.goals.SearchBasedGoalEvaluator;
 import org.eclipse.dltk.ti.statistics.IEvaluationStatisticsRequestor;
 
 /**
@@ -26,7 +30,8 @@ import org.eclipse.dltk.ti.statistics.IEvaluationStatisticsRequestor;
  * allows pruning: before evaluating every goal(except root goal) could be
  * pruned by provided prunner.
  * 
- * This class isn't thread safe.
+ * This class isn't thread safe, see {@link ParallelGoalEngine} for the
+ * evaluation using several threads.
  */
 public class GoalEngine {
 
@@ -35,18 +40,30 @@ public class GoalEngine {
 	private final LinkedList<WorkingPair> workingQueue = new LinkedList<WorkingPair>();
 	private final HashMap<IGoal, GoalEvaluationState> goalStates = new HashMap<IGoal, GoalEvaluationState>();
 	private final HashMap<GoalEvaluator, EvaluatorState> evaluatorStates = new HashMap<GoalEvaluator, EvaluatorState>();
+	private final HashMap<IGoal, InitializingGoal> initializingGoals = new HashMap<IGoal, InitializingGoal>();
 
 	private IEvaluationStatisticsRequestor statisticsRequestor;
 
+	private GoalResultCache resultCache;
+	/**
+	 * Generation of the result cache when the evaluation started
+	 */
+	private long cacheGeneration;
+
 	private static class EvaluatorState {
 		public long timeCreated;
 		public int totalSubgoals;
 		public int successfulSubgoals;
 		public int subgoalsLeft;
 		public List<IGoal> subgoals = new ArrayList<IGoal>();
+		/**
+		 * depth of the goal of the evaluator
+		 */
+		public final int depth;
 
-		public EvaluatorState(int subgoalsLeft) {
+		public EvaluatorState(int subgoalsLeft, int depth) {
 			this.subgoalsLeft = subgoalsLeft;
+			this.depth = depth;
 			this.timeCreated = System.currentTimeMillis();
 			totalSubgoals = subgoalsLeft;
 		}
@@ -56,33 +73,128 @@ public class GoalEngine {
 	private static class WorkingPair {
 		private IGoal goal;
 		private GoalEvaluator creator;
+		private int depth;
 
-		public WorkingPair(IGoal goal, GoalEvaluator parent) {
+		public WorkingPair(IGoal goal, GoalEvaluator parent, int depth) {
 			this.goal = goal;
 			this.creator = parent;
+			this.depth = depth;
 		}
 
 	}
 
+	/**
+	 * Goal of the evaluator being initialized
+	 */
+	private static class InitializingGoal {
+		final GoalEvaluator creator;
+		final int depth;
+		/**
+		 * pairs of the goal requested until the evaluator is initialized
+		 */
+		final List<WorkingPair> requests = new ArrayList<WorkingPair>();
+
+		public InitializingGoal(GoalEvaluator creator, int depth) {
+			this.creator = creator;
+			this.depth = depth;
+		}
+	}
+
 	private static class GoalEvaluationState {
 		public GoalEvaluator creator;
 		public GoalState state;
 		public Object result;
+		/**
+		 * source modules of the goal and its subgoals, if the results are
+		 * cached
+		 */
+		public Set<ISourceModule> dependencies;
+		/**
+		 * false if the result depends on pruned or recursive subgoals, or on
+		 * a search of the model
+		 */
+		public boolean cacheable = true;
 	}
 
 	public GoalEngine(IGoalEvaluatorFactory evaluatorFactory) {
 		this.evaluatorFactory = evaluatorFactory;
 	}
 
-	private void storeGoal(IGoal goal, GoalState state, Object result,
-			GoalEvaluator creator) {
+	/**
+	 * Sets the cache of the goal results shared between the evaluations, or
+	 * <code>null</code> to evaluate all the goals again.
+	 * 
+	 * @since 5.0
+	 */
+	public void setResultCache(GoalResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * @since 5.0
+	 */
+	public GoalResultCache getResultCache() {
+		return resultCache;
+	}
+
+	private GoalEvaluationState storeGoal(IGoal goal, GoalState state,
+			Object result, GoalEvaluator creator) {
 		GoalEvaluationState es = new GoalEvaluationState();
 		es.result = result;
 		es.state = state;
 		es.creator = creator;
+		if (resultCache != null) {
+			es.dependencies = new HashSet<ISourceModule>();
+			IContext context = goal.getContext();
+			if (context instanceof ISourceModuleContext) {
+				ISourceModule module = ((ISourceModuleContext) context)
+						.getSourceModule();
+				if (module != null) {
+					es.dependencies.add(module);
+				}
+			}
+		}
 		goalStates.put(goal, es);
 		this.statisticsRequestor.goalStateChanged(goal, state, null);
 		// TODO: add old state
+		return es;
+	}
+
+	private void cacheResult(IGoal goal, GoalEvaluationState state) {
+		if (resultCache != null && state.cacheable) {
+			resultCache.put(goal, state.result, state.dependencies,
+					cacheGeneration);
+		}
+	}
+
+	/**
+	 * Returns <code>false</code> for the evaluators searching the model, their
+	 * results could change with any source module, not only with the ones of
+	 * the contexts of the goals.
+	 */
+	private static boolean isCacheable(GoalEvaluator evaluator) {
+		return !(evaluator instanceof SearchBasedGoalEvaluator);
+	}
+
+	/**
+	 * Completes the goal with the result cached by a previous evaluation,
+	 * returns <code>false</code> if there is none.
+	 */
+	private boolean useCachedResult(WorkingPair pair) {
+		if (resultCache == null) {
+			return false;
+		}
+		GoalResultCache.Result cached = resultCache.get(pair.goal);
+		if (cached == null) {
+			return false;
+		}
+		GoalEvaluationState state = storeGoal(pair.goal, GoalState.DONE,
+				cached.value, pair.creator);
+		state.dependencies.addAll(Arrays.asList(cached.dependencies));
+		if (pair.creator != null) {
+			notifyEvaluator(pair.creator, pair.goal);
+		}
+		return true;
 	}
 
 	private EvaluatorState getEvaluatorState(GoalEvaluator evaluator) {
@@ -103,6 +215,13 @@ public class GoalEngine {
 		if (state == GoalState.WAITING) {
 			state = GoalState.RECURSIVE;
 		}
+		if (resultCache != null) {
+			GoalEvaluationState es = goalStates.get(evaluator.getGoal());
+			if (state != GoalState.DONE || !subGoalState.cacheable) {
+				es.cacheable = false;
+			}
+			es.dependencies.addAll(subGoalState.dependencies);
+		}
 
 		t = System.currentTimeMillis();
 		IGoal[] newGoals = evaluator.subGoalDone(subGoal, result, state);
@@ -111,10 +230,11 @@ public class GoalEngine {
 		if (newGoals == null) {
 			newGoals = IGoal.NO_GOALS;
 		}
+		EvaluatorState ev = getEvaluatorState(evaluator);
 		for (int i = 0; i < newGoals.length; i++) {
-			workingQueue.add(new WorkingPair(newGoals[i], evaluator));
+			workingQueue.add(new WorkingPair(newGoals[i], evaluator,
+					ev.depth + 1));
 		}
-		EvaluatorState ev = getEvaluatorState(evaluator);
 		ev.subgoalsLeft--;
 		ev.subgoalsLeft += newGoals.length;
 		ev.totalSubgoals += newGoals.length;
@@ -131,6 +251,7 @@ public class GoalEngine {
 			Assert.isNotNull(st);
 			st.state = GoalState.DONE;
 			st.result = newRes;
+			cacheResult(evaluator.getGoal(), st);
 			if (st.creator != null) {
 				notifyEvaluator(st.creator, evaluator.getGoal());
 			}
@@ -154,8 +275,6 @@ public class GoalEngine {
 
 	public Object evaluateGoal(IGoal rootGoal, IPruner pruner,
 			IEvaluationStatisticsRequestor statisticsRequestor) {
-		long time = 0;
-
 		if (statisticsRequestor == null) {
 			statisticsRequestor = new IEvaluationStatisticsRequestor() {
 				public void evaluationStarted(IGoal rootGoal) {
@@ -184,74 +303,37 @@ public class GoalEngine {
 		}
 		this.statisticsRequestor = statisticsRequestor;
 		reset();
+		if (resultCache != null) {
+			cacheGeneration = resultCache.getGeneration();
+		}
 		if (pruner != null) {
 			pruner.init();
 		}
-		workingQueue.add(new WorkingPair(rootGoal, null));
+		workingQueue.add(new WorkingPair(rootGoal, null, 0));
 		statisticsRequestor.evaluationStarted(rootGoal);
-		while (!workingQueue.isEmpty()) {
-			WorkingPair pair = workingQueue.getFirst();
-			workingQueue.removeFirst();
-			if (DEBUG) {
-				System.out.println(pair.goal);
-			}
-			GoalEvaluationState state = goalStates.get(pair.goal);
-			if (state != null && pair.creator != null) {
-				notifyEvaluator(pair.creator, pair.goal);
-			} else {
-				boolean prune = false;
-				if (pruner != null && pair.creator != null) {
-					prune = pruner.prune(pair.goal,
-							getEvaluatorStatistics(pair.creator));
+		for (;;) {
+			while (!workingQueue.isEmpty()) {
+				WorkingPair pair = workingQueue.getFirst();
+				workingQueue.removeFirst();
+				if (DEBUG) {
+					System.out.println(pair.goal);
 				}
-				if (prune) {
-					storeGoal(pair.goal, GoalState.PRUNED, null, pair.creator);
+				GoalEvaluationState state = goalStates.get(pair.goal);
+				if (state != null && pair.creator != null) {
 					notifyEvaluator(pair.creator, pair.goal);
 				} else {
-					GoalEvaluator evaluator = evaluatorFactory
-							.createEvaluator(pair.goal);
-					Assert.isNotNull(evaluator);
-					if (DEBUG) {
-						System.out.println(" evaluator=" + evaluator); //$NON-NLS-1$
-					}
-					statisticsRequestor.goalEvaluatorAssigned(pair.goal,
-							evaluator);
-					time = System.currentTimeMillis();
-					IGoal[] newGoals = evaluator.init();
-					if (newGoals == null) {
-						newGoals = IGoal.NO_GOALS;
-					}
-					if (DEBUG) {
-						for (IGoal n : newGoals) {
-							System.out.println("- " + n); //$NON-NLS-1$
-						}
-					}
-					statisticsRequestor.evaluatorInitialized(evaluator,
-							newGoals, System.currentTimeMillis() - time);
-					if (newGoals.length > 0) {
-						for (int i = 0; i < newGoals.length; i++) {
-							workingQueue.add(new WorkingPair(newGoals[i],
-									evaluator));
-						}
-						EvaluatorState evaluatorState = new EvaluatorState(
-								newGoals.length);
-						evaluatorState.subgoals.addAll(Arrays.asList(newGoals));
-						putEvaluatorState(evaluator, evaluatorState);
-						storeGoal(pair.goal, GoalState.WAITING, null,
-								pair.creator);
-					} else {
-						time = System.currentTimeMillis();
-						Object result = evaluator.produceResult();
-						statisticsRequestor.evaluatorProducedResult(evaluator,
-								result, System.currentTimeMillis() - time);
-						storeGoal(pair.goal, GoalState.DONE, result,
-								pair.creator);
-						if (pair.creator != null) {
-							notifyEvaluator(pair.creator, pair.goal);
-						}
+					InitializingGoal initializing = initializingGoals
+							.get(pair.goal);
+					if (initializing != null) {
+						initializing.requests.add(pair);
+					} else if (!useCachedResult(pair)) {
+						evaluate(pair, pruner);
 					}
 				}
 			}
+			if (initializingGoals.isEmpty() || !awaitEvaluators()) {
+				break;
+			}
 		}
 		GoalEvaluationState s = goalStates.get(rootGoal);
 
@@ -259,10 +341,100 @@ public class GoalEngine {
 		return s.result;
 	}
 
+	private void evaluate(WorkingPair pair, IPruner pruner) {
+		boolean prune = false;
+		if (pruner instanceof IPrunerExtension && pair.creator != null) {
+			prune = ((IPrunerExtension) pruner).prune(pair.goal, pair.creator,
+					pair.depth, getEvaluatorStatistics(pair.creator));
+		} else if (pruner != null && pair.creator != null) {
+			prune = pruner.prune(pair.goal,
+					getEvaluatorStatistics(pair.creator));
+		}
+		if (prune) {
+			storeGoal(pair.goal, GoalState.PRUNED, null, pair.creator);
+			notifyEvaluator(pair.creator, pair.goal);
+		} else {
+			GoalEvaluator evaluator = evaluatorFactory
+					.createEvaluator(pair.goal);
+			Assert.isNotNull(evaluator);
+			if (DEBUG) {
+				System.out.println(" evaluator=" + evaluator); //$NON-NLS-1$
+			}
+			statisticsRequestor.goalEvaluatorAssigned(pair.goal, evaluator);
+			initializingGoals.put(pair.goal, new InitializingGoal(
+					pair.creator, pair.depth));
+			initEvaluator(evaluator);
+		}
+	}
+
+	/**
+	 * Calls {@link GoalEvaluator#init()} and reports the subgoals with
+	 * {@link #evaluatorInitialized(GoalEvaluator, IGoal[], long)}. The goal
+	 * is not evaluated again until then.
+	 */
+	void initEvaluator(GoalEvaluator evaluator) {
+		long time = System.currentTimeMillis();
+		IGoal[] newGoals = evaluator.init();
+		evaluatorInitialized(evaluator, newGoals, System.currentTimeMillis()
+				- time);
+	}
+
+	/**
+	 * Waits for the evaluators initialized asynchronously and reports them,
+	 * returns <code>false</code> if there are none.
+	 */
+	boolean awaitEvaluators() {
+		return false;
+	}
+
+	final void evaluatorInitialized(GoalEvaluator evaluator,
+			IGoal[] newGoals, long time) {
+		final IGoal goal = evaluator.getGoal();
+		final InitializingGoal initializing = initializingGoals.remove(goal);
+		Assert.isNotNull(initializing);
+		if (newGoals == null) {
+			newGoals = IGoal.NO_GOALS;
+		}
+		if (DEBUG) {
+			for (IGoal n : newGoals) {
+				System.out.println("- " + n); //$NON-NLS-1$
+			}
+		}
+		statisticsRequestor.evaluatorInitialized(evaluator, newGoals, time);
+		if (newGoals.length > 0) {
+			for (int i = 0; i < newGoals.length; i++) {
+				workingQueue.add(new WorkingPair(newGoals[i], evaluator,
+						initializing.depth + 1));
+			}
+			EvaluatorState evaluatorState = new EvaluatorState(
+					newGoals.length, initializing.depth);
+			evaluatorState.subgoals.addAll(Arrays.asList(newGoals));
+			putEvaluatorState(evaluator, evaluatorState);
+			final GoalEvaluationState state = storeGoal(goal,
+					GoalState.WAITING, null, initializing.creator);
+			state.cacheable = isCacheable(evaluator);
+		} else {
+			time = System.currentTimeMillis();
+			Object result = evaluator.produceResult();
+			statisticsRequestor.evaluatorProducedResult(evaluator, result,
+					System.currentTimeMillis() - time);
+			final GoalEvaluationState state = storeGoal(goal, GoalState.DONE,
+					result, initializing.creator);
+			state.cacheable = isCacheable(evaluator);
+			cacheResult(goal, state);
+			if (initializing.creator != null) {
+				notifyEvaluator(initializing.creator, goal);
+			}
+		}
+		// the goal is known now, so the requests get its state
+		workingQueue.addAll(initializing.requests);
+	}
+
 	private void reset() {
 		workingQueue.clear();
 		goalStates.clear();
 		evaluatorStates.clear();
+		initializingGoals.clear();
 	}
 
 	private static final boolean DEBUG = false;
@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.ti;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.ElementChangedEvent;
+import org.eclipse.dltk.core.IElementChangedListener;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.IModelElementDelta;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.internal.core.util.LRUCache;
+import org.eclipse.dltk.ti.goals.IGoal;
+
+/**
+ * Results of the goals kept between the evaluations of the
+ * {@link GoalEngine}s using the cache, so the goals evaluated by a previous
+ * query are not evaluated again. The goals are matched by their equality,
+ * which includes their context.
+ * <p>
+ * A result is kept together with the source modules of the contexts of the
+ * goals it was evaluated from and removed when one of them changes. All the
+ * results are removed when the source modules or the build path are added or
+ * removed. The results depending on pruned or recursive goals or on the
+ * searches of {@link org.eclipse.dltk.ti.goals.SearchBasedGoalEvaluator}s are
+ * not cached, as any source module could change them.
+ * <p>
+ * Each flush starts a new generation, the results of the evaluations started
+ * in a previous generation are not added, as they could be computed from the
+ * flushed state of the model.
+ * <p>
+ * The cache is thread safe and could be shared by several engines. It listens
+ * to the model changes until {@link #dispose()} is called.
+ *
+ * @since 5.0
+ */
+public class GoalResultCache {
+
+	private static final int FLUSH_FLAGS = IModelElementDelta.F_ADDED_TO_BUILDPATH
+			| IModelElementDelta.F_REMOVED_FROM_BUILDPATH
+			| IModelElementDelta.F_BUILDPATH_CHANGED
+			| IModelElementDelta.F_RESOLVED_BUILDPATH_CHANGED
+			| IModelElementDelta.F_ARCHIVE_CONTENT_CHANGED;
+
+	/**
+	 * Cached result of a goal
+	 */
+	static class Result {
+		final Object value;
+		final ISourceModule[] dependencies;
+
+		Result(Object value, ISourceModule[] dependencies) {
+			this.value = value;
+			this.dependencies = dependencies;
+		}
+	}
+
+	private class ResultLRUCache extends LRUCache {
+
+		ResultLRUCache(int size) {
+			super(size);
+		}
+
+		protected void privateNotifyDeletionFromCache(LRUCacheEntry entry) {
+			final Result result = (Result) entry._fValue;
+			for (ISourceModule module : result.dependencies) {
+				final Set<IGoal> goals = dependents.get(module);
+				if (goals != null) {
+					goals.remove(entry._fKey);
+					if (goals.isEmpty()) {
+						dependents.remove(module);
+					}
+				}
+			}
+		}
+
+		protected LRUCache newInstance(int size) {
+			return new ResultLRUCache(size);
+		}
+	}
+
+	private final ResultLRUCache cache;
+
+	/**
+	 * Goals of the cached results by the source modules they depend on
+	 */
+	private final Map<ISourceModule, Set<IGoal>> dependents = new HashMap<ISourceModule, Set<IGoal>>();
+
+	private long generation;
+	private int hits;
+	private int misses;
+
+	private final IElementChangedListener listener = new IElementChangedListener() {
+		public void elementChanged(ElementChangedEvent event) {
+			processDelta(event.getDelta());
+		}
+	};
+
+	/**
+	 * Creates the cache of the specified number of results
+	 */
+	public GoalResultCache(int limit) {
+		cache = new ResultLRUCache(limit);
+		DLTKCore.addElementChangedListener(listener,
+				ElementChangedEvent.POST_CHANGE
+						| ElementChangedEvent.POST_RECONCILE);
+	}
+
+	/**
+	 * Stops listening to the model changes and removes all the results
+	 */
+	public void dispose() {
+		DLTKCore.removeElementChangedListener(listener);
+		flush();
+	}
+
+	/**
+	 * Returns the cached result of the goal, or <code>null</code> if there is
+	 * none
+	 */
+	synchronized Result get(IGoal goal) {
+		final Result result = (Result) cache.get(goal);
+		if (result != null) {
+			++hits;
+		} else {
+			++misses;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the current generation, incremented by each flush
+	 */
+	synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Adds the result of the goal, unless the cache was flushed since the
+	 * specified generation
+	 */
+	synchronized void put(IGoal goal, Object value,
+			Set<ISourceModule> dependencies, long stamp) {
+		if (stamp != generation) {
+			return;
+		}
+		// the previous result is removed with its dependencies
+		cache.flush(goal);
+		final Result result = new Result(value,
+				dependencies.toArray(new ISourceModule[dependencies.size()]));
+		for (ISourceModule module : result.dependencies) {
+			Set<IGoal> goals = dependents.get(module);
+			if (goals == null) {
+				goals = new HashSet<IGoal>();
+				dependents.put(module, goals);
+			}
+			goals.add(goal);
+		}
+		cache.put(goal, result);
+	}
+
+	/**
+	 * Removes the results depending on the source module
+	 */
+	public synchronized void flush(ISourceModule module) {
+		++generation;
+		final Set<IGoal> goals = dependents.remove(module);
+		if (goals != null) {
+			for (IGoal goal : goals.toArray(new IGoal[goals.size()])) {
+				cache.flush(goal);
+			}
+		}
+	}
+
+	/**
+	 * Removes all the results
+	 */
+	public synchronized void flush() {
+		++generation;
+		cache.flush();
+		dependents.clear();
+	}
+
+	public synchronized int size() {
+		return cache.getCurrentSpace();
+	}
+
+	/**
+	 * Returns the number of the goals found in the cache
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of the goals not found in the cache
+	 */
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	private void processDelta(IModelElementDelta delta) {
+		final IModelElement element = delta.getElement();
+		if (element.getElementType() > IModelElement.SOURCE_MODULE) {
+			// fine grained delta of a reconciled module
+			flushModule((ISourceModule) element
+					.getAncestor(IModelElement.SOURCE_MODULE));
+			return;
+		}
+		if (delta.getKind() != IModelElementDelta.CHANGED
+				|| (delta.getFlags() & FLUSH_FLAGS) != 0) {
+			// the searches of the goals could find other elements now
+			flush();
+			return;
+		}
+		if (element.getElementType() == IModelElement.SOURCE_MODULE) {
+			flushModule((ISourceModule) element);
+			return;
+		}
+		for (IModelElementDelta child : delta.getAffectedChildren()) {
+			processDelta(child);
+		}
+	}
+
+	private void flushModule(ISourceModule module) {
+		if (module != null) {
+			flush(module);
+			if (module.isWorkingCopy()) {
+				flush(module.getPrimary());
+			}
+		}
+	}
+
+}
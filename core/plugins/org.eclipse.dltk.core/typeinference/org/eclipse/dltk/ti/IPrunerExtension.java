@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.ti;
+
+import org.eclipse.dltk.ti.goals.GoalEvaluator;
+import org.eclipse.dltk.ti.goals.IGoal;
+
+/**
+ * Optional interface of the {@link IPruner} knowing the place of the goal in
+ * the evaluation.
+ * 
+ * @since 5.0
+ */
+public interface IPrunerExtension {
+
+	/**
+	 * Called instead of {@link IPruner#prune(IGoal, EvaluatorStatistics)}
+	 * before the evaluator of the goal is created.
+	 * 
+	 * @param goal
+	 *            goal to prune
+	 * @param creator
+	 *            evaluator requesting the goal
+	 * @param depth
+	 *            depth of the goal, the subgoals of the root goal have depth 1
+	 * @param stat
+	 *            information about the creator
+	 */
+	boolean prune(IGoal goal, GoalEvaluator creator, int depth,
+			EvaluatorStatistics stat);
+
+}
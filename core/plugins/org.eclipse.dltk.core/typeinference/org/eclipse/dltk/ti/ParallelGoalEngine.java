@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.ti;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.dltk.ti.goals.GoalEvaluator;
+import org.eclipse.dltk.ti.goals.IGoal;
+import org.eclipse.dltk.ti.statistics.IEvaluationStatisticsRequestor;
+
+/**
+ * {@link GoalEngine} calling {@link GoalEvaluator#init()} of the evaluators
+ * of the independent goals concurrently in the specified executor, as the
+ * evaluators often start with the searches waiting for the index.
+ * <p>
+ * All the other calls of the evaluators, the factory, the pruner and the
+ * statistics requestor are made by the thread evaluating the root goal, so
+ * {@link GoalEvaluator#subGoalDone(IGoal, Object, GoalState)} and
+ * {@link GoalEvaluator#produceResult()} of an evaluator are never called
+ * concurrently and the recursive goals are detected as by the
+ * {@link GoalEngine}. A goal requested while its evaluator is initialized
+ * waits for the initialization.
+ * <p>
+ * The executor is not shut down by this class. An instance evaluates one goal
+ * at a time.
+ *
+ * @since 5.0
+ */
+public class ParallelGoalEngine extends GoalEngine {
+
+	private static class Initialized {
+		final GoalEvaluator evaluator;
+		final IGoal[] goals;
+		final long time;
+		final Throwable exception;
+
+		public Initialized(GoalEvaluator evaluator, IGoal[] goals, long time,
+				Throwable exception) {
+			this.evaluator = evaluator;
+			this.goals = goals;
+			this.time = time;
+			this.exception = exception;
+		}
+	}
+
+	private final Executor executor;
+
+	/**
+	 * Evaluators initialized by the executor, a new queue for every evaluation
+	 * so the evaluators of the aborted ones are ignored
+	 */
+	private BlockingQueue<Initialized> initialized;
+
+	public ParallelGoalEngine(IGoalEvaluatorFactory evaluatorFactory,
+			Executor executor) {
+		super(evaluatorFactory);
+		this.executor = executor;
+	}
+
+	@Override
+	public Object evaluateGoal(IGoal rootGoal, IPruner pruner,
+			IEvaluationStatisticsRequestor statisticsRequestor) {
+		initialized = new LinkedBlockingQueue<Initialized>();
+		return super.evaluateGoal(rootGoal, pruner, statisticsRequestor);
+	}
+
+	@Override
+	void initEvaluator(final GoalEvaluator evaluator) {
+		final BlockingQueue<Initialized> queue = initialized;
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					final long time = System.currentTimeMillis();
+					Initialized result;
+					try {
+						result = new Initialized(evaluator, evaluator.init(),
+								System.currentTimeMillis() - time, null);
+					} catch (Throwable e) {
+						result = new Initialized(evaluator, null, 0, e);
+					}
+					queue.add(result);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			super.initEvaluator(evaluator);
+		}
+	}
+
+	@Override
+	boolean awaitEvaluators() {
+		Initialized result;
+		try {
+			result = initialized.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		}
+		do {
+			if (result.exception instanceof RuntimeException) {
+				throw (RuntimeException) result.exception;
+			} else if (result.exception instanceof Error) {
+				throw (Error) result.exception;
+			} else if (result.exception != null) {
+				throw new RuntimeException(result.exception);
+			}
+			evaluatorInitialized(result.evaluator, result.goals, result.time);
+		} while ((result = initialized.poll()) != null);
+		return true;
+	}
+
+}
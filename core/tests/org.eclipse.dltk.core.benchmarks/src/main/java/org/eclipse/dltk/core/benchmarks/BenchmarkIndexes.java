@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.eclipse.dltk.core.search.index.Index;
+
+/**
+ * Helpers to build the indexes used by the benchmarks.
+ */
+final class BenchmarkIndexes {
+
+	private BenchmarkIndexes() {
+	}
+
+	static File createTempFile(String prefix) throws IOException {
+		final File file = File.createTempFile(prefix, ".index"); //$NON-NLS-1$
+		file.deleteOnExit();
+		return file;
+	}
+
+	static void copyFile(File source, File target) throws IOException {
+		final InputStream input = new FileInputStream(source);
+		try {
+			final OutputStream output = new FileOutputStream(target);
+			try {
+				final byte[] buffer = new byte[8192];
+				int len;
+				while ((len = input.read(buffer)) != -1)
+					output.write(buffer, 0, len);
+			} finally {
+				output.close();
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Adds the entries of the modules in the specified range to the unsaved
+	 * changes of the index.
+	 */
+	static void addModules(final Index index, SyntheticCorpus corpus,
+			int fromModule, int toModule) {
+		new CorpusIndexer(corpus) {
+			@Override
+			protected void addIndexEntry(char[] category, char[] key,
+					String documentName) {
+				index.addIndexEntry(category, key, documentName);
+			}
+		}.index(fromModule, toModule);
+	}
+
+	/**
+	 * Creates the index file of the whole corpus followed by the specified
+	 * number of appended segments, each reindexing a few modules.
+	 */
+	static Index createIndex(File file, SyntheticCorpus corpus, int segments)
+			throws IOException {
+		final Index index = new Index(file.getPath(), "", false); //$NON-NLS-1$
+		final int modules = corpus.getModuleCount();
+		addModules(index, corpus, 0, modules);
+		index.save();
+		index.compact();
+		final int step = Math.max(1, modules / 50);
+		for (int i = 0; i < segments; ++i) {
+			final int from = (i * step) % modules;
+			addModules(index, corpus, from, Math.min(modules, from + step));
+			index.save();
+		}
+		return index;
+	}
+
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.benchmarks;
+
+import org.eclipse.dltk.compiler.CharOperation;
+import org.eclipse.dltk.core.search.indexing.AbstractIndexer;
+import org.eclipse.dltk.core.search.indexing.SourceIndexerRequestor;
+
+/**
+ * Indexer of the {@link SyntheticCorpus} modules, passing the entries
+ * produced by {@link SourceIndexerRequestor} to the subclass.
+ */
+public abstract class CorpusIndexer extends AbstractIndexer {
+
+	private final SyntheticCorpus corpus;
+	private final SourceIndexerRequestor requestor;
+	private String documentName;
+	private int entryCount;
+
+	public CorpusIndexer(SyntheticCorpus corpus) {
+		super(null);
+		this.corpus = corpus;
+		this.requestor = new SourceIndexerRequestor(this);
+	}
+
+	/**
+	 * Indexes the modules in the specified range.
+	 */
+	public void index(int fromModule, int toModule) {
+		for (int i = fromModule; i < toModule; ++i) {
+			documentName = corpus.getModuleName(i);
+			entryCount = 0;
+			corpus.accept(i, requestor);
+		}
+	}
+
+	@Override
+	protected void addIndexEntry(char[] category, char[] key) {
+		++entryCount;
+		addIndexEntry(category, key, documentName);
+	}
+
+	@Override
+	protected void ensureDocumentAdded() {
+		if (entryCount == 0) {
+			addIndexEntry(STAMP, CharOperation.NO_CHAR);
+		}
+	}
+
+	protected abstract void addIndexEntry(char[] category, char[] key,
+			String documentName);
+
+	@Override
+	public void indexDocument() {
+		index(0, corpus.getModuleCount());
+	}
+
+}
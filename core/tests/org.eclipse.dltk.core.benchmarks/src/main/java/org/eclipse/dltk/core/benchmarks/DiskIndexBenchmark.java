@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.dltk.core.search.index.Index;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Time to write the changes of a few modules to the index file of the
+ * corpus, either appending a segment or merging everything into a new file.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DiskIndexBenchmark {
+
+	@Param("2000")
+	public int modules;
+
+	@Param("100")
+	public int changedModules;
+
+	private SyntheticCorpus corpus;
+	private File baseFile;
+	private File file;
+	private Index index;
+
+	@Setup
+	public void setUp() throws IOException {
+		corpus = new SyntheticCorpus(modules, 1);
+		baseFile = BenchmarkIndexes.createTempFile("base"); //$NON-NLS-1$
+		file = BenchmarkIndexes.createTempFile("work"); //$NON-NLS-1$
+		BenchmarkIndexes.createIndex(baseFile, corpus, 0);
+	}
+
+	@Setup(Level.Invocation)
+	public void prepareChanges() throws IOException {
+		BenchmarkIndexes.copyFile(baseFile, file);
+		index = new Index(file.getPath(), "", true); //$NON-NLS-1$
+		BenchmarkIndexes.addModules(index, corpus, 0, changedModules);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+		baseFile.delete();
+	}
+
+	@Benchmark
+	public Index save() throws IOException {
+		index.save();
+		return index;
+	}
+
+	@Benchmark
+	public Index merge() throws IOException {
+		index.compact();
+		return index;
+	}
+
+}
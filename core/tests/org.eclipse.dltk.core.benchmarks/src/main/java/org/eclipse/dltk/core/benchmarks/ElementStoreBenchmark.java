@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.index2.search.ISearchEngine.MatchRule;
+import org.eclipse.dltk.internal.core.index.kv.ElementStore;
+import org.eclipse.dltk.internal.core.index.kv.OrderedStore;
+import org.eclipse.dltk.internal.core.index.kv.StoredElement;
+import org.eclipse.dltk.internal.core.index.kv.StoredFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Time of a query of the type and method declarations of the corpus in the
+ * key-value store compared with the same query in an H2 table laid out as by
+ * the SQL index, without its cache. The table has a TYPE column instead of
+ * being one of the tables per element type.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ElementStoreBenchmark {
+
+	private static final String NATURE = "nature"; //$NON-NLS-1$
+
+	private static final String CREATE_FILES = "CREATE TABLE FILES(ID INT PRIMARY KEY, PATH VARCHAR NOT NULL)"; //$NON-NLS-1$
+	private static final String CREATE_ELEMENTS = "CREATE TABLE ELEMENTS(ID INT AUTO_INCREMENT PRIMARY KEY, TYPE INT NOT NULL, " //$NON-NLS-1$
+			+ "FLAGS INT NOT NULL, OFFSET INT NOT NULL, LENGTH INT NOT NULL, NAME_OFFSET INT NOT NULL, NAME_LENGTH INT NOT NULL, " //$NON-NLS-1$
+			+ "NAME VARCHAR_IGNORECASE NOT NULL, CC_NAME VARCHAR_IGNORECASE, METADATA VARCHAR, DOC VARCHAR, QUALIFIER VARCHAR, " //$NON-NLS-1$
+			+ "PARENT VARCHAR, FILE_ID INT NOT NULL, FOREIGN KEY(FILE_ID) REFERENCES FILES(ID))"; //$NON-NLS-1$
+	private static final String INSERT_FILE = "INSERT INTO FILES(ID,PATH) VALUES(?,?)"; //$NON-NLS-1$
+	private static final String INSERT_ELEMENT = "INSERT INTO ELEMENTS(TYPE,FLAGS,OFFSET,LENGTH,NAME_OFFSET,NAME_LENGTH,NAME,CC_NAME,METADATA,DOC,QUALIFIER,PARENT,FILE_ID) " //$NON-NLS-1$
+			+ "VALUES(?,0,?,10,?,?,?,?,NULL,NULL,NULL,?,?)"; //$NON-NLS-1$
+
+	private static final int KEY_COUNT = 64;
+
+	@Param("2000")
+	public int modules;
+
+	@Param({ "KV", "H2" })
+	public String backend;
+
+	@Param({ "EXACT", "PREFIX", "PATTERN", "CAMEL_CASE" })
+	public String query;
+
+	private File file;
+	private ElementStore store;
+	private Connection connection;
+	private String[] keys;
+	private MatchRule matchRule;
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException, SQLException {
+		final SyntheticCorpus corpus = new SyntheticCorpus(modules, 1);
+		if ("KV".equals(backend)) { //$NON-NLS-1$
+			file = File.createTempFile("elements", ".kv"); //$NON-NLS-1$ //$NON-NLS-2$
+			file.delete();
+			store = new ElementStore(new OrderedStore(file));
+			fillStore(corpus);
+		} else {
+			connection = DriverManager.getConnection("jdbc:h2:mem:"); //$NON-NLS-1$
+			fillTables(corpus);
+		}
+		matchRule = MatchRule.valueOf(query);
+		final String[] names = corpus.getTypeNames();
+		final Random random = new Random(2);
+		keys = new String[KEY_COUNT];
+		for (int i = 0; i < KEY_COUNT; ++i) {
+			keys[i] = createKey(names[random.nextInt(names.length)]);
+		}
+	}
+
+	private String createKey(String name) {
+		switch (matchRule) {
+		case EXACT:
+			return name;
+		case PREFIX:
+			return name.substring(0, 3);
+		case PATTERN:
+			return name.substring(0, 2) + '*'
+					+ name.substring(name.length() - 2);
+		default:
+			final StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < name.length(); ++i) {
+				if (Character.isUpperCase(name.charAt(i))) {
+					sb.append(name.charAt(i));
+				}
+			}
+			return sb.toString();
+		}
+	}
+
+	private void fillStore(SyntheticCorpus corpus) throws IOException {
+		final int containerId = store.insertContainer("/project"); //$NON-NLS-1$
+		for (int m = 0; m < corpus.getModuleCount(); ++m) {
+			final StoredFile storedFile = store.createFile(containerId,
+					corpus.getModuleName(m), m);
+			final String[] types = corpus.getTypeNames(m);
+			int offset = 0;
+			for (int t = 0; t < types.length; ++t) {
+				store.insertElement(storedFile, NATURE, false,
+						IModelElement.TYPE, 0, offset, 10, offset,
+						types[t].length(), types[t], null, null, null, null);
+				for (String method : corpus.getMethodNames(m, t)) {
+					offset += 10;
+					store.insertElement(storedFile, NATURE, false,
+							IModelElement.METHOD, 0, offset, 10, offset,
+							method.length(), method, null, null, null,
+							types[t]);
+				}
+				offset += 10;
+			}
+			store.insertFile(storedFile);
+		}
+		store.flush();
+	}
+
+	private void fillTables(SyntheticCorpus corpus) throws SQLException {
+		final Statement statement = connection.createStatement();
+		try {
+			statement.execute(CREATE_FILES);
+			statement.execute(CREATE_ELEMENTS);
+		} finally {
+			statement.close();
+		}
+		final PreparedStatement insertFile = connection
+				.prepareStatement(INSERT_FILE);
+		final PreparedStatement insertElement = connection
+				.prepareStatement(INSERT_ELEMENT);
+		try {
+			for (int m = 0; m < corpus.getModuleCount(); ++m) {
+				insertFile.setInt(1, m);
+				insertFile.setString(2, corpus.getModuleName(m));
+				insertFile.executeUpdate();
+				final String[] types = corpus.getTypeNames(m);
+				int offset = 0;
+				for (int t = 0; t < types.length; ++t) {
+					insertElement(insertElement, IModelElement.TYPE, offset,
+							types[t], null, m);
+					for (String method : corpus.getMethodNames(m, t)) {
+						offset += 10;
+						insertElement(insertElement, IModelElement.METHOD,
+								offset, method, types[t], m);
+					}
+					offset += 10;
+				}
+			}
+		} finally {
+			insertFile.close();
+			insertElement.close();
+		}
+	}
+
+	private static void insertElement(PreparedStatement statement, int type,
+			int offset, String name, String parent, int fileId)
+			throws SQLException {
+		int param = 0;
+		statement.setInt(++param, type);
+		statement.setInt(++param, offset);
+		statement.setInt(++param, offset);
+		statement.setInt(++param, name.length());
+		statement.setString(++param, name);
+		final StringBuilder camelCaseName = new StringBuilder();
+		for (int i = 0; i < name.length(); ++i) {
+			if (Character.isUpperCase(name.charAt(i))) {
+				camelCaseName.append(name.charAt(i));
+			} else if (i == 0) {
+				break;
+			}
+		}
+		statement.setString(++param,
+				camelCaseName.length() > 0 ? camelCaseName.toString() : null);
+		statement.setString(++param, parent);
+		statement.setInt(++param, fileId);
+		statement.executeUpdate();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException, SQLException {
+		if (store != null) {
+			store.getStore().close();
+			file.delete();
+		}
+		if (connection != null) {
+			connection.close();
+		}
+	}
+
+	@Benchmark
+	public int query() throws SQLException {
+		final String key = keys[next++ % KEY_COUNT];
+		if (store != null) {
+			final List<StoredElement> result = new ArrayList<StoredElement>();
+			return store.search(NATURE, IModelElement.TYPE, false, key,
+					matchRule, 0, 0, null, null, null, null, 0, result);
+		}
+		// the query built by H2ElementDao
+		final StringBuilder sql = new StringBuilder(
+				"SELECT * FROM ELEMENTS WHERE TYPE=").append(IModelElement.TYPE); //$NON-NLS-1$
+		switch (matchRule) {
+		case EXACT:
+			sql.append(" AND NAME='").append(key).append('\''); //$NON-NLS-1$
+			break;
+		case PREFIX:
+			sql.append(" AND NAME LIKE '").append(key).append("%'"); //$NON-NLS-1$ //$NON-NLS-2$
+			break;
+		case PATTERN:
+			sql.append(" AND NAME LIKE '").append(key.replace('*', '%')) //$NON-NLS-1$
+					.append('\'');
+			break;
+		default:
+			sql.append(" AND CC_NAME LIKE '").append(key).append("%'"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		int count = 0;
+		final Statement statement = connection.createStatement();
+		try {
+			final ResultSet result = statement.executeQuery(sql.toString());
+			try {
+				while (result.next()) {
+					// materialize the columns as the DAO does
+					for (int i = 1; i <= 14; ++i) {
+						result.getObject(i);
+					}
+					++count;
+				}
+			} finally {
+				result.close();
+			}
+		} finally {
+			statement.close();
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.dltk.core.search.SearchPattern;
+import org.eclipse.dltk.core.search.index.EntryResult;
+import org.eclipse.dltk.core.search.index.Index;
+import org.eclipse.dltk.core.search.indexing.IIndexConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Time of a query of the type references of the corpus with each match rule,
+ * including the loading of the category table as in a search job.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IndexQueryBenchmark {
+
+	private static final char[][] CATEGORIES = { IIndexConstants.REF };
+
+	private static final int KEY_COUNT = 64;
+
+	@Param("2000")
+	public int modules;
+
+	/**
+	 * Number of segments appended to the index file since it was last
+	 * rewritten.
+	 */
+	@Param({ "0", "8" })
+	public int segments;
+
+	@Param({ "EXACT", "EXACT_MISSING", "PREFIX", "PATTERN", "CAMELCASE" })
+	public String query;
+
+	private File file;
+	private Index index;
+	private char[][] keys;
+	private int matchRule;
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		final SyntheticCorpus corpus = new SyntheticCorpus(modules, 1);
+		file = BenchmarkIndexes.createTempFile("query"); //$NON-NLS-1$
+		index = BenchmarkIndexes.createIndex(file, corpus, segments);
+		final String[] names = corpus.getTypeNames();
+		final Random random = new Random(2);
+		keys = new char[KEY_COUNT][];
+		for (int i = 0; i < KEY_COUNT; ++i) {
+			// the most referenced quarter of the names
+			final String name = names[random.nextInt(names.length / 4)];
+			keys[i] = createKey(name).toCharArray();
+		}
+	}
+
+	private String createKey(String name) {
+		if ("EXACT".equals(query)) { //$NON-NLS-1$
+			matchRule = SearchPattern.R_EXACT_MATCH
+					| SearchPattern.R_CASE_SENSITIVE;
+			return name;
+		} else if ("EXACT_MISSING".equals(query)) { //$NON-NLS-1$
+			matchRule = SearchPattern.R_EXACT_MATCH
+					| SearchPattern.R_CASE_SENSITIVE;
+			return name + "Missing"; //$NON-NLS-1$
+		} else if ("PREFIX".equals(query)) { //$NON-NLS-1$
+			matchRule = SearchPattern.R_PREFIX_MATCH
+					| SearchPattern.R_CASE_SENSITIVE;
+			return name.substring(0, 3);
+		} else if ("PATTERN".equals(query)) { //$NON-NLS-1$
+			matchRule = SearchPattern.R_PATTERN_MATCH
+					| SearchPattern.R_CASE_SENSITIVE;
+			return name.substring(0, 2) + '*'
+					+ name.substring(name.length() - 2);
+		} else if ("CAMELCASE".equals(query)) { //$NON-NLS-1$
+			matchRule = SearchPattern.R_CAMELCASE_MATCH;
+			final StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < name.length(); ++i) {
+				if (Character.isUpperCase(name.charAt(i))) {
+					sb.append(name.charAt(i));
+				}
+			}
+			return sb.toString();
+		}
+		throw new IllegalArgumentException(query);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public EntryResult[] query() throws IOException {
+		final char[] key = keys[next++ % KEY_COUNT];
+		index.startQuery();
+		try {
+			return index.query(CATEGORIES, key, matchRule);
+		} finally {
+			index.stopQuery();
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.dltk.core.search.index.Index;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Time to add the entries of the whole corpus to the unsaved changes (the
+ * MemoryIndex) of an empty {@link Index}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MemoryIndexBenchmark {
+
+	@Param("2000")
+	public int modules;
+
+	private SyntheticCorpus corpus;
+	private File file;
+	private Index index;
+
+	@Setup
+	public void setUp() throws IOException {
+		corpus = new SyntheticCorpus(modules, 1);
+		file = BenchmarkIndexes.createTempFile("memory"); //$NON-NLS-1$
+	}
+
+	@Setup(Level.Invocation)
+	public void createIndex() throws IOException {
+		index = new Index(file.getPath(), "", false); //$NON-NLS-1$
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public Index addIndexEntry() {
+		BenchmarkIndexes.addModules(index, corpus, 0, modules);
+		return index;
+	}
+
+}
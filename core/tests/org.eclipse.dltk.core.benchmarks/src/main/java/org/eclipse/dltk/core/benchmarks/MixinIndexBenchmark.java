@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.dltk.core.search.SearchPattern;
+import org.eclipse.dltk.core.search.index.EntryResult;
+import org.eclipse.dltk.core.search.index.MixinIndex;
+import org.eclipse.dltk.core.search.indexing.IIndexConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Time of the queries of the mixin model: a type, the members of a type and
+ * the types defining a method.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MixinIndexBenchmark {
+
+	private static final char[][] CATEGORIES = { IIndexConstants.MIXIN };
+
+	private static final int KEY_COUNT = 64;
+
+	@Param("2000")
+	public int modules;
+
+	@Param({ "EXACT", "PREFIX", "PATTERN" })
+	public String query;
+
+	private File file;
+	private MixinIndex index;
+	private char[][] keys;
+	private int matchRule;
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		final SyntheticCorpus corpus = new SyntheticCorpus(modules, 1);
+		file = BenchmarkIndexes.createTempFile("mixin"); //$NON-NLS-1$
+		index = new MixinIndex(file.getPath(), "", false); //$NON-NLS-1$
+		for (int i = 0; i < modules; ++i) {
+			final String documentName = corpus.getModuleName(i);
+			index.addDocumentName(documentName);
+			final String[] types = corpus.getTypeNames(i);
+			for (int t = 0; t < types.length; ++t) {
+				index.addIndexEntry(IIndexConstants.MIXIN, types[t]
+						.toCharArray(), documentName);
+				for (String method : corpus.getMethodNames(i, t)) {
+					index.addIndexEntry(IIndexConstants.MIXIN,
+							(types[t] + IIndexConstants.SEPARATOR + method)
+									.toCharArray(), documentName);
+				}
+			}
+		}
+		index.save();
+		final Random random = new Random(2);
+		keys = new char[KEY_COUNT][];
+		for (int i = 0; i < KEY_COUNT; ++i) {
+			keys[i] = createKey(corpus, random).toCharArray();
+		}
+	}
+
+	private String createKey(SyntheticCorpus corpus, Random random) {
+		final String[] types = corpus.getTypeNames();
+		final String type = types[random.nextInt(types.length / 4)];
+		if ("EXACT".equals(query)) { //$NON-NLS-1$
+			matchRule = SearchPattern.R_EXACT_MATCH
+					| SearchPattern.R_CASE_SENSITIVE;
+			return type;
+		} else if ("PREFIX".equals(query)) { //$NON-NLS-1$
+			matchRule = SearchPattern.R_PREFIX_MATCH
+					| SearchPattern.R_CASE_SENSITIVE;
+			return type + IIndexConstants.SEPARATOR;
+		} else if ("PATTERN".equals(query)) { //$NON-NLS-1$
+			matchRule = SearchPattern.R_PATTERN_MATCH
+					| SearchPattern.R_CASE_SENSITIVE;
+			final String[] methods = corpus.getMethodNames();
+			return "*" + IIndexConstants.SEPARATOR //$NON-NLS-1$
+					+ methods[random.nextInt(methods.length / 4)];
+		}
+		throw new IllegalArgumentException(query);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public EntryResult[] query() throws IOException {
+		return index.query(CATEGORIES, keys[next++ % KEY_COUNT], matchRule);
+	}
+
+}
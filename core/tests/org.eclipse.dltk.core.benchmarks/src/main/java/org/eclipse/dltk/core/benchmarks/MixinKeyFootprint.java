@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.dltk.core.search.indexing.IIndexConstants;
+import org.eclipse.dltk.internal.core.mixin.MixinKeyStore;
+
+/**
+ * Retained heap of the known keys of the mixin model in the
+ * {@link MixinKeyStore} compared with a map of strings as the model used
+ * before. The keys are namespaced types and methods of the corpus, their
+ * namespaces included. Not a JMH benchmark, run it with
+ * <code>java -cp target/benchmarks.jar org.eclipse.dltk.core.benchmarks.MixinKeyFootprint [keys]</code>
+ */
+public class MixinKeyFootprint {
+
+	private static final char SEPARATOR = IIndexConstants.SEPARATOR;
+
+	private interface KeySink {
+		/**
+		 * Adds the key, returns the number of distinct keys
+		 */
+		int add(String key);
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		final int keyCount = args.length != 0 ? Integer.parseInt(args[0])
+				: 1000000;
+		// the names of a module produce about 14 distinct keys
+		final SyntheticCorpus corpus = new SyntheticCorpus(keyCount / 10, 1);
+
+		long base = usedMemory();
+		final Map<String, Boolean> map = new ConcurrentHashMap<String, Boolean>();
+		generate(corpus, keyCount, new KeySink() {
+			public int add(String key) {
+				map.put(key, Boolean.TRUE);
+				return map.size();
+			}
+		});
+		final long mapBytes = usedMemory() - base;
+		report("ConcurrentHashMap", map.size(), mapBytes);
+		map.clear();
+
+		base = usedMemory();
+		final MixinKeyStore store = new MixinKeyStore(SEPARATOR);
+		generate(corpus, keyCount, new KeySink() {
+			public int add(String key) {
+				store.setKnown(key, true);
+				return store.getKnownCount();
+			}
+		});
+		final long storeBytes = usedMemory() - base;
+		report("MixinKeyStore", store.size(), storeBytes);
+		System.out.println("segments: " + store.getSegmentCount() //$NON-NLS-1$
+				+ ", saved: " + (100 - storeBytes * 100 / mapBytes) + "%"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Adds the keys of the modules until the count of distinct keys is
+	 * reached. The keys are created again for every sink, so they are retained
+	 * by the sink only.
+	 */
+	private static void generate(SyntheticCorpus corpus, int keyCount,
+			KeySink sink) {
+		for (int m = 0; m < corpus.getModuleCount(); ++m) {
+			final String namespace = corpus.getModuleName(m).replace('/',
+					SEPARATOR);
+			for (int i = namespace.indexOf(SEPARATOR); i != -1; i = namespace
+					.indexOf(SEPARATOR, i + 1)) {
+				sink.add(namespace.substring(0, i));
+			}
+			sink.add(namespace);
+			final String[] types = corpus.getTypeNames(m);
+			for (int t = 0; t < types.length; ++t) {
+				final String type = namespace + SEPARATOR + types[t];
+				sink.add(type);
+				for (String method : corpus.getMethodNames(m, t)) {
+					if (sink.add(type + SEPARATOR + method) >= keyCount) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	private static void report(String name, int keys, long bytes) {
+		System.out.println(name + ": " + keys + " keys, " + bytes / 1024 //$NON-NLS-1$ //$NON-NLS-2$
+				+ " KB, " + bytes / keys + " bytes per key"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static long usedMemory() throws InterruptedException {
+		final Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; ++i) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
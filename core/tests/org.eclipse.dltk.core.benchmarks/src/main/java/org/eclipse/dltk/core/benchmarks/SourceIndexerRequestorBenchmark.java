@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Number of modules per second turned into index entries by
+ * {@link SourceIndexerRequestor}, without storing the entries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SourceIndexerRequestorBenchmark {
+
+	private static final int MODULES = 1000;
+
+	private SyntheticCorpus corpus;
+
+	@Setup
+	public void setUp() {
+		corpus = new SyntheticCorpus(MODULES, 1);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MODULES)
+	public void indexModules(final Blackhole blackhole) {
+		new CorpusIndexer(corpus) {
+			@Override
+			protected void addIndexEntry(char[] category, char[] key,
+					String documentName) {
+				blackhole.consume(key);
+			}
+		}.index(0, MODULES);
+	}
+
+}
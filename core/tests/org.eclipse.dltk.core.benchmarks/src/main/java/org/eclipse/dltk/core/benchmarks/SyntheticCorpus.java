@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.benchmarks;
+
+import java.util.Random;
+
+import org.eclipse.dltk.compiler.IElementRequestor.FieldInfo;
+import org.eclipse.dltk.compiler.IElementRequestor.MethodInfo;
+import org.eclipse.dltk.compiler.IElementRequestor.TypeInfo;
+import org.eclipse.dltk.compiler.ISourceElementRequestor;
+
+/**
+ * Generated source modules reported to an {@link ISourceElementRequestor} the
+ * way a language parser would, so the indexer can be measured without a
+ * workspace. The same size and seed always produce the same corpus. Names are
+ * built of syllables and referenced with a skewed distribution, so that some
+ * names are shared by many modules as in real code.
+ */
+public class SyntheticCorpus {
+
+	private static final String[] SYLLABLES = { "ab", "ac", "al", "an",
+			"ar", "ba", "be", "ca", "co", "da", "de", "el", "en", "er", "fa",
+			"fi", "ga", "ha", "in", "is", "ka", "la", "le", "ma", "me", "mo",
+			"na", "ne", "no", "or", "pa", "pe", "ra", "re", "ri", "sa", "se",
+			"si", "ta", "te", "to", "un", "va", "ve", "za" };
+
+	private static final String[] TYPE_SUFFIXES = { "", "", "Manager",
+			"Node", "Factory", "Handler", "Model", "Util", "Provider", "Info" };
+
+	private static final String[] METHOD_PREFIXES = { "get", "set", "is",
+			"create", "find", "add", "remove", "update", "to", "on" };
+
+	private static class Method {
+		String name;
+		String[] parameterNames;
+		String[] parameterTypes;
+		String returnType;
+		String[] typeReferences;
+		String[] methodReferences;
+	}
+
+	private static class Type {
+		String name;
+		String[] superclasses;
+		String[] fields;
+		String[] fieldTypes;
+		Method[] methods;
+	}
+
+	private final String[] moduleNames;
+	private final Type[][] modules;
+	private final String[] typeNames;
+	private final String[] methodNames;
+
+	public SyntheticCorpus(int moduleCount, long seed) {
+		final Random random = new Random(seed);
+		typeNames = new String[Math.max(16, moduleCount * 2)];
+		for (int i = 0; i < typeNames.length; ++i) {
+			typeNames[i] = capitalize(word(random, 2 + random.nextInt(2)))
+					+ TYPE_SUFFIXES[random.nextInt(TYPE_SUFFIXES.length)];
+		}
+		methodNames = new String[Math.max(16, moduleCount * 4)];
+		for (int i = 0; i < methodNames.length; ++i) {
+			methodNames[i] = METHOD_PREFIXES[random
+					.nextInt(METHOD_PREFIXES.length)]
+					+ capitalize(word(random, 1 + random.nextInt(3)));
+		}
+		moduleNames = new String[moduleCount];
+		modules = new Type[moduleCount][];
+		int declared = 0;
+		for (int i = 0; i < moduleCount; ++i) {
+			moduleNames[i] = "src/" + word(random, 1) + "/" //$NON-NLS-1$ //$NON-NLS-2$
+					+ word(random, 2) + i;
+			final Type[] types = new Type[1 + random.nextInt(3)];
+			for (int t = 0; t < types.length; ++t) {
+				// every type name is declared once before being reused
+				types[t] = createType(random,
+						declared < typeNames.length ? typeNames[declared++]
+								: pick(random, typeNames));
+			}
+			modules[i] = types;
+		}
+	}
+
+	private Type createType(Random random, String name) {
+		final Type type = new Type();
+		type.name = name;
+		type.superclasses = random.nextInt(3) == 0 ? null
+				: new String[] { pick(random, typeNames) };
+		final int fieldCount = random.nextInt(5);
+		type.fields = new String[fieldCount];
+		type.fieldTypes = new String[fieldCount];
+		for (int i = 0; i < fieldCount; ++i) {
+			type.fields[i] = word(random, 2);
+			type.fieldTypes[i] = random.nextBoolean() ? pick(random,
+					typeNames) : null;
+		}
+		type.methods = new Method[2 + random.nextInt(9)];
+		for (int i = 0; i < type.methods.length; ++i) {
+			final Method method = new Method();
+			method.name = pick(random, methodNames);
+			final int parameterCount = random.nextInt(4);
+			method.parameterNames = new String[parameterCount];
+			method.parameterTypes = new String[parameterCount];
+			for (int p = 0; p < parameterCount; ++p) {
+				method.parameterNames[p] = word(random, 1 + random.nextInt(2));
+				method.parameterTypes[p] = random.nextBoolean() ? pick(
+						random, typeNames) : null;
+			}
+			method.returnType = random.nextBoolean() ? pick(random, typeNames)
+					: null;
+			method.typeReferences = new String[random.nextInt(5)];
+			for (int r = 0; r < method.typeReferences.length; ++r) {
+				method.typeReferences[r] = pick(random, typeNames);
+			}
+			method.methodReferences = new String[1 + random.nextInt(6)];
+			for (int r = 0; r < method.methodReferences.length; ++r) {
+				method.methodReferences[r] = pick(random, methodNames);
+			}
+			type.methods[i] = method;
+		}
+		return type;
+	}
+
+	/**
+	 * Picks an element, the first ones much more often than the last ones.
+	 */
+	private static String pick(Random random, String[] names) {
+		final double r = random.nextDouble();
+		return names[(int) (r * r * r * names.length)];
+	}
+
+	private static String word(Random random, int syllables) {
+		final StringBuilder sb = new StringBuilder(syllables * 2);
+		for (int i = 0; i < syllables; ++i) {
+			sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+		}
+		return sb.toString();
+	}
+
+	private static String capitalize(String word) {
+		return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+	}
+
+	public int getModuleCount() {
+		return modules.length;
+	}
+
+	public String getModuleName(int module) {
+		return moduleNames[module];
+	}
+
+	/**
+	 * Returns the names of the types, the first ones are the most referenced.
+	 */
+	public String[] getTypeNames() {
+		return typeNames;
+	}
+
+	/**
+	 * Returns the names of the methods, the first ones are the most
+	 * referenced.
+	 */
+	public String[] getMethodNames() {
+		return methodNames;
+	}
+
+	/**
+	 * Returns the names of the types declared in the module.
+	 */
+	public String[] getTypeNames(int module) {
+		final Type[] types = modules[module];
+		final String[] names = new String[types.length];
+		for (int i = 0; i < types.length; ++i) {
+			names[i] = types[i].name;
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the names of the methods declared in the specified type of the
+	 * module.
+	 */
+	public String[] getMethodNames(int module, int type) {
+		final Method[] methods = modules[module][type].methods;
+		final String[] names = new String[methods.length];
+		for (int i = 0; i < methods.length; ++i) {
+			names[i] = methods[i].name;
+		}
+		return names;
+	}
+
+	/**
+	 * Reports the structure of the module to the requestor.
+	 */
+	public void accept(int module, ISourceElementRequestor requestor) {
+		requestor.enterModule();
+		int position = 0;
+		for (Type type : modules[module]) {
+			final TypeInfo typeInfo = new TypeInfo();
+			typeInfo.name = type.name;
+			typeInfo.declarationStart = position;
+			typeInfo.nameSourceStart = position + 6;
+			typeInfo.nameSourceEnd = typeInfo.nameSourceStart
+					+ type.name.length() - 1;
+			if (type.superclasses != null) {
+				typeInfo.superclasses = type.superclasses.clone();
+			}
+			requestor.enterType(typeInfo);
+			position += 40;
+			for (int i = 0; i < type.fields.length; ++i) {
+				final FieldInfo fieldInfo = new FieldInfo();
+				fieldInfo.name = type.fields[i];
+				fieldInfo.type = type.fieldTypes[i];
+				fieldInfo.declarationStart = position;
+				fieldInfo.nameSourceStart = position;
+				fieldInfo.nameSourceEnd = position + fieldInfo.name.length()
+						- 1;
+				requestor.enterField(fieldInfo);
+				position += 20;
+				requestor.exitField(position);
+			}
+			for (Method method : type.methods) {
+				final MethodInfo methodInfo = new MethodInfo();
+				methodInfo.name = method.name;
+				methodInfo.parameterNames = method.parameterNames;
+				methodInfo.parameterTypes = method.parameterTypes;
+				methodInfo.returnType = method.returnType;
+				methodInfo.declarationStart = position;
+				methodInfo.nameSourceStart = position + 4;
+				methodInfo.nameSourceEnd = methodInfo.nameSourceStart
+						+ method.name.length() - 1;
+				requestor.enterMethod(methodInfo);
+				position += 30;
+				for (String reference : method.typeReferences) {
+					requestor.acceptTypeReference(reference, position);
+					position += 15;
+				}
+				for (String reference : method.methodReferences) {
+					requestor.acceptMethodReference(reference, 1, position,
+							position + reference.length());
+					position += 15;
+				}
+				requestor.exitMethod(position);
+			}
+			requestor.exitType(position);
+		}
+		requestor.exitModule(position);
+	}
+}
@@ -21,6 +21,9 @@ import org.eclipse.dltk.core.tests.cache.SourceModuleInfoCacheTest;
 import org.eclipse.dltk.core.tests.compiler.CompilerCharOperationTests;
 import org.eclipse.dltk.core.tests.compiler.CompilerUtilTests;
 import org.eclipse.dltk.core.tests.ddp.CoreDDPTests;
+import org.eclipse.dltk.core.tests.index.DiskIndexTests;
+import org.eclipse.dltk.core.tests.index.ElementStoreTests;
+import org.eclipse.dltk.core.tests.index.OrderedStoreTests;
 import org.eclipse.dltk.core.tests.launching.EnvironmentResolverTests;
 import org.eclipse.dltk.core.tests.launching.InterpreterConfigTests;
 import org.eclipse.dltk.core.tests.mixin.MixinIndexTests;
@@ -31,6 +34,7 @@ import org.eclipse.dltk.core.tests.model.NamespaceTests;
 import org.eclipse.dltk.core.tests.model.WorkingCopyTests;
 import org.eclipse.dltk.core.tests.parser.SourceParserTests;
 import org.eclipse.dltk.core.tests.search.Bug387751Test;
+import org.eclipse.dltk.core.tests.search.JobManagerTests;
 import org.eclipse.dltk.core.tests.util.CharacterStackTests;
 import org.eclipse.dltk.core.tests.utils.CharOperationTests;
 import org.eclipse.dltk.core.tests.utils.IntListTests;
@@ -56,6 +60,9 @@ public class AllTests {
 		suite.addTest(EnvironmentResolverTests.suite());
 		suite.addTest(InterpreterConfigTests.suite());
 
+		suite.addTestSuite(DiskIndexTests.class);
+		suite.addTestSuite(OrderedStoreTests.class);
+		suite.addTestSuite(ElementStoreTests.class);
 		suite.addTest(new TestSuite(MixinIndexTests.class));
 		suite.addTest(new TestSuite(MixinModelTests.class));
 
@@ -72,6 +79,7 @@ public class AllTests {
 		suite.addTest(new TestSuite(InternalCoreUtilTest.class));
 		suite.addTest(TextUtilsTest.suite());
 		suite.addTest(new JUnit4TestAdapter(Bug387751Test.class));
+		suite.addTestSuite(JobManagerTests.class);
 		suite.addTest(new JUnit4TestAdapter(SourceModuleInfoCacheTest.class));
 		suite.addTest(new JUnit4TestAdapter(SetContainerEventsTest.class));
 		// $JUnit-END$
@@ -12,6 +12,8 @@ package org.eclipse.dltk.core.tests.ddp;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import junit.framework.Test;
 
@@ -19,14 +21,24 @@ import org.eclipse.dltk.ast.ASTNode;
 import org.eclipse.dltk.ast.expressions.Expression;
 import org.eclipse.dltk.ast.expressions.NumericLiteral;
 import org.eclipse.dltk.ast.references.SimpleReference;
+import org.eclipse.dltk.core.IDLTKLanguageToolkit;
+import org.eclipse.dltk.core.search.SearchPattern;
 import org.eclipse.dltk.core.tests.model.SuiteOfTestCases;
+import org.eclipse.dltk.ti.AdaptiveBudgetPruner;
+import org.eclipse.dltk.ti.BudgetPruner;
 import org.eclipse.dltk.ti.DefaultTypeInferencer;
+import org.eclipse.dltk.ti.GoalResultCache;
+import org.eclipse.dltk.ti.GoalEngine;
 import org.eclipse.dltk.ti.GoalState;
 import org.eclipse.dltk.ti.IGoalEvaluatorFactory;
+import org.eclipse.dltk.ti.IPruner;
 import org.eclipse.dltk.ti.ITypeInferencer;
+import org.eclipse.dltk.ti.ParallelGoalEngine;
 import org.eclipse.dltk.ti.goals.ExpressionTypeGoal;
 import org.eclipse.dltk.ti.goals.GoalEvaluator;
 import org.eclipse.dltk.ti.goals.IGoal;
+import org.eclipse.dltk.ti.goals.PossiblePosition;
+import org.eclipse.dltk.ti.goals.SearchBasedGoalEvaluator;
 import org.eclipse.dltk.ti.types.IEvaluatedType;
 
 public class CoreDDPTests extends SuiteOfTestCases {	
@@ -112,6 +124,36 @@ public class CoreDDPTests extends SuiteOfTestCases {
 		
 	}
 
+	private static final class FanOutGoalEvaluator extends GoalEvaluator {
+		private final IGoal[] subgoals;
+		private final Object answer;
+		private int done = 0;
+		private int pruned = 0;
+
+		private FanOutGoalEvaluator(IGoal goal, IGoal[] subgoals, Object answer) {
+			super(goal);
+			this.subgoals = subgoals;
+			this.answer = answer;
+		}
+
+		public IGoal[] init() {
+			return subgoals;
+		}
+
+		public IGoal[] subGoalDone(IGoal subgoal, Object result, GoalState state) {
+			if (state == GoalState.PRUNED) {
+				++pruned;
+			} else {
+				++done;
+			}
+			return IGoal.NO_GOALS;
+		}
+
+		public Object produceResult() {
+			return answer;
+		}
+	}
+
 	class MyNum implements IEvaluatedType {
 
 		public String toString() {
@@ -214,4 +256,346 @@ public class CoreDDPTests extends SuiteOfTestCases {
 			}
 		}
 	}
+
+	public void testResultCache() throws Exception {
+		// y = 2; x = y; x?
+		final Expression x = new SimpleReference(0, 0, "x");
+		final Expression y = new SimpleReference(0, 0, "y");
+		final Expression num = new NumericLiteral(0, 0, 0);
+
+		final Collection evaluators = new ArrayList();
+		IGoalEvaluatorFactory factory = new IGoalEvaluatorFactory() {
+
+			public GoalEvaluator createEvaluator(IGoal goal) {
+				GoalEvaluator result = null;
+				ASTNode expr = ((ExpressionTypeGoal) goal).getExpression();
+				if (expr == x)
+					result = new SingleDependentGoalEvaluator(goal,
+							new ExpressionTypeGoal(null, y), new MyNum());
+				else if (expr == y)
+					result = new SingleDependentGoalEvaluator(goal,
+							new ExpressionTypeGoal(null, num), new MyNum());
+				else if (expr == num)
+					result = new FixedAnswerGoalEvaluator(goal, new MyNum());
+				evaluators.add(result);
+				return result;
+			}
+
+		};
+
+		final GoalResultCache cache = new GoalResultCache(100);
+		try {
+			final DefaultTypeInferencer man = new DefaultTypeInferencer(
+					factory);
+			man.setResultCache(cache);
+
+			IEvaluatedType answer = man.evaluateType(new ExpressionTypeGoal(
+					null, x), -1);
+			assertTrue(answer instanceof MyNum);
+			assertEquals(3, evaluators.size());
+			assertEquals(3, cache.size());
+
+			evaluators.clear();
+			assertSame(answer, man.evaluateType(
+					new ExpressionTypeGoal(null, x), -1));
+			assertEquals(0, evaluators.size());
+			assertTrue(man.evaluateType(new ExpressionTypeGoal(null, y), -1)
+					instanceof MyNum);
+			assertEquals(0, evaluators.size());
+
+			cache.flush();
+			man.evaluateType(new ExpressionTypeGoal(null, x), -1);
+			assertEquals(3, evaluators.size());
+		} finally {
+			cache.dispose();
+		}
+	}
+
+	public void testResultCacheCycles() throws Exception {
+		// x = y; y = x | 2; x?
+		final Expression x = new SimpleReference(0, 0, "x");
+		final Expression y = new SimpleReference(0, 0, "y");
+		final Expression num = new NumericLiteral(0, 0, 0);
+
+		final Collection evaluators = new ArrayList();
+		IGoalEvaluatorFactory factory = new IGoalEvaluatorFactory() {
+
+			public GoalEvaluator createEvaluator(IGoal goal) {
+				GoalEvaluator result = null;
+				ASTNode expr = ((ExpressionTypeGoal) goal).getExpression();
+				if (expr == x)
+					result = new SingleDependentGoalEvaluator(goal,
+							new ExpressionTypeGoal(null, y), new MyNum());
+				else if (expr == y)
+					result = new SingleDependentGoalEvaluator(goal,
+							new IGoal[] { new ExpressionTypeGoal(null, x),
+									new ExpressionTypeGoal(null, num) },
+							new MyNum());
+				else if (expr == num)
+					result = new FixedAnswerGoalEvaluator(goal, new MyNum());
+				evaluators.add(result);
+				return result;
+			}
+
+		};
+
+		final GoalResultCache cache = new GoalResultCache(100);
+		try {
+			final DefaultTypeInferencer man = new DefaultTypeInferencer(
+					factory);
+			man.setResultCache(cache);
+			man.evaluateType(new ExpressionTypeGoal(null, x), -1);
+			assertEquals(3, evaluators.size());
+			// the results depending on the recursion are not cached
+			assertEquals(1, cache.size());
+
+			evaluators.clear();
+			man.evaluateType(new ExpressionTypeGoal(null, x), -1);
+			assertEquals(2, evaluators.size());
+		} finally {
+			cache.dispose();
+		}
+	}
+
+	public void testResultCacheSearchBased() throws Exception {
+		// x = y | 2; y is searched; x?
+		final Expression x = new SimpleReference(0, 0, "x");
+		final Expression y = new SimpleReference(0, 0, "y");
+		final Expression num = new NumericLiteral(0, 0, 0);
+
+		final Collection evaluators = new ArrayList();
+		IGoalEvaluatorFactory factory = new IGoalEvaluatorFactory() {
+
+			public GoalEvaluator createEvaluator(IGoal goal) {
+				GoalEvaluator result = null;
+				ASTNode expr = ((ExpressionTypeGoal) goal).getExpression();
+				if (expr == x)
+					result = new FanOutGoalEvaluator(goal, new IGoal[] {
+							new ExpressionTypeGoal(null, y),
+							new ExpressionTypeGoal(null, num) }, new MyNum());
+				else if (expr == y)
+					// without a context there is nothing to search
+					result = new SearchBasedGoalEvaluator(goal) {
+						protected SearchPattern createSearchPattern(
+								IDLTKLanguageToolkit toolkit) {
+							return null;
+						}
+
+						protected IGoal createVerificationGoal(
+								PossiblePosition pos) {
+							return null;
+						}
+					};
+				else if (expr == num)
+					result = new FixedAnswerGoalEvaluator(goal, new MyNum());
+				evaluators.add(result);
+				return result;
+			}
+
+		};
+
+		final GoalResultCache cache = new GoalResultCache(100);
+		try {
+			final DefaultTypeInferencer man = new DefaultTypeInferencer(
+					factory);
+			man.setResultCache(cache);
+			man.evaluateType(new ExpressionTypeGoal(null, x), -1);
+			assertEquals(3, evaluators.size());
+			// the results depending on the search are not cached
+			assertEquals(1, cache.size());
+
+			evaluators.clear();
+			man.evaluateType(new ExpressionTypeGoal(null, x), -1);
+			assertEquals(2, evaluators.size());
+		} finally {
+			cache.dispose();
+		}
+	}
+
+	public void testResultCacheFlushedDuringEvaluation() throws Exception {
+		// x = 2; the cache is flushed while 2 is evaluated the first time
+		final Expression x = new SimpleReference(0, 0, "x");
+		final Expression num = new NumericLiteral(0, 0, 0);
+
+		final GoalResultCache cache = new GoalResultCache(100);
+		final Collection evaluators = new ArrayList();
+		IGoalEvaluatorFactory factory = new IGoalEvaluatorFactory() {
+
+			public GoalEvaluator createEvaluator(IGoal goal) {
+				GoalEvaluator result = null;
+				ASTNode expr = ((ExpressionTypeGoal) goal).getExpression();
+				if (expr == x)
+					result = new FanOutGoalEvaluator(goal,
+							new IGoal[] { new ExpressionTypeGoal(null, num) },
+							new MyNum());
+				else if (expr == num) {
+					if (evaluators.size() == 1) {
+						cache.flush();
+					}
+					result = new FixedAnswerGoalEvaluator(goal, new MyNum());
+				}
+				evaluators.add(result);
+				return result;
+			}
+
+		};
+
+		try {
+			final DefaultTypeInferencer man = new DefaultTypeInferencer(
+					factory);
+			man.setResultCache(cache);
+			man.evaluateType(new ExpressionTypeGoal(null, x), -1);
+			assertEquals(2, evaluators.size());
+			// the results could be computed from the flushed state
+			assertEquals(0, cache.size());
+
+			man.evaluateType(new ExpressionTypeGoal(null, x), -1);
+			assertEquals(4, evaluators.size());
+			assertEquals(2, cache.size());
+		} finally {
+			cache.dispose();
+		}
+	}
+
+	public void testParallelCycles() throws Exception {
+		final Expression x = new SimpleReference(0, 0, "x");
+		final Expression y = new SimpleReference(0, 0, "y");
+		final Expression z = new SimpleReference(0, 0, "z");
+		final Expression num = new NumericLiteral(0, 0, 0);
+
+		final Collection evaluators = new ArrayList();
+		IGoalEvaluatorFactory factory = new IGoalEvaluatorFactory() {
+
+			public GoalEvaluator createEvaluator(IGoal goal) {
+				GoalEvaluator result = null;
+				ASTNode expr = ((ExpressionTypeGoal) goal).getExpression();
+				if (expr == x)
+					result = new SingleDependentGoalEvaluator(goal,
+							new IGoal[] { new ExpressionTypeGoal(null, y),
+									new ExpressionTypeGoal(null, z) },
+							new MyNum());
+				else if (expr == y)
+					result = new SingleDependentGoalEvaluator(goal,
+							new IGoal[] { new ExpressionTypeGoal(null, z) },
+							new MyNum());
+				else if (expr == z)
+					result = new SingleDependentGoalEvaluator(goal,
+							new IGoal[] { new ExpressionTypeGoal(null, num),
+									new ExpressionTypeGoal(null, y) },
+							new MyNum());
+				else if (expr == num)
+					result = new FixedAnswerGoalEvaluator(goal, new MyNum());
+				evaluators.add(result);
+				return result;
+			}
+
+		};
+
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final ParallelGoalEngine engine = new ParallelGoalEngine(factory,
+					executor);
+			for (int i = 0; i < 10; ++i) {
+				evaluators.clear();
+				Object answer = engine.evaluateGoal(new ExpressionTypeGoal(
+						null, x), null);
+				assertTrue(answer instanceof MyNum);
+				assertEquals(4, evaluators.size());
+				for (Iterator iter = evaluators.iterator(); iter.hasNext();) {
+					GoalEvaluator ev = (GoalEvaluator) iter.next();
+					if (ev instanceof SingleDependentGoalEvaluator) {
+						((SingleDependentGoalEvaluator) ev).assertState();
+					}
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Evaluates the root goal with the leaf subgoals producing the answer, the
+	 * first leaf starts a chain of the specified length.
+	 */
+	private FanOutGoalEvaluator evaluateFanOut(final int leafCount,
+			final int chainLength, final Object leafAnswer, IPruner pruner) {
+		final Expression root = new SimpleReference(0, 0, "root");
+		final Expression[] leaves = new Expression[leafCount];
+		for (int i = 0; i < leafCount; ++i) {
+			leaves[i] = new NumericLiteral(0, 0, i);
+		}
+		final Expression[] chain = new Expression[chainLength];
+		for (int i = 0; i < chainLength; ++i) {
+			chain[i] = new SimpleReference(0, 0, "c" + i);
+		}
+		final FanOutGoalEvaluator[] result = new FanOutGoalEvaluator[1];
+		IGoalEvaluatorFactory factory = new IGoalEvaluatorFactory() {
+
+			public GoalEvaluator createEvaluator(IGoal goal) {
+				ASTNode expr = ((ExpressionTypeGoal) goal).getExpression();
+				if (expr == root) {
+					IGoal[] subgoals = new IGoal[leafCount];
+					for (int i = 0; i < leafCount; ++i) {
+						subgoals[i] = new ExpressionTypeGoal(null, leaves[i]);
+					}
+					return result[0] = new FanOutGoalEvaluator(goal, subgoals,
+							new MyNum());
+				}
+				ASTNode next = null;
+				if (chainLength != 0 && expr == leaves[0]) {
+					next = chain[0];
+				}
+				for (int i = 0; i < chainLength - 1; ++i) {
+					if (expr == chain[i]) {
+						next = chain[i + 1];
+					}
+				}
+				return new FanOutGoalEvaluator(goal,
+						next != null ? new IGoal[] { new ExpressionTypeGoal(
+								null, next) } : IGoal.NO_GOALS, leafAnswer);
+			}
+
+		};
+		new GoalEngine(factory).evaluateGoal(new ExpressionTypeGoal(null,
+				root), pruner);
+		return result[0];
+	}
+
+	public void testBudgetPruner() throws Exception {
+		BudgetPruner pruner = new BudgetPruner();
+		pruner.setMaxGoals(3);
+		FanOutGoalEvaluator root = evaluateFanOut(10, 0, new MyNum(), pruner);
+		assertEquals(3, root.done);
+		assertEquals(7, root.pruned);
+		assertEquals(3, pruner.getGoalCount());
+
+		pruner = new BudgetPruner();
+		pruner.setMaxSubGoals(4);
+		root = evaluateFanOut(10, 0, new MyNum(), pruner);
+		assertEquals(4, root.done);
+		assertEquals(6, root.pruned);
+
+		pruner = new BudgetPruner();
+		pruner.setMaxDepth(3);
+		evaluateFanOut(1, 10, new MyNum(), pruner);
+		assertEquals(3, pruner.getGoalCount());
+	}
+
+	public void testAdaptiveBudgetPruner() throws Exception {
+		AdaptiveBudgetPruner pruner = new AdaptiveBudgetPruner();
+		pruner.setMaxSubGoals(10);
+		FanOutGoalEvaluator root = evaluateFanOut(10, 0, new MyNum(), pruner);
+		assertEquals(10, root.done);
+		// the subgoals without the results reduce the limit
+		root = evaluateFanOut(10, 0, null, pruner);
+		assertEquals(3, root.done);
+		assertEquals(7, root.pruned);
+
+		pruner = new AdaptiveBudgetPruner();
+		pruner.setMaxGoals(10);
+		pruner.setMaxDepth(10);
+		evaluateFanOut(1, 20, new MyNum(), pruner);
+		// the depth limit is reduced as the goals are evaluated
+		assertEquals(5, pruner.getGoalCount());
+	}
 }
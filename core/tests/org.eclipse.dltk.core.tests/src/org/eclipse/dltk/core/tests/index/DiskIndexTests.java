@@ -0,0 +1,509 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.dltk.core.search.SearchPattern;
+import org.eclipse.dltk.core.search.index.EntryResult;
+import org.eclipse.dltk.core.search.index.IEntryResultRequestor;
+import org.eclipse.dltk.core.search.index.Index;
+
+/**
+ * Tests for the {@link Index} saved to the disk.
+ */
+public class DiskIndexTests extends TestCase {
+
+	private static final char[] TYPE = "type".toCharArray();
+	private static final char[] METHOD = "method".toCharArray();
+
+	private File file;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("disk", ".index");
+	}
+
+	protected void tearDown() throws Exception {
+		file.delete();
+		super.tearDown();
+	}
+
+	private Index createIndex(boolean reuseExistingFile) throws IOException {
+		return new Index(file.getPath(), file.getPath(), reuseExistingFile);
+	}
+
+	private Index createSavedIndex() throws IOException {
+		Index index = createIndex(false);
+		for (int i = 0; i < 300; ++i) {
+			final String docName = "doc" + i;
+			index.addIndexEntry(TYPE, ("Type" + i).toCharArray(), docName);
+			index.addIndexEntry(METHOD, "common".toCharArray(), docName);
+		}
+		index.addIndexEntry(TYPE, "Shared".toCharArray(), "doc1");
+		index.addIndexEntry(TYPE, "Shared".toCharArray(), "doc2");
+		index.save();
+		return createIndex(true);
+	}
+
+	private static String[] query(Index index, char[] category, String key,
+			int matchRule) throws IOException {
+		index.startQuery();
+		try {
+			EntryResult[] results = index.query(new char[][] { category },
+					key != null ? key.toCharArray() : null, matchRule);
+			if (results == null) {
+				return new String[0];
+			}
+			String[] words = new String[results.length];
+			for (int i = 0; i < results.length; ++i) {
+				words[i] = new String(results[i].getWord());
+			}
+			Arrays.sort(words);
+			return words;
+		} finally {
+			index.stopQuery();
+		}
+	}
+
+	private static String[] queryDocuments(Index index, char[] category,
+			String key) throws IOException {
+		index.startQuery();
+		try {
+			EntryResult[] results = index.query(new char[][] { category },
+					key.toCharArray(), SearchPattern.R_EXACT_MATCH
+							| SearchPattern.R_CASE_SENSITIVE);
+			assertNotNull(results);
+			assertEquals(1, results.length);
+			String[] docNames = results[0].getDocumentNames(index);
+			Arrays.sort(docNames);
+			return docNames;
+		} finally {
+			index.stopQuery();
+		}
+	}
+
+	public void testExactQuery() throws IOException {
+		final Index index = createSavedIndex();
+		assertEquals(Arrays.asList("doc1", "doc2"), Arrays
+				.asList(queryDocuments(index, TYPE, "Shared")));
+		assertEquals(Arrays.asList("doc42"), Arrays.asList(queryDocuments(
+				index, TYPE, "Type42")));
+		assertEquals(0, query(index, TYPE, "Unknown",
+				SearchPattern.R_EXACT_MATCH | SearchPattern.R_CASE_SENSITIVE).length);
+		// large document array stored before the category table
+		assertEquals(300, queryDocuments(index, METHOD, "common").length);
+	}
+
+	public void testPrefixQuery() throws IOException {
+		final Index index = createSavedIndex();
+		assertEquals(
+				Arrays.asList("Type29", "Type290", "Type291", "Type292",
+						"Type293", "Type294", "Type295", "Type296", "Type297",
+						"Type298", "Type299"),
+				Arrays.asList(query(index, TYPE, "Type29",
+						SearchPattern.R_PREFIX_MATCH
+								| SearchPattern.R_CASE_SENSITIVE)));
+		assertEquals(Arrays.asList("Shared"), Arrays.asList(query(index, TYPE,
+				"sh", SearchPattern.R_PREFIX_MATCH)));
+	}
+
+	public void testPatternQuery() throws IOException {
+		final Index index = createSavedIndex();
+		final String[] words = query(index, TYPE, "type2?1",
+				SearchPattern.R_PATTERN_MATCH);
+		assertEquals(10, words.length);
+		assertEquals("Type201", words[0]);
+		assertEquals("Type291", words[9]);
+		assertEquals(301, query(index, TYPE, null,
+				SearchPattern.R_PATTERN_MATCH).length);
+	}
+
+	public void testMatchRules() throws IOException {
+		final String[] words = { "FooBar", "fooBar", "FOO", "Foo", "foo",
+				"FooBarBaz", "FBar", "bar", "Bar", "_foo", "kelvin",
+				"\u212Aelvin", "Kelvin", "\u00C9clair", "\u00E9clair", "" };
+		Index index = createIndex(false);
+		for (int i = 0; i < words.length; ++i) {
+			index.addIndexEntry(TYPE, words[i].toCharArray(), "doc" + i);
+		}
+		index.save();
+		index = createIndex(true);
+		final String[] keys = { "Foo", "foo", "FB", "FBa", "F*Bar", "f?o",
+				"*Bar", "K", "k", "kel*", "\u00C9", "\u00E9c*", "_", "" };
+		final int[] rules = {
+				SearchPattern.R_EXACT_MATCH,
+				SearchPattern.R_PREFIX_MATCH,
+				SearchPattern.R_PREFIX_MATCH | SearchPattern.R_CASE_SENSITIVE,
+				SearchPattern.R_PATTERN_MATCH,
+				SearchPattern.R_PATTERN_MATCH | SearchPattern.R_CASE_SENSITIVE,
+				SearchPattern.R_CAMELCASE_MATCH,
+				SearchPattern.R_CAMELCASE_MATCH
+						| SearchPattern.R_CASE_SENSITIVE,
+				SearchPattern.R_CAMELCASE_MATCH | SearchPattern.R_PREFIX_MATCH };
+		for (int i = 0; i < keys.length; ++i) {
+			for (int j = 0; j < rules.length; ++j) {
+				final List<String> expected = new ArrayList<String>();
+				for (int k = 0; k < words.length; ++k) {
+					if (Index.isMatch(keys[i].toCharArray(), words[k]
+							.toCharArray(), rules[j])) {
+						expected.add(words[k]);
+					}
+				}
+				Collections.sort(expected);
+				assertEquals(keys[i] + " " + rules[j], expected, Arrays
+						.asList(query(index, TYPE, keys[i], rules[j])));
+			}
+		}
+	}
+
+	public void testQueryDocumentNames() throws IOException {
+		final Index index = createSavedIndex();
+		index.startQuery();
+		try {
+			assertEquals(300, index.queryDocumentNames(null).length);
+			assertEquals(111, index.queryDocumentNames("doc1").length);
+		} finally {
+			index.stopQuery();
+		}
+	}
+
+	public void testConcurrentQueries() throws Exception {
+		final Index index = createSavedIndex();
+		final Throwable[] failure = new Throwable[1];
+		final Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; ++i) {
+			final int offset = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						for (int j = 0; j < 300; j += threads.length) {
+							final int n = (j + offset) % 300;
+							assertEquals(Arrays.asList("doc" + n), Arrays
+									.asList(queryDocuments(index, TYPE, "Type"
+											+ n)));
+							assertEquals(300, queryDocuments(index, METHOD,
+									"common").length);
+						}
+					} catch (Throwable e) {
+						synchronized (failure) {
+							failure[0] = e;
+						}
+					}
+				}
+			};
+		}
+		for (int i = 0; i < threads.length; ++i) {
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; ++i) {
+			threads[i].join();
+		}
+		synchronized (failure) {
+			if (failure[0] != null) {
+				throw new AssertionError(failure[0]);
+			}
+		}
+	}
+
+	public void testDocumentNamesDuringQueries() throws Exception {
+		final Index index = createSavedIndex();
+		final Throwable[] failure = new Throwable[1];
+		final Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; ++i) {
+			final boolean names = i % 2 == 0;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						for (int j = 0; j < 200; ++j) {
+							if (names) {
+								// without a query of its own, as IndexRequest
+								assertEquals(300,
+										index.queryDocumentNames(null).length);
+							} else {
+								assertEquals(Arrays.asList("doc1", "doc2"),
+										Arrays.asList(queryDocuments(index,
+												TYPE, "Shared")));
+							}
+						}
+					} catch (Throwable e) {
+						synchronized (failure) {
+							failure[0] = e;
+						}
+					}
+				}
+			};
+		}
+		for (int i = 0; i < threads.length; ++i) {
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; ++i) {
+			threads[i].join();
+		}
+		synchronized (failure) {
+			if (failure[0] != null) {
+				throw new AssertionError(failure[0]);
+			}
+		}
+	}
+
+	public void testUpdate() throws IOException {
+		final Index index = createSavedIndex();
+		index.remove("doc2");
+		index.addIndexEntry(TYPE, "Shared".toCharArray(), "doc3");
+		assertEquals(Arrays.asList("doc1", "doc3"), Arrays
+				.asList(queryDocuments(index, TYPE, "Shared")));
+		index.save();
+		assertEquals(Arrays.asList("doc1", "doc3"), Arrays
+				.asList(queryDocuments(index, TYPE, "Shared")));
+		assertEquals(Arrays.asList("doc1", "doc3"), Arrays
+				.asList(queryDocuments(createIndex(true), TYPE, "Shared")));
+	}
+
+	public void testMergeDocumentArrays() throws IOException {
+		Index index = createSavedIndex();
+		for (int i = 300; i < 20000; ++i) {
+			index.addIndexEntry(METHOD, "common".toCharArray(), "doc" + i);
+			if (i % 100 == 0) {
+				index.addIndexEntry(TYPE, "Shared".toCharArray(), "doc" + i);
+			}
+		}
+		index.remove("doc1");
+		index.save();
+		index = createIndex(true);
+		final List<String> common = Arrays.asList(queryDocuments(index,
+				METHOD, "common"));
+		assertEquals(19999, common.size());
+		assertTrue(common.contains("doc19999"));
+		assertFalse(common.contains("doc1"));
+		final List<String> shared = Arrays.asList(queryDocuments(index, TYPE,
+				"Shared"));
+		assertEquals(198, shared.size());
+		assertTrue(shared.contains("doc2"));
+		assertTrue(shared.contains("doc19900"));
+	}
+
+	public void testSegments() throws IOException {
+		Index index = createSavedIndex();
+		assertEquals(0, index.getSegmentCount());
+		index.remove("doc2");
+		index.addIndexEntry(TYPE, "Shared".toCharArray(), "doc3");
+		index.save();
+		assertEquals(1, index.getSegmentCount());
+		index.remove("doc42");
+		index.remove("doc43");
+		index.addIndexEntry(TYPE, "Type43".toCharArray(), "doc43");
+		index.addIndexEntry(TYPE, "Added".toCharArray(), "doc300");
+		index.save();
+		assertEquals(2, index.getSegmentCount());
+		assertSegments(index);
+		index = createIndex(true);
+		assertEquals(2, index.getSegmentCount());
+		assertSegments(index);
+		index.compact();
+		assertEquals(0, index.getSegmentCount());
+		assertSegments(index);
+		assertSegments(createIndex(true));
+	}
+
+	private void assertSegments(Index index) throws IOException {
+		assertEquals(Arrays.asList("doc1", "doc3"), Arrays
+				.asList(queryDocuments(index, TYPE, "Shared")));
+		assertEquals(Arrays.asList("doc43"), Arrays.asList(queryDocuments(
+				index, TYPE, "Type43")));
+		assertEquals(Arrays.asList("doc300"), Arrays.asList(queryDocuments(
+				index, TYPE, "Added")));
+		assertEquals(0, query(index, TYPE, "Type42",
+				SearchPattern.R_EXACT_MATCH | SearchPattern.R_CASE_SENSITIVE).length);
+		assertEquals(Arrays.asList("Type4", "Type40", "Type41", "Type43",
+				"Type44", "Type45", "Type46", "Type47", "Type48", "Type49"),
+				Arrays.asList(query(index, TYPE, "Type4",
+						SearchPattern.R_PREFIX_MATCH
+								| SearchPattern.R_CASE_SENSITIVE)));
+		// doc2 and doc42 are removed, doc3 and doc43 were reindexed without
+		// the common method
+		assertEquals(296, queryDocuments(index, METHOD, "common").length);
+		index.startQuery();
+		try {
+			final List<String> names = Arrays.asList(index
+					.queryDocumentNames(null));
+			assertEquals(299, names.size());
+			assertTrue(names.contains("doc300"));
+			assertFalse(names.contains("doc2"));
+			assertFalse(names.contains("doc42"));
+		} finally {
+			index.stopQuery();
+		}
+	}
+
+	public void testStreamingQuery() throws IOException {
+		final Index index = createSavedIndex();
+		index.remove("doc2");
+		index.addIndexEntry(TYPE, "Shared".toCharArray(), "doc3");
+		index.save();
+		index.addIndexEntry(TYPE, "Shared".toCharArray(), "doc4");
+		final List<String> documents = new ArrayList<String>();
+		final List<String> words = new ArrayList<String>();
+		index.startQuery();
+		try {
+			assertTrue(index.query(new char[][] { TYPE }, "Shared"
+					.toCharArray(), SearchPattern.R_EXACT_MATCH
+					| SearchPattern.R_CASE_SENSITIVE,
+					new IEntryResultRequestor() {
+						public boolean acceptEntry(EntryResult entry)
+								throws IOException {
+							documents.addAll(Arrays.asList(entry
+									.getDocumentNames(index)));
+							return true;
+						}
+					}));
+			assertFalse(index.query(new char[][] { TYPE }, "Type1"
+					.toCharArray(), SearchPattern.R_PREFIX_MATCH
+					| SearchPattern.R_CASE_SENSITIVE,
+					new IEntryResultRequestor() {
+						public boolean acceptEntry(EntryResult entry) {
+							words.add(new String(entry.getWord()));
+							return words.size() < 3;
+						}
+					}));
+		} finally {
+			index.stopQuery();
+		}
+		Collections.sort(documents);
+		assertEquals(Arrays.asList("doc1", "doc3", "doc4"), documents);
+		assertEquals(Arrays.asList("Type1", "Type10", "Type100"), words);
+	}
+
+	public void testMightContain() throws IOException {
+		Index index = createSavedIndex();
+		final char[][] types = new char[][] { TYPE };
+		for (int i = 0; i < 300; ++i) {
+			assertTrue(index.mightContain(types, ("Type" + i).toCharArray()));
+		}
+		assertTrue(index.mightContain(new char[][] { METHOD, TYPE },
+				"common".toCharArray()));
+		assertFalse(index.mightContain(new char[][] { "field".toCharArray() },
+				"common".toCharArray()));
+		int falsePositives = 0;
+		for (int i = 0; i < 10000; ++i) {
+			if (index.mightContain(types, ("Unknown" + i).toCharArray())) {
+				++falsePositives;
+			}
+		}
+		assertTrue(String.valueOf(falsePositives), falsePositives < 300);
+
+		index.addIndexEntry(TYPE, "Added".toCharArray(), "doc300");
+		assertTrue(index.mightContain(types, "Added".toCharArray()));
+		index.save();
+		assertEquals(1, index.getSegmentCount());
+		assertTrue(index.mightContain(types, "Added".toCharArray()));
+		index = createIndex(true);
+		assertTrue(index.mightContain(types, "Added".toCharArray()));
+		assertTrue(index.mightContain(types, "Type42".toCharArray()));
+		index.compact();
+		assertTrue(index.mightContain(types, "Added".toCharArray()));
+		assertTrue(index.mightContain(types, "Type42".toCharArray()));
+	}
+
+	public void testMaxSegments() throws IOException {
+		final Index index = createSavedIndex();
+		for (int i = 0; i < Index.MAX_SEGMENTS; ++i) {
+			index.addIndexEntry(TYPE, "Added".toCharArray(), "new" + i);
+			index.save();
+		}
+		assertEquals(Index.MAX_SEGMENTS, index.getSegmentCount());
+		index.addIndexEntry(TYPE, "Added".toCharArray(), "last");
+		index.save();
+		assertEquals(0, index.getSegmentCount());
+		final List<String> added = Arrays.asList(queryDocuments(index, TYPE,
+				"Added"));
+		assertEquals(Index.MAX_SEGMENTS + 1, added.size());
+		assertTrue(added.contains("new0"));
+		assertTrue(added.contains("last"));
+	}
+
+	public void testExportImport() throws IOException {
+		final Index index = createSavedIndex();
+		index.remove("doc2");
+		index.save();
+		index.addIndexEntry(TYPE, "Added".toCharArray(), "doc300");
+		final File exported = File.createTempFile("exported", ".index");
+		final File other = File.createTempFile("other", ".index");
+		try {
+			index.exportTo(exported);
+			assertEquals(0, index.getSegmentCount());
+			final Index imported = new Index(other.getPath(), "other", false);
+			imported.addIndexEntry(TYPE, "Unsaved".toCharArray(), "doc");
+			imported.importFrom(exported);
+			assertFalse(imported.hasChanged());
+			assertEquals(Arrays.asList("doc1"), Arrays.asList(queryDocuments(
+					imported, TYPE, "Shared")));
+			assertEquals(Arrays.asList("doc300"), Arrays.asList(queryDocuments(
+					imported, TYPE, "Added")));
+			assertEquals(0, query(imported, TYPE, "Unsaved",
+					SearchPattern.R_EXACT_MATCH
+							| SearchPattern.R_CASE_SENSITIVE).length);
+			assertEquals(Arrays.asList("doc300"), Arrays.asList(queryDocuments(
+					new Index(other.getPath(), "other", true), TYPE, "Added")));
+
+			final RandomAccessFile output = new RandomAccessFile(exported, "rw");
+			try {
+				output.setLength(0);
+				output.writeUTF("DLTK INDEX VERSION 1.014");
+				output.writeInt(-1);
+			} finally {
+				output.close();
+			}
+			try {
+				imported.importFrom(exported);
+				fail("index in the previous format should not be imported");
+			} catch (IOException e) {
+				// expected
+			}
+			assertEquals(Arrays.asList("doc300"), Arrays.asList(queryDocuments(
+					imported, TYPE, "Added")));
+		} finally {
+			exported.delete();
+			other.delete();
+		}
+	}
+
+	public void testPreviousFormatIsNotReused() throws IOException {
+		final RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try {
+			output.writeUTF("DLTK INDEX VERSION 1.014");
+			output.writeInt(-1);
+		} finally {
+			output.close();
+		}
+		try {
+			createIndex(true);
+			fail("index in the previous format should be rebuilt");
+		} catch (IOException e) {
+			// expected
+		}
+		final Index index = createIndex(false);
+		index.addIndexEntry(TYPE, "Type".toCharArray(), "doc");
+		index.save();
+		assertEquals(Arrays.asList("doc"), Arrays.asList(queryDocuments(
+				createIndex(true), TYPE, "Type")));
+	}
+
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.index2.search.ISearchEngine.MatchRule;
+import org.eclipse.dltk.internal.core.index.kv.ElementStore;
+import org.eclipse.dltk.internal.core.index.kv.OrderedStore;
+import org.eclipse.dltk.internal.core.index.kv.StoredElement;
+import org.eclipse.dltk.internal.core.index.kv.StoredFile;
+
+/**
+ * Searches of the key-value index in {@link ElementStore}, with the match
+ * semantics of the H2 index.
+ */
+public class ElementStoreTests extends TestCase {
+
+	private static final String NATURE = "org.eclipse.dltk.test.nature";
+
+	private File file;
+	private ElementStore store;
+	private int containerId;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("elements", ".kv");
+		file.delete();
+		store = new ElementStore(new OrderedStore(file));
+		containerId = store.insertContainer("/project");
+		StoredFile file1 = store.createFile(containerId, "a.js", 1);
+		addType(file1, "MyClass", 1, "pkg");
+		addType(file1, "MyOtherClass", 0, null);
+		addType(file1, "myFunction", 0, null);
+		store.insertElement(file1, NATURE, false, IModelElement.METHOD, 0, 0,
+				10, 0, 3, "run", null, "doc", null, "MyClass");
+		store.insertElement(file1, NATURE, true, IModelElement.TYPE, 0, 0,
+				10, 0, 0, "MyClass", null, null, null, null);
+		store.insertFile(file1);
+		StoredFile file2 = store.createFile(containerId, "b.js", 1);
+		addType(file2, "Other", 0, null);
+		addType(file2, "MyClass", 0, null);
+		store.insertFile(file2);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		store.getStore().close();
+		file.delete();
+		super.tearDown();
+	}
+
+	private void addType(StoredFile storedFile, String name, int flags,
+			String qualifier) throws IOException {
+		store.insertElement(storedFile, NATURE, false, IModelElement.TYPE,
+				flags, 0, 10, 0, name.length(), name, null, null, qualifier,
+				null);
+	}
+
+	private List<String> searchTypes(String pattern, MatchRule matchRule) {
+		return search(IModelElement.TYPE, false, pattern, matchRule, 0, null,
+				null, 0);
+	}
+
+	private List<String> search(int elementType, boolean isReference,
+			String pattern, MatchRule matchRule, int trueFlags,
+			String qualifier, Set<Integer> filesId, int limit) {
+		List<StoredElement> elements = new ArrayList<StoredElement>();
+		store.search(NATURE, elementType, isReference, pattern, matchRule,
+				trueFlags, 0, qualifier, null, filesId, null, limit, elements);
+		List<String> names = new ArrayList<String>();
+		for (StoredElement element : elements) {
+			names.add(element.getName());
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	private static List<String> names(String... names) {
+		List<String> list = new ArrayList<String>();
+		Collections.addAll(list, names);
+		Collections.sort(list);
+		return list;
+	}
+
+	public void testExact() {
+		assertEquals(names("MyClass", "MyClass"),
+				searchTypes("myclass", MatchRule.EXACT));
+		assertEquals(names(), searchTypes("MyClas", MatchRule.EXACT));
+	}
+
+	public void testPrefix() {
+		assertEquals(names("MyClass", "MyClass", "MyOtherClass", "myFunction"),
+				searchTypes("my", MatchRule.PREFIX));
+	}
+
+	public void testCamelCase() {
+		assertEquals(names("MyClass", "MyClass"),
+				searchTypes("MC", MatchRule.CAMEL_CASE));
+		assertEquals(names("MyOtherClass"),
+				searchTypes("MOC", MatchRule.CAMEL_CASE));
+	}
+
+	public void testSet() {
+		assertEquals(names("MyClass", "MyClass", "Other"),
+				searchTypes("other,myclass", MatchRule.SET));
+	}
+
+	public void testPattern() {
+		assertEquals(names("MyClass", "MyClass", "MyOtherClass"),
+				searchTypes("my*class", MatchRule.PATTERN));
+		// as in H2Cache, ? matches zero or one character
+		assertEquals(names("MyClass", "MyClass"),
+				searchTypes("MyClass?", MatchRule.PATTERN));
+		assertEquals(names("MyClass", "MyClass"),
+				searchTypes("MyCla?s", MatchRule.PATTERN));
+	}
+
+	public void testAll() {
+		assertEquals(5, searchTypes(null, MatchRule.PREFIX).size());
+	}
+
+	public void testFilters() {
+		assertEquals(names("MyClass"), search(IModelElement.TYPE, false,
+				null, MatchRule.PREFIX, 1, null, null, 0));
+		assertEquals(names("MyClass"), search(IModelElement.TYPE, false,
+				"MyClass", MatchRule.EXACT, 0, "pkg", null, 0));
+		StoredFile file2 = store.selectFile(containerId, "b.js");
+		assertEquals(names("MyClass", "Other"), search(IModelElement.TYPE,
+				false, null, MatchRule.PREFIX, 0, null,
+				Collections.singleton(file2.getId()), 0));
+		assertEquals(2, search(IModelElement.TYPE, false, null,
+				MatchRule.PREFIX, 0, null, null, 2).size());
+	}
+
+	public void testReferences() {
+		assertEquals(names("MyClass"), search(IModelElement.TYPE, true,
+				"MyClass", MatchRule.EXACT, 0, null, null, 0));
+		assertEquals(names("run"), search(IModelElement.METHOD, false, "run",
+				MatchRule.EXACT, 0, null, null, 0));
+	}
+
+	public void testUnknownNature() {
+		List<StoredElement> elements = new ArrayList<StoredElement>();
+		assertEquals(0, store.search("unknown", IModelElement.TYPE, false,
+				null, MatchRule.PREFIX, 0, 0, null, null, null, null, 0,
+				elements));
+	}
+
+	public void testDeleteFile() throws IOException {
+		StoredFile file1 = store.selectFile(containerId, "a.js");
+		store.deleteFile(file1);
+		assertNull(store.selectFile(containerId, "a.js"));
+		assertEquals(names("MyClass", "Other"),
+				searchTypes(null, MatchRule.PREFIX));
+		assertEquals(names(), searchTypes("MOC", MatchRule.CAMEL_CASE));
+		assertEquals(names(), search(IModelElement.TYPE, true, "MyClass",
+				MatchRule.EXACT, 0, null, null, 0));
+	}
+
+	public void testDiscardFile() throws IOException {
+		StoredFile file3 = store.createFile(containerId, "c.js", 1);
+		addType(file3, "Discarded", 0, null);
+		store.deleteFile(file3);
+		assertNull(store.selectFile(containerId, "c.js"));
+		assertEquals(names(), searchTypes("Discarded", MatchRule.EXACT));
+	}
+
+	public void testReopen() throws IOException {
+		store.flush();
+		store.getStore().close();
+		store = new ElementStore(new OrderedStore(file));
+		assertEquals(names("MyClass", "MyClass"),
+				searchTypes("MyClass", MatchRule.EXACT));
+		StoredFile file1 = store.selectFile(containerId, "a.js");
+		assertNotNull(file1);
+		store.deleteFile(file1);
+		assertEquals(names("MyClass"), searchTypes("MyClass",
+				MatchRule.EXACT));
+	}
+
+	public void testCaseFoldingIgnoresDefaultLocale() throws IOException {
+		Locale saved = Locale.getDefault();
+		Locale.setDefault(new Locale("tr"));
+		try {
+			StoredFile file3 = store.createFile(containerId, "c.js", 1);
+			addType(file3, "TITLE", 0, null);
+			store.insertFile(file3);
+			assertEquals(names("TITLE"), searchTypes("title",
+					MatchRule.EXACT));
+			assertEquals(names("TITLE"), searchTypes("ti", MatchRule.PREFIX));
+		} finally {
+			Locale.setDefault(saved);
+		}
+	}
+
+	public void testFileIds() {
+		Set<Integer> ids = new HashSet<Integer>();
+		for (StoredFile storedFile : store.selectFiles(containerId)) {
+			ids.add(storedFile.getId());
+		}
+		assertEquals(2, ids.size());
+	}
+}
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.index;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.dltk.internal.core.index.kv.OrderedStore;
+
+/**
+ * Recovery and compaction of the log of the {@link OrderedStore}.
+ */
+public class OrderedStoreTests extends TestCase {
+
+	private File file;
+	private File temp;
+	private OrderedStore store;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("ordered", ".kv");
+		file.delete();
+		temp = new File(file.getPath() + ".tmp");
+		store = new OrderedStore(file);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (store != null) {
+			store.close();
+		}
+		file.delete();
+		temp.delete();
+		super.tearDown();
+	}
+
+	private void reopen() throws IOException {
+		store.close();
+		store = null;
+		store = new OrderedStore(file);
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes();
+	}
+
+	private String get(String key) {
+		final byte[] value = store.get(key);
+		return value != null ? new String(value) : null;
+	}
+
+	public void testFlushedValues() throws IOException {
+		store.put("a", bytes("1"));
+		store.put("b", bytes("2"));
+		store.flush();
+		// the flushed values are read back from the log
+		assertEquals("1", get("a"));
+		assertEquals("2", get("b"));
+		store.put("a", bytes("3"));
+		assertEquals("3", get("a"));
+	}
+
+	public void testReopen() throws IOException {
+		store.put("a", bytes("1"));
+		store.put("b", bytes("2"));
+		store.put("c", bytes("3"));
+		store.remove("b");
+		store.put("a", bytes("4"));
+		store.flush();
+		reopen();
+		assertEquals("4", get("a"));
+		assertNull(get("b"));
+		assertEquals("3", get("c"));
+	}
+
+	public void testScanPrefix() throws IOException {
+		store.put("x:2", bytes("2"));
+		store.put("x:1", bytes("1"));
+		store.put("y:1", bytes("3"));
+		store.flush();
+		final List<String> values = new ArrayList<String>();
+		store.scanPrefix("x:", new OrderedStore.IVisitor() {
+			public boolean visit(String key, byte[] value) {
+				values.add(new String(value));
+				return true;
+			}
+		});
+		assertEquals(2, values.size());
+		assertEquals("1", values.get(0));
+		assertEquals("2", values.get(1));
+	}
+
+	public void testTruncatedRecord() throws IOException {
+		store.put("a", bytes("1"));
+		store.put("b", bytes("2"));
+		store.flush();
+		store.close();
+		store = null;
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() - 1);
+		} finally {
+			raf.close();
+		}
+		store = new OrderedStore(file);
+		assertEquals("1", get("a"));
+		assertNull(get("b"));
+		store.put("c", bytes("3"));
+		store.flush();
+		reopen();
+		assertEquals("1", get("a"));
+		assertEquals("3", get("c"));
+	}
+
+	public void testGarbageLength() throws IOException {
+		store.put("a", bytes("1"));
+		store.flush();
+		store.close();
+		store = null;
+		// a record with a length past the end of the file
+		final DataOutputStream out = new DataOutputStream(
+				new FileOutputStream(file, true));
+		try {
+			out.writeByte(1);
+			out.writeInt(Integer.MAX_VALUE);
+		} finally {
+			out.close();
+		}
+		final long length = file.length();
+		store = new OrderedStore(file);
+		assertEquals("1", get("a"));
+		assertTrue(file.length() < length);
+	}
+
+	public void testCompaction() throws IOException {
+		for (int i = 0; i < 2000; ++i) {
+			store.put("a", bytes(String.valueOf(i)));
+		}
+		store.put("b", bytes("b"));
+		store.flush();
+		assertFalse(temp.exists());
+		assertTrue(file.length() < 1000);
+		assertEquals("1999", get("a"));
+		reopen();
+		assertEquals("1999", get("a"));
+		assertEquals("b", get("b"));
+	}
+
+	public void testRecoverTemporaryFile() throws IOException {
+		store.put("a", bytes("1"));
+		store.flush();
+		store.close();
+		store = null;
+		// interrupted after the existing log was deleted
+		assertTrue(file.renameTo(temp));
+		store = new OrderedStore(file);
+		assertFalse(temp.exists());
+		assertEquals("1", get("a"));
+	}
+
+	public void testDiscardTemporaryFile() throws IOException {
+		store.put("a", bytes("1"));
+		store.flush();
+		store.close();
+		store = null;
+		// interrupted while writing the temporary file
+		final FileOutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(new byte[] { 1, 2, 3 });
+		} finally {
+			out.close();
+		}
+		store = new OrderedStore(file);
+		assertFalse(temp.exists());
+		assertEquals("1", get("a"));
+	}
+
+	public void testClear() throws IOException {
+		store.put("a", bytes("1"));
+		store.clear();
+		assertNull(get("a"));
+		reopen();
+		assertNull(get("a"));
+	}
+}
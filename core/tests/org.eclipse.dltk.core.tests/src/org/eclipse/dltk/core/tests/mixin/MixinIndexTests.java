@@ -61,6 +61,24 @@ public class MixinIndexTests extends TestCase {
 		assertEquals("B", docNames[1]);
 	}
 
+	public void testMightContain() throws IOException {
+		final char[][] categories = new char[][] { IIndexConstants.MIXIN };
+		// unknown key lookups are answered without a disk index
+		assertFalse(index.mightContain(categories, "key1".toCharArray()));
+		index.addIndexEntry(IIndexConstants.MIXIN, "key1".toCharArray(), "A");
+		assertTrue(index.mightContain(categories, "key1".toCharArray()));
+		assertFalse(index.mightContain(categories, "key2".toCharArray()));
+		assertFalse(index.mightContain(
+				new char[][] { IIndexConstants.TYPE_DECL },
+				"key1".toCharArray()));
+		index.save();
+		index = createIndex(false);
+		assertTrue(index.mightContain(categories, "key1".toCharArray()));
+		assertFalse(index.mightContain(categories, "key2".toCharArray()));
+		index.remove("A");
+		assertFalse(index.mightContain(categories, "key1".toCharArray()));
+	}
+
 	public void testQueryDocumentNames() throws IOException {
 		index.addIndexEntry(IIndexConstants.MIXIN, "key1".toCharArray(), "A");
 		index.addIndexEntry(IIndexConstants.MIXIN, "key1".toCharArray(), "B");
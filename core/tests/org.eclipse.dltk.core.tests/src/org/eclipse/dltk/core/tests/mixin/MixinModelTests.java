@@ -11,14 +11,21 @@
  *******************************************************************************/
 package org.eclipse.dltk.core.tests.mixin;
 
+import java.io.File;
+import java.io.RandomAccessFile;
+
 import junit.framework.TestCase;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.dltk.core.IDLTKLanguageToolkit;
 import org.eclipse.dltk.core.mixin.IMixinElement;
 import org.eclipse.dltk.core.mixin.MixinModel;
+import org.eclipse.dltk.core.search.SearchEngine;
 import org.eclipse.dltk.core.search.index.MixinIndex;
 import org.eclipse.dltk.core.tests.model.AbstractModelTests;
 import org.eclipse.dltk.core.tests.model.TestLanguageToolkit;
+import org.eclipse.dltk.internal.core.mixin.MixinModelSnapshot;
 
 /**
  * Tests for the {@link MixinIndex} class.
@@ -74,4 +81,79 @@ public class MixinModelTests extends AbstractModelTests {
 			model.stop();
 		}
 	}
+
+	/**
+	 * Resolves the keys with a new model, which saves the snapshot when
+	 * stopped.
+	 */
+	private File saveSnapshot(IDLTKLanguageToolkit toolkit) {
+		final File file = MixinModelSnapshot.getFile(toolkit, null);
+		file.delete();
+		MixinModel model = new MixinModel(toolkit);
+		try {
+			assertNotNull(model.get("{foo"));
+			assertNotNull(model.get("Module"));
+		} finally {
+			model.stop();
+		}
+		assertTrue(file.exists());
+		return file;
+	}
+
+	private MixinModelSnapshot loadSnapshot(File file,
+			IDLTKLanguageToolkit toolkit) {
+		return MixinModelSnapshot.load(file, toolkit,
+				SearchEngine.createWorkspaceScope(toolkit));
+	}
+
+	public void testSnapshotSaveLoad() throws Throwable {
+		final IDLTKLanguageToolkit toolkit = TestLanguageToolkit.getDefault();
+		final File file = saveSnapshot(toolkit);
+		final MixinModelSnapshot snapshot = loadSnapshot(file, toolkit);
+		assertNotNull(snapshot);
+		assertEquals(1, snapshot.getModules("{foo").length);
+		assertEquals(3, snapshot.getModules("Module").length);
+		assertNull(snapshot.getModules("{bar"));
+	}
+
+	public void testSnapshotRestore() throws Throwable {
+		final IDLTKLanguageToolkit toolkit = TestLanguageToolkit.getDefault();
+		saveSnapshot(toolkit);
+		MixinModel model = new MixinModel(toolkit);
+		try {
+			assertTrue(model.keyExists("{foo"));
+			final IMixinElement element = model.get("{foo");
+			assertNotNull(element);
+			assertEquals("{foo", element.getKey());
+			assertNull(model.get("{bar"));
+		} finally {
+			model.stop();
+		}
+	}
+
+	public void testSnapshotStaleModule() throws Throwable {
+		final IDLTKLanguageToolkit toolkit = TestLanguageToolkit.getDefault();
+		final File file = saveSnapshot(toolkit);
+		final IFile x = project.getFile("X.txt");
+		x.setLocalTimeStamp(x.getLocalTimeStamp() + 10000);
+		final MixinModelSnapshot snapshot = loadSnapshot(file, toolkit);
+		// the snapshot is discarded if the change was already indexed,
+		// otherwise the keys of the module are dropped with their parents
+		if (snapshot != null) {
+			assertNull(snapshot.getModules("{foo"));
+			assertNull(snapshot.getModules("Module"));
+		}
+	}
+
+	public void testSnapshotCorrupted() throws Throwable {
+		final IDLTKLanguageToolkit toolkit = TestLanguageToolkit.getDefault();
+		final File file = saveSnapshot(toolkit);
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() / 2);
+		} finally {
+			raf.close();
+		}
+		assertNull(loadSnapshot(file, toolkit));
+	}
 }
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2013 NumberFour AG
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     NumberFour AG - initial API and Implementation
+ *******************************************************************************/
+package org.eclipse.dltk.core.tests.search;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.dltk.internal.core.search.processing.IContainerJob;
+import org.eclipse.dltk.internal.core.search.processing.JobManager;
+
+/**
+ * Tests for the parallel execution of the {@link IContainerJob}s in the
+ * {@link JobManager}.
+ */
+public class JobManagerTests extends TestCase {
+
+	private static final long TIMEOUT = 10;
+
+	static class ParallelJobManager extends JobManager {
+		@Override
+		public String processName() {
+			return "Parallel Test Jobs";
+		}
+
+		@Override
+		protected int getMaxParallelJobs() {
+			return 2;
+		}
+	}
+
+	/**
+	 * Job blocking until it is cancelled.
+	 */
+	static class ContainerJob implements IContainerJob {
+		final String family;
+		final CountDownLatch started;
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		volatile boolean finished;
+
+		ContainerJob(String family, CountDownLatch started) {
+			this.family = family;
+			this.started = started;
+		}
+
+		public Object getContainerKey() {
+			return family;
+		}
+
+		public boolean belongsTo(String jobFamily) {
+			return family.equals(jobFamily);
+		}
+
+		public void cancel() {
+			cancelled.countDown();
+		}
+
+		public void ensureReadyToRun() {
+		}
+
+		public boolean execute(IProgressMonitor progress) {
+			started.countDown();
+			try {
+				cancelled.await(TIMEOUT, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				// ignore
+			}
+			finished = true;
+			return COMPLETE;
+		}
+
+		@Override
+		public String toString() {
+			return "ContainerJob(" + family + ")";
+		}
+	}
+
+	private ParallelJobManager manager;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		manager = new ParallelJobManager();
+		manager.reset();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		manager.shutdown();
+		super.tearDown();
+	}
+
+	public void testDiscardParallelJobs() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(2);
+		final ContainerJob job1 = new ContainerJob("container1", started);
+		final ContainerJob job2 = new ContainerJob("container2", started);
+		manager.request(job1);
+		manager.request(job2);
+		// both jobs are blocked until cancelled, so they run concurrently
+		assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+		assertEquals(2, manager.runningJobsCount());
+		manager.discardJobs(null);
+		assertTrue(job1.finished);
+		assertTrue(job2.finished);
+		assertEquals(0, manager.runningJobsCount());
+		assertEquals(0, manager.awaitingJobsCount());
+	}
+
+	public void testDiscardJobFamily() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(2);
+		final ContainerJob job1 = new ContainerJob("container1", started);
+		final ContainerJob job2 = new ContainerJob("container2", started);
+		manager.request(job1);
+		manager.request(job2);
+		assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+		manager.discardJobs("container1");
+		assertTrue(job1.finished);
+		assertFalse(job2.finished);
+		assertEquals(1, manager.runningJobsCount());
+		manager.discardJobs(null);
+		assertTrue(job2.finished);
+	}
+
+	public void testSameContainerSequential() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final ContainerJob job1 = new ContainerJob("container", started);
+		final CountDownLatch secondStarted = new CountDownLatch(1);
+		final ContainerJob job2 = new ContainerJob("container", secondStarted);
+		manager.request(job1);
+		manager.request(job2);
+		assertTrue(started.await(TIMEOUT, TimeUnit.SECONDS));
+		assertFalse(secondStarted.await(200, TimeUnit.MILLISECONDS));
+		job1.cancel();
+		assertTrue(secondStarted.await(TIMEOUT, TimeUnit.SECONDS));
+		manager.discardJobs(null);
+		assertTrue(job2.finished);
+	}
+
+}